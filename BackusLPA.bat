@@ -1 +1 @@
-java -cp target\BackusLPA-1.0.jar com.andispajk.backuslpa.Main %*
+java --add-modules jdk.incubator.vector -cp target\BackusLPA-1.0.jar com.andispajk.backuslpa.Main %*
@@ -0,0 +1,160 @@
+/** Batch.java
+
+Check many grammar files in one run. Files are checked concurrently on a
+ForkJoinPool, each with a Lexer and Parser of its own and printing into a
+buffer of its own. The buffers are printed in the order the files were given,
+each as soon as it and every file before it is done, followed by a summary.
+
+Arguments can be files, directories, whose files are all checked, or glob
+patterns such as grammars/*.txt or grammars/**.bnf, for shells that don't
+expand them.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+final class Batch {
+    /* Checker
+
+        Checks one grammar file, printing everything about it to out.
+    */
+    interface Checker {
+        boolean check(String file, PrintStream out);
+    }
+
+    private Batch() {}
+
+    /* run()
+        @args       files, directories and glob patterns
+        @checker    what to do with each file
+        @pool       pool to check the files on
+        @return     the exit code, 0 if every file passed, else 1
+    */
+    static int run(List<String> args, Checker checker, ForkJoinPool pool) {
+        List<String> files = new ArrayList<>();
+        int failed = 0;
+        for (String arg : args) {
+            List<String> expanded = expand(arg);
+            if (expanded.isEmpty()) {
+                System.out.printf("ERROR: no grammar files found for %s\n",
+                                  arg);
+                failed++;
+            }
+            files.addAll(expanded);
+        }
+
+        List<Future<Result>> results = new ArrayList<>();
+        for (String file : files)
+            results.add(pool.submit(() -> check(file, checker)));
+        int passed = 0;
+        for (int i = 0; i < files.size(); i++) {
+            Result result;
+            try {
+                result = results.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                result = new Result(false, ("ERROR: " + e + "\n").getBytes(
+                    System.out.charset()));
+            }
+            System.out.printf("== %s ==\n", files.get(i));
+            System.out.write(result.output, 0, result.output.length);
+            if (result.passed)
+                passed++;
+            else
+                failed++;
+        }
+        System.out.printf("checked %d files: %d passed, %d failed\n",
+                          files.size(), passed, failed);
+        System.out.flush();
+        return failed == 0 ? 0 : 1;
+    }
+
+    private record Result(boolean passed, byte[] output) {}
+
+    private static Result check(String file, Checker checker) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, false,
+                                          System.out.charset());
+        boolean passed;
+        try {
+            passed = checker.check(file, out);
+        } catch (RuntimeException e) {
+            out.printf("ERROR: %s\n", e);
+            passed = false;
+        }
+        out.flush();
+        return new Result(passed, buffer.toByteArray());
+    }
+
+    /* expand()
+        @arg        a file, directory or glob pattern
+        @return     the files it stands for, sorted, or nothing if there are
+                    none
+    */
+    static List<String> expand(String arg) {
+        try {
+            if (isGlob(arg))
+                return glob(arg);
+            Path path = Path.of(arg);
+            if (!Files.isDirectory(path))
+                return List.of(arg);
+            try (Stream<Path> children = Files.list(path)) {
+                return children.filter(Files::isRegularFile)
+                               .map(Path::toString).sorted().toList();
+            }
+        } catch (IOException | UncheckedIOException |
+                 InvalidPathException e) {
+            return List.of();
+        }
+    }
+
+    private static boolean isGlob(String arg) {
+        for (char c : arg.toCharArray())
+            if (c == '*' || c == '?' || c == '[' || c == '{')
+                return true;
+        return false;
+    }
+
+    /* glob()
+
+        Walk the directory the pattern starts with, down as many levels as
+        the pattern has, or all the way for **.
+    */
+    private static List<String> glob(String pattern) throws IOException {
+        String[] parts = pattern.split("/", -1);
+        int fixed = 0;
+        while (fixed < parts.length-1 && !isGlob(parts[fixed]))
+            fixed++;
+        String prefix = String.join("/", Arrays.copyOf(parts, fixed));
+        boolean relative = fixed == 0;
+        Path base = Path.of(relative ? "." : prefix.isEmpty() ? "/" : prefix);
+        if (!Files.isDirectory(base))
+            return List.of();
+        int depth = pattern.contains("**") ? Integer.MAX_VALUE
+                                           : parts.length-fixed;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+            "glob:" + pattern);
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile)
+                        .map(p -> relative ? base.relativize(p) : p)
+                        .filter(matcher::matches)
+                        .map(Path::toString).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/** Bits.java
+
+Helpers for bit sets stored in long arrays. Analyses keep whole families of
+sets, e.g. the FIRST set of every nonterminal, in one flat array, so every
+helper takes the offset of the set it works on.
+
+*/
+
+package com.andispajk.backuslpa;
+
+final class Bits {
+    private Bits() {}
+
+    /* words()
+        @bits       number of bits in a set
+        @return     number of longs needed to store the set
+    */
+    static int words(int bits) {
+        return (bits+63) >>> 6;
+    }
+
+    static boolean get(long[] set, int offset, int bit) {
+        return (set[offset+(bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /* set()
+        @return     whether the bit was clear before
+    */
+    static boolean set(long[] set, int offset, int bit) {
+        int i = offset+(bit >>> 6);
+        long old = set[i];
+        set[i] = old | (1L << bit);
+        return set[i] != old;
+    }
+
+    /* or()
+        @dst        array of the set to add to
+        @dstOffset  offset of that set
+        @src        array of the set to add
+        @srcOffset  offset of that set
+        @words      length of both sets
+        @return     whether the destination set changed
+
+        Add one set to another.
+    */
+    static boolean or(long[] dst, int dstOffset, long[] src, int srcOffset,
+                      int words) {
+        long changed = 0;
+        for (int i = 0; i < words; i++) {
+            long old = dst[dstOffset+i];
+            long now = old | src[srcOffset+i];
+            dst[dstOffset+i] = now;
+            changed |= now ^ old;
+        }
+        return changed != 0;
+    }
+
+    /* intersects()
+        @return     whether two sets have any bit in common
+    */
+    static boolean intersects(long[] a, int aOffset, long[] b, int bOffset,
+                              int words) {
+        for (int i = 0; i < words; i++)
+            if ((a[aOffset+i] & b[bOffset+i]) != 0)
+                return true;
+        return false;
+    }
+
+    /* next()
+        @from       first bit to look at
+        @return     the first set bit at or after from, or -1 if there is none
+
+        Iterate over a set with: for (int b = next(s, o, w, 0); b >= 0;
+        b = next(s, o, w, b+1))
+    */
+    static int next(long[] set, int offset, int words, int from) {
+        int i = from >>> 6;
+        if (i >= words)
+            return -1;
+        long word = set[offset+i] & (-1L << from);
+        while (word == 0) {
+            if (++i == words)
+                return -1;
+            word = set[offset+i];
+        }
+        return (i << 6)+Long.numberOfTrailingZeros(word);
+    }
+}
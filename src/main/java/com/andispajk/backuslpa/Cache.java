@@ -0,0 +1,252 @@
+/** Cache.java
+
+Remember what checking a grammar file printed, so a file that hasn't changed
+since doesn't have to be lexed, parsed and analyzed again. Results are kept
+in a directory, one file each, named by a SHA-256 hash of everything that
+decides them: the file's contents, directive and all, the name messages call
+it by, and the options it was checked with. A result is never out of date,
+it just stops being looked for.
+
+The directory is kept under a size limit by deleting the results used least
+recently. When a result is used, its file's modification time is updated,
+so the order carries over from run to run. Results are written to a
+temporary file first and moved into place, so parallel checkers, and other
+runs sharing the directory, only ever see whole results; one that
+disappears while it is being read is a miss.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+final class Cache {
+    // part of every key, to be changed whenever what is stored changes
+    private static final String FORMAT = "BackusLPA cache 1";
+    // a result is a byte saying whether the file passed, then the output
+    private static final int HEADER = 1;
+
+    private final Path dir;
+    private final long limit;
+    // size of every result, least recently used first
+    private final LinkedHashMap<String, Long> entries;
+    private long size;
+
+    /* Cache()
+        @dir        directory to keep the results in, created if need be
+        @limit      most bytes the results may take up together
+
+        Pick up the results already in the directory, oldest first.
+    */
+    Cache(Path dir, long limit) throws IOException {
+        this.dir = dir;
+        this.limit = limit;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+        Files.createDirectories(dir);
+        List<Found> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!isKey(name))
+                    continue;
+                try {
+                    found.add(new Found(name,
+                                        Files.getLastModifiedTime(file),
+                                        Files.size(file)));
+                } catch (IOException e) {
+                    // removed in the meantime
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        found.sort(Comparator.comparing(Found::time));
+        for (Found result : found) {
+            entries.put(result.key(), result.bytes());
+            size += result.bytes();
+        }
+        evict();
+    }
+
+    private record Found(String key, FileTime time, long bytes) {}
+
+    /* wrap()
+        @checker    checks a grammar file
+        @options    everything besides the file that its output depends on
+        @return     a checker that replays checker's output for files it has
+                    seen before and remembers it for new ones
+
+        Files that can't be read are left to checker, uncached.
+    */
+    Batch.Checker wrap(Batch.Checker checker, String options) {
+        return (file, out) -> {
+            String key = key(file, options);
+            if (key == null)
+                return checker.check(file, out);
+            byte[] result = get(key);
+            if (result != null) {
+                out.write(result, HEADER, result.length-HEADER);
+                return result[0] != 0;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            buffer.write(0);
+            PrintStream captured = new PrintStream(buffer, false,
+                                                   out.charset());
+            boolean passed = checker.check(file, captured);
+            captured.flush();
+            result = buffer.toByteArray();
+            result[0] = (byte) (passed ? 1 : 0);
+            out.write(result, HEADER, result.length-HEADER);
+            put(key, result);
+            return passed;
+        };
+    }
+
+    /* key()
+        @file       a grammar file
+        @options    everything besides the file that its output depends on
+        @return     the name of the file's result, or null if it can't be
+                    read
+    */
+    static String key(String file, String options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // every part is ended by a NUL, which none of them can hold but
+        // the contents, which come last
+        for (String part : new String[] {FORMAT, options, file}) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(file))) {
+            long length = channel.size();
+            if (length > 0)
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                          length));
+        } catch (IOException | InvalidPathException |
+                 UnsupportedOperationException e) {
+            return null;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean isKey(String name) {
+        if (name.length() != 64)
+            return false;
+        for (int i = 0; i < name.length(); i++)
+            if (Character.digit(name.charAt(i), 16) < 0)
+                return false;
+        return true;
+    }
+
+    /* get()
+        @key        name of a result
+        @return     the result, or null if there is none
+    */
+    byte[] get(String key) {
+        synchronized (this) {
+            // marks it as used
+            if (entries.get(key) == null)
+                return null;
+        }
+        Path file = dir.resolve(key);
+        byte[] result;
+        try {
+            result = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(
+                System.currentTimeMillis()));
+        } catch (IOException e) {
+            result = null;
+        }
+        if (result == null || result.length < HEADER) {
+            // evicted by another run
+            synchronized (this) {
+                Long bytes = entries.remove(key);
+                if (bytes != null)
+                    size -= bytes;
+            }
+            return null;
+        }
+        return result;
+    }
+
+    /* put()
+        @key        name of a result
+        @result     the result
+
+        Store a result, unless it's bigger than the whole cache, and evict
+        the results used least recently until the rest fits. Failing to
+        write it only loses the result.
+    */
+    void put(String key, byte[] result) {
+        if (result.length > limit)
+            return;
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(dir, key, ".tmp");
+            Files.write(temporary, result);
+            Files.move(temporary, dir.resolve(key),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                if (temporary != null)
+                    Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // nothing more to do about it
+            }
+            return;
+        }
+        synchronized (this) {
+            Long old = entries.put(key, (long) result.length);
+            size += result.length-(old == null ? 0 : old);
+            evict();
+        }
+    }
+
+    /* size()
+        @return     bytes the results take up together
+    */
+    synchronized long size() {
+        return size;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest =
+            entries.entrySet().iterator();
+        while (size > limit && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            size -= entry.getValue();
+            try {
+                Files.deleteIfExists(dir.resolve(entry.getKey()));
+            } catch (IOException e) {
+                // counts as gone, and will be picked up again next run
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/** CompressedTable.java
+
+ACTION and GOTO tables of an LR automaton packed the way yacc packs them, so
+they take a fraction of the memory of the full tables, which have an entry
+for every state and symbol, and the entries a parser looks at lie close
+together.
+
+    default reductions  every state reduces by the production it reduces by
+                        most often on any terminal it has no other action
+                        for, so those entries needn't be stored; the
+                        accepting reduction is never a default
+    default gotos       every nonterminal goes to the state it goes to most
+                        often, from any state it has no other entry for
+    row sharing         states whose remaining actions are the same share a
+                        row, and so do nonterminals with the same gotos
+    row displacement    the rows are laid over each other in one array, each
+                        at a base chosen so that its entries fall where no
+                        other row has one; a check array records which row
+                        every entry belongs to
+
+Where the full ACTION table has an error, a state with a default reduction
+reduces instead. The error is still found before the next terminal is
+shifted, so the parser accepts the same sentences and stops at the same
+terminal. Likewise, gotoState() only answers for the entries an LR parser
+can ask for.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+public final class CompressedTable {
+    /* Stats
+        @fullSize           entries of the full ACTION and GOTO tables
+        @size               ints the compressed tables take up
+        @states             states of the automaton
+        @actionRows         distinct ACTION rows left to store
+        @defaultReductions  states that have a default reduction
+    */
+    public record Stats(long fullSize, long size, int states, int actionRows,
+                        int defaultReductions) {
+        /* ratio()
+            @return     size as a fraction of fullSize
+        */
+        public double ratio() {
+            return fullSize == 0 ? 1 : (double) size/fullSize;
+        }
+    }
+
+    /* Packed
+        @row        shared row of every original row
+        @base       where every shared row starts in value and check
+        @value      the entries of all rows, laid over each other
+        @check      the shared row every entry of value belongs to, or -1
+    */
+    record Packed(int[] row, int[] base, int[] value, int[] check) {
+        /* get()
+            @i          an original row
+            @column     a column of it
+            @otherwise  what the entry is if the row doesn't store it
+        */
+        int get(int i, int column, int otherwise) {
+            int r = row[i];
+            int at = base[r]+column;
+            return at >= 0 && at < check.length && check[at] == r ? value[at]
+                                                                   : otherwise;
+        }
+
+        int size() {
+            return row.length+base.length+value.length+check.length;
+        }
+    }
+
+    private final int terminals;
+    private final int nonterminals;
+    // default action of every state, a reduction or 0
+    private final int[] actionDefault;
+    private final Packed action;
+    private final int[] gotoDefault;
+    // rows of nonterminals, indexed by state
+    private final Packed gotos;
+    private final Stats stats;
+
+    /* CompressedTable()
+        @table      the full tables of an LR automaton
+    */
+    public CompressedTable(LRTable table) {
+        int states = table.stateCount();
+        int[] full = table.actionTable();
+        terminals = table.terminalCount();
+        nonterminals = table.nonterminalCount();
+
+        actionDefault = new int[states];
+        int[][] columns = new int[states][];
+        int[][] values = new int[states][];
+        int defaults = 0;
+        int[] row = new int[terminals];
+        for (int s = 0; s < states; s++) {
+            System.arraycopy(full, s*terminals, row, 0, terminals);
+            int fallback = mostCommon(row, a -> LRTable.isReduce(a) &&
+                                                    !table.isAccept(a), 0);
+            actionDefault[s] = fallback;
+            if (fallback != 0)
+                defaults++;
+            sparse(row, fallback, 0, s, columns, values);
+        }
+        action = pack(columns, values);
+
+        int[] fullGotos = table.gotoTable();
+        gotoDefault = new int[nonterminals];
+        columns = new int[nonterminals][];
+        values = new int[nonterminals][];
+        row = new int[states];
+        for (int nt = 0; nt < nonterminals; nt++) {
+            for (int s = 0; s < states; s++)
+                row[s] = fullGotos[s*nonterminals+nt];
+            gotoDefault[nt] = mostCommon(row, target -> target >= 0, -1);
+            sparse(row, gotoDefault[nt], -1, nt, columns, values);
+        }
+        gotos = pack(columns, values);
+
+        stats = new Stats((long) full.length+fullGotos.length,
+                          (long) actionDefault.length+action.size()+
+                          gotoDefault.length+gotos.size(),
+                          states, action.base().length, defaults);
+    }
+
+    /* mostCommon()
+        @row        a row of a table
+        @candidate  which values may be the default
+        @none       what to return if none may
+        @return     the candidate that occurs most often
+    */
+    private static int mostCommon(int[] row, IntPredicate candidate,
+                                  int none) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        int best = none;
+        int bestCount = 0;
+        for (int value : row) {
+            if (!candidate.test(value))
+                continue;
+            int count = counts.merge(value, 1, Integer::sum);
+            if (count > bestCount) {
+                best = value;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /* sparse()
+
+        Store the columns and values of the entries of row i that are
+        neither its default nor empty, which the default stands in for.
+    */
+    private static void sparse(int[] row, int fallback, int empty, int i,
+                               int[][] columns, int[][] values) {
+        int count = 0;
+        for (int value : row)
+            if (value != fallback && value != empty)
+                count++;
+        columns[i] = new int[count];
+        values[i] = new int[count];
+        count = 0;
+        for (int c = 0; c < row.length; c++) {
+            if (row[c] == fallback || row[c] == empty)
+                continue;
+            columns[i][count] = c;
+            values[i][count++] = row[c];
+        }
+    }
+
+    /* pack()
+        @columns    columns of the entries of every row, ascending
+        @values     values of those entries
+        @return     the rows, equal ones shared, laid over each other
+
+        Rows are placed fullest first, each at the lowest base where it
+        fits, which leaves the sparse rows to fill the gaps.
+    */
+    static Packed pack(int[][] columns, int[][] values) {
+        int[] row = new int[columns.length];
+        Map<List<Integer>, Integer> shared = new HashMap<>();
+        int[] first = new int[columns.length];
+        int rows = 0;
+        for (int i = 0; i < columns.length; i++) {
+            Integer[] key = new Integer[columns[i].length*2];
+            for (int k = 0; k < columns[i].length; k++) {
+                key[2*k] = columns[i][k];
+                key[2*k+1] = values[i][k];
+            }
+            Integer r = shared.putIfAbsent(Arrays.asList(key), rows);
+            if (r == null) {
+                first[rows] = i;
+                r = rows++;
+            }
+            row[i] = r;
+        }
+
+        Integer[] order = new Integer[rows];
+        for (int r = 0; r < rows; r++)
+            order[r] = r;
+        Arrays.sort(order, (a, b) -> columns[first[b]].length -
+                                     columns[first[a]].length);
+        int[] base = new int[rows];
+        int[] value = new int[16];
+        int[] check = new int[16];
+        Arrays.fill(check, -1);
+        int used = 0;
+        // every slot below this one is taken
+        int free = 0;
+        for (int r : order) {
+            int[] cs = columns[first[r]];
+            int[] vs = values[first[r]];
+            if (cs.length == 0)
+                continue;
+            int b = free-cs[0];
+            while (!fits(check, cs, b))
+                b++;
+            int end = b+cs[cs.length-1]+1;
+            if (end > check.length) {
+                int grown = Math.max(end, check.length*2);
+                value = Arrays.copyOf(value, grown);
+                int old = check.length;
+                check = Arrays.copyOf(check, grown);
+                Arrays.fill(check, old, grown, -1);
+            }
+            for (int k = 0; k < cs.length; k++) {
+                value[b+cs[k]] = vs[k];
+                check[b+cs[k]] = r;
+            }
+            base[r] = b;
+            used = Math.max(used, end);
+            while (free < used && check[free] >= 0)
+                free++;
+        }
+        return new Packed(row, base, Arrays.copyOf(value, used),
+                          Arrays.copyOf(check, used));
+    }
+
+    private static boolean fits(int[] check, int[] columns, int base) {
+        for (int c : columns)
+            if (base+c < check.length && check[base+c] >= 0)
+                return false;
+        return true;
+    }
+
+    /* action()
+        @state      a state
+        @t          next input terminal
+        @return     the action, encoded as by LRTable; where the full table
+                    has an error, the state's default reduction if it has
+                    one
+    */
+    public int action(int state, int t) {
+        return action.get(state, t, actionDefault[state]);
+    }
+
+    /* gotoState()
+        @state      a state uncovered by a reduction to nt
+        @nt         a nonterminal of the grammar
+        @return     the state to go to; undefined for entries the full
+                    table has none for
+    */
+    public int gotoState(int state, int nt) {
+        return gotos.get(nt, state, gotoDefault[nt]);
+    }
+
+    public int stateCount() {
+        return actionDefault.length;
+    }
+
+    public int terminalCount() {
+        return terminals;
+    }
+
+    public int nonterminalCount() {
+        return nonterminals;
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    int[] actionDefaults() {
+        return actionDefault;
+    }
+
+    Packed actionRows() {
+        return action;
+    }
+
+    int[] gotoDefaults() {
+        return gotoDefault;
+    }
+
+    Packed gotoRows() {
+        return gotos;
+    }
+}
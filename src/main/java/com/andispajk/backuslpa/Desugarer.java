@@ -0,0 +1,269 @@
+/** Desugarer.java
+
+Turn a grammar with EBNF constructs into plain BNF that derives the same
+strings, so the LL and LR analyses can work on it.
+
+Every construct becomes a helper nonterminal:
+
+    (a | b)     H ::= a | b
+    [a | b]     H ::= a | b | ""
+    {a | b}     H ::= "" | a H | b H
+    (a | b)+    (a | b) {a | b}
+
+Repetitions are right recursive, which LL(1) parsing needs. A group with a
+single alternative doesn't need a helper at all; its symbols are put right
+where the group was. So is the first copy of a + repetition's body.
+
+Helpers are hash-consed: constructs of the same kind whose alternatives come
+out the same after their own constructs are desugared share one helper, so
+{alpha | digit} written fifty times still adds just one nonterminal. The
+productions of the grammar's own rules come first, in their original order,
+then those of the helpers. Terminals keep their IDs.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class Desugarer {
+    private final Grammar source;
+    private final Grammar grammar;
+    // new ID of every named nonterminal of the source
+    private final int[] named;
+    // what every construct of the source was replaced with
+    private final int[][] replacements;
+    private final Map<Shape, Integer> helpers;
+    private final List<int[]> helperProductions;
+    private int shared;
+
+    /* Desugarer()
+        @source     a grammar, which may have EBNF constructs
+
+        Build the BNF grammar.
+    */
+    public Desugarer(Grammar source) {
+        this.source = source;
+        grammar = new Grammar(source.mode());
+        SymbolTable symbols = source.symbols();
+        for (int t = 1; t < symbols.terminalCount(); t++)
+            grammar.symbols().terminal(symbols.terminalText(t));
+        int nonterminals = symbols.nonterminalCount();
+        named = new int[nonterminals];
+        for (int nt = 0; nt < nonterminals; nt++) {
+            if (source.kind(nt) != NodeKind.RULE)
+                continue;
+            named[nt] = grammar.symbols().nonterminal(
+                symbols.nonterminalName(nt));
+            if (source.isDefined(nt))
+                grammar.define(named[nt], source.definedAt(nt),
+                               source.definedLine(nt),
+                               source.definedColumn(nt));
+        }
+        replacements = new int[nonterminals][];
+        helpers = new HashMap<>();
+        helperProductions = new ArrayList<>();
+        shared = 0;
+
+        // rewriting the rules' productions makes the helpers, whose
+        // productions go after the rules'
+        List<int[]> rules = new ArrayList<>();
+        for (int p = 0; p < source.productionCount(); p++)
+            if (source.kind(source.lhs(p)) == NodeKind.RULE)
+                rules.add(rewrite(source.rhs(p)));
+        int r = 0;
+        for (int p = 0; p < source.productionCount(); p++) {
+            int lhs = source.lhs(p);
+            if (source.kind(lhs) == NodeKind.RULE)
+                grammar.addProduction(named[lhs], rules.get(r++),
+                                      source.startPos(p), source.line(p),
+                                      source.column(p));
+        }
+        for (int[] production : helperProductions)
+            grammar.addProduction(production[0],
+                                  Arrays.copyOfRange(production, 4,
+                                                     production.length),
+                                  production[1], production[2],
+                                  production[3]);
+    }
+
+    /* grammar()
+        @return     the desugared grammar, for which isBnf() is true
+    */
+    public Grammar grammar() {
+        return grammar;
+    }
+
+    /* helperCount()
+        @return     number of helper nonterminals added
+    */
+    public int helperCount() {
+        return helpers.size();
+    }
+
+    /* sharedCount()
+        @return     number of constructs that reused the helper of an equal
+                    construct instead of getting one of their own
+    */
+    public int sharedCount() {
+        return shared;
+    }
+
+    /* rewrite()
+        @rhs        a right-hand side of the source
+        @return     it with named nonterminals renumbered and constructs
+                    replaced
+    */
+    private int[] rewrite(int[] rhs) {
+        int[] out = new int[rhs.length];
+        int size = 0;
+        for (int symbol : rhs) {
+            int[] replacement;
+            if (SymbolTable.isTerminal(symbol))
+                replacement = new int[] {symbol};
+            else if (source.kind(symbol) == NodeKind.RULE)
+                replacement = new int[] {named[symbol]};
+            else
+                replacement = replace(symbol);
+            if (size+replacement.length > out.length)
+                out = Arrays.copyOf(out, size+replacement.length+rhs.length);
+            System.arraycopy(replacement, 0, out, size, replacement.length);
+            size += replacement.length;
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /* replace()
+        @node       a construct of the source
+        @return     the symbols that take its place
+    */
+    private int[] replace(int node) {
+        if (replacements[node] != null)
+            return replacements[node];
+        int[] productions = source.productionsOf(node);
+        int[][] alternatives = new int[productions.length][];
+        for (int i = 0; i < productions.length; i++)
+            alternatives[i] = rewrite(source.rhs(productions[i]));
+        String name = source.symbols().nonterminalName(node);
+        int[] replacement = switch (source.kind(node)) {
+            case GROUP -> alternatives.length == 1 ? alternatives[0]
+                : new int[] {helper(NodeKind.GROUP, alternatives, name,
+                                    node, productions)};
+            case OPTION, REPEAT -> new int[] {
+                helper(source.kind(node), alternatives, name, node,
+                       productions)};
+            default -> plus(alternatives, name, node, productions);
+        };
+        replacements[node] = replacement;
+        return replacement;
+    }
+
+    /* plus()
+
+        Replace a + repetition with one copy of its body followed by a
+        repetition of it.
+    */
+    private int[] plus(int[][] alternatives, String name, int node,
+                       int[] productions) {
+        String base = name.endsWith("+") ? name.substring(0, name.length()-1)
+                                         : name;
+        int repeat = helper(NodeKind.REPEAT, alternatives, base + "*", node,
+                            productions);
+        int[] first = alternatives.length == 1 ? alternatives[0]
+            : new int[] {helper(NodeKind.GROUP, alternatives, base, node,
+                                productions)};
+        int[] replacement = Arrays.copyOf(first, first.length+1);
+        replacement[first.length] = repeat;
+        return replacement;
+    }
+
+    /* helper()
+        @kind           GROUP, OPTION or REPEAT
+        @alternatives   the construct's alternatives, already rewritten
+        @name           a name for a new helper
+        @node           the construct, for positions
+        @productions    its productions, for positions
+        @return         the helper nonterminal for the construct
+    */
+    private int helper(NodeKind kind, int[][] alternatives, String name,
+                       int node, int[] productions) {
+        Shape shape = new Shape(kind, alternatives);
+        Integer existing = helpers.get(shape);
+        if (existing != null) {
+            shared++;
+            return existing;
+        }
+        int nt = grammar.symbols().anonymous(name);
+        int pos = source.definedAt(node);
+        int line = source.definedLine(node);
+        int column = source.definedColumn(node);
+        grammar.define(nt, pos, line, column);
+        helpers.put(shape, nt);
+        boolean empty = false;
+        if (kind == NodeKind.REPEAT)
+            addHelperProduction(nt, pos, line, column, new int[0]);
+        for (int i = 0; i < alternatives.length; i++) {
+            int[] alternative = alternatives[i];
+            int p = productions[i];
+            if (kind == NodeKind.REPEAT) {
+                // "" H would only derive H again
+                if (alternative.length == 0)
+                    continue;
+                alternative = Arrays.copyOf(alternative,
+                                            alternative.length+1);
+                alternative[alternative.length-1] = nt;
+            }
+            empty |= alternative.length == 0;
+            addHelperProduction(nt, source.startPos(p), source.line(p),
+                                source.column(p), alternative);
+        }
+        if (kind == NodeKind.OPTION && !empty)
+            addHelperProduction(nt, pos, line, column, new int[0]);
+        return nt;
+    }
+
+    private void addHelperProduction(int nt, int pos, int line, int column,
+                                     int[] rhs) {
+        int[] production = new int[rhs.length+4];
+        production[0] = nt;
+        production[1] = pos;
+        production[2] = line;
+        production[3] = column;
+        System.arraycopy(rhs, 0, production, 4, rhs.length);
+        helperProductions.add(production);
+    }
+
+    /* Shape
+
+        A construct's kind and rewritten alternatives, which decide whether
+        two constructs can share a helper.
+    */
+    private static final class Shape {
+        private final NodeKind kind;
+        private final int[][] alternatives;
+        private final int hash;
+
+        Shape(NodeKind kind, int[][] alternatives) {
+            this.kind = kind;
+            this.alternatives = alternatives;
+            hash = 31*kind.ordinal()+Arrays.deepHashCode(alternatives);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Shape other))
+                return false;
+            return hash == other.hash && kind == other.kind &&
+                   Arrays.deepEquals(alternatives, other.alternatives);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/** Diagnostic.java
+
+A problem found in a grammar, in a form tools can consume without parsing
+the printed messages.
+
+*/
+
+package com.andispajk.backuslpa;
+
+/* Diagnostic
+    @line       line of the problem, counting from 1
+    @column     column of the problem, counting from 0, like the printed
+                messages
+    @message    what the problem is
+*/
+public record Diagnostic(int line, int column, String message) {}
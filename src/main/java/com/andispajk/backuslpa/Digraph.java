@@ -0,0 +1,303 @@
+/** Digraph.java
+
+A directed graph between dense int nodes, and a solver for set equations over
+it, in the spirit of DeRemer and Pennello's Digraph algorithm:
+
+    F(x) = F'(x) + the union of F(y) for every edge x -> y
+
+Every node of a strongly connected component ends up with the same set, the
+union of the F' of its members and the F of the components they have edges
+to. So the graph is condensed with Tarjan's algorithm, and every component is
+solved exactly once after the components it depends on, without iterating
+until nothing changes.
+
+Components are grouped into levels: a component's level is one more than the
+highest level of the components it depends on. The components of one level
+are independent of each other, so with a ForkJoinPool, large levels are
+solved in parallel.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+final class Digraph {
+    // components of a level solved by one task before it is split further
+    private static final int SPLIT = 64;
+
+    private final int nodes;
+    private int[] from;
+    private int[] to;
+    private int count;
+    // edges grouped by their source, built by freeze()
+    private int[] start;
+    private int[] targets;
+
+    Digraph(int nodes) {
+        this.nodes = nodes;
+        from = new int[16];
+        to = new int[16];
+        count = 0;
+        start = null;
+        targets = null;
+    }
+
+    /* add()
+        @a      source node
+        @b      target node
+
+        Add an edge. Edges can only be added before freeze().
+    */
+    void add(int a, int b) {
+        if (count == from.length) {
+            from = Arrays.copyOf(from, count*2);
+            to = Arrays.copyOf(to, count*2);
+        }
+        from[count] = a;
+        to[count] = b;
+        count++;
+    }
+
+    /* freeze()
+
+        Group the edges by their source with a counting sort.
+    */
+    void freeze() {
+        start = new int[nodes+1];
+        for (int k = 0; k < count; k++)
+            start[from[k]+1]++;
+        for (int n = 0; n < nodes; n++)
+            start[n+1] += start[n];
+        targets = new int[count];
+        int[] next = Arrays.copyOf(start, nodes);
+        for (int k = 0; k < count; k++)
+            targets[next[from[k]]++] = to[k];
+        from = null;
+        to = null;
+    }
+
+    int nodeCount() {
+        return nodes;
+    }
+
+    int start(int node) {
+        return start[node];
+    }
+
+    int end(int node) {
+        return start[node+1];
+    }
+
+    int target(int k) {
+        return targets[k];
+    }
+
+    /* components()
+        @return     the strongly connected component of every node
+
+        Run Tarjan's algorithm, without recursion so long chains of nodes
+        can't overflow the stack. Components are numbered in the order they
+        are completed, so an edge between two components always goes from a
+        higher number to a lower one.
+    */
+    int[] components() {
+        if (start == null)
+            freeze();
+        int[] component = new int[nodes];
+        int count = 0;
+        // stack height when a node was pushed, which stays its depth until
+        // some node deeper down turns out to reach one further up
+        int[] pushed = new int[nodes];
+        int[] depth = new int[nodes];
+        int[] stack = new int[nodes];
+        int height = 0;
+        // the depth first search's own stack of nodes and next edges
+        int[] path = new int[nodes];
+        int[] edge = new int[nodes];
+        for (int root = 0; root < nodes; root++) {
+            if (depth[root] != 0)
+                continue;
+            int level = 0;
+            path[0] = root;
+            edge[0] = start[root];
+            stack[height++] = root;
+            depth[root] = pushed[root] = height;
+            while (level >= 0) {
+                int x = path[level];
+                if (edge[level] < start[x+1]) {
+                    int y = targets[edge[level]++];
+                    if (depth[y] == 0) {
+                        stack[height++] = y;
+                        depth[y] = pushed[y] = height;
+                        level++;
+                        path[level] = y;
+                        edge[level] = start[y];
+                    } else {
+                        depth[x] = Math.min(depth[x], depth[y]);
+                    }
+                    continue;
+                }
+                // all of x's edges are done
+                level--;
+                if (depth[x] == pushed[x]) {
+                    int top;
+                    do {
+                        top = stack[--height];
+                        depth[top] = Integer.MAX_VALUE;
+                        component[top] = count;
+                    } while (top != x);
+                    count++;
+                }
+                if (level >= 0) {
+                    int parent = path[level];
+                    depth[parent] = Math.min(depth[parent], depth[x]);
+                }
+            }
+        }
+        return component;
+    }
+
+    /* solve()
+        @sets       one set per node, holding F'(x) on entry and F(x) on exit
+        @words      length of each set
+    */
+    void solve(long[] sets, int words) {
+        solve(sets, words, null);
+    }
+
+    /* solve()
+        @sets       one set per node, holding F'(x) on entry and F(x) on exit
+        @words      length of each set
+        @pool       pool to solve large levels on, or null to solve them all
+                    on this thread
+    */
+    void solve(long[] sets, int words, ForkJoinPool pool) {
+        int[] component = components();
+        int count = 0;
+        for (int x = 0; x < nodes; x++)
+            count = Math.max(count, component[x]+1);
+        int[] memberStart = new int[count+1];
+        for (int x = 0; x < nodes; x++)
+            memberStart[component[x]+1]++;
+        for (int c = 0; c < count; c++)
+            memberStart[c+1] += memberStart[c];
+        int[] members = new int[nodes];
+        int[] next = Arrays.copyOf(memberStart, count);
+        for (int x = 0; x < nodes; x++)
+            members[next[component[x]]++] = x;
+
+        // the components an edge leads to are always numbered lower
+        int[] level = new int[count];
+        int levels = 0;
+        for (int c = 0; c < count; c++) {
+            for (int m = memberStart[c]; m < memberStart[c+1]; m++) {
+                int x = members[m];
+                for (int k = start[x]; k < start[x+1]; k++) {
+                    int d = component[targets[k]];
+                    if (d != c)
+                        level[c] = Math.max(level[c], level[d]+1);
+                }
+            }
+            levels = Math.max(levels, level[c]+1);
+        }
+        int[] levelStart = new int[levels+1];
+        for (int c = 0; c < count; c++)
+            levelStart[level[c]+1]++;
+        for (int l = 0; l < levels; l++)
+            levelStart[l+1] += levelStart[l];
+        int[] byLevel = new int[count];
+        next = Arrays.copyOf(levelStart, levels);
+        for (int c = 0; c < count; c++)
+            byLevel[next[level[c]]++] = c;
+
+        Solver solver = new Solver(sets, words, component, memberStart,
+                                   members);
+        for (int l = 0; l < levels; l++) {
+            Solve task = new Solve(solver, byLevel, levelStart[l],
+                                   levelStart[l+1]);
+            if (pool == null || levelStart[l+1]-levelStart[l] <= SPLIT)
+                task.compute();
+            else
+                pool.invoke(task);
+        }
+    }
+
+    /* Solver
+
+        What solving a component needs, shared by all tasks.
+    */
+    private final class Solver {
+        private final long[] sets;
+        private final int words;
+        private final int[] component;
+        private final int[] memberStart;
+        private final int[] members;
+
+        Solver(long[] sets, int words, int[] component, int[] memberStart,
+               int[] members) {
+            this.sets = sets;
+            this.words = words;
+            this.component = component;
+            this.memberStart = memberStart;
+            this.members = members;
+        }
+
+        /* solve()
+            @c      a component whose successors are all solved
+
+            Gather the union into the first member's set, then copy it to
+            the others.
+        */
+        void solve(int c) {
+            int first = members[memberStart[c]];
+            for (int m = memberStart[c]; m < memberStart[c+1]; m++) {
+                int x = members[m];
+                if (x != first)
+                    Bits.or(sets, first*words, sets, x*words, words);
+                for (int k = start[x]; k < start[x+1]; k++) {
+                    int y = targets[k];
+                    if (component[y] != c)
+                        Bits.or(sets, first*words, sets, y*words, words);
+                }
+            }
+            for (int m = memberStart[c]+1; m < memberStart[c+1]; m++)
+                System.arraycopy(sets, first*words, sets, members[m]*words,
+                                 words);
+        }
+    }
+
+    /* Solve
+
+        Solves a range of one level's components, splitting it in halves as
+        long as it is larger than SPLIT.
+    */
+    @SuppressWarnings("serial")
+    private static final class Solve extends RecursiveAction {
+        private final Solver solver;
+        private final int[] components;
+        private final int from;
+        private final int to;
+
+        Solve(Solver solver, int[] components, int from, int to) {
+            this.solver = solver;
+            this.components = components;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to-from > SPLIT) {
+                int mid = (from+to) >>> 1;
+                invokeAll(new Solve(solver, components, from, mid),
+                          new Solve(solver, components, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++)
+                solver.solve(components[i]);
+        }
+    }
+}
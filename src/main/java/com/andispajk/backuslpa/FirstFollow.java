@@ -0,0 +1,869 @@
+/** FirstFollow.java
+
+Compute which nonterminals of a BNF grammar derive the empty string, and the
+FIRST and FOLLOW sets of every nonterminal.
+
+Sets are bit sets over terminal IDs, one row of words per nonterminal in a
+flat long array. Instead of sweeping over all productions until nothing
+changes, every equation is turned into an edge of a dependency graph between
+nonterminals. Sets only depend on each other within the graph's strongly
+connected components, so each component is solved once, after the ones it
+depends on, and independent components in parallel (see Digraph).
+
+An analysis can also be brought up to date for a new version of its grammar,
+e.g. after an edit, without starting over. Symbols are matched up by name,
+since the versions may number them differently. The changes are the rules of
+the productions the edit removed and added, as IncrementalParser reports
+them, so nothing else has to be compared; without them, the rules whose
+productions differ are found by comparing the two grammars.
+
+Whether a nonterminal is nullable and its FIRST set only depend on the
+nonterminals in its productions, so only the changed rules and the rules that
+can start with them, directly or not, are computed again. FOLLOW sets flow the
+other way: a nonterminal's is computed again if the terminals right after it
+or the rules it can end are not the same as before, or if it can end a rule
+whose FOLLOW set is computed again. The other sets are carried over. Since the
+affected sets are computed from nothing rather than grown from their old
+values, sets shrink correctly when productions are removed.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+public final class FirstFollow {
+    private final Grammar grammar;
+    private final int nonterminals;
+    // words per set
+    private final int words;
+    private final boolean[] nullable;
+    private final long[] first;
+    private final long[] follow;
+    private final ForkJoinPool pool;
+    // nonterminals whose sets were computed rather than carried over
+    private int affected;
+    // productions every nonterminal occurs in, once per occurrence, and
+    // where each nonterminal's start; null until an update needs them
+    private int[] occurrenceStart;
+    private int[] occurrences;
+
+    /* FirstFollow()
+        @grammar    a grammar without EBNF constructs
+
+        Run the analysis on the common pool.
+    */
+    public FirstFollow(Grammar grammar) {
+        this(grammar, ForkJoinPool.commonPool());
+    }
+
+    /* FirstFollow()
+        @grammar    a grammar without EBNF constructs
+        @pool       pool to solve independent components on, or null to
+                    solve everything on this thread
+
+        Run the analysis.
+    */
+    public FirstFollow(Grammar grammar, ForkJoinPool pool) {
+        if (!grammar.isBnf())
+            throw new IllegalArgumentException("grammar has EBNF constructs");
+        this.grammar = grammar;
+        nonterminals = grammar.symbols().nonterminalCount();
+        words = Bits.words(grammar.symbols().terminalCount());
+        nullable = new boolean[nonterminals];
+        first = new long[nonterminals*words];
+        follow = new long[nonterminals*words];
+        this.pool = pool;
+        computeNullable();
+        computeFirst();
+        computeFollow();
+        affected = nonterminals;
+    }
+
+    /* FirstFollow()
+        @previous   the analysis of an earlier version of the grammar
+        @grammar    the new version, without EBNF constructs
+        @pool       pool to solve independent components on, or null to
+                    solve everything on this thread
+
+        Update an analysis for a new version of its grammar, computing only
+        the sets the changes can affect. The changes are found by comparing
+        the productions of every rule in the two versions.
+    */
+    public FirstFollow(FirstFollow previous, Grammar grammar,
+                       ForkJoinPool pool) {
+        this(previous, grammar, null, null, pool);
+    }
+
+    /* FirstFollow()
+        @previous   the analysis of an earlier version of the grammar
+        @grammar    the new version, without EBNF constructs
+        @removed    the productions of the earlier version that the new one
+                    doesn't have
+        @added      the productions of the new version that the earlier one
+                    didn't have
+        @pool       pool to solve independent components on, or null to
+                    solve everything on this thread
+
+        Update an analysis for a new version of its grammar, computing only
+        the sets the changes can affect. Every production that is in
+        neither array must be in both versions, as it is for the ones
+        IncrementalParser reports. Null arrays make it compare the versions
+        instead.
+    */
+    public FirstFollow(FirstFollow previous, Grammar grammar, int[] removed,
+                       int[] added, ForkJoinPool pool) {
+        if (!grammar.isBnf())
+            throw new IllegalArgumentException("grammar has EBNF constructs");
+        this.grammar = grammar;
+        nonterminals = grammar.symbols().nonterminalCount();
+        words = Bits.words(grammar.symbols().terminalCount());
+        nullable = new boolean[nonterminals];
+        first = new long[nonterminals*words];
+        follow = new long[nonterminals*words];
+        this.pool = pool;
+        Update update = new Update(previous);
+        update.run(removed == null || added == null
+                   ? update.changedRules()
+                   : update.changedBy(removed, added));
+    }
+
+    public Grammar grammar() {
+        return grammar;
+    }
+
+    /* affectedCount()
+        @return     number of nonterminals whose sets were computed instead of
+                    carried over from a previous analysis
+    */
+    public int affectedCount() {
+        return affected;
+    }
+
+    /* words()
+        @return     number of longs in each set
+    */
+    public int words() {
+        return words;
+    }
+
+    public boolean nullable(int nt) {
+        return nullable[nt];
+    }
+
+    /* first()
+        @nt         a nonterminal
+        @return     a copy of its FIRST set
+    */
+    public long[] first(int nt) {
+        return Arrays.copyOfRange(first, nt*words, (nt+1)*words);
+    }
+
+    /* follow()
+        @nt         a nonterminal
+        @return     a copy of its FOLLOW set
+    */
+    public long[] follow(int nt) {
+        return Arrays.copyOfRange(follow, nt*words, (nt+1)*words);
+    }
+
+    public boolean inFirst(int nt, int t) {
+        return Bits.get(first, nt*words, t);
+    }
+
+    public boolean inFollow(int nt, int t) {
+        return Bits.get(follow, nt*words, t);
+    }
+
+    /* firstOf()
+        @p          a production
+        @from       position in its right-hand side
+        @set        set to add FIRST of the right-hand side's suffix to
+        @offset     offset of that set
+        @return     whether the suffix derives the empty string
+    */
+    public boolean firstOf(int p, int from, long[] set, int offset) {
+        int length = grammar.rhsLength(p);
+        for (int i = from; i < length; i++) {
+            int symbol = grammar.rhs(p, i);
+            if (SymbolTable.isTerminal(symbol)) {
+                Bits.set(set, offset, SymbolTable.terminalOf(symbol));
+                return false;
+            }
+            Bits.or(set, offset, first, symbol*words, words);
+            if (!nullable[symbol])
+                return false;
+        }
+        return true;
+    }
+
+    /* computeNullable()
+
+        Count the symbols of every production that aren't known to be
+        nullable yet. A nonterminal becomes nullable as soon as one of its
+        productions' counts drops to 0, and only the productions it occurs in
+        need to be updated then.
+    */
+    private void computeNullable() {
+        int productions = grammar.productionCount();
+        int[] remaining = new int[productions];
+        int[] occurrenceStart = new int[nonterminals+1];
+        for (int p = 0; p < productions; p++) {
+            for (int i = 0; i < grammar.rhsLength(p); i++) {
+                int symbol = grammar.rhs(p, i);
+                if (SymbolTable.isTerminal(symbol)) {
+                    // can never become nullable
+                    remaining[p] = -1;
+                    break;
+                }
+                remaining[p]++;
+            }
+            if (remaining[p] > 0)
+                for (int i = 0; i < grammar.rhsLength(p); i++)
+                    occurrenceStart[grammar.rhs(p, i)+1]++;
+        }
+        for (int nt = 0; nt < nonterminals; nt++)
+            occurrenceStart[nt+1] += occurrenceStart[nt];
+        int[] occurrences = new int[occurrenceStart[nonterminals]];
+        int[] next = Arrays.copyOf(occurrenceStart, nonterminals);
+        for (int p = 0; p < productions; p++)
+            if (remaining[p] > 0)
+                for (int i = 0; i < grammar.rhsLength(p); i++)
+                    occurrences[next[grammar.rhs(p, i)]++] = p;
+
+        int[] worklist = new int[nonterminals];
+        int size = 0;
+        for (int p = 0; p < productions; p++) {
+            int lhs = grammar.lhs(p);
+            if (remaining[p] == 0 && !nullable[lhs]) {
+                nullable[lhs] = true;
+                worklist[size++] = lhs;
+            }
+        }
+        while (size > 0) {
+            int nt = worklist[--size];
+            for (int k = occurrenceStart[nt]; k < occurrenceStart[nt+1]; k++) {
+                int p = occurrences[k];
+                int lhs = grammar.lhs(p);
+                if (--remaining[p] == 0 && !nullable[lhs]) {
+                    nullable[lhs] = true;
+                    worklist[size++] = lhs;
+                }
+            }
+        }
+    }
+
+    /* computeFirst()
+
+        FIRST(A) includes FIRST(B) for every B that can start A. Seed the sets
+        with the terminals that can start each nonterminal directly, then
+        solve along the A -> B edges.
+    */
+    private void computeFirst() {
+        Digraph edges = new Digraph(nonterminals);
+        for (int p = 0; p < grammar.productionCount(); p++) {
+            int lhs = grammar.lhs(p);
+            for (int i = 0; i < grammar.rhsLength(p); i++) {
+                int symbol = grammar.rhs(p, i);
+                if (SymbolTable.isTerminal(symbol)) {
+                    Bits.set(first, lhs*words, SymbolTable.terminalOf(symbol));
+                    break;
+                }
+                if (symbol != lhs)
+                    edges.add(lhs, symbol);
+                if (!nullable[symbol])
+                    break;
+            }
+        }
+        edges.solve(first, words, pool);
+    }
+
+    /* computeFollow()
+
+        For every A -> x B y, FOLLOW(B) includes FIRST(y), and if y is
+        nullable, FOLLOW(A) too. Seed the sets with FIRST(y) and $ for the
+        start symbol, then solve along the B -> A edges.
+    */
+    private void computeFollow() {
+        int start = grammar.startSymbol();
+        if (start < 0)
+            return;
+        Bits.set(follow, start*words, SymbolTable.END);
+        Digraph edges = new Digraph(nonterminals);
+        for (int p = 0; p < grammar.productionCount(); p++) {
+            int lhs = grammar.lhs(p);
+            for (int i = 0; i < grammar.rhsLength(p); i++) {
+                int symbol = grammar.rhs(p, i);
+                if (SymbolTable.isTerminal(symbol))
+                    continue;
+                if (firstOf(p, i+1, follow, symbol*words) && symbol != lhs)
+                    edges.add(symbol, lhs);
+            }
+        }
+        edges.solve(follow, words, pool);
+    }
+
+    /* indexOccurrences()
+
+        Find the productions every nonterminal occurs in, unless that was
+        done before. An analysis is the new version for one update and can
+        be the old one for the next, which then doesn't do it again.
+    */
+    private synchronized void indexOccurrences() {
+        if (occurrences != null)
+            return;
+        int[] start = new int[nonterminals+1];
+        for (int p = 0; p < grammar.productionCount(); p++)
+            for (int i = 0; i < grammar.rhsLength(p); i++)
+                if (!SymbolTable.isTerminal(grammar.rhs(p, i)))
+                    start[grammar.rhs(p, i)+1]++;
+        for (int nt = 0; nt < nonterminals; nt++)
+            start[nt+1] += start[nt];
+        int[] found = new int[start[nonterminals]];
+        int[] next = Arrays.copyOf(start, nonterminals);
+        for (int p = 0; p < grammar.productionCount(); p++)
+            for (int i = 0; i < grammar.rhsLength(p); i++)
+                if (!SymbolTable.isTerminal(grammar.rhs(p, i)))
+                    found[next[grammar.rhs(p, i)]++] = p;
+        occurrenceStart = start;
+        occurrences = found;
+    }
+
+    /* Update
+
+        Carries an analysis over to a new version of its grammar.
+    */
+    private final class Update {
+        // stands for an old symbol the new grammar doesn't have; it can't be
+        // a nonterminal, and no terminal has so high an ID
+        private static final int GONE = Integer.MIN_VALUE;
+
+        private final FirstFollow previous;
+        private final Grammar old;
+        // old ID of every nonterminal, or -1 if it is new
+        private final int[] oldOf;
+        // new ID of every old nonterminal, or -1 if it is gone
+        private final int[] newOf;
+        // new ID of every old terminal, or -1 if it is gone
+        private final int[] terminalOf;
+        // whether every old terminal kept its ID, as after most edits
+        private final boolean sameTerminals;
+        // the old grammar's occurrences, see indexOccurrences()
+        private final int[] oldOccurrenceStart;
+        private final int[] oldOccurrences;
+
+        Update(FirstFollow previous) {
+            this.previous = previous;
+            old = previous.grammar;
+            newOf = match(old.symbols(), grammar.symbols());
+            oldOf = new int[nonterminals];
+            Arrays.fill(oldOf, -1);
+            for (int nt = 0; nt < newOf.length; nt++)
+                if (newOf[nt] >= 0)
+                    oldOf[newOf[nt]] = nt;
+            SymbolTable symbols = old.symbols();
+            terminalOf = new int[symbols.terminalCount()];
+            boolean same = true;
+            for (int t = 1; t < terminalOf.length; t++) {
+                terminalOf[t] = grammar.symbols().findTerminal(
+                    symbols.terminalText(t));
+                same &= terminalOf[t] == t;
+            }
+            sameTerminals = same;
+            indexOccurrences();
+            previous.indexOccurrences();
+            oldOccurrenceStart = previous.occurrenceStart;
+            oldOccurrences = previous.occurrences;
+        }
+
+        /* run()
+            @changed    the new and changed rules
+        */
+        void run(boolean[] changed) {
+            // nullable and FIRST
+            boolean[] deep = new boolean[nonterminals];
+            int[] worklist = new int[nonterminals];
+            int size = 0;
+            for (int nt = 0; nt < nonterminals; nt++)
+                if (changed[nt]) {
+                    deep[nt] = true;
+                    worklist[size++] = nt;
+                }
+            // a rule depends on the nonterminals its productions can start
+            // with; the ones before an occurrence that are settled have
+            // their old nullable, and if one of them becomes deep later,
+            // its own occurrence is looked at then
+            while (size > 0) {
+                int nt = worklist[--size];
+                for (int k = occurrenceStart[nt]; k < occurrenceStart[nt+1];
+                     k++) {
+                    int p = occurrences[k];
+                    int lhs = grammar.lhs(p);
+                    if (deep[lhs] || !reachable(p, nt, deep))
+                        continue;
+                    deep[lhs] = true;
+                    worklist[size++] = lhs;
+                }
+            }
+            for (int nt = 0; nt < nonterminals; nt++) {
+                if (deep[nt])
+                    continue;
+                nullable[nt] = previous.nullable[oldOf[nt]];
+                carry(previous.first, oldOf[nt], first, nt);
+            }
+            updateNullable(deep);
+            updateFirst(deep);
+
+            boolean[] context = followContext(changed, deep);
+            for (int nt = 0; nt < nonterminals; nt++)
+                if (!context[nt])
+                    carry(previous.follow, oldOf[nt], follow, nt);
+            updateFollow(context);
+
+            affected = 0;
+            for (int nt = 0; nt < nonterminals; nt++)
+                if (deep[nt] || context[nt])
+                    affected++;
+        }
+
+        /* match()
+            @from       symbols of the old grammar
+            @to         symbols of the new one
+            @return     new ID of every old nonterminal, or -1 if there is
+                        none
+
+            Most edits leave the numbering alone, so a nonterminal is first
+            looked for under its old ID. No two are given the same new ID;
+            where a name isn't unique, a wrong match only makes the rules
+            look changed.
+        */
+        private static int[] match(SymbolTable from, SymbolTable to) {
+            int[] map = new int[from.nonterminalCount()];
+            boolean[] taken = new boolean[to.nonterminalCount()];
+            for (int nt = 0; nt < map.length; nt++) {
+                map[nt] = -1;
+                if (nt < taken.length &&
+                    from.nonterminalName(nt).equals(to.nonterminalName(nt))) {
+                    map[nt] = nt;
+                    taken[nt] = true;
+                }
+            }
+            for (int nt = 0; nt < map.length; nt++) {
+                if (map[nt] >= 0)
+                    continue;
+                int id = to.findNonterminal(from.nonterminalName(nt));
+                if (id >= 0 && !taken[id]) {
+                    map[nt] = id;
+                    taken[id] = true;
+                }
+            }
+            return map;
+        }
+
+        /* changedRules()
+            @return     which nonterminals are new or have productions that
+                        differ from their old ones
+        */
+        private boolean[] changedRules() {
+            boolean[] changed = new boolean[nonterminals];
+            for (int nt = 0; nt < nonterminals; nt++) {
+                if (oldOf[nt] < 0) {
+                    changed[nt] = true;
+                    continue;
+                }
+                int[] now = grammar.productionsOf(nt);
+                int[] before = old.productionsOf(oldOf[nt]);
+                if (now.length != before.length) {
+                    changed[nt] = true;
+                    continue;
+                }
+                for (int k = 0; k < now.length && !changed[nt]; k++)
+                    changed[nt] = !sameRhs(before[k], now[k]);
+            }
+            return changed;
+        }
+
+        /* changedBy()
+            @removed    productions of the old grammar
+            @added      productions of the new one
+            @return     which nonterminals are new or are the left-hand side
+                        of a removed or added production
+        */
+        private boolean[] changedBy(int[] removed, int[] added) {
+            boolean[] changed = new boolean[nonterminals];
+            for (int nt = 0; nt < nonterminals; nt++)
+                changed[nt] = oldOf[nt] < 0;
+            for (int p : removed)
+                if (newOf[old.lhs(p)] >= 0)
+                    changed[newOf[old.lhs(p)]] = true;
+            for (int p : added)
+                changed[grammar.lhs(p)] = true;
+            return changed;
+        }
+
+        /* reachable()
+            @return     whether a nonterminal occurs in a production after
+                        nothing but deep or nullable nonterminals
+        */
+        private boolean reachable(int p, int nt, boolean[] deep) {
+            for (int i = 0; i < grammar.rhsLength(p); i++) {
+                int symbol = grammar.rhs(p, i);
+                if (symbol == nt)
+                    return true;
+                if (SymbolTable.isTerminal(symbol) ||
+                    !deep[symbol] && !previous.nullable[oldOf[symbol]])
+                    return false;
+            }
+            return false;
+        }
+
+        private boolean sameRhs(int before, int now) {
+            int length = grammar.rhsLength(now);
+            if (old.rhsLength(before) != length)
+                return false;
+            for (int i = 0; i < length; i++)
+                if (translate(old.rhs(before, i)) != grammar.rhs(now, i))
+                    return false;
+            return true;
+        }
+
+        /* translate()
+            @symbol     a symbol of the old grammar
+            @return     the same symbol in the new one, or GONE if there is
+                        none
+        */
+        private int translate(int symbol) {
+            if (SymbolTable.isTerminal(symbol)) {
+                int t = terminalOf[SymbolTable.terminalOf(symbol)];
+                return t < 0 ? GONE : SymbolTable.encodeTerminal(t);
+            }
+            return newOf[symbol] < 0 ? GONE : newOf[symbol];
+        }
+
+        /* carry()
+
+            Copy an old set over to the new terminal IDs. A nonterminal that
+            is new starts out empty.
+        */
+        private void carry(long[] from, int oldNt, long[] to, int nt) {
+            if (oldNt < 0)
+                return;
+            int oldWords = previous.words;
+            if (sameTerminals) {
+                // there can only be more words now
+                System.arraycopy(from, oldNt*oldWords, to, nt*words,
+                                 oldWords);
+                return;
+            }
+            for (int t = Bits.next(from, oldNt*oldWords, oldWords, 0); t >= 0;
+                 t = Bits.next(from, oldNt*oldWords, oldWords, t+1))
+                if (terminalOf[t] >= 0)
+                    Bits.set(to, nt*words, terminalOf[t]);
+        }
+
+        /* updateNullable()
+            @deep       the nonterminals to work out again
+
+            Like computeNullable(), but only for the productions of deep
+            nonterminals, with the other nonterminals already settled.
+        */
+        private void updateNullable(boolean[] deep) {
+            int[] remaining = new int[grammar.productionCount()];
+            int[] worklist = new int[nonterminals];
+            int size = 0;
+            for (int nt = 0; nt < nonterminals; nt++) {
+                if (!deep[nt])
+                    continue;
+                for (int p : grammar.productionsOf(nt)) {
+                    for (int i = 0; i < grammar.rhsLength(p); i++) {
+                        int symbol = grammar.rhs(p, i);
+                        if (SymbolTable.isTerminal(symbol) ||
+                            !deep[symbol] && !nullable[symbol]) {
+                            remaining[p] = -1;
+                            break;
+                        }
+                        if (deep[symbol])
+                            remaining[p]++;
+                    }
+                    if (remaining[p] == 0 && !nullable[nt]) {
+                        nullable[nt] = true;
+                        worklist[size++] = nt;
+                    }
+                }
+            }
+            while (size > 0) {
+                int nt = worklist[--size];
+                for (int k = occurrenceStart[nt]; k < occurrenceStart[nt+1];
+                     k++) {
+                    int p = occurrences[k];
+                    int lhs = grammar.lhs(p);
+                    if (!deep[lhs] || remaining[p] <= 0)
+                        continue;
+                    if (--remaining[p] == 0 && !nullable[lhs]) {
+                        nullable[lhs] = true;
+                        worklist[size++] = lhs;
+                    }
+                }
+            }
+        }
+
+        /* updateFirst()
+            @deep       the nonterminals to work out again
+
+            Like computeFirst(), but on the graph between deep nonterminals
+            only. Edges to the others are folded into the starting sets.
+        */
+        private void updateFirst(boolean[] deep) {
+            int[] index = new int[nonterminals];
+            int[] members = dense(deep, index);
+            long[] sets = new long[members.length*words];
+            Digraph edges = new Digraph(members.length);
+            for (int k = 0; k < members.length; k++) {
+                int lhs = members[k];
+                for (int p : grammar.productionsOf(lhs)) {
+                    for (int i = 0; i < grammar.rhsLength(p); i++) {
+                        int symbol = grammar.rhs(p, i);
+                        if (SymbolTable.isTerminal(symbol)) {
+                            Bits.set(sets, k*words,
+                                     SymbolTable.terminalOf(symbol));
+                            break;
+                        }
+                        if (!deep[symbol])
+                            Bits.or(sets, k*words, first, symbol*words, words);
+                        else if (symbol != lhs)
+                            edges.add(k, index[symbol]);
+                        if (!nullable[symbol])
+                            break;
+                    }
+                }
+            }
+            edges.solve(sets, words, pool);
+            for (int k = 0; k < members.length; k++)
+                System.arraycopy(sets, k*words, first, members[k]*words,
+                                 words);
+        }
+
+        /* followContext()
+            @changed    the new and changed rules
+            @deep       the nonterminals whose FIRST set was worked out again
+            @return     the nonterminals whose FOLLOW set can be different
+
+            A FOLLOW set is the terminals that can come right after the
+            nonterminal, plus the FOLLOW sets of the rules it can end. Where
+            neither changed and none of those sets did, it is the same as
+            before. The sets that did change are found by comparing the
+            two for every nonterminal an edit could have touched, and from
+            those, whatever can end their rules, and so on.
+        */
+        private boolean[] followContext(boolean[] changed, boolean[] deep) {
+            boolean[] candidates = followCandidates(changed, deep);
+            boolean[] context = new boolean[nonterminals];
+            int[] worklist = new int[nonterminals];
+            int[] size = {0};
+            for (int nt = 0; nt < nonterminals; nt++)
+                if (candidates[nt] && !sameFollowRule(nt))
+                    mark(nt, context, worklist, size);
+            while (size[0] > 0) {
+                int lhs = worklist[--size[0]];
+                for (int p : grammar.productionsOf(lhs)) {
+                    for (int i = grammar.rhsLength(p)-1; i >= 0; i--) {
+                        int symbol = grammar.rhs(p, i);
+                        if (SymbolTable.isTerminal(symbol))
+                            break;
+                        mark(symbol, context, worklist, size);
+                        if (!nullable[symbol])
+                            break;
+                    }
+                }
+            }
+            return context;
+        }
+
+        /* followCandidates()
+            @changed    the new and changed rules
+            @deep       the nonterminals whose FIRST set was worked out again
+            @return     the nonterminals whose FOLLOW set might be made of
+                        something else now
+        */
+        private boolean[] followCandidates(boolean[] changed,
+                                           boolean[] deep) {
+            boolean[] candidates = new boolean[nonterminals];
+            int[] worklist = new int[nonterminals];
+            int[] size = {0};
+            int start = grammar.startSymbol();
+            int oldStart = old.startSymbol();
+            int wasStart = oldStart < 0 ? -1 : newOf[oldStart];
+            if (start != wasStart) {
+                mark(start, candidates, worklist, size);
+                mark(wasStart, candidates, worklist, size);
+            }
+            // everything in the old and new productions of changed rules
+            for (int nt = 0; nt < nonterminals; nt++) {
+                if (!changed[nt])
+                    continue;
+                for (int p : grammar.productionsOf(nt))
+                    for (int i = 0; i < grammar.rhsLength(p); i++)
+                        mark(grammar.rhs(p, i), candidates, worklist, size);
+            }
+            for (int nt = 0; nt < newOf.length; nt++) {
+                if (newOf[nt] >= 0 && !changed[newOf[nt]])
+                    continue;
+                for (int p : old.productionsOf(nt))
+                    for (int i = 0; i < old.rhsLength(p); i++)
+                        mark(translate(old.rhs(p, i)), candidates, worklist,
+                             size);
+            }
+            // and whatever a deep nonterminal can come right after
+            for (int nt = 0; nt < nonterminals; nt++) {
+                if (!deep[nt])
+                    continue;
+                for (int k = occurrenceStart[nt]; k < occurrenceStart[nt+1];
+                     k++) {
+                    int p = occurrences[k];
+                    for (int i = 0; i < grammar.rhsLength(p); i++) {
+                        if (grammar.rhs(p, i) != nt)
+                            continue;
+                        for (int j = i-1; j >= 0; j--) {
+                            int symbol = grammar.rhs(p, j);
+                            if (SymbolTable.isTerminal(symbol))
+                                break;
+                            mark(symbol, candidates, worklist, size);
+                            if (!nullable[symbol])
+                                break;
+                        }
+                    }
+                }
+            }
+            return candidates;
+        }
+
+        /* sameFollowRule()
+            @return     whether a nonterminal's FOLLOW set is made of the
+                        same terminals and the FOLLOW sets of the same rules
+                        as before
+        */
+        private boolean sameFollowRule(int nt) {
+            int was = oldOf[nt];
+            if (was < 0)
+                return false;
+            long[] now = new long[words];
+            if (nt == grammar.startSymbol())
+                Bits.set(now, 0, SymbolTable.END);
+            int[] rules = new int[occurrenceStart[nt+1]-occurrenceStart[nt]];
+            int count = 0;
+            for (int k = occurrenceStart[nt]; k < occurrenceStart[nt+1];
+                 k++) {
+                int p = occurrences[k];
+                if (k > occurrenceStart[nt] && occurrences[k-1] == p)
+                    continue;
+                for (int i = 0; i < grammar.rhsLength(p); i++)
+                    if (grammar.rhs(p, i) == nt &&
+                        firstOf(p, i+1, now, 0) && grammar.lhs(p) != nt)
+                        rules[count++] = grammar.lhs(p);
+            }
+            long[] oldSet = new long[previous.words];
+            if (was == old.startSymbol())
+                Bits.set(oldSet, 0, SymbolTable.END);
+            int[] oldRules =
+                new int[oldOccurrenceStart[was+1]-oldOccurrenceStart[was]];
+            int oldCount = 0;
+            for (int k = oldOccurrenceStart[was]; k < oldOccurrenceStart[was+1];
+                 k++) {
+                int p = oldOccurrences[k];
+                if (k > oldOccurrenceStart[was] && oldOccurrences[k-1] == p)
+                    continue;
+                for (int i = 0; i < old.rhsLength(p); i++)
+                    if (old.rhs(p, i) == was &&
+                        previous.firstOf(p, i+1, oldSet, 0) &&
+                        old.lhs(p) != was)
+                        oldRules[oldCount++] = newOf[old.lhs(p)];
+            }
+            long[] before = new long[words];
+            carry(oldSet, 0, before, 0);
+            return Arrays.equals(now, before) &&
+                   Arrays.equals(distinct(rules, count),
+                                 distinct(oldRules, oldCount));
+        }
+
+        private static int[] distinct(int[] values, int count) {
+            int[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return Arrays.stream(sorted).distinct().toArray();
+        }
+
+        /* mark()
+
+            Add a symbol to a worklist of nonterminals, unless it is a
+            terminal, gone or already there.
+        */
+        private static void mark(int symbol, boolean[] marked, int[] worklist,
+                                 int[] size) {
+            if (symbol < 0 || symbol >= marked.length || marked[symbol])
+                return;
+            marked[symbol] = true;
+            worklist[size[0]++] = symbol;
+        }
+
+        /* updateFollow()
+            @context    the nonterminals to work out again
+
+            Like computeFollow(), but on the graph between context
+            nonterminals only. Edges to the others are folded into the
+            starting sets.
+        */
+        private void updateFollow(boolean[] context) {
+            int[] index = new int[nonterminals];
+            int[] members = dense(context, index);
+            long[] sets = new long[members.length*words];
+            Digraph edges = new Digraph(members.length);
+            int start = grammar.startSymbol();
+            if (start >= 0 && context[start])
+                Bits.set(sets, index[start]*words, SymbolTable.END);
+            for (int k = 0; k < members.length; k++) {
+                int symbol = members[k];
+                int seen = -1;
+                for (int o = occurrenceStart[symbol];
+                     o < occurrenceStart[symbol+1]; o++) {
+                    int p = occurrences[o];
+                    // a production with several occurrences is listed
+                    // once for each, in a row
+                    if (p == seen)
+                        continue;
+                    seen = p;
+                    int lhs = grammar.lhs(p);
+                    for (int i = 0; i < grammar.rhsLength(p); i++) {
+                        if (grammar.rhs(p, i) != symbol ||
+                            !firstOf(p, i+1, sets, k*words) || lhs == symbol)
+                            continue;
+                        if (context[lhs])
+                            edges.add(k, index[lhs]);
+                        else
+                            Bits.or(sets, k*words, follow, lhs*words, words);
+                    }
+                }
+            }
+            edges.solve(sets, words, pool);
+            for (int k = 0; k < members.length; k++)
+                System.arraycopy(sets, k*words, follow, members[k]*words,
+                                 words);
+        }
+
+        /* dense()
+            @marked     which nonterminals to number
+            @index      filled in with the number of every marked one
+            @return     the marked nonterminals in order
+        */
+        private int[] dense(boolean[] marked, int[] index) {
+            int count = 0;
+            for (int nt = 0; nt < nonterminals; nt++)
+                if (marked[nt])
+                    index[nt] = count++;
+            int[] members = new int[count];
+            for (int nt = 0; nt < nonterminals; nt++)
+                if (marked[nt])
+                    members[index[nt]] = nt;
+            return members;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/** Grammar.java
+
+In-memory representation of a parsed grammar, built by the Parser for the
+analyses to work on.
+
+Every alternative of a rule is a production of its own, and every EBNF group,
+option and repetition becomes an anonymous nonterminal whose productions are
+the alternatives inside it. A right-hand side is an array of symbols as
+encoded by the SymbolTable; the empty string "" is a production with an empty
+right-hand side. Productions remember where they start in the source, so
+problems found by an analysis can be reported at the right place.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.Arrays;
+
+public final class Grammar {
+    private final SymbolTable symbols;
+    private final TkType mode;
+
+    // productions, with all right-hand sides packed into one array
+    private int count;
+    private int[] lhs;
+    private int[] rhsStart;
+    private int[] rhs;
+    private int[] startPos;
+    private int[] lines;
+    private int[] columns;
+
+    // per nonterminal; nonterminals beyond the arrays' ends are undefined rules
+    private NodeKind[] kinds;
+    private int[] definedAt;
+    private int[] definedLine;
+    private int[] definedColumn;
+
+    // productions grouped by their left-hand side, built on demand
+    private int[] byLhsStart;
+    private int[] byLhs;
+
+    /* Grammar()
+        @mode       TkType.BNF_MODE or TkType.EBNF_MODE
+
+        Construct a grammar without any symbols or productions.
+    */
+    public Grammar(TkType mode) {
+        this.symbols = new SymbolTable();
+        this.mode = mode;
+        count = 0;
+        lhs = new int[16];
+        rhsStart = new int[17];
+        rhs = new int[64];
+        startPos = new int[16];
+        lines = new int[16];
+        columns = new int[16];
+        kinds = new NodeKind[16];
+        definedAt = new int[16];
+        definedLine = new int[16];
+        definedColumn = new int[16];
+        byLhsStart = null;
+        byLhs = null;
+    }
+
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    public TkType mode() {
+        return mode;
+    }
+
+    /* define()
+        @nt         a named nonterminal
+        @pos        index of the first char of the definition in the source
+        @line       line of the definition, counting from 0
+        @column     index of its first char in that line
+
+        Record that a rule has a definition. Only the first one is remembered,
+        since a rule may be continued by later definitions.
+    */
+    public void define(int nt, int pos, int line, int column) {
+        ensureNonterminal(nt);
+        if (kinds[nt] == null) {
+            kinds[nt] = NodeKind.RULE;
+            definedAt[nt] = pos;
+            definedLine[nt] = line;
+            definedColumn[nt] = column;
+        }
+    }
+
+    /* addNode()
+        @kind       what EBNF construct the nonterminal stands for
+        @name       a name to show for the nonterminal
+        @pos        index of the construct's first char in the source
+        @line       line of the construct, counting from 0
+        @column     index of its first char in that line
+        @return     the new nonterminal
+
+        Add an anonymous nonterminal for an EBNF construct. Its productions are
+        added separately, like those of any other nonterminal.
+    */
+    public int addNode(NodeKind kind, String name, int pos, int line,
+                       int column) {
+        int nt = symbols.anonymous(name);
+        ensureNonterminal(nt);
+        kinds[nt] = kind;
+        definedAt[nt] = pos;
+        definedLine[nt] = line;
+        definedColumn[nt] = column;
+        return nt;
+    }
+
+    private void ensureNonterminal(int nt) {
+        if (nt < kinds.length)
+            return;
+        int capacity = Math.max(kinds.length*2, nt+1);
+        kinds = Arrays.copyOf(kinds, capacity);
+        definedAt = Arrays.copyOf(definedAt, capacity);
+        definedLine = Arrays.copyOf(definedLine, capacity);
+        definedColumn = Arrays.copyOf(definedColumn, capacity);
+    }
+
+    /* addProduction()
+        @lhs        the nonterminal on the left-hand side
+        @symbols    the right-hand side, empty for ""
+        @pos        index of the alternative's first char in the source
+        @line       line of the alternative, counting from 0
+        @column     index of its first char in that line
+        @return     the new production's index
+    */
+    public int addProduction(int lhs, int[] symbols, int pos, int line,
+                             int column) {
+        if (count == this.lhs.length) {
+            int capacity = count*2;
+            this.lhs = Arrays.copyOf(this.lhs, capacity);
+            rhsStart = Arrays.copyOf(rhsStart, capacity+1);
+            startPos = Arrays.copyOf(startPos, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+        }
+        int from = rhsStart[count];
+        if (from+symbols.length > rhs.length)
+            rhs = Arrays.copyOf(rhs, Math.max(rhs.length*2,
+                                              from+symbols.length));
+        System.arraycopy(symbols, 0, rhs, from, symbols.length);
+        this.lhs[count] = lhs;
+        rhsStart[count+1] = from+symbols.length;
+        startPos[count] = pos;
+        lines[count] = line;
+        columns[count] = column;
+        byLhsStart = null;
+        return count++;
+    }
+
+    public int productionCount() {
+        return count;
+    }
+
+    public int lhs(int p) {
+        return lhs[p];
+    }
+
+    public int rhsLength(int p) {
+        return rhsStart[p+1]-rhsStart[p];
+    }
+
+    /* rhs()
+        @p          a production
+        @i          position in its right-hand side
+        @return     the i-th symbol of the right-hand side
+    */
+    public int rhs(int p, int i) {
+        return rhs[rhsStart[p]+i];
+    }
+
+    /* rhs()
+        @p          a production
+        @return     a copy of its right-hand side
+    */
+    public int[] rhs(int p) {
+        return Arrays.copyOfRange(rhs, rhsStart[p], rhsStart[p+1]);
+    }
+
+    public int startPos(int p) {
+        return startPos[p];
+    }
+
+    public int line(int p) {
+        return lines[p];
+    }
+
+    public int column(int p) {
+        return columns[p];
+    }
+
+    /* startSymbol()
+        @return     the rule defined first, or -1 if there is none
+
+        The productions of a rule's EBNF constructs are added before the
+        rule's own, so the first production may belong to one of them.
+    */
+    public int startSymbol() {
+        for (int p = 0; p < count; p++)
+            if (kind(lhs[p]) == NodeKind.RULE)
+                return lhs[p];
+        return -1;
+    }
+
+    /* kind()
+        @nt         a nonterminal
+        @return     what the nonterminal stands for
+    */
+    public NodeKind kind(int nt) {
+        if (nt >= kinds.length || kinds[nt] == null)
+            return NodeKind.RULE;
+        return kinds[nt];
+    }
+
+    /* isDefined()
+        @nt         a nonterminal
+        @return     whether the grammar defines the nonterminal anywhere
+    */
+    public boolean isDefined(int nt) {
+        return nt < kinds.length && kinds[nt] != null;
+    }
+
+    public int definedAt(int nt) {
+        return definedAt[nt];
+    }
+
+    public int definedLine(int nt) {
+        return definedLine[nt];
+    }
+
+    public int definedColumn(int nt) {
+        return definedColumn[nt];
+    }
+
+    /* isBnf()
+        @return     whether the grammar is free of EBNF constructs
+
+        Classic LL and LR analyses only work on grammars for which this is
+        true.
+    */
+    public boolean isBnf() {
+        for (int nt = 0; nt < symbols.nonterminalCount(); nt++)
+            if (kind(nt) != NodeKind.RULE)
+                return false;
+        return true;
+    }
+
+    /* productionsOf()
+        @nt         a nonterminal
+        @return     its productions, in the order they were added
+    */
+    public int[] productionsOf(int nt) {
+        if (byLhsStart == null)
+            groupByLhs();
+        if (nt+1 >= byLhsStart.length)
+            return new int[0];
+        return Arrays.copyOfRange(byLhs, byLhsStart[nt], byLhsStart[nt+1]);
+    }
+
+    /* groupByLhs()
+
+        Sort the productions by left-hand side with a counting sort, which
+        keeps the productions of one nonterminal in order.
+    */
+    private void groupByLhs() {
+        int n = symbols.nonterminalCount();
+        byLhsStart = new int[n+1];
+        for (int p = 0; p < count; p++)
+            byLhsStart[lhs[p]+1]++;
+        for (int nt = 0; nt < n; nt++)
+            byLhsStart[nt+1] += byLhsStart[nt];
+        byLhs = new int[count];
+        int[] next = Arrays.copyOf(byLhsStart, n);
+        for (int p = 0; p < count; p++)
+            byLhs[next[lhs[p]]++] = p;
+    }
+
+    /* production()
+        @p          a production
+        @return     the production written out the way the grammar would
+    */
+    public String production(int p) {
+        StringBuilder s = new StringBuilder(symbols.name(lhs[p]));
+        s.append(mode == TkType.BNF_MODE ? " ::=" : " =");
+        if (rhsLength(p) == 0)
+            s.append(" \"\"");
+        for (int i = rhsStart[p]; i < rhsStart[p+1]; i++)
+            s.append(' ').append(symbols.name(rhs[i]));
+        return s.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int p = 0; p < count; p++)
+            s.append(production(p)).append('\n');
+        return s.toString();
+    }
+}
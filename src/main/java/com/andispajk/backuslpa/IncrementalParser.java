@@ -0,0 +1,558 @@
+/** IncrementalParser.java
+
+Keep a grammar parsed while it is being edited, re-lexing and re-parsing only
+the productions an edit touches.
+
+A production starts on a line of its own and continues only on lines that
+start with |, so the source splits into blocks: the first holds the
+directive, and every other one starts at a line whose first token isn't |,
+running up to the next such line. Blank and comment lines belong to the block
+before them. Blocks are lexed and parsed on their own, which gives the same
+tokens and productions as a full parse, since the lexer is always back in its
+start state at the beginning of a line that a token starts.
+
+An edit is re-lexed from the start of the block it falls in, or of the one
+before if it touches the block's first token, which could become a |. The
+lexer decides where the new blocks begin, so a (* *) comment that spans lines
+keeps them in one block, and opening or closing one moves the boundaries
+after it. Lexing stops at the first boundary past the edit where an old block
+began, since from there on everything is as it was. The blocks in between
+replace the old ones and are parsed again; the ones after keep their tokens
+and productions and only move. Moving them is put off like the gap of a gap
+buffer: they all share one pending shift, so an edit only settles the blocks
+between it and the edit before.
+
+The text is kept as bytes, like the Lexer's SourceText, with room to grow,
+so an edit moves the bytes after it instead of copying the whole text.
+
+The token stream and grammar are put together from the blocks when they are
+asked for, which copies the blocks' results but doesn't lex or parse anything.
+Syntax errors are found per block, much as a full parse finds them by
+skipping to the next production after each one, except that there is no
+limit on how many are reported.
+
+Every block remembers where its productions went in the last grammar put
+together. When the block is parsed again or replaced, they go on a list of
+removed productions, and the productions of blocks put in for the first time
+are the added ones. That is the change FirstFollow needs to update an
+analysis of one grammar for the next without comparing them.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class IncrementalParser {
+    private static final TkType[] TYPES = TkType.values();
+
+    private final Lexer lexer;
+    // the text is the first length bytes
+    private byte[] bytes;
+    private int length;
+    private SourceText source;
+    // built on demand, null until then
+    private String text;
+    private int lineCount;
+    private final List<Block> blocks;
+    // blocks from index shifted on are shiftStart chars and shiftLine lines
+    // further on than their own fields say
+    private int shifted;
+    private int shiftStart;
+    private int shiftLine;
+    // null while the first block has no valid directive
+    private TkType mode;
+    private int reparsed;
+    // put together on demand, null until then
+    private Grammar grammar;
+    private TokenStream tokens;
+    // productions of the last grammar put together that blocks parsed
+    // again or replaced had, the first droppedCount
+    private int[] dropped;
+    private int droppedCount;
+    // what changed from the grammar put together before the last one
+    private int[] removed;
+    private int[] added;
+
+    /* IncrementalParser()
+        @text       a grammar
+
+        Parse a grammar in full, ready for edits.
+    */
+    public IncrementalParser(String text) {
+        lexer = new Lexer();
+        // errors are only kept as diagnostics
+        lexer.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        bytes = SourceText.encode(text);
+        length = bytes.length;
+        source = new SourceText(ByteBuffer.wrap(bytes),
+                                StandardCharsets.ISO_8859_1);
+        this.text = null;
+        lineCount = countLines(bytes, 0, length);
+        blocks = new ArrayList<>();
+        shifted = 0;
+        shiftStart = 0;
+        shiftLine = 0;
+        mode = null;
+        dropped = new int[8];
+        droppedCount = 0;
+        removed = new int[0];
+        added = new int[0];
+        relex(0, 0, 0, 0);
+    }
+
+    /* edit()
+        @from           index of the first char to replace
+        @to             index right after the last char to replace
+        @replacement    the text that takes their place
+        @throws         IndexOutOfBoundsException if from and to aren't a
+                        range of the current text
+
+        Replace part of the text and bring the tokens and grammar up to date.
+        Token streams got from tokens() before are no good afterwards.
+    */
+    public void edit(int from, int to, String replacement) {
+        if (from < 0 || from > to || to > length)
+            throw new IndexOutOfBoundsException(String.format(
+                "edit of %d to %d in text of length %d", from, to, length));
+        int first = blockAt(from);
+        if (first > 0 && from <= start(first)+blocks.get(first).firstEnd)
+            first--;
+        byte[] inserted = SourceText.encode(replacement);
+        int lineDelta = countLines(inserted, 0, inserted.length) -
+                        countLines(bytes, from, to);
+        int delta = inserted.length-(to-from);
+        if (length+delta > bytes.length) {
+            byte[] grown = new byte[Math.max(length+delta, bytes.length*2)];
+            System.arraycopy(bytes, 0, grown, 0, from);
+            System.arraycopy(bytes, to, grown, to+delta, length-to);
+            bytes = grown;
+        } else {
+            System.arraycopy(bytes, to, bytes, to+delta, length-to);
+        }
+        System.arraycopy(inserted, 0, bytes, from, inserted.length);
+        length += delta;
+        source = new SourceText(ByteBuffer.wrap(bytes, 0, length),
+                                StandardCharsets.ISO_8859_1);
+        text = null;
+        lineCount += lineDelta;
+        grammar = null;
+        tokens = null;
+        relex(first, to, delta, lineDelta);
+    }
+
+    /* text()
+        @return     the current text, where chars beyond 0xFF have become
+                    DEL (see SourceText.encode())
+    */
+    public String text() {
+        if (text == null)
+            text = source.toString();
+        return text;
+    }
+
+    /* blockCount()
+        @return     number of blocks the text splits into
+    */
+    public int blockCount() {
+        return blocks.size();
+    }
+
+    /* reparsedCount()
+        @return     number of blocks the last edit, or the initial parse,
+                    parsed again
+    */
+    public int reparsedCount() {
+        return reparsed;
+    }
+
+    /* isValid()
+        @return     whether the whole text is a syntactically valid grammar
+    */
+    public boolean isValid() {
+        if (mode == null)
+            return false;
+        for (Block block : blocks)
+            if (!block.valid)
+                return false;
+        return true;
+    }
+
+    /* diagnostics()
+        @return     the syntax errors of every block, in order
+    */
+    public List<Diagnostic> diagnostics() {
+        settle(blocks.size());
+        List<Diagnostic> all = new ArrayList<>();
+        for (Block block : blocks) {
+            int lines = block.line-block.parsedLine;
+            for (Diagnostic diagnostic : block.diagnostics)
+                all.add(new Diagnostic(diagnostic.line()+lines,
+                                       diagnostic.column(),
+                                       diagnostic.message()));
+        }
+        return all;
+    }
+
+    /* tokens()
+        @return     every token of the text, ending with EOF, as a full lex
+                    would give them
+    */
+    public TokenStream tokens() {
+        if (tokens != null)
+            return tokens;
+        settle(blocks.size());
+        tokens = new TokenStream(source);
+        for (Block block : blocks)
+            for (int i = 0; i < block.size; i++)
+                tokens.add(TYPES[block.types[i]],
+                           block.start+block.starts[i],
+                           block.start+block.ends[i],
+                           block.line+block.lines[i], block.columns[i],
+                           null);
+        int lastLine = length;
+        while (lastLine > 0 && bytes[lastLine-1] != '\n')
+            lastLine--;
+        tokens.add(TkType.EOF, length, length, lineCount, length-lastLine,
+                   null);
+        return tokens;
+    }
+
+    /* grammar()
+        @return     the grammar of every block that parsed, or null if there
+                    is no valid directive
+
+        For a valid text, this is the grammar a full parse would build, with
+        the same symbol IDs and productions in the same order.
+    */
+    public Grammar grammar() {
+        if (grammar == null && mode != null) {
+            settle(blocks.size());
+            grammar = new Grammar(mode);
+            removed = Arrays.copyOf(dropped, droppedCount);
+            droppedCount = 0;
+            int[] fresh = new int[8];
+            int count = 0;
+            for (Block block : blocks) {
+                int first = grammar.productionCount();
+                if (block.fragment != null)
+                    splice(block);
+                if (block.firstProduction < 0)
+                    for (int p = first; p < grammar.productionCount(); p++) {
+                        if (count == fresh.length)
+                            fresh = Arrays.copyOf(fresh, count*2);
+                        fresh[count++] = p;
+                    }
+                block.firstProduction = first;
+            }
+            added = Arrays.copyOf(fresh, count);
+        }
+        return grammar;
+    }
+
+    /* removedProductions()
+        @return     the productions of the grammar grammar() returned before
+                    the current one that the current one doesn't have
+
+        Together with addedProductions(), this is what FirstFollow needs to
+        update an analysis of the one grammar for the other. Both are empty
+        until grammar() has been called, and stay the same until it puts
+        together a new grammar.
+    */
+    public int[] removedProductions() {
+        return removed.clone();
+    }
+
+    /* addedProductions()
+        @return     the productions of the current grammar that the one
+                    grammar() returned before it doesn't have, or all of
+                    them for the first one
+    */
+    public int[] addedProductions() {
+        return added.clone();
+    }
+
+    /* splice()
+        @block      a parsed block
+
+        Add a block's productions to the grammar. The block's symbols are
+        interned in the order the block's own parse first saw them, which is
+        the order a full parse would see them in too.
+    */
+    private void splice(Block block) {
+        Grammar fragment = block.fragment;
+        SymbolTable symbols = fragment.symbols();
+        int pos = block.start-block.parsedStart;
+        int lines = block.line-block.parsedLine;
+        int[] terminals = new int[symbols.terminalCount()];
+        for (int t = 1; t < terminals.length; t++)
+            terminals[t] = grammar.symbols().terminal(symbols.terminalText(t));
+        int[] nonterminals = new int[symbols.nonterminalCount()];
+        for (int nt = 0; nt < nonterminals.length; nt++) {
+            if (fragment.kind(nt) == NodeKind.RULE)
+                nonterminals[nt] = grammar.symbols().nonterminal(
+                    symbols.nonterminalName(nt));
+            else
+                nonterminals[nt] = grammar.addNode(
+                    fragment.kind(nt), symbols.nonterminalName(nt),
+                    fragment.definedAt(nt)+pos,
+                    fragment.definedLine(nt)+lines,
+                    fragment.definedColumn(nt));
+        }
+        for (int nt = 0; nt < nonterminals.length; nt++)
+            if (fragment.kind(nt) == NodeKind.RULE && fragment.isDefined(nt))
+                grammar.define(nonterminals[nt], fragment.definedAt(nt)+pos,
+                               fragment.definedLine(nt)+lines,
+                               fragment.definedColumn(nt));
+        for (int p = 0; p < fragment.productionCount(); p++) {
+            int[] rhs = fragment.rhs(p);
+            for (int i = 0; i < rhs.length; i++)
+                rhs[i] = SymbolTable.isTerminal(rhs[i])
+                    ? SymbolTable.encodeTerminal(
+                          terminals[SymbolTable.terminalOf(rhs[i])])
+                    : nonterminals[rhs[i]];
+            grammar.addProduction(nonterminals[fragment.lhs(p)], rhs,
+                                  fragment.startPos(p)+pos,
+                                  fragment.line(p)+lines,
+                                  fragment.column(p));
+        }
+    }
+
+    /* blockAt()
+        @pos        index of a char, or the length of the text
+        @return     the block that holds it
+    */
+    private int blockAt(int pos) {
+        int lo = 0;
+        int hi = blocks.size()-1;
+        while (lo < hi) {
+            int mid = (lo+hi+1) >>> 1;
+            if (start(mid) <= pos)
+                lo = mid;
+            else
+                hi = mid-1;
+        }
+        return lo;
+    }
+
+    /* relex()
+        @first      the first block whose text may have changed
+        @to         index right after the replaced text, before the edit
+        @delta      how much longer the text got
+        @lineDelta  how many more lines it has
+
+        Lex from the start of the first block until the blocks line up with
+        the old ones again, replace the blocks in between and parse them.
+    */
+    private void relex(int first, int to, int delta, int lineDelta) {
+        int start = first < blocks.size() ? start(first) : 0;
+        int line = first < blocks.size() ? line(first) : 0;
+        lexer.readRegion(source, start, length, line);
+        List<Block> made = new ArrayList<>();
+        Block block = new Block(start, line);
+        // the first block runs up to the first token that isn't a newline,
+        // whichever line that is on
+        boolean content = first > 0;
+        boolean afterNewline = false;
+        // where the line after the last newline starts
+        int boundary = start;
+        int boundaryLine = line;
+        int old = first;
+        int resync = blocks.size();
+        while (true) {
+            Token tk = lexer.lex();
+            TkType type = tk.type();
+            if (type == TkType.EOF)
+                break;
+            if (type != TkType.NEWLINE) {
+                if (type != TkType.PIPE && afterNewline && content) {
+                    int was = boundary-delta;
+                    while (old < blocks.size() && start(old) < was)
+                        old++;
+                    if (old > 0 && old < blocks.size() &&
+                        start(old) == was && was >= to) {
+                        resync = old;
+                        break;
+                    }
+                    made.add(block);
+                    block = new Block(boundary, boundaryLine);
+                }
+                if (block.firstEnd < 0)
+                    block.firstEnd = tk.endPos()-block.start;
+                content = true;
+            }
+            block.add(tk);
+            afterNewline = type == TkType.NEWLINE;
+            if (afterNewline) {
+                boundary = tk.endPos();
+                boundaryLine = tk.line()+1;
+            }
+        }
+        made.add(block);
+
+        settle(resync);
+        for (Block gone : blocks.subList(first, resync))
+            drop(gone);
+        shiftStart += delta;
+        shiftLine += lineDelta;
+        blocks.subList(first, resync).clear();
+        blocks.addAll(first, made);
+        shifted = first+made.size();
+
+        TkType before = mode;
+        reparsed = 0;
+        for (int i = first; i < first+made.size(); i++)
+            parse(i);
+        // a different directive changes how every block parses
+        if (mode != before)
+            for (int i = first+made.size(); i < blocks.size(); i++)
+                parse(i);
+    }
+
+    /* parse()
+        @i          index of a block
+
+        Parse a block on its own. The first one gets the directive parsed,
+        which decides the mode of the others.
+    */
+    private void parse(int i) {
+        Block block = blocks.get(i);
+        int end = i+1 < blocks.size() ? start(i+1) : length;
+        reparsed++;
+        drop(block);
+        block.parsedStart = start(i);
+        block.parsedLine = line(i);
+        if (i > 0 && mode == null) {
+            block.fragment = null;
+            block.valid = false;
+            block.diagnostics = List.of();
+            return;
+        }
+        lexer.readRegion(source, block.parsedStart, end, block.parsedLine);
+        Parser parser = new Parser(lexer);
+        block.valid = i == 0 ? parser.parseGrammar()
+                             : parser.parseProductions(mode);
+        block.fragment = parser.grammar();
+        block.diagnostics = List.copyOf(lexer.diagnostics());
+        if (i == 0)
+            mode = block.fragment == null ? null : block.fragment.mode();
+    }
+
+    /* drop()
+        @block      a block about to be parsed again or replaced
+
+        Put the block's productions in the last grammar put together on the
+        list of removed ones.
+    */
+    private void drop(Block block) {
+        if (block.firstProduction < 0)
+            return;
+        int count = block.fragment == null
+            ? 0 : block.fragment.productionCount();
+        if (droppedCount+count > dropped.length)
+            dropped = Arrays.copyOf(dropped,
+                                    Math.max(droppedCount+count,
+                                             dropped.length*2));
+        for (int k = 0; k < count; k++)
+            dropped[droppedCount++] = block.firstProduction+k;
+        block.firstProduction = -1;
+    }
+
+    private int start(int i) {
+        return blocks.get(i).start+(i >= shifted ? shiftStart : 0);
+    }
+
+    private int line(int i) {
+        return blocks.get(i).line+(i >= shifted ? shiftLine : 0);
+    }
+
+    /* settle()
+        @index      index of a block
+
+        Move the pending shift so it starts at index, applying it to or
+        taking it off the blocks in between.
+    */
+    private void settle(int index) {
+        for (int i = shifted; i < index; i++) {
+            blocks.get(i).start += shiftStart;
+            blocks.get(i).line += shiftLine;
+        }
+        for (int i = index; i < shifted; i++) {
+            blocks.get(i).start -= shiftStart;
+            blocks.get(i).line -= shiftLine;
+        }
+        shifted = index;
+    }
+
+    private static int countLines(byte[] b, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++)
+            if (b[i] == '\n')
+                lines++;
+        return lines;
+    }
+
+    /* Block
+
+        A run of lines holding whole productions, with its tokens relative to
+        where it starts and what its own parse made of it.
+    */
+    private static final class Block {
+        private int start;
+        private int line;
+        // end of the first token that isn't a newline, -1 if there is none
+        private int firstEnd;
+        private byte[] types;
+        private int[] starts;
+        private int[] ends;
+        private int[] lines;
+        private int[] columns;
+        private int size;
+        // where the block was when it was parsed, which the positions in
+        // fragment and diagnostics refer to
+        private int parsedStart;
+        private int parsedLine;
+        private Grammar fragment;
+        // where its productions start in the last grammar put together, -1
+        // if they aren't in it
+        private int firstProduction;
+        private boolean valid;
+        private List<Diagnostic> diagnostics;
+
+        Block(int start, int line) {
+            this.start = start;
+            this.line = line;
+            firstEnd = -1;
+            types = new byte[8];
+            starts = new int[8];
+            ends = new int[8];
+            lines = new int[8];
+            columns = new int[8];
+            size = 0;
+            firstProduction = -1;
+            diagnostics = List.of();
+        }
+
+        void add(Token tk) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size*2);
+                starts = Arrays.copyOf(starts, size*2);
+                ends = Arrays.copyOf(ends, size*2);
+                lines = Arrays.copyOf(lines, size*2);
+                columns = Arrays.copyOf(columns, size*2);
+            }
+            types[size] = (byte) tk.type().ordinal();
+            starts[size] = tk.startPos()-start;
+            ends[size] = tk.endPos()-start;
+            lines[size] = tk.line()-line;
+            columns[size] = tk.column();
+            size++;
+        }
+    }
+}
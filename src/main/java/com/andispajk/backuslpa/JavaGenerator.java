@@ -0,0 +1,405 @@
+/** JavaGenerator.java
+
+Write a recognizer for an LL(1) grammar as the source of a standalone Java
+class, so parsers don't have to be written by hand from a grammar that has
+already been checked, and can't fall out of step with it.
+
+Both kinds of recognizer take the input as an array of terminal IDs, which
+the class lists in TERMINALS and looks up with terminal(), and return -1 if
+the input is a sentence of the grammar, else the index of the first token
+that can't be, which is the array's length if the input ends too early:
+
+    table       the parse table and the productions as static int arrays,
+                driven by a loop with a stack of its own
+    descent     a method per nonterminal that switches on the next token,
+                with the parse table compiled into its cases; the Java stack
+                is the parse stack, so very deeply nested input can overflow
+                it
+
+The arrays are packed into string constants, which the class unpacks when it
+is loaded, since array initializers compile into code and a class'
+initializer may hold no more than 64K of it. The packing of int arrays is a
+run-length encoding of one char per int, which suits a parse table, whose
+rows are mostly errors.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import javax.lang.model.SourceVersion;
+
+public final class JavaGenerator {
+    public enum Style {
+        TABLE,
+        DESCENT
+    }
+
+    // longest string constant to write, in chars; each takes up to 3 bytes
+    // of the 64K a class file allows a constant
+    private static final int CHUNK = 8192;
+
+    private final LL1 ll1;
+    private final Grammar grammar;
+    private final SymbolTable symbols;
+    private final int terminals;
+    private final int nonterminals;
+
+    /* JavaGenerator()
+        @ll1        the LL(1) analysis of a grammar without conflicts
+        @throws     IllegalArgumentException if the grammar isn't LL(1), or
+                    is too large to pack into chars
+    */
+    public JavaGenerator(LL1 ll1) {
+        if (!ll1.isLL1())
+            throw new IllegalArgumentException("grammar is not LL(1)");
+        this.ll1 = ll1;
+        grammar = ll1.grammar();
+        symbols = grammar.symbols();
+        terminals = symbols.terminalCount();
+        nonterminals = symbols.nonterminalCount();
+        if (grammar.startSymbol() < 0)
+            throw new IllegalArgumentException("grammar has no productions");
+        // the right-hand sides' offsets are packed too
+        long symbolsInRhs = 0;
+        for (int p = 0; p < grammar.productionCount(); p++)
+            symbolsInRhs += grammar.rhsLength(p);
+        if ((long) terminals+nonterminals >= Character.MAX_VALUE ||
+            grammar.productionCount() >= Character.MAX_VALUE ||
+            symbolsInRhs >= Character.MAX_VALUE)
+            throw new IllegalArgumentException("grammar is too large");
+    }
+
+    /* generate()
+        @style      which kind of recognizer to write
+        @pkg        package of the class, or empty for none
+        @name       name of the class
+        @return     the source of the class
+    */
+    public String generate(Style style, String pkg, String name) {
+        if (!isIdentifier(name))
+            throw new IllegalArgumentException("invalid class name " + name);
+        if (!pkg.isEmpty() && !SourceVersion.isName(pkg))
+            throw new IllegalArgumentException("invalid package " + pkg);
+        StringBuilder s = new StringBuilder();
+        s.append("// Generated by BackusLPA. Don't edit; generate it again ")
+         .append("from the grammar.\n\n");
+        if (!pkg.isEmpty())
+            s.append("package ").append(pkg).append(";\n\n");
+        s.append("public final class ").append(name).append(" {\n");
+        appendSymbols(s);
+        if (style == Style.TABLE)
+            appendTable(s, name);
+        else
+            appendDescent(s, name);
+        return s.append("}\n").toString();
+    }
+
+    /* isIdentifier()
+        @name       a class name
+        @return     whether it is a Java identifier that isn't a keyword
+    */
+    static boolean isIdentifier(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0)))
+            return false;
+        for (int i = 1; i < name.length(); i++)
+            if (!Character.isJavaIdentifierPart(name.charAt(i)))
+                return false;
+        return SourceVersion.isName(name);
+    }
+
+    /* appendSymbols()
+
+        The names are packed too, each ended by a NUL, which none of them
+        can hold, since an array of many names would also be too much code.
+    */
+    private void appendSymbols(StringBuilder s) {
+        String[] names = new String[terminals];
+        for (int t = 0; t < terminals; t++)
+            names[t] = symbols.terminalText(t);
+        s.append("    public static final int END = 0;\n");
+        appendNames(s, "TERMINALS", names);
+        names = new String[nonterminals];
+        for (int nt = 0; nt < nonterminals; nt++)
+            names[nt] = symbols.nonterminalName(nt);
+        appendNames(s, "NONTERMINALS", names);
+        s.append("""
+
+                /**
+                 * Splits chunks of names, each ended by a NUL.
+                 */
+                private static String[] split(int length, String... chunks) {
+                    String[] names = new String[length];
+                    int at = 0;
+                    for (String chunk : chunks)
+                        for (int from = 0; from < chunk.length(); at++) {
+                            int to = chunk.indexOf('\\0', from);
+                            names[at] = chunk.substring(from, to);
+                            from = to+1;
+                        }
+                    return names;
+                }
+
+                /**
+                 * Returns the ID of the terminal with the given text, without
+                 * quotes and escapes, or -1 if there is none.
+                 */
+                public static int terminal(String text) {
+                    for (int t = 1; t < TERMINALS.length; t++)
+                        if (TERMINALS[t].equals(text))
+                            return t;
+                    return -1;
+                }
+
+            """);
+    }
+
+    /* appendTable()
+
+        The parse table is indexed by nonterminal and terminal. On the
+        stack and in the right-hand sides, terminals are their IDs and
+        nonterminals come after them.
+    */
+    private void appendTable(StringBuilder s, String name) {
+        int[] table = new int[nonterminals*terminals];
+        for (int nt = 0; nt < nonterminals; nt++)
+            for (int t = 0; t < terminals; t++)
+                table[nt*terminals+t] = ll1.production(nt, t);
+        int productions = grammar.productionCount();
+        int[] rhsStart = new int[productions+1];
+        for (int p = 0; p < productions; p++)
+            rhsStart[p+1] = rhsStart[p]+grammar.rhsLength(p);
+        int[] rhs = new int[rhsStart[productions]];
+        for (int p = 0; p < productions; p++)
+            for (int i = 0; i < grammar.rhsLength(p); i++)
+                rhs[rhsStart[p]+i] = stackSymbol(grammar.rhs(p, i));
+
+        s.append("    private static final int START = ")
+         .append(terminals+grammar.startSymbol()).append(";\n");
+        appendPacked(s, "TABLE", table);
+        appendPacked(s, "RHS_START", rhsStart);
+        appendPacked(s, "RHS", rhs);
+        s.append("\n    private ").append(name).append("() {}\n\n");
+        s.append("""
+                /**
+                 * Returns -1 if the tokens are a sentence of the grammar, else
+                 * the index of the first one that can't be.
+                 */
+                public static int parse(int[] tokens) {
+                    int count = TERMINALS.length;
+                    int[] stack = new int[64];
+                    int top = 0;
+                    stack[top++] = START;
+                    int at = 0;
+                    while (top > 0) {
+                        int symbol = stack[--top];
+                        int t = at < tokens.length ? tokens[at] : END;
+                        if (t < 0 || t >= count)
+                            return at;
+                        if (symbol < count) {
+                            if (symbol != t)
+                                return at;
+                            at++;
+                            continue;
+                        }
+                        int p = TABLE[(symbol-count)*count+t];
+                        if (p < 0)
+                            return at;
+                        int from = RHS_START[p];
+                        int to = RHS_START[p+1];
+                        if (top+to-from > stack.length)
+                            stack = java.util.Arrays.copyOf(
+                                stack, Math.max(stack.length*2, top+to-from));
+                        for (int i = to-1; i >= from; i--)
+                            stack[top++] = RHS[i];
+                    }
+                    return at < tokens.length ? at : -1;
+                }
+
+                /**
+                 * Unpacks runs of chars, a count then a value plus one, into
+                 * ints.
+                 */
+                private static int[] unpack(int length, String... chunks) {
+                    int[] values = new int[length];
+                    int at = 0;
+                    for (String chunk : chunks)
+                        for (int i = 0; i < chunk.length(); i += 2)
+                            for (int n = chunk.charAt(i); n > 0; n--)
+                                values[at++] = chunk.charAt(i+1)-1;
+                    return values;
+                }
+            """);
+    }
+
+    private int stackSymbol(int symbol) {
+        return SymbolTable.isTerminal(symbol) ? SymbolTable.terminalOf(symbol)
+                                              : terminals+symbol;
+    }
+
+    private static void appendNames(StringBuilder s, String name,
+                                    String[] names) {
+        s.append("    public static final String[] ").append(name)
+         .append(" = split(").append(names.length);
+        StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            chunk.append(names[i]).append('\0');
+            if (chunk.length() >= CHUNK || i == names.length-1) {
+                s.append(",\n        ").append(literal(chunk.toString()));
+                chunk.setLength(0);
+            }
+        }
+        s.append(");\n");
+    }
+
+    /* appendPacked()
+
+        Declare an int array, every value of which is at least -1 and less
+        than 0xFFFF, unpacked from runs of equal values.
+    */
+    private static void appendPacked(StringBuilder s, String name,
+                                     int[] values) {
+        s.append("    private static final int[] ").append(name)
+         .append(" = unpack(").append(values.length);
+        StringBuilder chunk = new StringBuilder();
+        for (int i = 0; i < values.length;) {
+            int run = 1;
+            while (i+run < values.length && values[i+run] == values[i] &&
+                   run < Character.MAX_VALUE)
+                run++;
+            chunk.append((char) run).append((char) (values[i]+1));
+            i += run;
+            if (chunk.length() >= CHUNK || i == values.length) {
+                s.append(",\n        ").append(literal(chunk.toString()));
+                chunk.setLength(0);
+            }
+        }
+        s.append(");\n");
+    }
+
+    /* appendDescent()
+
+        A method per nonterminal, with a case for every production it has
+        in the parse table, listing the terminals it is chosen on.
+    */
+    private void appendDescent(StringBuilder s, String name) {
+        s.append("""
+                private final int[] tokens;
+                private int at;
+
+            """);
+        s.append("    private ").append(name).append("(int[] tokens) {\n")
+         .append("        this.tokens = tokens;\n")
+         .append("        at = 0;\n")
+         .append("    }\n\n");
+        s.append("""
+                /**
+                 * Returns -1 if the tokens are a sentence of the grammar, else
+                 * the index of the first one that can't be.
+                 */
+                public static int parse(int[] tokens) {
+            """);
+        s.append("        ").append(name).append(" parser = new ")
+         .append(name).append("(tokens);\n");
+        s.append("""
+                    try {
+                        parser.n%d();
+                    } catch (SyntaxError e) {
+                        return parser.at;
+                    }
+                    return parser.at < tokens.length ? parser.at : -1;
+                }
+
+                private static final class SyntaxError
+                    extends RuntimeException {
+                    SyntaxError() {
+                        super(null, null, false, false);
+                    }
+                }
+
+                private static final SyntaxError ERROR = new SyntaxError();
+
+                private int next() {
+                    return at < tokens.length ? tokens[at] : END;
+                }
+
+                private void expect(int t) {
+                    if (next() != t)
+                        throw ERROR;
+                    at++;
+                }
+            """.formatted(grammar.startSymbol()));
+        for (int nt = 0; nt < nonterminals; nt++)
+            appendMethod(s, nt);
+    }
+
+    private void appendMethod(StringBuilder s, int nt) {
+        s.append("\n    // ").append(comment(symbols.nonterminalName(nt)))
+         .append('\n');
+        s.append("    private void n").append(nt).append("() {\n");
+        s.append("        switch (next()) {\n");
+        for (int p : grammar.productionsOf(nt)) {
+            StringBuilder labels = new StringBuilder();
+            for (int t = 0; t < terminals; t++) {
+                if (ll1.production(nt, t) != p)
+                    continue;
+                labels.append(labels.length() == 0 ? "" : ", ").append(t);
+            }
+            if (labels.length() == 0)
+                continue;
+            s.append("        // ").append(comment(grammar.production(p)))
+             .append('\n');
+            s.append("        case ").append(labels).append(" -> {\n");
+            for (int i = 0; i < grammar.rhsLength(p); i++) {
+                int symbol = grammar.rhs(p, i);
+                if (SymbolTable.isTerminal(symbol))
+                    s.append("            expect(")
+                     .append(SymbolTable.terminalOf(symbol)).append(");\n");
+                else
+                    s.append("            n").append(symbol).append("();\n");
+            }
+            s.append("        }\n");
+        }
+        s.append("        default -> throw ERROR;\n");
+        s.append("        }\n");
+        s.append("    }\n");
+    }
+
+    /* literal()
+        @text       any string
+        @return     text as a Java string literal in plain ASCII
+    */
+    static String literal(String text) {
+        StringBuilder s = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '"' -> s.append("\\\"");
+            case '\\' -> s.append("\\\\");
+            case '\n' -> s.append("\\n");
+            case '\r' -> s.append("\\r");
+            case '\t' -> s.append("\\t");
+            default -> {
+                if (c < 0x20 || c > 0x7E)
+                    s.append(String.format("\\u%04x", (int) c));
+                else
+                    s.append(c);
+            }
+            }
+        }
+        return s.append('"').toString();
+    }
+
+    /* comment()
+
+        Make text safe to put in a // comment: javac reads unicode escapes even
+        there, and a line break would end it.
+    */
+    private static String comment(String text) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            s.append(c < 0x20 || c > 0x7E || c == '\\' ? '?' : c);
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,218 @@
+/** Json.java
+
+Just enough JSON for the server's request protocol: parse one value, and
+quote strings for the responses, which are written out by hand.
+
+Objects become LinkedHashMaps, arrays ArrayLists, numbers Doubles, and true,
+false and null the Java values. Values are parsed recursively, so they may be
+nested no deeper than MAX_DEPTH; anything deeper is rejected like other
+invalid JSON rather than overflowing the stack.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class Json {
+    // most objects and arrays that may be nested in one another
+    static final int MAX_DEPTH = 512;
+
+    private final String text;
+    private int pos;
+    // objects and arrays the parse is in
+    private int depth;
+
+    private Json(String text) {
+        this.text = text;
+        pos = 0;
+        depth = 0;
+    }
+
+    /* parse()
+        @text       a JSON document
+        @return     its value
+        @throws     IllegalArgumentException if it isn't valid JSON
+    */
+    static Object parse(String text) {
+        Json json = new Json(text);
+        Object value = json.value();
+        json.skipSpace();
+        if (json.pos < text.length())
+            throw json.error("unexpected text after the value");
+        return value;
+    }
+
+    /* quote()
+        @s          any string
+        @return     s as a JSON string literal
+    */
+    static String quote(String s) {
+        StringBuilder quoted = new StringBuilder(s.length()+2);
+        quoted.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"' -> quoted.append("\\\"");
+            case '\\' -> quoted.append("\\\\");
+            case '\n' -> quoted.append("\\n");
+            case '\r' -> quoted.append("\\r");
+            case '\t' -> quoted.append("\\t");
+            default -> {
+                if (c < 0x20)
+                    quoted.append(String.format("\\u%04x", (int) c));
+                else
+                    quoted.append(c);
+            }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && " \t\r\n".indexOf(text.charAt(pos)) >= 0)
+            pos++;
+    }
+
+    private Object value() {
+        skipSpace();
+        if (pos == text.length())
+            throw error("unexpected end of input");
+        char c = text.charAt(pos);
+        if (c == '{' || c == '[') {
+            if (depth == MAX_DEPTH)
+                throw error("values nested too deeply");
+            depth++;
+            Object nested = c == '{' ? object() : array();
+            depth--;
+            return nested;
+        }
+        if (c == '"')
+            return string();
+        if (c == '-' || (c >= '0' && c <= '9'))
+            return number();
+        if (text.startsWith("true", pos)) {
+            pos += 4;
+            return Boolean.TRUE;
+        }
+        if (text.startsWith("false", pos)) {
+            pos += 5;
+            return Boolean.FALSE;
+        }
+        if (text.startsWith("null", pos)) {
+            pos += 4;
+            return null;
+        }
+        throw error("unexpected character '" + c + "'");
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> members = new LinkedHashMap<>();
+        pos++;
+        skipSpace();
+        if (pos < text.length() && text.charAt(pos) == '}') {
+            pos++;
+            return members;
+        }
+        while (true) {
+            skipSpace();
+            if (pos == text.length() || text.charAt(pos) != '"')
+                throw error("expected a member name");
+            String name = string();
+            expect(':');
+            members.put(name, value());
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == ',') {
+                pos++;
+                continue;
+            }
+            expect('}');
+            return members;
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> elements = new ArrayList<>();
+        pos++;
+        skipSpace();
+        if (pos < text.length() && text.charAt(pos) == ']') {
+            pos++;
+            return elements;
+        }
+        while (true) {
+            elements.add(value());
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == ',') {
+                pos++;
+                continue;
+            }
+            expect(']');
+            return elements;
+        }
+    }
+
+    private void expect(char c) {
+        skipSpace();
+        if (pos == text.length() || text.charAt(pos) != c)
+            throw error("expected '" + c + "'");
+        pos++;
+    }
+
+    private String string() {
+        StringBuilder s = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= text.length())
+                throw error("unterminated string");
+            char c = text.charAt(pos++);
+            if (c == '"')
+                return s.toString();
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+            if (pos >= text.length())
+                throw error("unterminated string");
+            char e = text.charAt(pos++);
+            switch (e) {
+            case '"', '\\', '/' -> s.append(e);
+            case 'b' -> s.append('\b');
+            case 'f' -> s.append('\f');
+            case 'n' -> s.append('\n');
+            case 'r' -> s.append('\r');
+            case 't' -> s.append('\t');
+            case 'u' -> {
+                if (pos+4 > text.length())
+                    throw error("bad unicode escape");
+                try {
+                    s.append((char) Integer.parseInt(
+                        text.substring(pos, pos+4), 16));
+                } catch (NumberFormatException ex) {
+                    throw error("bad unicode escape");
+                }
+                pos += 4;
+            }
+            default -> throw error("bad escape '\\" + e + "'");
+            }
+        }
+    }
+
+    private Double number() {
+        int start = pos;
+        while (pos < text.length() &&
+               "+-.eE0123456789".indexOf(text.charAt(pos)) >= 0)
+            pos++;
+        try {
+            return Double.valueOf(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("bad number");
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/** LALR.java
+
+Compute the LALR(1) lookaheads of a BNF grammar's LR(0) automaton with
+DeRemer and Pennello's relations, and fill its parse tables.
+
+Lookaheads are computed per nonterminal transition (p, A), not per item:
+
+    DR(p, A)        terminals shifted by the state A leads to from p
+    (p, A) reads (r, C)
+                    r is where A leads from p, and C derives ""
+    (p, A) includes (p', B)
+                    B ::= x A y, x leads from p' to p, and y derives ""
+    (q, B ::= x) lookback (p, B)
+                    x leads from p to q
+
+Read is DR closed over reads, Follow is Read closed over includes, and the
+lookaheads of reducing by a production in a state are the union of Follow
+over its lookbacks. Both closures are solved with the Digraph algorithm, so
+this costs about as much as building the LR(0) automaton, while the canonical
+LR(1) automaton can have many times as many states.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.Arrays;
+
+public final class LALR {
+    private final LR0 automaton;
+    private final LRItems items;
+    private final int words;
+    // nonterminal transitions x, grouped by state and sorted by symbol
+    private final int[] transitionStart;
+    private final int[] transitionState;
+    private final int[] transitionSymbol;
+    private final int[] transitionTarget;
+    private final LRTable table;
+
+    /* LALR()
+        @sets       FIRST and FOLLOW sets of a grammar
+
+        Build the LR(0) automaton, compute its lookaheads and fill its
+        tables.
+    */
+    public LALR(FirstFollow sets) {
+        items = new LRItems(sets);
+        automaton = new LR0(items);
+        words = items.words();
+        int states = automaton.stateCount();
+
+        transitionStart = new int[states+1];
+        for (int s = 0; s < states; s++) {
+            int count = 0;
+            for (int symbol : automaton.transitionSymbols(s))
+                if (!SymbolTable.isTerminal(symbol))
+                    count++;
+            transitionStart[s+1] = transitionStart[s]+count;
+        }
+        int transitions = transitionStart[states];
+        transitionState = new int[transitions];
+        transitionSymbol = new int[transitions];
+        transitionTarget = new int[transitions];
+        for (int s = 0; s < states; s++) {
+            int[] symbols = automaton.transitionSymbols(s);
+            int[] targets = automaton.transitionTargets(s);
+            int x = transitionStart[s];
+            for (int i = 0; i < symbols.length; i++) {
+                if (!SymbolTable.isTerminal(symbols[i])) {
+                    transitionState[x] = s;
+                    transitionSymbol[x] = symbols[i];
+                    transitionTarget[x] = targets[i];
+                    x++;
+                }
+            }
+        }
+
+        long[] follow = follows(sets);
+        long[] lookaheads = lookaheads(follow);
+
+        table = new LRTable(items, states);
+        int r = 0;
+        for (int s = 0; s < states; s++) {
+            table.setKernel(s, automaton.kernel(s));
+            int[] symbols = automaton.transitionSymbols(s);
+            int[] targets = automaton.transitionTargets(s);
+            for (int i = 0; i < symbols.length; i++)
+                table.transition(s, symbols[i], targets[i]);
+            for (int p : automaton.reductions(s))
+                table.reduce(s, p, lookaheads, r++*words);
+        }
+    }
+
+    /* transition()
+        @state      a state
+        @nt         a nonterminal it has a transition on
+        @return     the transition's number
+    */
+    private int transition(int state, int nt) {
+        int x = Arrays.binarySearch(transitionSymbol, transitionStart[state],
+                                    transitionStart[state+1], nt);
+        if (x < 0)
+            throw new IllegalStateException("no transition on " + nt);
+        return x;
+    }
+
+    /* follows()
+        @sets       FIRST and FOLLOW sets of the grammar, for nullability
+        @return     Follow of every nonterminal transition, words apart
+    */
+    private long[] follows(FirstFollow sets) {
+        int transitions = transitionSymbol.length;
+        long[] follow = new long[transitions*words];
+        Digraph reads = new Digraph(transitions);
+        for (int x = 0; x < transitions; x++) {
+            int to = transitionTarget[x];
+            int[] symbols = automaton.transitionSymbols(to);
+            for (int symbol : symbols) {
+                if (SymbolTable.isTerminal(symbol))
+                    Bits.set(follow, x*words, SymbolTable.terminalOf(symbol));
+                else if (sets.nullable(symbol))
+                    reads.add(x, transition(to, symbol));
+            }
+        }
+        // the augmented production shifts $ after the start symbol
+        int start = transition(0, items.grammar().startSymbol());
+        Bits.set(follow, start*words, SymbolTable.END);
+        reads.solve(follow, words);
+
+        Digraph includes = new Digraph(transitions);
+        for (int y = 0; y < transitions; y++) {
+            int from = transitionState[y];
+            int nt = transitionSymbol[y];
+            for (int k = items.productionsStart(nt);
+                 k < items.productionsEnd(nt); k++) {
+                int p = items.productionAt(k);
+                int q = from;
+                for (int i = 0; i < items.rhsLength(p); i++) {
+                    int symbol = items.rhs(p, i);
+                    if (!SymbolTable.isTerminal(symbol) &&
+                        items.nullableBeyond(items.item(p, i)))
+                        includes.add(transition(q, symbol), y);
+                    q = automaton.gotoState(q, symbol);
+                }
+            }
+        }
+        includes.solve(follow, words);
+        return follow;
+    }
+
+    /* lookaheads()
+        @follow     Follow of every nonterminal transition
+        @return     lookaheads of every state's reductions, in order of
+                    state, then LR0.reductions(), words apart
+    */
+    private long[] lookaheads(long[] follow) {
+        int states = automaton.stateCount();
+        int[] reductionStart = new int[states+1];
+        for (int s = 0; s < states; s++)
+            reductionStart[s+1] = reductionStart[s]+
+                                  automaton.reductions(s).length;
+        long[] lookaheads = new long[reductionStart[states]*words];
+        for (int y = 0; y < transitionSymbol.length; y++) {
+            int from = transitionState[y];
+            int nt = transitionSymbol[y];
+            for (int k = items.productionsStart(nt);
+                 k < items.productionsEnd(nt); k++) {
+                int p = items.productionAt(k);
+                int q = from;
+                for (int i = 0; i < items.rhsLength(p); i++)
+                    q = automaton.gotoState(q, items.rhs(p, i));
+                int r = reductionStart[q]+indexOf(automaton.reductions(q), p);
+                Bits.or(lookaheads, r*words, follow, y*words, words);
+            }
+        }
+        // the augmented production has no transition to look back on
+        int accept = automaton.gotoState(0, items.grammar().startSymbol());
+        int r = reductionStart[accept]+
+                indexOf(automaton.reductions(accept), items.augmented());
+        Bits.set(lookaheads, r*words, SymbolTable.END);
+        return lookaheads;
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++)
+            if (array[i] == value)
+                return i;
+        throw new IllegalStateException("no reduction by " + value);
+    }
+
+    public LRTable table() {
+        return table;
+    }
+
+    public int stateCount() {
+        return automaton.stateCount();
+    }
+
+    public boolean isLALR1() {
+        return !table.hasConflicts();
+    }
+}
@@ -0,0 +1,180 @@
+/** LL1.java
+
+Build the LL(1) parse table of a BNF grammar and find every conflict that
+keeps the grammar from being LL(1).
+
+The table is one flat int array with a row per nonterminal and a column per
+terminal, holding the production to expand or -1. When two productions want
+the same cell, the one added first keeps it and the clash is recorded as a
+conflict. Conflicts between the same two productions are reported once, with
+all the terminals they clash on.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class LL1 {
+    public enum ConflictKind {
+        FIRST_FIRST,    // both productions can start with the terminal
+        FIRST_FOLLOW    // a production derives "" and the terminal may follow
+    }
+
+    /* Conflict
+        @kind           what kind of conflict it is
+        @nonterminal    the nonterminal both productions belong to
+        @production     the production that is in the table
+        @other          the production that lost out
+        @terminals      IDs of the terminals the productions clash on
+    */
+    public record Conflict(ConflictKind kind, int nonterminal, int production,
+                           int other, int[] terminals) {}
+
+    private final FirstFollow sets;
+    private final Grammar grammar;
+    private final int terminals;
+    private final int[] table;
+    // cells that were filled because of FOLLOW, one bit set row per
+    // nonterminal
+    private final long[] viaFollow;
+    private final List<Conflict> conflicts;
+
+    /* LL1()
+        @sets       FIRST and FOLLOW sets of a grammar
+
+        Build the parse table.
+    */
+    public LL1(FirstFollow sets) {
+        this.sets = sets;
+        grammar = sets.grammar();
+        terminals = grammar.symbols().terminalCount();
+        int nonterminals = grammar.symbols().nonterminalCount();
+        int words = sets.words();
+        table = new int[nonterminals*terminals];
+        Arrays.fill(table, -1);
+        viaFollow = new long[nonterminals*words];
+
+        Map<Long, List<Integer>> clashes = new LinkedHashMap<>();
+        long[] first = new long[words];
+        for (int p = 0; p < grammar.productionCount(); p++) {
+            int nt = grammar.lhs(p);
+            Arrays.fill(first, 0);
+            boolean nullable = sets.firstOf(p, 0, first, 0);
+            for (int t = Bits.next(first, 0, words, 0); t >= 0;
+                 t = Bits.next(first, 0, words, t+1))
+                place(nt, t, p, false, clashes);
+            if (nullable) {
+                long[] follow = sets.follow(nt);
+                for (int t = Bits.next(follow, 0, words, 0); t >= 0;
+                     t = Bits.next(follow, 0, words, t+1))
+                    place(nt, t, p, true, clashes);
+            }
+        }
+
+        List<Conflict> found = new ArrayList<>();
+        int productions = grammar.productionCount();
+        for (Map.Entry<Long, List<Integer>> clash : clashes.entrySet()) {
+            long key = clash.getKey();
+            ConflictKind kind = ConflictKind.values()[(int) (key & 1)];
+            int other = (int) ((key >>> 1) % productions);
+            int production = (int) ((key >>> 1) / productions);
+            int[] ts = clash.getValue().stream().mapToInt(Integer::intValue)
+                                                .toArray();
+            found.add(new Conflict(kind, grammar.lhs(production), production,
+                                   other, ts));
+        }
+        conflicts = Collections.unmodifiableList(found);
+    }
+
+    /* place()
+        @nt         row of the cell
+        @t          column of the cell
+        @p          production to put in the cell
+        @follow     whether p is placed because t is in FOLLOW(nt)
+        @clashes    conflicts found so far, by kind and productions
+    */
+    private void place(int nt, int t, int p, boolean follow,
+                       Map<Long, List<Integer>> clashes) {
+        int cell = nt*terminals+t;
+        if (table[cell] < 0) {
+            table[cell] = p;
+            if (follow)
+                Bits.set(viaFollow, nt*sets.words(), t);
+            return;
+        }
+        if (table[cell] == p)
+            return;
+        boolean firstFollow = follow || Bits.get(viaFollow, nt*sets.words(),
+                                                 t);
+        ConflictKind kind = firstFollow ? ConflictKind.FIRST_FOLLOW
+                                        : ConflictKind.FIRST_FIRST;
+        long pair = (long) table[cell]*grammar.productionCount()+p;
+        long key = (pair << 1) | kind.ordinal();
+        clashes.computeIfAbsent(key, k -> new ArrayList<>()).add(t);
+    }
+
+    public Grammar grammar() {
+        return grammar;
+    }
+
+    public FirstFollow sets() {
+        return sets;
+    }
+
+    /* production()
+        @nt         nonterminal on top of the parse stack
+        @t          next input terminal
+        @return     the production to expand, or -1 for a syntax error
+    */
+    public int production(int nt, int t) {
+        return table[nt*terminals+t];
+    }
+
+    /* table()
+        @return     the parse table, row by row, not to be modified
+    */
+    int[] table() {
+        return table;
+    }
+
+    public boolean isLL1() {
+        return conflicts.isEmpty();
+    }
+
+    public List<Conflict> conflicts() {
+        return conflicts;
+    }
+
+    /* describe()
+        @conflict   a conflict found by this analysis
+        @return     a message explaining it, without the location
+
+        List the terminals involved, then each production on a line of its
+        own, prefixed with its line number.
+    */
+    public String describe(Conflict conflict) {
+        SymbolTable symbols = grammar.symbols();
+        StringBuilder s = new StringBuilder();
+        s.append(conflict.kind() == ConflictKind.FIRST_FIRST ? "FIRST/FIRST"
+                                                             : "FIRST/FOLLOW");
+        s.append(" conflict for ")
+         .append(symbols.nonterminalName(conflict.nonterminal()))
+         .append(" on ");
+        int[] ts = conflict.terminals();
+        for (int i = 0; i < ts.length; i++) {
+            if (i > 0)
+                s.append(", ");
+            s.append(symbols.name(SymbolTable.encodeTerminal(ts[i])));
+        }
+        for (int p : new int[] {conflict.production(), conflict.other()})
+            s.append(String.format("\n    %-3d| %s", grammar.line(p)+1,
+                                   grammar.production(p)));
+        return s.toString();
+    }
+}
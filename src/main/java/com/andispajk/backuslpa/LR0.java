@@ -0,0 +1,192 @@
+/** LR0.java
+
+Build the LR(0) automaton of a BNF grammar: its states, their transitions and
+the productions each can reduce by, without any lookaheads. Analyses that
+compute lookaheads on top of it, like LALR(1), fill the parse tables.
+
+States are identified by their sorted kernel items and interned in a hash
+table, like the states of the canonical LR(1) automaton. A state's transitions
+are kept sorted with terminals first, then nonterminals, so the state a
+symbol leads to can be found by binary search.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class LR0 {
+    private static final long[] NO_LOOKAHEADS = new long[0];
+
+    private final LRItems items;
+    private final int terminals;
+    private final List<LR1.Kernel> kernels;
+    private final Map<LR1.Kernel, Integer> ids;
+    // per state, symbols and targets of its transitions, in order of key()
+    private final List<int[]> symbols;
+    private final List<int[]> targets;
+    private final List<int[]> reductions;
+
+    /* LR0()
+        @items      item numbering of the grammar
+
+        Build the automaton.
+    */
+    LR0(LRItems items) {
+        this.items = items;
+        terminals = items.terminalCount();
+        kernels = new ArrayList<>();
+        ids = new HashMap<>();
+        symbols = new ArrayList<>();
+        targets = new ArrayList<>();
+        reductions = new ArrayList<>();
+        intern(new int[] {items.item(items.augmented(), 0)});
+        for (int s = 0; s < kernels.size(); s++)
+            expand(kernels.get(s).items);
+    }
+
+    private int intern(int[] kernel) {
+        LR1.Kernel key = new LR1.Kernel(kernel, NO_LOOKAHEADS);
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = kernels.size();
+            kernels.add(key);
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    /* expand()
+        @kernel     kernel of the next state without transitions
+
+        Find the state's transitions, interning the states they lead to, and
+        the productions it reduces by.
+    */
+    private void expand(int[] kernel) {
+        boolean[] reached = items.closure(kernel);
+        // every item past its symbol, as key(symbol) << 32 | item
+        long[] moves = new long[16];
+        int count = 0;
+        List<Integer> reduced = new ArrayList<>();
+        for (int item : kernel) {
+            int symbol = items.after(item);
+            if (symbol == LRItems.NONE) {
+                reduced.add(items.production(item));
+                continue;
+            }
+            if (count == moves.length)
+                moves = Arrays.copyOf(moves, count*2);
+            moves[count++] = ((long) key(symbol) << 32) | (item+1);
+        }
+        for (int nt = 0; nt < reached.length; nt++) {
+            if (!reached[nt])
+                continue;
+            for (int k = items.productionsStart(nt);
+                 k < items.productionsEnd(nt); k++) {
+                int p = items.productionAt(k);
+                int item = items.item(p, 0);
+                int symbol = items.after(item);
+                if (symbol == LRItems.NONE) {
+                    reduced.add(p);
+                    continue;
+                }
+                if (count == moves.length)
+                    moves = Arrays.copyOf(moves, count*2);
+                moves[count++] = ((long) key(symbol) << 32) | (item+1);
+            }
+        }
+        Arrays.sort(moves, 0, count);
+
+        int[] syms = new int[count];
+        int[] tos = new int[count];
+        int n = 0;
+        int[] next = new int[count];
+        for (int i = 0; i < count; ) {
+            int key = (int) (moves[i] >>> 32);
+            int size = 0;
+            for (; i < count && (int) (moves[i] >>> 32) == key; i++) {
+                int item = (int) moves[i];
+                if (size == 0 || next[size-1] != item)
+                    next[size++] = item;
+            }
+            syms[n] = key < terminals ? SymbolTable.encodeTerminal(key)
+                                      : key-terminals;
+            tos[n] = intern(Arrays.copyOf(next, size));
+            n++;
+        }
+        symbols.add(Arrays.copyOf(syms, n));
+        targets.add(Arrays.copyOf(tos, n));
+        reductions.add(reduced.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private int key(int symbol) {
+        return SymbolTable.isTerminal(symbol)
+            ? SymbolTable.terminalOf(symbol) : terminals+symbol;
+    }
+
+    LRItems items() {
+        return items;
+    }
+
+    int stateCount() {
+        return kernels.size();
+    }
+
+    int[] kernel(int state) {
+        return kernels.get(state).items;
+    }
+
+    /* transitionSymbols()
+        @state      a state
+        @return     the symbols it has transitions on, terminals first, not
+                    to be modified
+    */
+    int[] transitionSymbols(int state) {
+        return symbols.get(state);
+    }
+
+    /* transitionTargets()
+        @state      a state
+        @return     the states its transitions lead to, in the same order as
+                    transitionSymbols(), not to be modified
+    */
+    int[] transitionTargets(int state) {
+        return targets.get(state);
+    }
+
+    /* gotoState()
+        @state      a state
+        @symbol     a terminal or nonterminal
+        @return     the state the symbol leads to, or -1
+    */
+    int gotoState(int state, int symbol) {
+        int[] syms = symbols.get(state);
+        int key = key(symbol);
+        int low = 0;
+        int high = syms.length-1;
+        while (low <= high) {
+            int mid = (low+high) >>> 1;
+            int k = key(syms[mid]);
+            if (k < key)
+                low = mid+1;
+            else if (k > key)
+                high = mid-1;
+            else
+                return targets.get(state)[mid];
+        }
+        return -1;
+    }
+
+    /* reductions()
+        @state      a state
+        @return     the productions it has complete items of, not to be
+                    modified
+    */
+    int[] reductions(int state) {
+        return reductions.get(state);
+    }
+}
@@ -0,0 +1,499 @@
+/** LR1.java
+
+Build the canonical LR(1) automaton of a BNF grammar and its parse tables.
+
+States are identified by their kernels: the sorted kernel items, each with its
+lookahead set. Kernels are interned in a hash table, so finding out whether a
+goto leads to a new state costs one hash lookup instead of comparing against
+every state built so far. Each state's closure and outgoing gotos are computed
+exactly once, when the state is first reached.
+
+Closures are computed per nonterminal rather than per item: all the items of a
+nonterminal's productions with the dot at the start share one lookahead set,
+which is grown with a worklist until it is stable.
+
+States are built a breadth first frontier at a time. The closures and goto
+kernels of a frontier's states don't depend on each other, so they are
+computed in parallel on a ForkJoinPool, looking up the kernels that are
+already states. Only then are the new kernels numbered, one state after
+another and in order of their symbols, so the numbering is the same as when
+building the states one by one, however many threads there are. The
+closure's working arrays are sized for the whole grammar, so they are kept
+in a free list and reused, one set per task running at a time, instead of
+allocated for every task.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public final class LR1 {
+    // states expanded by one task before a frontier is split further
+    private static final int SPLIT = 8;
+
+    private final LRItems items;
+    private final List<Kernel> kernels;
+    private final Map<Kernel, Integer> ids;
+    // closures not in use by any task
+    private final Queue<Closure> spare;
+    private final LRTable table;
+
+    /* LR1()
+        @sets       FIRST and FOLLOW sets of a grammar
+
+        Build the automaton on the common pool and fill its tables.
+    */
+    public LR1(FirstFollow sets) {
+        this(sets, ForkJoinPool.commonPool());
+    }
+
+    /* LR1()
+        @sets       FIRST and FOLLOW sets of a grammar
+        @pool       pool to expand the states of each frontier on
+
+        Build the automaton and fill its tables.
+    */
+    public LR1(FirstFollow sets, ForkJoinPool pool) {
+        items = new LRItems(sets);
+        kernels = new ArrayList<>();
+        ids = new ConcurrentHashMap<>();
+        spare = new ConcurrentLinkedQueue<>();
+        long[] end = new long[items.words()];
+        Bits.set(end, 0, SymbolTable.END);
+        intern(new Kernel(new int[] {items.item(items.augmented(), 0)}, end));
+
+        List<int[]> transitions = new ArrayList<>();
+        List<Reductions> reductions = new ArrayList<>();
+        for (int from = 0; from < kernels.size(); ) {
+            int to = kernels.size();
+            Expansion[] frontier = new Expansion[to-from];
+            Expand task = new Expand(frontier, from, 0, frontier.length);
+            if (frontier.length <= SPLIT)
+                task.compute();
+            else
+                pool.invoke(task);
+            for (Expansion expansion : frontier) {
+                int[] pairs = expansion.pairs;
+                for (int i = 1; i < pairs.length; i += 2)
+                    if (pairs[i] < 0)
+                        pairs[i] = intern(expansion.pending.get(~pairs[i]));
+                transitions.add(pairs);
+                reductions.add(expansion.reductions);
+            }
+            from = to;
+        }
+
+        table = new LRTable(items, kernels.size());
+        for (int s = 0; s < kernels.size(); s++) {
+            table.setKernel(s, kernels.get(s).items);
+            int[] pairs = transitions.get(s);
+            for (int i = 0; i < pairs.length; i += 2)
+                table.transition(s, pairs[i], pairs[i+1]);
+            reductions.get(s).addTo(table, s);
+        }
+    }
+
+    private int intern(Kernel kernel) {
+        Integer id = ids.get(kernel);
+        if (id == null) {
+            id = kernels.size();
+            kernels.add(kernel);
+            ids.put(kernel, id);
+        }
+        return id;
+    }
+
+    /* Expansion
+
+        Transitions and reductions of one state of a frontier. Targets that
+        weren't states yet when the frontier was expanded are ~(index) into
+        the pending kernels.
+    */
+    private static final class Expansion {
+        int[] pairs;
+        List<Kernel> pending;
+        Reductions reductions;
+    }
+
+    /* Expand
+
+        Expands a range of a frontier's states, splitting it in halves as
+        long as it is larger than SPLIT.
+    */
+    @SuppressWarnings("serial")
+    private final class Expand extends RecursiveAction {
+        private final Expansion[] frontier;
+        private final int first;
+        private final int from;
+        private final int to;
+
+        Expand(Expansion[] frontier, int first, int from, int to) {
+            this.frontier = frontier;
+            this.first = first;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to-from > SPLIT) {
+                int mid = (from+to) >>> 1;
+                invokeAll(new Expand(frontier, first, from, mid),
+                          new Expand(frontier, first, mid, to));
+                return;
+            }
+            Closure closure = spare.poll();
+            if (closure == null)
+                closure = new Closure(items);
+            for (int i = from; i < to; i++) {
+                Kernel kernel = kernels.get(first+i);
+                Expansion expansion = new Expansion();
+                List<Kernel> pending = new ArrayList<>();
+                closure.compute(kernel);
+                expansion.pairs = closure.gotos(kernel, k -> {
+                    Integer id = ids.get(k);
+                    if (id != null)
+                        return id;
+                    pending.add(k);
+                    return ~(pending.size()-1);
+                });
+                expansion.pending = pending;
+                expansion.reductions = closure.reductions(kernel);
+                frontier[i] = expansion;
+            }
+            spare.add(closure);
+        }
+    }
+
+    public LRTable table() {
+        return table;
+    }
+
+    public int stateCount() {
+        return kernels.size();
+    }
+
+    public boolean isLR1() {
+        return !table.hasConflicts();
+    }
+
+    /* Kernel
+
+        Kernel items of an LR(1) state, sorted, with one lookahead set per
+        item stored back to back.
+    */
+    static final class Kernel {
+        final int[] items;
+        final long[] lookaheads;
+        private final int hash;
+
+        Kernel(int[] items, long[] lookaheads) {
+            this.items = items;
+            this.lookaheads = lookaheads;
+            hash = 31*Arrays.hashCode(items)+Arrays.hashCode(lookaheads);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Kernel other))
+                return false;
+            return hash == other.hash && Arrays.equals(items, other.items) &&
+                   Arrays.equals(lookaheads, other.lookaheads);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /* Interner
+
+        Turns the kernel of a goto into the state it leads to.
+    */
+    interface Interner {
+        int intern(Kernel kernel);
+    }
+
+    /* Reductions
+
+        Productions a state can reduce by, with the lookaheads of each.
+    */
+    static final class Reductions {
+        final int[] productions;
+        final long[] lookaheads;
+        final int words;
+
+        Reductions(int[] productions, long[] lookaheads, int words) {
+            this.productions = productions;
+            this.lookaheads = lookaheads;
+            this.words = words;
+        }
+
+        void addTo(LRTable table, int state) {
+            for (int i = 0; i < productions.length; i++)
+                table.reduce(state, productions[i], lookaheads, i*words);
+        }
+    }
+
+    /* Closure
+
+        Scratch space for computing the closure of one state at a time. Only
+        the nonterminals the last closure reached are cleared, so a state
+        costs time in proportion to its own size, not the grammar's.
+    */
+    static final class Closure {
+        private final LRItems items;
+        private final int words;
+        private final int terminals;
+        // lookaheads of every reached nonterminal's items with the dot at the
+        // start
+        private final long[] lookaheads;
+        private final boolean[] reached;
+        private final int[] reachedList;
+        private int reachedCount;
+        private final boolean[] queued;
+        private final int[] queue;
+        // gotos grouped by symbol in linked lists of entries
+        private final int[] heads;
+        private int[] entryNext;
+        private int[] entryItem;
+        // where an entry's lookaheads are, in the kernel if negative, as
+        // ~(item index), or in lookaheads[] otherwise
+        private int[] entrySource;
+        private int entries;
+
+        Closure(LRItems items) {
+            this.items = items;
+            words = items.words();
+            terminals = items.terminalCount();
+            int nonterminals = items.nonterminalCount();
+            lookaheads = new long[nonterminals*words];
+            reached = new boolean[nonterminals];
+            reachedList = new int[nonterminals];
+            reachedCount = 0;
+            queued = new boolean[nonterminals];
+            queue = new int[nonterminals];
+            heads = new int[terminals+nonterminals];
+            Arrays.fill(heads, -1);
+            entryNext = new int[64];
+            entryItem = new int[64];
+            entrySource = new int[64];
+            entries = 0;
+        }
+
+        /* compute()
+            @kernel     kernel of a state
+
+            Find the nonterminals the state's closure reaches and the
+            lookaheads of their items.
+        */
+        void compute(Kernel kernel) {
+            for (int i = 0; i < reachedCount; i++) {
+                int nt = reachedList[i];
+                reached[nt] = false;
+                Arrays.fill(lookaheads, nt*words, (nt+1)*words, 0);
+            }
+            reachedCount = 0;
+            int head = 0;
+            int size = 0;
+            int capacity = queue.length;
+            long[] beyond = items.firstBeyondSets();
+            for (int i = 0; i < kernel.items.length; i++) {
+                int item = kernel.items[i];
+                int nt = items.after(item);
+                if (nt == LRItems.NONE || SymbolTable.isTerminal(nt))
+                    continue;
+                reach(nt);
+                Bits.or(lookaheads, nt*words, beyond, items.firstBeyond(item),
+                        words);
+                if (items.nullableBeyond(item))
+                    Bits.or(lookaheads, nt*words, kernel.lookaheads, i*words,
+                            words);
+                if (!queued[nt]) {
+                    queued[nt] = true;
+                    queue[(head+size++) % capacity] = nt;
+                }
+            }
+            while (size > 0) {
+                int from = queue[head];
+                head = (head+1) % capacity;
+                size--;
+                queued[from] = false;
+                for (int k = items.productionsStart(from);
+                     k < items.productionsEnd(from); k++) {
+                    int item = items.item(items.productionAt(k), 0);
+                    int nt = items.after(item);
+                    if (nt == LRItems.NONE || SymbolTable.isTerminal(nt))
+                        continue;
+                    boolean changed = reach(nt);
+                    changed |= Bits.or(lookaheads, nt*words, beyond,
+                                       items.firstBeyond(item), words);
+                    if (items.nullableBeyond(item))
+                        changed |= Bits.or(lookaheads, nt*words, lookaheads,
+                                           from*words, words);
+                    if (changed && !queued[nt]) {
+                        queued[nt] = true;
+                        queue[(head+size++) % capacity] = nt;
+                    }
+                }
+            }
+        }
+
+        private boolean reach(int nt) {
+            if (reached[nt])
+                return false;
+            reached[nt] = true;
+            reachedList[reachedCount++] = nt;
+            return true;
+        }
+
+        /* gotos()
+            @kernel     kernel of the state compute() ran on last
+            @interner   turns goto kernels into states
+            @return     the state's transitions as symbol, target pairs, in
+                        order of terminals, then nonterminals
+        */
+        int[] gotos(Kernel kernel, Interner interner) {
+            entries = 0;
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            for (int i = 0; i < kernel.items.length; i++) {
+                int item = kernel.items[i];
+                int symbol = items.after(item);
+                if (symbol == LRItems.NONE)
+                    continue;
+                if (add(symbol, item+1, ~i)) {
+                    if (touchedCount == touched.length)
+                        touched = Arrays.copyOf(touched, touchedCount*2);
+                    touched[touchedCount++] = key(symbol);
+                }
+            }
+            for (int r = 0; r < reachedCount; r++) {
+                int nt = reachedList[r];
+                for (int k = items.productionsStart(nt);
+                     k < items.productionsEnd(nt); k++) {
+                    int item = items.item(items.productionAt(k), 0);
+                    int symbol = items.after(item);
+                    if (symbol == LRItems.NONE)
+                        continue;
+                    if (add(symbol, item+1, nt*words)) {
+                        if (touchedCount == touched.length)
+                            touched = Arrays.copyOf(touched, touchedCount*2);
+                        touched[touchedCount++] = key(symbol);
+                    }
+                }
+            }
+            Arrays.sort(touched, 0, touchedCount);
+
+            int[] pairs = new int[touchedCount*2];
+            long[] order = new long[16];
+            for (int j = 0; j < touchedCount; j++) {
+                int key = touched[j];
+                int count = 0;
+                for (int e = heads[key]; e >= 0; e = entryNext[e]) {
+                    if (count == order.length)
+                        order = Arrays.copyOf(order, count*2);
+                    order[count++] = ((long) entryItem[e] << 32) | e;
+                }
+                heads[key] = -1;
+                Arrays.sort(order, 0, count);
+                int[] kernelItems = new int[count];
+                long[] looks = new long[count*words];
+                int n = 0;
+                for (int i = 0; i < count; i++) {
+                    int e = (int) order[i];
+                    int item = entryItem[e];
+                    if (n == 0 || kernelItems[n-1] != item)
+                        kernelItems[n++] = item;
+                    int source = entrySource[e];
+                    if (source < 0)
+                        Bits.or(looks, (n-1)*words, kernel.lookaheads,
+                                ~source*words, words);
+                    else
+                        Bits.or(looks, (n-1)*words, lookaheads, source,
+                                words);
+                }
+                if (n < count) {
+                    kernelItems = Arrays.copyOf(kernelItems, n);
+                    looks = Arrays.copyOf(looks, n*words);
+                }
+                pairs[2*j] = key < terminals ? SymbolTable.encodeTerminal(key)
+                                             : key-terminals;
+                pairs[2*j+1] = interner.intern(new Kernel(kernelItems, looks));
+            }
+            return pairs;
+        }
+
+        private int key(int symbol) {
+            return SymbolTable.isTerminal(symbol)
+                ? SymbolTable.terminalOf(symbol) : terminals+symbol;
+        }
+
+        /* add()
+            @return     whether this is the first entry for the symbol
+        */
+        private boolean add(int symbol, int item, int source) {
+            if (entries == entryNext.length) {
+                entryNext = Arrays.copyOf(entryNext, entries*2);
+                entryItem = Arrays.copyOf(entryItem, entries*2);
+                entrySource = Arrays.copyOf(entrySource, entries*2);
+            }
+            int key = key(symbol);
+            boolean first = heads[key] < 0;
+            entryNext[entries] = heads[key];
+            entryItem[entries] = item;
+            entrySource[entries] = source;
+            heads[key] = entries++;
+            return first;
+        }
+
+        /* reductions()
+            @kernel     kernel of the state compute() ran on last
+            @return     the productions the state can reduce by
+        */
+        Reductions reductions(Kernel kernel) {
+            List<Integer> productions = new ArrayList<>();
+            List<Integer> sources = new ArrayList<>();
+            for (int i = 0; i < kernel.items.length; i++) {
+                if (items.after(kernel.items[i]) == LRItems.NONE) {
+                    productions.add(items.production(kernel.items[i]));
+                    sources.add(~i);
+                }
+            }
+            for (int r = 0; r < reachedCount; r++) {
+                int nt = reachedList[r];
+                for (int k = items.productionsStart(nt);
+                     k < items.productionsEnd(nt); k++) {
+                    int p = items.productionAt(k);
+                    if (items.rhsLength(p) == 0) {
+                        productions.add(p);
+                        sources.add(nt*words);
+                    }
+                }
+            }
+            int[] ps = new int[productions.size()];
+            long[] looks = new long[ps.length*words];
+            for (int i = 0; i < ps.length; i++) {
+                ps[i] = productions.get(i);
+                int source = sources.get(i);
+                if (source < 0)
+                    System.arraycopy(kernel.lookaheads, ~source*words, looks,
+                                     i*words, words);
+                else
+                    System.arraycopy(lookaheads, source, looks, i*words,
+                                     words);
+            }
+            return new Reductions(ps, looks, words);
+        }
+    }
+}
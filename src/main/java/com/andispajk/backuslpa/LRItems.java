@@ -0,0 +1,260 @@
+/** LRItems.java
+
+Number the LR(0) items of a BNF grammar densely, and precompute what the LR
+automaton builders look up about them over and over.
+
+The grammar is augmented with a production $start ::= S, where S is the start
+symbol. It gets the production index right after the grammar's own, and its
+left-hand side the nonterminal ID right after the grammar's own. The items of
+production p are itemBase(p) + dot, for dot from 0 to the length of p.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.Arrays;
+
+final class LRItems {
+    // after() of an item whose dot is at the end
+    static final int NONE = Integer.MIN_VALUE;
+
+    private final FirstFollow sets;
+    private final Grammar grammar;
+    private final int words;
+    private final int productions;
+    private final int nonterminals;
+    private final int start;
+    private final int[] itemBase;
+    private final int[] itemProduction;
+    private final int[] after;
+    // FIRST of what follows the symbol after the dot, and if that derives ""
+    private final long[] firstBeyond;
+    private final boolean[] nullableBeyond;
+    // productions by left-hand side, including the augmented one
+    private final int[] byLhsStart;
+    private final int[] byLhs;
+
+    /* LRItems()
+        @sets       FIRST and FOLLOW sets of a grammar with a start symbol
+    */
+    LRItems(FirstFollow sets) {
+        this.sets = sets;
+        grammar = sets.grammar();
+        start = grammar.startSymbol();
+        if (start < 0)
+            throw new IllegalArgumentException("grammar has no productions");
+        words = sets.words();
+        productions = grammar.productionCount()+1;
+        nonterminals = grammar.symbols().nonterminalCount()+1;
+
+        itemBase = new int[productions+1];
+        for (int p = 0; p < productions; p++)
+            itemBase[p+1] = itemBase[p]+rhsLength(p)+1;
+        int items = itemBase[productions];
+        itemProduction = new int[items];
+        after = new int[items];
+        firstBeyond = new long[items*words];
+        nullableBeyond = new boolean[items];
+        for (int p = 0; p < productions; p++) {
+            int length = rhsLength(p);
+            for (int dot = 0; dot <= length; dot++) {
+                int item = itemBase[p]+dot;
+                itemProduction[item] = p;
+                after[item] = dot < length ? rhs(p, dot) : NONE;
+                if (dot < length && !SymbolTable.isTerminal(after[item]))
+                    nullableBeyond[item] = p == augmented() ||
+                        sets.firstOf(p, dot+1, firstBeyond, item*words);
+            }
+        }
+
+        byLhsStart = new int[nonterminals+1];
+        for (int p = 0; p < productions; p++)
+            byLhsStart[lhs(p)+1]++;
+        for (int nt = 0; nt < nonterminals; nt++)
+            byLhsStart[nt+1] += byLhsStart[nt];
+        byLhs = new int[productions];
+        int[] next = Arrays.copyOf(byLhsStart, nonterminals);
+        for (int p = 0; p < productions; p++)
+            byLhs[next[lhs(p)]++] = p;
+    }
+
+    FirstFollow sets() {
+        return sets;
+    }
+
+    Grammar grammar() {
+        return grammar;
+    }
+
+    int words() {
+        return words;
+    }
+
+    int terminalCount() {
+        return grammar.symbols().terminalCount();
+    }
+
+    /* productionCount()
+        @return     number of productions, including the augmented one
+    */
+    int productionCount() {
+        return productions;
+    }
+
+    /* nonterminalCount()
+        @return     number of nonterminals, including $start
+    */
+    int nonterminalCount() {
+        return nonterminals;
+    }
+
+    int augmented() {
+        return productions-1;
+    }
+
+    int lhs(int p) {
+        return p == augmented() ? nonterminals-1 : grammar.lhs(p);
+    }
+
+    int rhsLength(int p) {
+        return p == augmented() ? 1 : grammar.rhsLength(p);
+    }
+
+    int rhs(int p, int i) {
+        return p == augmented() ? start : grammar.rhs(p, i);
+    }
+
+    int itemCount() {
+        return itemBase[productions];
+    }
+
+    int item(int p, int dot) {
+        return itemBase[p]+dot;
+    }
+
+    int production(int item) {
+        return itemProduction[item];
+    }
+
+    int dot(int item) {
+        return item-itemBase[itemProduction[item]];
+    }
+
+    /* after()
+        @item       an item
+        @return     the symbol right after the dot, or NONE
+    */
+    int after(int item) {
+        return after[item];
+    }
+
+    /* firstBeyond()
+        @return     offset in firstBeyondSets() of the FIRST set of what
+                    follows the nonterminal after the item's dot
+    */
+    int firstBeyond(int item) {
+        return item*words;
+    }
+
+    long[] firstBeyondSets() {
+        return firstBeyond;
+    }
+
+    /* nullableBeyond()
+        @return     whether what follows the nonterminal after the item's dot
+                    derives ""
+    */
+    boolean nullableBeyond(int item) {
+        return nullableBeyond[item];
+    }
+
+    int productionsStart(int nt) {
+        return byLhsStart[nt];
+    }
+
+    int productionsEnd(int nt) {
+        return byLhsStart[nt+1];
+    }
+
+    /* productionAt()
+        @k          index between productionsStart() and productionsEnd()
+        @return     the production at that index
+    */
+    int productionAt(int k) {
+        return byLhs[k];
+    }
+
+    /* closure()
+        @kernel     kernel items of a state
+        @return     for every nonterminal, whether the state's closure holds
+                    the items of its productions with the dot at the start
+    */
+    boolean[] closure(int[] kernel) {
+        boolean[] reached = new boolean[nonterminals];
+        int[] stack = new int[nonterminals];
+        int size = 0;
+        for (int item : kernel) {
+            int symbol = after[item];
+            if (symbol != NONE && !SymbolTable.isTerminal(symbol) &&
+                !reached[symbol]) {
+                reached[symbol] = true;
+                stack[size++] = symbol;
+            }
+        }
+        while (size > 0) {
+            int nt = stack[--size];
+            for (int k = byLhsStart[nt]; k < byLhsStart[nt+1]; k++) {
+                int symbol = after[itemBase[byLhs[k]]];
+                if (symbol != NONE && !SymbolTable.isTerminal(symbol) &&
+                    !reached[symbol]) {
+                    reached[symbol] = true;
+                    stack[size++] = symbol;
+                }
+            }
+        }
+        return reached;
+    }
+
+    String symbolName(int symbol) {
+        if (symbol == nonterminals-1)
+            return "$start";
+        return grammar.symbols().name(symbol);
+    }
+
+    /* describe()
+        @item       an item
+        @return     the item's production with a . where the dot is
+    */
+    String describe(int item) {
+        int p = itemProduction[item];
+        int dot = dot(item);
+        StringBuilder s = new StringBuilder(symbolName(lhs(p)));
+        s.append(grammar.mode() == TkType.EBNF_MODE ? " =" : " ::=");
+        for (int i = 0; i < rhsLength(p); i++) {
+            if (i == dot)
+                s.append(" .");
+            s.append(' ').append(symbolName(rhs(p, i)));
+        }
+        if (dot == rhsLength(p))
+            s.append(" .");
+        return s.toString();
+    }
+
+    /* line()
+        @p          a production
+        @return     the line it was written on, counting from 0
+    */
+    int line(int p) {
+        return p == augmented() ? grammar.definedLine(start)
+                                : grammar.line(p);
+    }
+
+    /* column()
+        @p          a production
+        @return     where it starts in its line
+    */
+    int column(int p) {
+        return p == augmented() ? grammar.definedColumn(start)
+                                : grammar.column(p);
+    }
+}
@@ -0,0 +1,310 @@
+/** LRTable.java
+
+ACTION and GOTO tables of an LR automaton, along with the conflicts found
+while filling them. Every LR analysis fills one of these, so they all report
+conflicts the same way.
+
+Both tables are flat int arrays with a row per state. An ACTION entry is 0 for
+an error, s+1 to shift and go to state s, or -(p+1) to reduce by production p.
+Reducing by the augmented production means accepting the input. A GOTO entry
+is the state to go to, or -1.
+
+Like yacc, a shift/reduce conflict is resolved in favor of the shift and a
+reduce/reduce conflict in favor of the production reduced by first, so the
+tables always describe some parser, conflicts or not.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class LRTable {
+    public enum ConflictKind {
+        SHIFT_REDUCE,
+        REDUCE_REDUCE
+    }
+
+    /* Conflict
+        @kind           what kind of conflict it is
+        @state          the state it happens in
+        @terminals      IDs of the terminals it happens on
+        @productions    productions that could be reduced by
+        @shiftItems     for shift/reduce conflicts, the items that shift the
+                        terminals
+    */
+    public record Conflict(ConflictKind kind, int state, int[] terminals,
+                           int[] productions, int[] shiftItems) {}
+
+    private final LRItems items;
+    private final int states;
+    private final int terminals;
+    private final int nonterminals;
+    private final int[] action;
+    private final int[] gotos;
+    private final int[][] kernels;
+    // every clash as {state, terminal, kind, production, other production}
+    private final List<int[]> clashes;
+    private List<Conflict> conflicts;
+
+    /* LRTable()
+        @items      item numbering of the grammar
+        @states     number of states of the automaton
+
+        Construct empty tables.
+    */
+    LRTable(LRItems items, int states) {
+        this.items = items;
+        this.states = states;
+        terminals = items.terminalCount();
+        nonterminals = items.nonterminalCount()-1;
+        action = new int[states*terminals];
+        gotos = new int[states*nonterminals];
+        Arrays.fill(gotos, -1);
+        kernels = new int[states][];
+        clashes = new ArrayList<>();
+        conflicts = null;
+    }
+
+    /* setKernel()
+        @state      a state
+        @kernel     its kernel items, needed to explain its conflicts
+    */
+    void setKernel(int state, int[] kernel) {
+        kernels[state] = kernel;
+    }
+
+    /* transition()
+        @state      a state
+        @symbol     the symbol to go over
+        @target     the state to go to
+
+        Add a shift or a goto. Must come before the state's reductions.
+    */
+    void transition(int state, int symbol, int target) {
+        if (SymbolTable.isTerminal(symbol))
+            action[state*terminals+SymbolTable.terminalOf(symbol)] = target+1;
+        else
+            gotos[state*nonterminals+symbol] = target;
+    }
+
+    /* reduce()
+        @state      a state
+        @p          production to reduce by
+        @lookahead  array holding the set of terminals to reduce on
+        @offset     offset of that set
+    */
+    void reduce(int state, int p, long[] lookahead, int offset) {
+        for (int t = Bits.next(lookahead, offset, items.words(), 0); t >= 0;
+             t = Bits.next(lookahead, offset, items.words(), t+1)) {
+            int cell = state*terminals+t;
+            int old = action[cell];
+            if (old == 0)
+                action[cell] = -(p+1);
+            else if (old > 0)
+                clashes.add(new int[] {state, t,
+                                       ConflictKind.SHIFT_REDUCE.ordinal(),
+                                       p, -1});
+            else if (old != -(p+1))
+                clashes.add(new int[] {state, t,
+                                       ConflictKind.REDUCE_REDUCE.ordinal(),
+                                       -old-1, p});
+        }
+    }
+
+    public int stateCount() {
+        return states;
+    }
+
+    int terminalCount() {
+        return terminals;
+    }
+
+    int nonterminalCount() {
+        return nonterminals;
+    }
+
+    public int action(int state, int t) {
+        return action[state*terminals+t];
+    }
+
+    /* gotoState()
+        @state      a state
+        @nt         a nonterminal of the grammar
+        @return     the state to go to after reducing to nt, or -1
+    */
+    public int gotoState(int state, int nt) {
+        return gotos[state*nonterminals+nt];
+    }
+
+    public static boolean isShift(int action) {
+        return action > 0;
+    }
+
+    public static boolean isReduce(int action) {
+        return action < 0;
+    }
+
+    /* target()
+        @action     a shift action
+        @return     the state to go to
+    */
+    public static int target(int action) {
+        return action-1;
+    }
+
+    /* production()
+        @action     a reduce action
+        @return     the production to reduce by
+    */
+    public static int production(int action) {
+        return -action-1;
+    }
+
+    /* isAccept()
+        @action     an action from this table
+        @return     whether the action accepts the input
+    */
+    public boolean isAccept(int action) {
+        return isReduce(action) && production(action) == items.augmented();
+    }
+
+    int[] actionTable() {
+        return action;
+    }
+
+    int[] gotoTable() {
+        return gotos;
+    }
+
+    public boolean hasConflicts() {
+        return !clashes.isEmpty();
+    }
+
+    /* conflicts()
+        @return     the conflicts, with those that involve the same state and
+                    productions merged into one
+    */
+    public List<Conflict> conflicts() {
+        if (conflicts == null)
+            conflicts = Collections.unmodifiableList(group());
+        return conflicts;
+    }
+
+    /* group()
+
+        Group the clashes by state, kind and productions. The terminals of a
+        group are listed in the order their clashes were found, and for a
+        shift/reduce conflict, the items that shift any of them are merged.
+    */
+    private List<Conflict> group() {
+        Map<List<Integer>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int[] clash : clashes)
+            groups.computeIfAbsent(List.of(clash[0], clash[2], clash[3],
+                                           clash[4]),
+                                   k -> new ArrayList<>()).add(clash[1]);
+        List<Conflict> grouped = new ArrayList<>();
+        for (Map.Entry<List<Integer>, List<Integer>> group :
+                 groups.entrySet()) {
+            List<Integer> key = group.getKey();
+            int state = key.get(0);
+            ConflictKind kind = ConflictKind.values()[key.get(1)];
+            int[] productions = kind == ConflictKind.SHIFT_REDUCE
+                ? new int[] {key.get(2)} : new int[] {key.get(2), key.get(3)};
+            int[] ts = group.getValue().stream().mapToInt(Integer::intValue)
+                                                .toArray();
+            Set<Integer> shifts = new LinkedHashSet<>();
+            if (kind == ConflictKind.SHIFT_REDUCE)
+                for (int t : ts)
+                    for (int item : shiftItems(state, t))
+                        shifts.add(item);
+            grouped.add(new Conflict(kind, state, ts, productions,
+                                     shifts.stream()
+                                           .mapToInt(Integer::intValue)
+                                           .toArray()));
+        }
+        return grouped;
+    }
+
+    /* shiftItems()
+        @state      a state
+        @t          a terminal
+        @return     the state's items that have t after the dot
+    */
+    private int[] shiftItems(int state, int t) {
+        int symbol = SymbolTable.encodeTerminal(t);
+        int[] kernel = kernels[state];
+        List<Integer> found = new ArrayList<>();
+        for (int item : kernel)
+            if (items.after(item) == symbol)
+                found.add(item);
+        boolean[] reached = items.closure(kernel);
+        for (int nt = 0; nt < reached.length; nt++) {
+            if (!reached[nt])
+                continue;
+            for (int k = items.productionsStart(nt);
+                 k < items.productionsEnd(nt); k++) {
+                int item = items.item(items.productionAt(k), 0);
+                if (items.after(item) == symbol)
+                    found.add(item);
+            }
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /* describe()
+        @conflict   a conflict from this table
+        @return     a message explaining it, without the location
+
+        List the terminals involved, then each item on a line of its own,
+        prefixed with its production's line number.
+    */
+    public String describe(Conflict conflict) {
+        StringBuilder s = new StringBuilder();
+        if (conflict.kind() == ConflictKind.SHIFT_REDUCE)
+            s.append("shift/reduce");
+        else
+            s.append("reduce/reduce");
+        s.append(" conflict in state ").append(conflict.state()).append(" on ");
+        int[] ts = conflict.terminals();
+        for (int i = 0; i < ts.length; i++) {
+            if (i > 0)
+                s.append(", ");
+            s.append(items.symbolName(SymbolTable.encodeTerminal(ts[i])));
+        }
+        for (int item : conflict.shiftItems())
+            appendItem(s, item);
+        for (int p : conflict.productions())
+            appendItem(s, items.item(p, items.rhsLength(p)));
+        return s.toString();
+    }
+
+    private void appendItem(StringBuilder s, int item) {
+        s.append(String.format("\n    %-3d| %s",
+                               items.line(items.production(item))+1,
+                               items.describe(item)));
+    }
+
+    /* line()
+        @conflict   a conflict from this table
+        @return     the line to report the conflict at, counting from 0
+    */
+    public int line(Conflict conflict) {
+        return items.line(conflict.productions()[0]);
+    }
+
+    /* column()
+        @conflict   a conflict from this table
+        @return     the column to report the conflict at, in line()
+    */
+    public int column(Conflict conflict) {
+        return items.column(conflict.productions()[0]);
+    }
+}
@@ -1,62 +1,203 @@
 /** Lexer.java
 
 Perform lexical analysis on grammars written in BNF or EBNF. Consumes text and
-produces tokens. Uses a direct-coded scanner.
+produces tokens. Uses a direct-coded scanner by default, or a table-driven
+scanner compiled from the same state machine (see ScanTable). When the JDK's
+incubating Vector API is available, both skip long runs of whitespace,
+comments, identifiers and strings many bytes at a time (see VectorScanner).
+
+The source is either held in full (strings and memory mapped files) or
+streamed from a channel. A streamed source only keeps a window of the input:
+the lines that the scanner and the error messages can still refer to.
 
 */
 
 package com.andispajk.backuslpa;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
 
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class Lexer {
     private String fileName;
-    private final StringBuilder source;
+    // where error messages are printed
+    private PrintStream out;
+    // errors reported since the input was read
+    private final List<Diagnostic> diagnostics;
+    // never modified once read, since tokens keep referring to it, except
+    // when streaming
+    private SourceText source;
+    // index of the first char that source holds, only nonzero when streaming
+    private int sourceBase;
+    // index right after the last char read so far
     private int sourceLen;
     private int currPos;
     private int lineNum;
     private int beginningOfLine;
+    // the last \n that nextChar() read, or -1, and the line it ended
+    private int newlineRead;
+    private int previousBol;
+
+    // lookahead ring of tokens that were scanned but not consumed yet, along
+    // with the line state the scanner was in right after scanning each one
+    private Token[] ahead;
+    private int[] aheadLineNum;
+    private int[] aheadBol;
+    private int aheadFirst;
+    private int aheadCount;
+    // line state right after the most recently consumed token, which is what
+    // error() reports against
+    private int consumedLineNum;
+    private int consumedBol;
+    // whether that token is a NEWLINE, or none has been consumed yet
+    private boolean consumedNewline;
+
+    // streamed input, or null if the whole source is already in memory
+    private ReadableByteChannel stream;
+    private byte[] window;
+    private Charset windowCharset;
+    // first char of the token being scanned, which must stay in the window
+    private int tokenStart;
+
+    // where the token that the scanner found last starts
+    private int lexemeStart;
+    private int lexemeLine;
+    // where the line that token starts on begins
+    private int lexemeBol;
+
+    private static final int WINDOW_SIZE = 8192;
+
+    private boolean tableScanner;
+    // null when the Vector API is unavailable or turned off
+    private VectorScanner vectors;
+
+    // VectorScanner must never be loaded without the incubator module
+    private static final boolean VECTOR_API =
+        ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
 
     public Lexer() {
         fileName = "";
-        source = new StringBuilder();
+        out = System.out;
+        diagnostics = new ArrayList<>();
+        source = SourceText.of("");
+        sourceBase = 0;
         sourceLen = 0;
         currPos = 0;
         lineNum = 0;
         beginningOfLine = 0;
+        newlineRead = -1;
+        previousBol = 0;
+        ahead = new Token[4];
+        aheadLineNum = new int[4];
+        aheadBol = new int[4];
+        aheadFirst = 0;
+        aheadCount = 0;
+        consumedLineNum = 0;
+        consumedBol = 0;
+        consumedNewline = true;
+        stream = null;
+        window = null;
+        windowCharset = StandardCharsets.UTF_8;
+        tokenStart = 0;
+        lexemeStart = 0;
+        lexemeLine = 0;
+        lexemeBol = 0;
+        tableScanner = false;
+        vectors = VECTOR_API ? new VectorScanner() : null;
+    }
+
+    /* useTableScanner()
+        @enabled    true for the table-driven scanner, false for direct-coded
+
+        Pick the scanner engine. Both produce exactly the same tokens and
+        errors.
+    */
+    public void useTableScanner(boolean enabled) {
+        tableScanner = enabled;
+    }
+
+    /* useVectorScanning()
+        @enabled    true to skip runs of chars with the Vector API
+
+        Turn the vectorized fast paths on or off. They are on by default, but
+        stay off if the JVM was started without the jdk.incubator.vector
+        module. Tokens are the same either way.
+    */
+    public void useVectorScanning(boolean enabled) {
+        vectors = enabled && VECTOR_API ? new VectorScanner() : null;
+    }
+
+    /* setOutput()
+        @output     where to print error messages, System.out by default
+
+        Lexers running side by side can each print to a buffer of their own.
+    */
+    public void setOutput(PrintStream output) {
+        out = output;
+    }
+
+    /* diagnostics()
+        @return     the errors reported about the current input so far
+    */
+    public List<Diagnostic> diagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    /* fileName()
+        @return     name of the input being lexed, empty for strings
+
+        Messages about the input are prefixed with this name.
+    */
+    public String fileName() {
+        return fileName;
     }
 
     /* readFile()
         @inputFile      name of text file containing a grammar
 
-        Open a file and read its entire contents into the Lexer. Reset the old
-        values of all class variables.
+        Memory map a file and lex its bytes in place. Reset the old values of
+        all class variables.
     */
     public void readFile(String inputFile) {
-        try {
-            fileName = inputFile;
-            source.setLength(0);
-
-            Scanner reader = new Scanner(new File(inputFile));
-            while (reader.hasNextLine()) {
-                source.append(reader.nextLine());
-                // nextLine trims newline chars, so we can add our own \n
-                source.append('\n');
-                // then we don't have to deal with windows \r bullshit
-            }
-        } catch (FileNotFoundException e) {
+        if (!openFile(inputFile)) {
             System.err.printf("ERROR: could not open input file %s\n",
                               inputFile);
             System.exit(1);
         }
+    }
+
+    /* openFile()
+        @inputFile      name of text file containing a grammar
+        @return         false if the file couldn't be opened, in which case
+                        the Lexer is left as it was
 
+        Like readFile(), but leave it to the caller what to do about a file
+        that can't be opened.
+    */
+    public boolean openFile(String inputFile) {
+        SourceText mapped;
+        try {
+            mapped = SourceText.map(Path.of(inputFile));
+        } catch (IOException | InvalidPathException e) {
+            return false;
+        }
+        fileName = inputFile;
+        stream = null;
+        window = null;
+        source = mapped;
         sourceLen = source.length();
-        currPos = 0;
-        lineNum = 0;
-        beginningOfLine = 0;
+        reset();
+        return true;
     }
 
     /* readString
@@ -67,12 +208,161 @@ public class Lexer {
     */
     public void readString(String inputString) {
         fileName = "";
-        source.setLength(0);
-        source.append(inputString);
+        stream = null;
+        window = null;
+        source = SourceText.of(inputString);
         sourceLen = source.length();
+        reset();
+    }
+
+    /* readRegion()
+        @text           a whole grammar
+        @start          index of the first char to lex, at the start of a
+                        line and outside of any comment
+        @end            index right after the last char to lex
+        @line           line that start is on, counting from 0
+
+        Lex only part of a source, e.g. the productions an edit touched.
+        Tokens and errors keep their places in the whole source, and end
+        looks like the end of input. Reset the old values of all class
+        variables.
+    */
+    void readRegion(SourceText text, int start, int end, int line) {
+        fileName = "";
+        stream = null;
+        window = null;
+        source = text;
+        sourceLen = end;
+        reset();
+        tokenStart = start;
+        currPos = start;
+        lineNum = line;
+        beginningOfLine = start;
+        consumedLineNum = line;
+        consumedBol = start;
+    }
+
+    /* readStream()
+        @inputName      name of the input, used in error messages
+        @channel        where the grammar is read from
+
+        Lex a grammar while it is being read, e.g. from a pipe. Only a window
+        of the input is kept in memory, so tokens get their lexemes copied out
+        instead of pointing into the source. Reset the old values of all class
+        variables.
+    */
+    public void readStream(String inputName, ReadableByteChannel channel) {
+        openStream(inputName, channel, StandardCharsets.UTF_8);
+    }
+
+    /* readStream()
+        @inputName      name of the input, used in error messages
+        @reader         where the grammar is read from
+
+        Lex a grammar while it is being read from a Reader, one byte per char
+        (see SourceText.encode()).
+    */
+    public void readStream(String inputName, Reader reader) {
+        openStream(inputName, new ReaderChannel(reader),
+                   StandardCharsets.ISO_8859_1);
+    }
+
+    /* openStream()
+        @inputName      name of the input, used in error messages
+        @channel        where the grammar is read from
+        @charset        encoding of the bytes, for printing error lines
+
+        Start lexing from an empty window that refill() reads into.
+    */
+    private void openStream(String inputName, ReadableByteChannel channel,
+                            Charset charset) {
+        fileName = inputName;
+        stream = channel;
+        window = new byte[WINDOW_SIZE];
+        windowCharset = charset;
+        source = new SourceText(ByteBuffer.wrap(window), windowCharset);
+        sourceLen = 0;
+        reset();
+    }
+
+    /* reset()
+
+        Rewind to the start of the source and drop all buffered lookahead.
+    */
+    private void reset() {
+        diagnostics.clear();
+        sourceBase = 0;
+        tokenStart = 0;
         currPos = 0;
         lineNum = 0;
         beginningOfLine = 0;
+        newlineRead = -1;
+        previousBol = 0;
+        aheadFirst = 0;
+        aheadCount = 0;
+        consumedLineNum = 0;
+        consumedBol = 0;
+        consumedNewline = true;
+    }
+
+    /* windowCapacity()
+        @return     size of the stream window, or 0 if the input isn't
+                    streamed
+    */
+    int windowCapacity() {
+        return window == null ? 0 : window.length;
+    }
+
+    /* refill()
+        @return     true if more input was read, false at the end of input
+
+        Slide the stream window past everything that is no longer needed and
+        read more input into it. Kept are the current token and the lines that
+        the scanner and error() are on, and the window only grows when they
+        don't fit.
+    */
+    private boolean refill() {
+        if (stream == null)
+            return false;
+        int keep = Math.min(tokenStart, Math.min(beginningOfLine, consumedBol));
+        int kept = sourceLen-keep;
+        if (kept == window.length) {
+            byte[] bigger = new byte[window.length*2];
+            System.arraycopy(window, keep-sourceBase, bigger, 0, kept);
+            window = bigger;
+            source = new SourceText(ByteBuffer.wrap(window), windowCharset);
+        } else {
+            System.arraycopy(window, keep-sourceBase, window, 0, kept);
+        }
+        sourceBase = keep;
+
+        int n;
+        try {
+            ByteBuffer free = ByteBuffer.wrap(window, kept, window.length-kept);
+            do {
+                n = stream.read(free);
+            } while (n == 0);
+        } catch (IOException e) {
+            System.err.printf("ERROR: could not read input %s\n", fileName);
+            System.exit(1);
+            return false;
+        }
+        if (n < 0) {
+            stream = null;
+            return false;
+        }
+        sourceLen += n;
+        return true;
+    }
+
+    /* charAt()
+        @pos        index of a char that was already read
+        @return     the char at pos
+
+        Look up a char by its index in the whole input.
+    */
+    private char charAt(int pos) {
+        return source.charAt(pos-sourceBase);
     }
 
     /* nextChar()
@@ -82,13 +372,15 @@ public class Lexer {
     */
     private char nextChar() {
         char c;
-        if (currPos >= sourceLen) {
+        if (currPos >= sourceLen && !refill()) {
             return '\0';
         }
 
-        c = source.charAt(currPos);
+        c = charAt(currPos);
         currPos++;
         if (c == '\n') {
+            newlineRead = currPos-1;
+            previousBol = beginningOfLine;
             beginningOfLine = currPos;
             lineNum++;
         }
@@ -101,22 +393,43 @@ public class Lexer {
         Retrieve the next character without consuming it.
     */
     private char peekChar() {
-        if (currPos >= sourceLen)
+        if (currPos >= sourceLen && !refill())
             return '\0';
         // currPos is always one ahead of the char read by nextChar()
         // so just checking currPos is peeking
-        return source.charAt(currPos);
+        return charAt(currPos);
+    }
+
+    /* fastForward()
+        @run        kind of run to skip, a VectorScanner constant
+
+        Skip as much of a run of chars as the Vector API can, starting at
+        currPos. Only comments can contain newlines, and those are counted
+        just like nextChar() would.
+    */
+    private void fastForward(int run) {
+        if (vectors == null)
+            return;
+        int from = currPos-sourceBase;
+        int to = vectors.skip(run, source.buffer(), from, sourceLen-sourceBase);
+        if (vectors.newlines() != 0) {
+            lineNum += vectors.newlines();
+            beginningOfLine = sourceBase+vectors.afterLastNewline();
+        }
+        currPos += to-from;
     }
 
     /* trimLeft()
 
         Skip all whitespace characters at the current position of the file
         reader. this.ch will store the next, unconsumed, non-whitespace
-        character in the input file.
+        character in the input file. Windows line endings are handled here by
+        treating \r as whitespace, so \r\n lexes like \n.
     */
     private void trimLeft() {
+        fastForward(VectorScanner.BLANKS);
         char c = peekChar();
-        while (c == ' ' || c == '\t') {
+        while (c == ' ' || c == '\t' || c == '\r') {
             nextChar();
             c = peekChar();
         }
@@ -128,30 +441,77 @@ public class Lexer {
         // currPos to the 2nd char after the last whitespace.
     }
 
-    /* lex()
-        @return         the next token
+    /* scanNext()
+        @return     type of the next token in the source
 
-        Find the next token and return it.
+        Scan the next token with whichever engine is in use.
     */
-    public Token lex() {
+    private TkType scanNext() {
+        return tableScanner ? scanTable() : scan();
+    }
+
+    /* lexeme()
+        @start      index of the token's first char
+        @type       token type
+        @return     lexeme of the token ending at the current position
+
+        Copy a lexeme out of the source. Only needed when streaming, since the
+        window will be overwritten.
+    */
+    private String lexeme(TkType type, int start) {
+        String lexeme = Token.fixedLexeme(type);
+        if (lexeme == null) {
+            // the start of an unterminated comment may have been discarded,
+            // but ILLEGAL lexemes are garbage anyway
+            int from = Math.max(start, sourceBase)-sourceBase;
+            lexeme = source.subSequence(from, currPos-sourceBase);
+        }
+        return lexeme;
+    }
+
+    /* makeToken()
+        @type       token type
+        @return     the token that the scanner just found
+
+        Make a token that points into the source instead of copying its text.
+    */
+    private Token makeToken(TkType type) {
+        if (window == null)
+            return new Token(source, type, lexemeStart, currPos, lexemeLine,
+                             lexemeStart-lexemeBol);
+        return new Token(lexeme(type, lexemeStart), type, lexemeStart,
+                         lexemeLine, lexemeStart-lexemeBol);
+    }
+
+    /* scan()
+        @return         type of the next token in the source
+
+        Run the state machine over the source to find the next token. It
+        starts at lexemeStart, on line lexemeLine, and ends at currPos. Every
+        call scans new characters, so only the lookahead buffer and
+        tokenizeAll() call this.
+    */
+    private TkType scan() {
         char c;
-        StringBuilder lexeme = new StringBuilder();
-        int lexemeStart;
         LexerState state;
         TkType type = TkType.ILLEGAL;
 
         // get next meaningful character
         trimLeft();
         lexemeStart = currPos;
+        lexemeLine = lineNum;
+        lexemeBol = beginningOfLine;
+        tokenStart = lexemeStart;
         c = nextChar();
 
-        if (c == '\0')
-            return new Token("", TkType.EOF, currPos);
+        if (c == '\0') {
+            lexemeStart = currPos;
+            return TkType.EOF;
+        }
 
         state = LexerState.START;
         while (state != LexerState.ACCEPT) {
             if (state == LexerState.START) {
-                lexeme.append(c);
                 if (Character.isLetterOrDigit(c) || c == '_')
                     state = LexerState.EBNF_CHAR;
                 switch (c) {
@@ -165,7 +525,7 @@ public class Lexer {
                     state = LexerState.IN_STRING;
                     break;
                 case '=':
-                    return new Token("=", TkType.EQUAL, lexemeStart);
+                    return TkType.EQUAL;
                 case ':':
                     state = LexerState.DERIVES1;
                     break;
@@ -173,39 +533,39 @@ public class Lexer {
                     state = LexerState.MAYBE_LPAREN;
                     break;
                 case ')':
-                    return new Token(")", TkType.RPAREN, lexemeStart);
+                    return TkType.RPAREN;
                 case '{':
-                    return new Token("{", TkType.LCURLY, lexemeStart);
+                    return TkType.LCURLY;
                 case '}':
-                    return new Token("}", TkType.RCURLY, lexemeStart);
+                    return TkType.RCURLY;
                 case '[':
-                    return new Token("[", TkType.LBRACKET, lexemeStart);
+                    return TkType.LBRACKET;
                 case ']':
-                    return new Token("]", TkType.RBRACKET, lexemeStart);
+                    return TkType.RBRACKET;
                 case '|':
-                    return new Token("|", TkType.PIPE, lexemeStart);
+                    return TkType.PIPE;
                 case '*':
-                    return new Token("*", TkType.STAR, lexemeStart);
+                    return TkType.STAR;
                 case '+':
-                    return new Token("+", TkType.PLUS, lexemeStart);
+                    return TkType.PLUS;
                 case '?':
-                    return new Token("?", TkType.QUESTION, lexemeStart);
+                    return TkType.QUESTION;
                 case '\n':
-                    return new Token("\n", TkType.NEWLINE, lexemeStart);
+                    return TkType.NEWLINE;
                 case '.':
                     state = LexerState.DIRECTIVE;
                     break;
                 case ';':
                     state = LexerState.INLINE_COMMENT;
-                    lexeme.deleteCharAt(0);
                     break;
                 case '\0':
-                    return new Token("", TkType.EOF, currPos);
+                    lexemeStart = currPos;
+                    return TkType.EOF;
                 }
 
                 // no state transition ocurred, ie error
                 if (state == LexerState.START) {
-                    error(currPos-1, "illegal character");
+                    scanError(currPos-1, "illegal character");
                     break;
                 }
                 // do NOT put in a default switch case
@@ -215,28 +575,26 @@ public class Lexer {
                 c = nextChar();
                 if (Character.isLetterOrDigit(c) || c == '-') {
                     state = LexerState.BNF_CHAR;
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "illegal nonterminal character");
+                    scanError(currPos-1, "illegal nonterminal character");
                     break;
                 }
             } else if (state == LexerState.BNF_CHAR) {
+                fastForward(VectorScanner.BNF_CHAR);
                 c = nextChar();
                 if (Character.isLetterOrDigit(c) || c == '-') {
-                    lexeme.append(c);
                 } else if (c == '>') {
                     state = LexerState.ACCEPT;
                     type = TkType.BNF_IDENT;
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "unclosed nonterminal");
+                    scanError(currPos-1, "unclosed nonterminal");
                     break;
                 }
             } else if (state == LexerState.EBNF_CHAR) {
+                fastForward(VectorScanner.EBNF_CHAR);
                 c = peekChar();
                 if (Character.isLetterOrDigit(c) || c == '_') {
                     // stay in this state
-                    lexeme.append(c);
                     nextChar();
                 } else {
                     state = LexerState.ACCEPT;
@@ -246,15 +604,13 @@ public class Lexer {
                 c = nextChar();
                 if (c == '\\') {
                     state = LexerState.CHAR_ESCAPE;
-                    lexeme.append(c);
                 } else if (c == '\'') {
-                    error(currPos-1, "empty char literal");
+                    scanError(currPos-1, "empty char literal");
                     break;
                 } else if (c >= 32 && c <= 126) {
                     state = LexerState.END_CHAR;
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "illegal char literal");
+                    scanError(currPos-1, "illegal char literal");
                     break;
                 }
             } else if (state == LexerState.CHAR_ESCAPE) {
@@ -269,14 +625,13 @@ public class Lexer {
                 case 'f':
                 case 'v':
                     state = LexerState.END_CHAR;
-                    lexeme.append(c);
                     break;
                 }
                 // no state transition happened
                 if (state != LexerState.END_CHAR) {
                     // not in a default case because we can't break out of the
                     // while loop if we're in a switch
-                    error(currPos-1, "illegal char escape sequence");
+                    scanError(currPos-1, "illegal char escape sequence");
                     break;
                 }
             } else if (state == LexerState.END_CHAR) {
@@ -284,24 +639,21 @@ public class Lexer {
                 if (c == '\'') {
                     state = LexerState.ACCEPT;
                     type = TkType.CHAR;
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "char literal size exceeds 1 char");
+                    scanError(currPos-1, "char literal size exceeds 1 char");
                     break;
                 }
             } else if (state == LexerState.IN_STRING) {
+                fastForward(VectorScanner.IN_STRING);
                 c = nextChar();
                 if (c == '"') {
                     state = LexerState.ACCEPT;
                     type = TkType.STRING;
-                    lexeme.append(c);
                 } else if (c == '\\') {
                     state = LexerState.STRING_ESCAPE;
-                    lexeme.append(c);
                 } else if (c >= 32 && c <= 126) {
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "illegal string literal");
+                    scanError(currPos-1, "illegal string literal");
                     break;
                 }
             } else if (state == LexerState.STRING_ESCAPE) {
@@ -316,21 +668,19 @@ public class Lexer {
                 case 'f':
                 case 'v':
                     state = LexerState.IN_STRING;
-                    lexeme.append(c);
                     break;
                 }
                 // no state transition happened
                 if (state != LexerState.IN_STRING) {
                     // not in a default case because we can't break out of the
                     // while loop if we're in a switch
-                    error(currPos-1, "illegal string escape sequence");
+                    scanError(currPos-1, "illegal string escape sequence");
                     break;
                 }
             } else if (state == LexerState.DERIVES1) {
                 c = nextChar();
                 if (c == ':') {
                     state = LexerState.DERIVES2;
-                    lexeme.append(c);
                 } else {
                     String errorMsg;
                     if (c == '\n')
@@ -339,7 +689,7 @@ public class Lexer {
                         errorMsg = "unexpected \\t";
                     else
                         errorMsg = "expected :";
-                    error(currPos-1, errorMsg);
+                    scanError(currPos-1, errorMsg);
                     break;
                 }
             } else if (state == LexerState.DERIVES2) {
@@ -347,7 +697,6 @@ public class Lexer {
                 if (c == '=') {
                     state = LexerState.ACCEPT;
                     type = TkType.DERIVES;
-                    lexeme.append(c);
                 } else {
                     String errorMsg;
                     if (c == '\n')
@@ -356,25 +705,26 @@ public class Lexer {
                         errorMsg = "unexpected \\t";
                     else
                         errorMsg = "expected =";
-                    error(currPos-1, errorMsg);
+                    scanError(currPos-1, errorMsg);
                     break;
                 }
             } else if (state == LexerState.MAYBE_LPAREN) {
                 c = peekChar();
                 if (c == '*') {
                     state = LexerState.BEGIN_COMMENT;
-                    // delete the '(' that was appended during the start state
-                    lexeme.deleteCharAt(0);
+                    // the comment's text never ends up in a token
+                    tokenStart = Integer.MAX_VALUE;
                 } else {
                     state = LexerState.ACCEPT;
                     type = TkType.LPAREN;
                 }
             } else if (state == LexerState.BEGIN_COMMENT) {
+                fastForward(VectorScanner.BEGIN_COMMENT);
                 c = nextChar();
                 if (c == '*') {
                     state = LexerState.END_COMMENT;
                 } else if (c == '\0') {
-                    error(currPos-1, "unterminated comment");
+                    scanError(currPos-1, "unterminated comment");
                     break;
                 } // else c != '*' so cycle in this state
             } else if (state == LexerState.END_COMMENT) {
@@ -384,9 +734,12 @@ public class Lexer {
                     // reset state machine
                     trimLeft();
                     lexemeStart = currPos;
+                    lexemeLine = lineNum;
+                    lexemeBol = beginningOfLine;
+                    tokenStart = lexemeStart;
                     c = nextChar();
                 } else if (c == '\0') {
-                    error(currPos-1, "unterminated comment");
+                    scanError(currPos-1, "unterminated comment");
                     break;
                 } else if (c != '*') {
                     state = LexerState.BEGIN_COMMENT;
@@ -396,12 +749,10 @@ public class Lexer {
                 c |= 0x20;  // directives are case insensitive
                 if (c == 'e') {
                     state = LexerState.READ_E;
-                    lexeme.append(c);
                 } else if (c == 'b') {
                     state = LexerState.READ_B;
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "illegal directive");
+                    scanError(currPos-1, "illegal directive");
                     break;
                 }
             } else if (state == LexerState.READ_E) {
@@ -409,9 +760,8 @@ public class Lexer {
                 c |= 0x20;
                 if (c == 'b') {
                     state = LexerState.READ_B;
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "illegal directive");
+                    scanError(currPos-1, "illegal directive");
                     break;
                 }
             } else if (state == LexerState.READ_B) {
@@ -419,9 +769,8 @@ public class Lexer {
                 c |= 0x20;
                 if (c == 'n') {
                     state = LexerState.READ_N;
-                    lexeme.append(c);
                 } else {
-                    error(currPos-1, "illegal directive");
+                    scanError(currPos-1, "illegal directive");
                     break;
                 }
             } else if (state == LexerState.READ_N) {
@@ -429,43 +778,114 @@ public class Lexer {
                 c |= 0x20;
                 if (c == 'f') {
                     state = LexerState.ACCEPT;
-                    lexeme.append(c);
-                    if ((lexeme.charAt(1) | 0x20) == 'e')
+                    if ((charAt(lexemeStart+1) | 0x20) == 'e')
                         type = TkType.EBNF_MODE;
                     else
                         type = TkType.BNF_MODE;
                 } else {
-                    error(currPos-1, "illegal directive");
+                    scanError(currPos-1, "illegal directive");
                     break;
                 }
             } else { // state == LexerState.INLINE_COMMENT
+                fastForward(VectorScanner.INLINE_COMMENT);
                 c = nextChar();
                 if (c == '\n') {
                     state = LexerState.ACCEPT;
                     type = TkType.NEWLINE;
                     lexemeStart = currPos-1;
-                    lexeme.append(c);
+                    lexemeLine = lineNum-1;
+                    lexemeBol = previousBol;
+                } else if (c == '\0') {
+                    // comment on the last line, with no \n before EOF
+                    lexemeStart = currPos;
+                    return TkType.EOF;
                 }
             }
         } // endwhile
-        return new Token(lexeme.toString(), type, lexemeStart);
+        return type;
     }
 
-    /* printCurrLine()
+    /* scanTable()
+        @return         type of the next token in the source
 
-        Print the current line that the Lexer is reading.
+        Table-driven version of scan(). Every step is a single table lookup on
+        the current state and the class of the next char.
     */
-    private void printCurrLine() {
-        int i = beginningOfLine;
-        char c;
-        while (i < sourceLen) {
-            c = source.charAt(i);
-            if (c == '\n')
+    private TkType scanTable() {
+        int state;
+        int entry;
+
+        trimLeft();
+        lexemeStart = currPos;
+        lexemeLine = lineNum;
+        lexemeBol = beginningOfLine;
+        tokenStart = lexemeStart;
+        state = LexerState.START.ordinal();
+        while (true) {
+            if (ScanTable.RUNS[state] >= 0)
+                fastForward(ScanTable.RUNS[state]);
+            entry = ScanTable.entry(state, peekChar());
+            switch (ScanTable.action(entry)) {
+            case ScanTable.SHIFT:
+                nextChar();
+                state = ScanTable.nextState(entry);
+                break;
+            case ScanTable.GOTO:
+                // only taken when a comment starts, and comment text never
+                // ends up in a token
+                tokenStart = Integer.MAX_VALUE;
+                state = ScanTable.nextState(entry);
                 break;
-            System.out.print(c);
-            i++;
+            case ScanTable.ACCEPT:
+                nextChar();
+                return ScanTable.type(entry);
+            case ScanTable.ACCEPT_PEEK:
+                return ScanTable.type(entry);
+            case ScanTable.ERROR:
+                nextChar();
+                scanError(currPos-1, ScanTable.message(entry));
+                return TkType.ILLEGAL;
+            case ScanTable.RESTART:
+                nextChar();
+                trimLeft();
+                lexemeStart = currPos;
+                lexemeLine = lineNum;
+                lexemeBol = beginningOfLine;
+                tokenStart = lexemeStart;
+                state = ScanTable.nextState(entry);
+                break;
+            case ScanTable.END_INLINE:
+                nextChar();
+                lexemeStart = currPos-1;
+                lexemeLine = lineNum-1;
+                lexemeBol = previousBol;
+                return TkType.NEWLINE;
+            case ScanTable.END:
+                nextChar();
+                lexemeStart = currPos;
+                return TkType.EOF;
+            default: // ScanTable.DIRECTIVE
+                nextChar();
+                if ((charAt(lexemeStart+1) | 0x20) == 'e')
+                    return TkType.EBNF_MODE;
+                return TkType.BNF_MODE;
+            }
         }
-        System.out.print("\n");
+    }
+
+    /* printLine()
+        @bol        index of the first char of the line
+
+        Print the line of source starting at bol, without its line ending.
+    */
+    private void printLine(int bol) {
+        int eol = bol;
+        while ((eol < sourceLen || refill()) && charAt(eol) != '\n')
+            eol++;
+        if (eol > bol && charAt(eol-1) == '\r')
+            eol--;
+        out.print(source.display(bol-sourceBase, eol-sourceBase));
+        out.print("\n");
     }
 
     /* error()
@@ -473,10 +893,43 @@ public class Lexer {
         @errorMsg       error message to print
 
         Print an error message, along with the line, line number, and an error
-        arrow.
+        arrow. The line is the one the most recently consumed token ended on.
     */
     public void error(int errorPos, String errorMsg) {
-        int gap = errorPos-beginningOfLine;
+        printError(errorPos, consumedLineNum, consumedBol, errorMsg);
+    }
+
+    /* scanError()
+        @errorPos       location of error char
+        @errorMsg       error message to print
+
+        Print an error message for the character the scanner is stuck on. If
+        that is a line break, it is left to be the next token, so the line
+        still ends in a NEWLINE and the parser can pick up again after it.
+    */
+    private void scanError(int errorPos, String errorMsg) {
+        int line = lineNum;
+        int bol = beginningOfLine;
+        if (errorPos == newlineRead && errorPos == currPos-1) {
+            currPos--;
+            lineNum--;
+            beginningOfLine = previousBol;
+            newlineRead = -1;
+        }
+        printError(errorPos, line, bol, errorMsg);
+    }
+
+    /* printError()
+        @errorPos       location of error char
+        @line           line number of the error
+        @bol            index of the first char of the error's line
+        @errorMsg       error message to print
+
+        Print an error message, along with the line, line number, and an error
+        arrow.
+    */
+    private void printError(int errorPos, int line, int bol, String errorMsg) {
+        int gap = errorPos-bol;
         if (gap == -1) {
             // this only happens if we have \n before EOF
             // currPos and beginningOfLine will be equal: (index of \n) + 1
@@ -484,12 +937,13 @@ public class Lexer {
             gap = 0;
             // increment gap so that a negative index isn't printed
         }
-        System.out.printf("%s:%d:%d: error: %s\n", fileName, lineNum+1,
-                          gap, errorMsg);
-        System.out.printf("    %-3d|", lineNum+1);
-        printCurrLine();
+        diagnostics.add(new Diagnostic(line+1, gap, errorMsg));
+        out.printf("%s:%d:%d: error: %s\n", fileName, line+1, gap,
+                   errorMsg);
+        out.printf("    %-3d|", line+1);
+        printLine(bol);
 
-        System.out.print("       |");
+        out.print("       |");
 
         // determine number of spaces to print to ensure 8-wide tab alignment
         int numSpaces = 0;
@@ -497,7 +951,7 @@ public class Lexer {
         for (int i = 0; i < gap; i++) {
             if (tabAlign == 8)
                 tabAlign = 0;
-            if (source.charAt(beginningOfLine+i) == '\t') {
+            if (charAt(bol+i) == '\t') {
                 for (int j = 0; j < (8-tabAlign); j++)
                     numSpaces++;
                 tabAlign = 0;
@@ -506,8 +960,64 @@ public class Lexer {
                 tabAlign++;
             }
         }
-        System.out.print(" ".repeat(numSpaces));
-        System.out.print("^\n\n");
+        out.print(" ".repeat(numSpaces));
+        out.print("^\n\n");
+    }
+
+    /* fill()
+        @k      number of tokens that must be buffered
+
+        Scan tokens into the lookahead ring until it holds at least k of them.
+    */
+    private void fill(int k) {
+        if (k > ahead.length)
+            grow(k);
+        int mask = ahead.length-1;
+        while (aheadCount < k) {
+            int slot = (aheadFirst+aheadCount) & mask;
+            ahead[slot] = makeToken(scanNext());
+            aheadLineNum[slot] = lineNum;
+            aheadBol[slot] = beginningOfLine;
+            aheadCount++;
+        }
+    }
+
+    /* grow()
+        @k      number of tokens the ring must be able to hold
+
+        Enlarge the lookahead ring to the next power of two that fits k tokens,
+        keeping the buffered tokens in order.
+    */
+    private void grow(int k) {
+        int capacity = ahead.length;
+        while (capacity < k)
+            capacity <<= 1;
+        Token[] newAhead = new Token[capacity];
+        int[] newLineNum = new int[capacity];
+        int[] newBol = new int[capacity];
+        int mask = ahead.length-1;
+        for (int i = 0; i < aheadCount; i++) {
+            int slot = (aheadFirst+i) & mask;
+            newAhead[i] = ahead[slot];
+            newLineNum[i] = aheadLineNum[slot];
+            newBol[i] = aheadBol[slot];
+        }
+        ahead = newAhead;
+        aheadLineNum = newLineNum;
+        aheadBol = newBol;
+        aheadFirst = 0;
+    }
+
+    /* peek()
+        @k          how far to look ahead, 1 being the next token
+        @return     the k-th upcoming token
+
+        Returns an upcoming token in the input without consuming it. Each token
+        is only scanned once, no matter how often it gets peeked.
+    */
+    public Token peek(int k) {
+        fill(k);
+        return ahead[(aheadFirst+k-1) & (ahead.length-1)];
     }
 
     /* peek()
@@ -516,13 +1026,111 @@ public class Lexer {
         Returns the next token in the input without consuming it.
     */
     public Token peek() {
-        int saveCurrPos = currPos;
-        int saveLineNum = lineNum;
-        int saveBol = beginningOfLine;
-        Token tk = lex();
-        currPos = saveCurrPos;
-        lineNum = saveLineNum;
-        beginningOfLine = saveBol;
+        return peek(1);
+    }
+
+    /* lex()
+        @return         the next token
+
+        Find the next token, consume it, and return it.
+    */
+    public Token lex() {
+        fill(1);
+        Token tk = ahead[aheadFirst];
+        consume();
         return tk;
     }
-}
\ No newline at end of file
+
+    /* consume()
+
+        Consume the next token without returning it. Meant to be used after
+        peek() has already shown what the token is.
+    */
+    public void consume() {
+        fill(1);
+        consumedLineNum = aheadLineNum[aheadFirst];
+        consumedBol = aheadBol[aheadFirst];
+        consumedNewline = ahead[aheadFirst].type() == TkType.NEWLINE;
+        ahead[aheadFirst] = null;
+        aheadFirst = (aheadFirst+1) & (ahead.length-1);
+        aheadCount--;
+    }
+
+    /* atLineStart()
+        @return     whether the next token is the first of its line, i.e. the
+                    token consumed last is a NEWLINE, or there is none
+    */
+    public boolean atLineStart() {
+        return consumedNewline;
+    }
+
+    /* tokenizeAll()
+        @return     every remaining token, ending with EOF
+
+        Consume the rest of the input in one go, without making a Token object
+        per token. Tokens that were already peeked come first. When streaming,
+        the lexemes are copied out since the window gets overwritten.
+    */
+    public TokenStream tokenizeAll() {
+        boolean streaming = window != null;
+        TokenStream tokens = new TokenStream(streaming ? null : source);
+        while (aheadCount > 0) {
+            Token tk = ahead[aheadFirst];
+            tokens.add(tk.type(), tk.startPos(), tk.endPos(), tk.line(),
+                       tk.column(), streaming ? tk.lexeme() : null);
+            consume();
+            if (tk.type() == TkType.EOF)
+                return tokens;
+        }
+        TkType type;
+        do {
+            type = scanNext();
+            tokens.add(type, lexemeStart, currPos, lexemeLine,
+                       lexemeStart-lexemeBol,
+                       streaming ? lexeme(type, lexemeStart) : null);
+            // as consume() would, so refill() can let go of the lines
+            // before this one
+            consumedLineNum = lineNum;
+            consumedBol = beginningOfLine;
+        } while (type != TkType.EOF);
+        consumedNewline = false;
+        return tokens;
+    }
+
+    /* ReaderChannel
+
+        Adapt a Reader to the byte channel that streaming reads from, one byte
+        per char.
+    */
+    private static final class ReaderChannel implements ReadableByteChannel {
+        private final Reader reader;
+        private final char[] chars;
+        private boolean open;
+
+        ReaderChannel(Reader reader) {
+            this.reader = reader;
+            this.chars = new char[WINDOW_SIZE];
+            this.open = true;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int n = reader.read(chars, 0, Math.min(chars.length,
+                                                    dst.remaining()));
+            for (int i = 0; i < n; i++)
+                dst.put(SourceText.encode(chars[i]));
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            reader.close();
+        }
+    }
+}
@@ -3,20 +3,375 @@
 Read a grammar file written in BNF or EBNF, parse it for syntax errors, and
 analyze if it specifies an LL(1) or LR(1) grammar.
 
+Given more than one file, a directory or a glob pattern, check all the files
+they stand for in parallel, and exit with 1 if any of them isn't a valid
+grammar (see Batch).
+
+Options come before the file names:
+
+    --lalr      check for LALR(1) instead of LR(1)
+    --pager     check for LR(1) with Pager's merged automaton, which has
+                about as few states as the LALR(1) one
+    --jobs=N    use N threads instead of one per processor
+    --max-errors=N
+                stop reporting syntax errors after N of them, 100 by default
+    --serve     take check and analyze requests as JSON lines on stdin
+                instead of reading files, answering on stdout
+    --serve=S   the same over the Unix domain socket S (see Server)
+    --cache=D   replay the results of files checked before with the same
+                options from the directory D instead of checking them
+                again (see Cache)
+    --cache-size=N
+                keep at most N megabytes of results, 64 by default
+    --tables=F  save the analyzed grammar and its LL(1) and LR tables to the
+                file F, for other tools to load (see TableFile), and print
+                how well the LR tables compressed (see CompressedTable)
+    --java=F    if the grammar is LL(1), write a recognizer for it to the
+                Java source file F, as a class named after the file (see
+                JavaGenerator)
+    --java-style=S
+                table for a table-driven recognizer, the default, or descent
+                for a recursive descent one
+
 */
 
 package com.andispajk.backuslpa;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 public class Main {
+    // default size limit of the cache, in megabytes
+    private static final long CACHE_SIZE = 64;
+
+    // which LR automaton to check the grammar with
+    enum Automaton {
+        CANONICAL,
+        LALR,
+        PAGER;
+
+        LRTable build(FirstFollow sets, ForkJoinPool pool) {
+            return switch (this) {
+                case CANONICAL -> new LR1(sets, pool).table();
+                case LALR -> new LALR(sets).table();
+                case PAGER -> new Pager(sets).table();
+            };
+        }
+
+        // what a grammar without conflicts is
+        String verdict() {
+            return this == LALR ? "LALR(1)" : "LR(1)";
+        }
+    }
+
+    /* Outputs
+        @tables     file to save the tables to, or null
+        @java       Java source file to write a recognizer to, or null
+        @style      what kind of recognizer to write
+    */
+    private record Outputs(Path tables, Path java, JavaGenerator.Style style) {
+        static final Outputs NONE = new Outputs(null, null, null);
+
+        boolean any() {
+            return tables != null || java != null;
+        }
+    }
+
     public static void main(String[] args) {
-        if (args.length != 1) {
+        Automaton automaton = Automaton.CANONICAL;
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        String serve = null;
+        String cacheDir = null;
+        long cacheSize = CACHE_SIZE;
+        Path tables = null;
+        Path java = null;
+        JavaGenerator.Style style = JavaGenerator.Style.TABLE;
+        int maxErrors = Parser.MAX_ERRORS;
+        int arg = 0;
+        for (; arg < args.length && args[arg].startsWith("--"); arg++) {
+            if (args[arg].equals("--lalr")) {
+                automaton = Automaton.LALR;
+            } else if (args[arg].equals("--pager")) {
+                automaton = Automaton.PAGER;
+            } else if (args[arg].startsWith("--jobs=")) {
+                int jobs = parseCount(args[arg].substring(7));
+                if (jobs < 1) {
+                    System.out.println("invalid number of jobs " +
+                                       args[arg].substring(7));
+                    System.exit(1);
+                }
+                pool = new ForkJoinPool(jobs);
+            } else if (args[arg].startsWith("--max-errors=")) {
+                maxErrors = parseCount(args[arg].substring(13));
+                if (maxErrors < 1) {
+                    System.out.println("invalid number of errors " +
+                                       args[arg].substring(13));
+                    System.exit(1);
+                }
+            } else if (args[arg].equals("--serve")) {
+                serve = "";
+            } else if (args[arg].startsWith("--serve=")) {
+                serve = args[arg].substring(8);
+            } else if (args[arg].startsWith("--cache=")) {
+                cacheDir = args[arg].substring(8);
+            } else if (args[arg].startsWith("--tables=")) {
+                try {
+                    tables = Path.of(args[arg].substring(9));
+                } catch (InvalidPathException e) {
+                    System.out.println("invalid tables file " +
+                                       args[arg].substring(9));
+                    System.exit(1);
+                }
+            } else if (args[arg].startsWith("--java=")) {
+                try {
+                    java = Path.of(args[arg].substring(7));
+                } catch (InvalidPathException e) {
+                    java = null;
+                }
+                if (java == null ||
+                    !JavaGenerator.isIdentifier(className(java))) {
+                    System.out.println("invalid Java file " +
+                                       args[arg].substring(7));
+                    System.exit(1);
+                }
+            } else if (args[arg].equals("--java-style=table")) {
+                style = JavaGenerator.Style.TABLE;
+            } else if (args[arg].equals("--java-style=descent")) {
+                style = JavaGenerator.Style.DESCENT;
+            } else if (args[arg].startsWith("--cache-size=")) {
+                cacheSize = parseCount(args[arg].substring(13));
+                if (cacheSize < 1) {
+                    System.out.println("invalid cache size " +
+                                       args[arg].substring(13));
+                    System.exit(1);
+                }
+            } else {
+                System.out.println("unknown option " + args[arg]);
+                System.exit(1);
+            }
+        }
+        if (serve != null) {
+            if (args.length != arg) {
+                System.out.println("no files are read with --serve");
+                System.exit(1);
+            }
+            serve(serve, automaton, pool);
+            return;
+        }
+        if (args.length == arg) {
             System.out.println("invalid number of cmdline args");
             System.exit(1);
         }
-        Lexer lexer = new Lexer();
-        lexer.readFile(args[0]);
+        Cache cache = null;
+        if (cacheDir != null) {
+            try {
+                cache = new Cache(Path.of(cacheDir), cacheSize << 20);
+            } catch (IOException | InvalidPathException e) {
+                System.out.println("could not use cache directory " +
+                                   cacheDir);
+                System.exit(1);
+            }
+        }
+        List<String> files = Arrays.asList(args).subList(arg, args.length);
+        String file = files.get(0);
+        Automaton chosen = automaton;
+        ForkJoinPool threads = pool;
+        int limit = maxErrors;
+        Outputs outputs = new Outputs(tables, java, style);
+        String options = automaton.name() + " " + maxErrors;
+        if (files.size() == 1 &&
+            (file.equals("-") || Batch.expand(file).equals(files) &&
+                                 !Files.isDirectory(Path.of(file)))) {
+            if (file.equals("-")) {
+                Lexer lexer = new Lexer();
+                lexer.readStream("<stdin>", Channels.newChannel(System.in));
+                check(lexer, System.out, automaton, pool, maxErrors,
+                      outputs);
+                return;
+            }
+            Batch.Checker checker = (name, out) -> {
+                Lexer lexer = new Lexer();
+                lexer.setOutput(out);
+                lexer.readFile(name);
+                return check(lexer, out, chosen, threads, limit, outputs);
+            };
+            // a result from the cache wouldn't write the outputs
+            if (cache != null && !outputs.any())
+                checker = cache.wrap(checker, options);
+            checker.check(file, System.out);
+            System.out.flush();
+            return;
+        }
+        if (outputs.any()) {
+            System.out.println("tables and recognizers can only be written " +
+                               "for one file");
+            System.exit(1);
+        }
+        Batch.Checker checker = (name, out) -> {
+            Lexer lexer = new Lexer();
+            lexer.setOutput(out);
+            if (!lexer.openFile(name)) {
+                out.printf("ERROR: could not open input file %s\n", name);
+                return false;
+            }
+            return check(lexer, out, chosen, threads, limit, Outputs.NONE);
+        };
+        if (cache != null)
+            checker = cache.wrap(checker, options);
+        System.exit(Batch.run(files, checker, pool));
+    }
+
+    /* check()
+        @lexer      a Lexer with a grammar to read
+        @out        where to print the results
+        @automaton  the LR automaton to build
+        @pool       pool to run the analyses on
+        @maxErrors  syntax errors to report at most
+        @outputs    files to write the analysis to
+        @return     whether the grammar is syntactically valid
+    */
+    private static boolean check(Lexer lexer, PrintStream out,
+                                 Automaton automaton, ForkJoinPool pool,
+                                 int maxErrors, Outputs outputs) {
         Parser parser = new Parser(lexer);
-        if (parser.parseGrammar())
-            System.out.println("success");
+        parser.setErrorLimit(maxErrors);
+        if (!parser.parseGrammar())
+            return false;
+        out.println("success");
+        analyze(lexer.fileName(), parser.grammar(), out, automaton, pool,
+                outputs);
+        return true;
+    }
+
+    /* serve()
+        @socket     path of a Unix domain socket, or empty for stdin/stdout
+        @automaton  the LR automaton to build when a request doesn't say
+        @pool       pool to run the analyses on
+    */
+    private static void serve(String socket, Automaton automaton,
+                              ForkJoinPool pool) {
+        try {
+            if (!socket.isEmpty()) {
+                Server.listen(Path.of(socket), automaton, pool);
+                return;
+            }
+            new Server(automaton, pool).serve(
+                new BufferedReader(new InputStreamReader(
+                    System.in, StandardCharsets.UTF_8)),
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.printf("ERROR: %s\n", e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static int parseCount(String count) {
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /* analyze()
+        @fileName   name of the grammar's input, for messages
+        @grammar    a syntactically valid grammar
+        @out        where to print the results
+        @automaton  the LR automaton to build
+        @pool       pool to run the analyses on
+        @outputs    files to write the analysis to
+
+        Check if the grammar is LL(1) and LR(1), and print every conflict
+        that keeps it from being either. EBNF constructs are desugared into
+        helper nonterminals first. A grammar without productions has no
+        start symbol to build an automaton from, so it isn't analyzed.
+    */
+    private static void analyze(String fileName, Grammar grammar,
+                                PrintStream out, Automaton automaton,
+                                ForkJoinPool pool, Outputs outputs) {
+        if (grammar.startSymbol() < 0) {
+            out.println("no productions to analyze");
+            return;
+        }
+        if (!grammar.isBnf())
+            grammar = new Desugarer(grammar).grammar();
+        LL1 ll1 = new LL1(new FirstFollow(grammar, pool));
+        for (LL1.Conflict conflict : ll1.conflicts())
+            out.printf("%s:%d:%d: conflict: %s\n", fileName,
+                       grammar.line(conflict.other())+1,
+                       grammar.column(conflict.other()),
+                       ll1.describe(conflict));
+        out.println(ll1.isLL1() ? "LL(1)" : "not LL(1)");
+
+        LRTable table = automaton.build(ll1.sets(), pool);
+        for (LRTable.Conflict conflict : table.conflicts())
+            out.printf("%s:%d:%d: conflict: %s\n", fileName,
+                       table.line(conflict)+1, table.column(conflict),
+                       table.describe(conflict));
+        String verdict = automaton.verdict();
+        out.println(table.hasConflicts() ? "not " + verdict : verdict);
+
+        if (outputs.tables() != null) {
+            try {
+                CompressedTable.Stats stats = TableFile.save(
+                    outputs.tables(), ll1, table, automaton == Automaton.LALR);
+                out.printf("LR tables compressed from %d to %d entries " +
+                           "(%.1f%%): %d distinct action rows for %d " +
+                           "states, %d default reductions\n",
+                           stats.fullSize(), stats.size(),
+                           100*stats.ratio(), stats.actionRows(),
+                           stats.states(), stats.defaultReductions());
+            } catch (IOException e) {
+                out.printf("ERROR: could not save tables to %s\n",
+                           outputs.tables());
+            }
+        }
+        if (outputs.java() != null)
+            writeJava(outputs.java(), outputs.style(), ll1, out);
+    }
+
+    /* writeJava()
+        @file       the Java source file to write
+        @style      what kind of recognizer to write
+        @ll1        the LL(1) analysis of the grammar
+        @out        where to print problems
+
+        Only a grammar without LL(1) conflicts gets a recognizer.
+    */
+    private static void writeJava(Path file, JavaGenerator.Style style,
+                                  LL1 ll1, PrintStream out) {
+        if (!ll1.isLL1()) {
+            out.printf("%s not written: the grammar is not LL(1)\n", file);
+            return;
+        }
+        try {
+            Files.writeString(file, new JavaGenerator(ll1).generate(
+                style, "", className(file)));
+        } catch (IllegalArgumentException e) {
+            out.printf("ERROR: could not write %s: %s\n", file,
+                       e.getMessage());
+        } catch (IOException e) {
+            out.printf("ERROR: could not write %s\n", file);
+        }
+    }
+
+    // the class a Java source file is for
+    private static String className(Path file) {
+        Path name = file.getFileName();
+        if (name == null)
+            return "";
+        String s = name.toString();
+        return s.endsWith(".java") ? s.substring(0, s.length()-5) : s;
     }
-}
\ No newline at end of file
+}
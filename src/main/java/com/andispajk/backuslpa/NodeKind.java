@@ -0,0 +1,17 @@
+/** NodeKind.java
+
+What a nonterminal in the grammar IR stands for. Named nonterminals come from
+the grammar itself; every other kind is an anonymous nonterminal made for an
+EBNF construct, whose productions are the alternatives inside it.
+
+*/
+
+package com.andispajk.backuslpa;
+
+public enum NodeKind {
+    RULE,       // named nonterminal
+    GROUP,      // ( )
+    OPTION,     // [ ] or ?, zero or one time
+    REPEAT,     // { } or *, zero or more times
+    PLUS        // +, one or more times
+}
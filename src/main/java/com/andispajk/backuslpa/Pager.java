@@ -0,0 +1,174 @@
+/** Pager.java
+
+Build an LR(1) automaton of a BNF grammar with Pager's weak compatibility
+merging, and its parse tables. It has the full power of canonical LR(1), but
+usually about as many states as the LALR(1) automaton.
+
+States are built like the canonical ones, except that a goto kernel is merged
+into an existing state with the same core when the two are weakly compatible:
+for every pair of items i and j, either their lookaheads don't cross,
+
+    L(i) & M(j) and L(j) & M(i) are both empty,
+
+or one of the kernels already has those items sharing a lookahead, so merging
+can't add a reduce/reduce conflict the canonical automaton doesn't have. When
+a merge grows a state's lookaheads, the state is queued to be expanded again,
+so the lookaheads reach its successors. States that end up unreachable are
+dropped, and the rest renumbered in the order they are reached.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class Pager {
+    private static final long[] NO_LOOKAHEADS = new long[0];
+
+    private final LRItems items;
+    private final int words;
+    private final List<LR1.Kernel> kernels;
+    // states by core, in the order they were created
+    private final Map<LR1.Kernel, List<Integer>> cores;
+    private final ArrayDeque<Integer> queue;
+    private final List<Boolean> queued;
+    private final LRTable table;
+    private final int states;
+
+    /* Pager()
+        @sets       FIRST and FOLLOW sets of a grammar
+
+        Build the automaton and fill its tables.
+    */
+    public Pager(FirstFollow sets) {
+        items = new LRItems(sets);
+        words = items.words();
+        kernels = new ArrayList<>();
+        cores = new HashMap<>();
+        queue = new ArrayDeque<>();
+        queued = new ArrayList<>();
+        long[] end = new long[words];
+        Bits.set(end, 0, SymbolTable.END);
+        intern(new LR1.Kernel(new int[] {items.item(items.augmented(), 0)},
+                              end));
+
+        List<int[]> transitions = new ArrayList<>();
+        List<LR1.Reductions> reductions = new ArrayList<>();
+        LR1.Closure closure = new LR1.Closure(items);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            queued.set(s, false);
+            LR1.Kernel kernel = kernels.get(s);
+            closure.compute(kernel);
+            int[] pairs = closure.gotos(kernel, this::intern);
+            while (transitions.size() <= s) {
+                transitions.add(null);
+                reductions.add(null);
+            }
+            transitions.set(s, pairs);
+            reductions.set(s, closure.reductions(kernel));
+        }
+
+        // number the reachable states breadth first
+        int[] number = new int[kernels.size()];
+        Arrays.fill(number, -1);
+        int[] order = new int[kernels.size()];
+        int count = 0;
+        number[0] = 0;
+        order[count++] = 0;
+        for (int i = 0; i < count; i++) {
+            int[] pairs = transitions.get(order[i]);
+            for (int k = 1; k < pairs.length; k += 2) {
+                if (number[pairs[k]] < 0) {
+                    number[pairs[k]] = count;
+                    order[count++] = pairs[k];
+                }
+            }
+        }
+        states = count;
+        table = new LRTable(items, states);
+        for (int s = 0; s < states; s++) {
+            int old = order[s];
+            table.setKernel(s, kernels.get(old).items);
+            int[] pairs = transitions.get(old);
+            for (int k = 0; k < pairs.length; k += 2)
+                table.transition(s, pairs[k], number[pairs[k+1]]);
+            reductions.get(old).addTo(table, s);
+        }
+    }
+
+    /* intern()
+        @kernel     kernel of a goto
+        @return     the state it leads to
+
+        Merge the kernel into the first weakly compatible state with the same
+        core, or make it a new state.
+    */
+    private int intern(LR1.Kernel kernel) {
+        LR1.Kernel core = new LR1.Kernel(kernel.items, NO_LOOKAHEADS);
+        List<Integer> candidates = cores.computeIfAbsent(
+            core, k -> new ArrayList<>());
+        for (int s : candidates) {
+            LR1.Kernel old = kernels.get(s);
+            if (!compatible(kernel.lookaheads, old.lookaheads,
+                            kernel.items.length))
+                continue;
+            long[] merged = old.lookaheads.clone();
+            if (Bits.or(merged, 0, kernel.lookaheads, 0, merged.length)) {
+                kernels.set(s, new LR1.Kernel(old.items, merged));
+                enqueue(s);
+            }
+            return s;
+        }
+        int s = kernels.size();
+        kernels.add(kernel);
+        queued.add(false);
+        candidates.add(s);
+        enqueue(s);
+        return s;
+    }
+
+    private void enqueue(int s) {
+        if (!queued.get(s)) {
+            queued.set(s, true);
+            queue.add(s);
+        }
+    }
+
+    /* compatible()
+        @l          lookaheads of a kernel's items, words apart
+        @m          lookaheads of the same core's items in another kernel
+        @n          number of items
+        @return     whether the kernels are weakly compatible
+    */
+    private boolean compatible(long[] l, long[] m, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int j = i+1; j < n; j++) {
+                if (!Bits.intersects(l, i*words, m, j*words, words) &&
+                    !Bits.intersects(l, j*words, m, i*words, words))
+                    continue;
+                if (!Bits.intersects(l, i*words, l, j*words, words) &&
+                    !Bits.intersects(m, i*words, m, j*words, words))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    public LRTable table() {
+        return table;
+    }
+
+    public int stateCount() {
+        return states;
+    }
+
+    public boolean isLR1() {
+        return !table.hasConflicts();
+    }
+}
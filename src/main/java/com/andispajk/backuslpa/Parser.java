@@ -1,21 +1,55 @@
 /** Parser.java
 
 Parse a BNF/EBNF grammar for syntactic correctness using recursive descent.
+Along the way, build the grammar's in-memory representation for the analyses.
 
 */
 
 package com.andispajk.backuslpa;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class Parser {
+    // errors to report before giving up on the rest of the input
+    public static final int MAX_ERRORS = 100;
+
     private final Lexer lexer;
     private Token tk;
     private TkType mode;
     private boolean foundUnmatchedSymbol;
+    private Grammar grammar;
+    // alternatives of the innermost right-hand side being parsed
+    private Rhs rhs;
+    private int errorLimit;
 
     public Parser(Lexer lexer) {
         this.lexer = lexer;
         mode = TkType.ILLEGAL;
         foundUnmatchedSymbol = false;
+        grammar = null;
+        rhs = null;
+        errorLimit = MAX_ERRORS;
+    }
+
+    /* setErrorLimit()
+        @limit      number of errors, counting the lexer's, after which the
+                    rest of the input is skipped, MAX_ERRORS by default
+    */
+    public void setErrorLimit(int limit) {
+        errorLimit = limit;
+    }
+
+    /* grammar()
+        @return     the grammar read by parseGrammar(), or null if no directive
+                    has been parsed yet
+
+        Productions are only added once they have been parsed completely, so
+        after syntax errors the grammar holds every production without one.
+    */
+    public Grammar grammar() {
+        return grammar;
     }
 
     /* foundUnmatchedSymbol()
@@ -46,7 +80,7 @@ public class Parser {
         tk = lexer.peek();
         while (tk.type() == TkType.NEWLINE) {
             // consume newline
-            lexer.lex();
+            lexer.consume();
             tk = lexer.peek();
         }
     }
@@ -61,6 +95,7 @@ public class Parser {
         TkType type = tk.type();
         if (type == TkType.BNF_MODE || type == TkType.EBNF_MODE) {
             mode = type;
+            grammar = new Grammar(mode);
             return true;
         } else {
             lexer.error(tk.startPos(), "no directive found");
@@ -81,7 +116,7 @@ public class Parser {
         else if (mode == TkType.EBNF_MODE && type != TkType.EBNF_IDENT)
             return false;
         // consume nonterminal symbol
-        lexer.lex();
+        lexer.consume();
         return true;
     }
 
@@ -91,13 +126,22 @@ public class Parser {
         Parse a grammar symbol token and consume it.
     */
     public boolean parseSymbol() {
-        if (matchNonterminal())
+        if (matchNonterminal()) {
+            if (grammar != null)
+                emit(grammar.symbols().nonterminal(tk.lexeme()), tk);
             return true;
+        }
         // matchNonterminal failed, so tk wasn't consumed
         TkType type = tk.type();
         if (type == TkType.CHAR || type == TkType.STRING) {
             // consume terminal symbol
-            lexer.lex();
+            lexer.consume();
+            String text = unquote(tk.lexeme());
+            if (rhs != null && text.isEmpty())
+                rhs.mark(tk);
+            else if (grammar != null)
+                emit(SymbolTable.encodeTerminal(
+                         grammar.symbols().terminal(text)), tk);
             return true;
         }
 
@@ -122,7 +166,7 @@ public class Parser {
         if (type == TkType.STAR || type == TkType.PLUS ||
             type == TkType.QUESTION) {
             // consume modifier
-            lexer.lex();
+            lexer.consume();
             return true;
         }
         return false;
@@ -134,9 +178,21 @@ public class Parser {
         Parse a factor and consume its tokens.
     */
     public boolean parseFactor() {
+        int from = rhs == null ? 0 : rhs.size;
         if (!parseSymbol())
             return false;
-        matchModifier();
+        Token symbol = tk;
+        if (matchModifier() && rhs != null && grammar != null) {
+            // the modified symbol becomes the only alternative of a node
+            Rhs body = new Rhs();
+            for (int i = from; i < rhs.size; i++)
+                body.add(rhs.symbols[i], symbol);
+            body.mark(symbol);
+            body.endAlternative();
+            rhs.size = from;
+            emit(node(modified(tk.type()), symbol.lexeme()+tk.lexeme(), body,
+                      symbol), symbol);
+        }
         return true;
     }
 
@@ -150,25 +206,37 @@ public class Parser {
         TkType opening = tk.type();
         TkType closing;
         String expected;
+        Token open = tk;
+        Rhs body;
         if (opening == TkType.LPAREN) {
             // consume left parenthesis
-            lexer.lex();
+            lexer.consume();
 
-            if (!parseRhs())
+            body = parseNested();
+            if (body == null)
                 return false;
 
-            tk = lexer.lex();
+            // the wrong token stays, for recovery to start a production at
+            tk = lexer.peek();
             if (tk.type() != TkType.RPAREN) {
                 lexer.error(tk.startPos(), "expected \")\"");
                 return false;
             }
+            lexer.consume();
 
-            matchModifier();
+            NodeKind kind = NodeKind.GROUP;
+            String name = "(" + body.describe(grammar) + ")";
+            if (matchModifier()) {
+                kind = modified(tk.type());
+                name += tk.lexeme();
+            }
+            emit(node(kind, name, body, open), open);
         } else if (opening == TkType.LBRACKET || opening == TkType.LCURLY) {
             // consume left curly brace or square bracket
-            lexer.lex();
+            lexer.consume();
 
-            if (!parseRhs())
+            body = parseNested();
+            if (body == null)
                 return false;
 
             if (opening == TkType.LBRACKET) {
@@ -178,12 +246,20 @@ public class Parser {
                 closing = TkType.RCURLY;
                 expected = "}";
             }
-            tk = lexer.lex();
+            tk = lexer.peek();
             if (tk.type() != closing) {
                 lexer.error(tk.startPos(), String.format("expected \"%s\"",
                                                          expected));
                 return false;
             }
+            lexer.consume();
+
+            if (opening == TkType.LBRACKET)
+                emit(node(NodeKind.OPTION, "[" + body.describe(grammar) + "]",
+                          body, open), open);
+            else
+                emit(node(NodeKind.REPEAT, "{" + body.describe(grammar) + "}",
+                          body, open), open);
         } else {
             return parseFactor();
         }
@@ -231,7 +307,9 @@ public class Parser {
             return false;
         }
         // consume pipe
-        lexer.lex();
+        lexer.consume();
+        if (rhs != null)
+            rhs.endAlternative();
         return parseRhs();
     }
 
@@ -246,8 +324,12 @@ public class Parser {
                 lexer.error(tk.startPos(), "expected nonterminal symbol");
             return false;
         }
+        Token name = tk;
+        int lhs = -1;
+        if (grammar != null)
+            lhs = grammar.symbols().nonterminal(name.lexeme());
 
-        tk = lexer.lex();
+        tk = lexer.peek();
         if (mode == TkType.BNF_MODE && tk.type() != TkType.DERIVES) {
             lexer.error(tk.startPos(), "expected \"::=\"");
             return false;
@@ -255,10 +337,12 @@ public class Parser {
             lexer.error(tk.startPos(), "expected \"=\"");
             return false;
         }
+        lexer.consume();
 
         foundUnmatchedSymbol = false;
         String unexpected;
-        if (!parseRhs() && foundUnmatchedSymbol) {
+        Rhs body = parseNested();
+        if (body == null && foundUnmatchedSymbol) {
             if (tk.type() == TkType.EOF)
                 unexpected = "EOF";
             else if (tk.type() == TkType.NEWLINE)
@@ -269,21 +353,258 @@ public class Parser {
                                                      unexpected));
             return false;
         }
+        if (body != null && grammar != null) {
+            grammar.define(lhs, name.startPos(), name.line(), name.column());
+            body.addTo(grammar, lhs);
+        }
         return true;
     }
 
     /* parseGrammar()
         @return     true if syntactically valid grammar is found, else false
 
-        Parse a grammar.
+        Parse a grammar, reporting every syntax error in it up to the error
+        limit.
     */
     public boolean parseGrammar() {
         trimNewlines();
         if (!parseDirective())
             return false;
+        return parseRules();
+    }
+
+    /* parseProductions()
+        @mode       TkType.BNF_MODE or TkType.EBNF_MODE
+        @return     true if the input is nothing but valid productions
+
+        Parse productions without a directive before them, as if one for
+        mode had been parsed, e.g. one block of a grammar being edited (see
+        IncrementalParser).
+    */
+    public boolean parseProductions(TkType mode) {
+        this.mode = mode;
+        grammar = new Grammar(mode);
+        return parseRules();
+    }
+
+    /* parseRules()
+        @return     true if no errors were found
+
+        Parse productions up to the end of input. After a syntax error, skip
+        to the next production and go on from there, so every error comes
+        out of one pass, until there are too many.
+    */
+    private boolean parseRules() {
+        int errors = lexer.diagnostics().size();
         trimNewlines();
-        while (parseProduction())
+        while (true) {
+            int before = lexer.diagnostics().size();
+            int from = lexer.peek().startPos();
+            boolean parsed = parseProduction();
+            if (lexer.diagnostics().size() == before) {
+                // fails without an error only at the end of input
+                if (!parsed)
+                    break;
+                trimNewlines();
+                continue;
+            }
+            synchronize(from);
+            if (lexer.diagnostics().size() >= errorLimit) {
+                if (lexer.peek().type() != TkType.EOF)
+                    lexer.error(lexer.peek().startPos(),
+                                "too many errors, stopping here");
+                break;
+            }
             trimNewlines();
-        return tk.type() == TkType.EOF;
+        }
+        return lexer.diagnostics().size() == errors;
+    }
+
+    /* synchronize()
+        @from       where the production with an error starts
+
+        Panic mode: skip tokens up to the next line that starts a production,
+        i.e. doesn't start with | (see IncrementalParser), or the end of
+        input. The production's first token is always skipped, so parsing
+        can't get stuck on it, and skipping stops early if the lexer finds
+        errors in what is skipped that reach the error limit.
+    */
+    private void synchronize(int from) {
+        int errors = lexer.diagnostics().size();
+        tk = lexer.peek();
+        if (tk.startPos() == from && tk.type() != TkType.EOF)
+            lexer.consume();
+        while (true) {
+            tk = lexer.peek();
+            int found = lexer.diagnostics().size();
+            if (tk.type() == TkType.EOF ||
+                found > errors && found >= errorLimit)
+                return;
+            if (lexer.atLineStart() && tk.type() != TkType.PIPE &&
+                tk.type() != TkType.NEWLINE)
+                return;
+            lexer.consume();
+        }
+    }
+
+    /* parseNested()
+        @return     the alternatives of the right-hand side, or null if it
+                    isn't valid
+
+        Parse a right-hand side in a context of its own, so its alternatives
+        don't mix with those of the surrounding right-hand side.
+    */
+    private Rhs parseNested() {
+        Rhs outer = rhs;
+        rhs = new Rhs();
+        Rhs body = rhs;
+        boolean parsed = parseRhs();
+        rhs = outer;
+        if (!parsed)
+            return null;
+        body.endAlternative();
+        return body;
+    }
+
+    /* emit()
+        @symbol     an encoded symbol
+        @first      the token the symbol came from
+
+        Append a symbol to the alternative being parsed.
+    */
+    private void emit(int symbol, Token first) {
+        if (rhs != null)
+            rhs.add(symbol, first);
+    }
+
+    /* node()
+        @kind       what the EBNF construct stands for
+        @name       a name to show for it
+        @body       its alternatives
+        @open       its first token
+        @return     the construct's anonymous nonterminal, or -1 if no grammar
+                    is being built
+    */
+    private int node(NodeKind kind, String name, Rhs body, Token open) {
+        if (grammar == null)
+            return -1;
+        int nt = grammar.addNode(kind, name, open.startPos(), open.line(),
+                                 open.column());
+        body.addTo(grammar, nt);
+        return nt;
+    }
+
+    private static NodeKind modified(TkType modifier) {
+        return switch (modifier) {
+            case STAR -> NodeKind.REPEAT;
+            case PLUS -> NodeKind.PLUS;
+            default -> NodeKind.OPTION;
+        };
+    }
+
+    /* unquote()
+        @literal    a char or string literal token's lexeme
+        @return     the text the literal stands for
+
+        Strip the quotes and resolve escape sequences, so equal terminals get
+        the same ID no matter how they were written.
+    */
+    private static String unquote(String literal) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i < literal.length()-1; i++) {
+            char c = literal.charAt(i);
+            if (c == '\\') {
+                c = switch (literal.charAt(++i)) {
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case 't' -> '\t';
+                    case 'b' -> '\b';
+                    case 'f' -> '\f';
+                    case 'v' -> '\u000B';
+                    default -> literal.charAt(i);
+                };
+            }
+            text.append(c);
+        }
+        return text.toString();
+    }
+
+    /* Rhs
+
+        Alternatives of a right-hand side, collected while it is parsed.
+    */
+    private static final class Rhs {
+        private final List<int[]> alternatives;
+        private final List<Token> firsts;
+        // the alternative being parsed
+        private int[] symbols;
+        private int size;
+        private Token first;
+
+        Rhs() {
+            alternatives = new ArrayList<>();
+            firsts = new ArrayList<>();
+            symbols = new int[8];
+            size = 0;
+            first = null;
+        }
+
+        void add(int symbol, Token tk) {
+            mark(tk);
+            if (size == symbols.length)
+                symbols = Arrays.copyOf(symbols, size*2);
+            symbols[size++] = symbol;
+        }
+
+        /* mark()
+            @tk     a token of the alternative being parsed
+
+            Remember where the alternative starts, even if it's just "".
+        */
+        void mark(Token tk) {
+            if (first == null)
+                first = tk;
+        }
+
+        /* endAlternative()
+
+            Finish the alternative being parsed. Nothing is added if it has no
+            tokens at all, which happens when a trailing | is followed by
+            something that can't start an alternative.
+        */
+        void endAlternative() {
+            if (first == null)
+                return;
+            alternatives.add(Arrays.copyOf(symbols, size));
+            firsts.add(first);
+            size = 0;
+            first = null;
+        }
+
+        void addTo(Grammar grammar, int lhs) {
+            for (int i = 0; i < alternatives.size(); i++)
+                grammar.addProduction(lhs, alternatives.get(i),
+                                      firsts.get(i).startPos(),
+                                      firsts.get(i).line(),
+                                      firsts.get(i).column());
+        }
+
+        String describe(Grammar grammar) {
+            if (grammar == null)
+                return "";
+            StringBuilder s = new StringBuilder();
+            for (int[] alternative : alternatives) {
+                if (s.length() > 0)
+                    s.append(" | ");
+                if (alternative.length == 0)
+                    s.append("\"\"");
+                for (int i = 0; i < alternative.length; i++) {
+                    if (i > 0)
+                        s.append(' ');
+                    s.append(grammar.symbols().name(alternative[i]));
+                }
+            }
+            return s.toString();
+        }
     }
 }
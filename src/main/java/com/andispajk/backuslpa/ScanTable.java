@@ -0,0 +1,292 @@
+/** ScanTable.java
+
+Transition tables for the Lexer's table-driven scanner. The tables are
+compiled from the same finite state machine that the direct-coded scanner
+runs: step() spells out every transition once, and the compiler evaluates it
+for every state and byte, then merges bytes that behave identically in all
+states into one character class.
+
+Each table entry packs what the scanner does on a char:
+    bits 0-7        next state (a LexerState ordinal)
+    bits 8-11       action
+    bits 12-19      type of the accepted token
+    bits 20-27      error message index
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ScanTable {
+    // consume the char and move to the next state
+    static final int SHIFT = 0;
+    // move to the next state without consuming the char
+    static final int GOTO = 1;
+    // consume the char and accept a token of the entry's type
+    static final int ACCEPT = 2;
+    // accept a token of the entry's type, leaving the char for the next token
+    static final int ACCEPT_PEEK = 3;
+    // consume the char and report the entry's error message
+    static final int ERROR = 4;
+    // consume the ')' that ends a comment and start over with the next token
+    static final int RESTART = 5;
+    // consume the \n that ends a ; comment and accept it as a NEWLINE
+    static final int END_INLINE = 6;
+    // consume the \0 that marks the end of input and return EOF
+    static final int END = 7;
+    // consume the last char of a directive and accept .BNF or .EBNF
+    static final int DIRECTIVE = 8;
+
+    static final String[] MESSAGES = {
+        "illegal character",
+        "illegal nonterminal character",
+        "unclosed nonterminal",
+        "empty char literal",
+        "illegal char literal",
+        "illegal char escape sequence",
+        "char literal size exceeds 1 char",
+        "illegal string literal",
+        "illegal string escape sequence",
+        "unexpected \\n",
+        "unexpected \\t",
+        "expected :",
+        "expected =",
+        "unterminated comment",
+        "illegal directive"
+    };
+
+    private static final TkType[] TYPES = TkType.values();
+
+    static final int STATE_COUNT = LexerState.ACCEPT.ordinal();
+    // character class of every byte; the Lexer's source is one byte per char
+    static final byte[] CLASS_OF = new byte[256];
+    static final int CLASS_COUNT;
+    // dense [state][class] table, flattened row by row
+    static final int[] TRANSITIONS;
+    // run of chars each state loops over, as a VectorScanner constant, or -1
+    static final int[] RUNS = new int[STATE_COUNT];
+
+    static {
+        Map<List<Integer>, Integer> classes = new HashMap<>();
+        List<int[]> columns = new ArrayList<>();
+        for (int c = 0; c < 256; c++) {
+            int[] column = new int[STATE_COUNT];
+            for (int s = 0; s < STATE_COUNT; s++)
+                column[s] = step(LexerState.values()[s], (char) c);
+            List<Integer> key = Arrays.stream(column).boxed().toList();
+            Integer cls = classes.get(key);
+            if (cls == null) {
+                cls = columns.size();
+                classes.put(key, cls);
+                columns.add(column);
+            }
+            CLASS_OF[c] = (byte) (int) cls;
+        }
+        CLASS_COUNT = columns.size();
+        TRANSITIONS = new int[STATE_COUNT*CLASS_COUNT];
+        for (int cls = 0; cls < CLASS_COUNT; cls++) {
+            int[] column = columns.get(cls);
+            for (int s = 0; s < STATE_COUNT; s++)
+                TRANSITIONS[s*CLASS_COUNT+cls] = column[s];
+        }
+        Arrays.fill(RUNS, -1);
+        RUNS[LexerState.BNF_CHAR.ordinal()] = VectorScanner.BNF_CHAR;
+        RUNS[LexerState.EBNF_CHAR.ordinal()] = VectorScanner.EBNF_CHAR;
+        RUNS[LexerState.IN_STRING.ordinal()] = VectorScanner.IN_STRING;
+        RUNS[LexerState.BEGIN_COMMENT.ordinal()] = VectorScanner.BEGIN_COMMENT;
+        RUNS[LexerState.INLINE_COMMENT.ordinal()] =
+            VectorScanner.INLINE_COMMENT;
+    }
+
+    private ScanTable() {}
+
+    /* entry()
+        @state      current state, as a LexerState ordinal
+        @c          char at the scanner's current position
+        @return     packed table entry
+
+        Look up what the scanner does on a char.
+    */
+    static int entry(int state, char c) {
+        return TRANSITIONS[state*CLASS_COUNT+(CLASS_OF[c & 0xFF] & 0xFF)];
+    }
+
+    static int nextState(int entry) {
+        return entry & 0xFF;
+    }
+
+    static int action(int entry) {
+        return (entry >>> 8) & 0xF;
+    }
+
+    static TkType type(int entry) {
+        return TYPES[(entry >>> 12) & 0xFF];
+    }
+
+    static String message(int entry) {
+        return MESSAGES[(entry >>> 20) & 0xFF];
+    }
+
+    private static int pack(LexerState next, int action, TkType type,
+                            int message) {
+        return next.ordinal() | (action << 8) | (type.ordinal() << 12) |
+               (message << 20);
+    }
+
+    private static int shift(LexerState next) {
+        return pack(next, SHIFT, TkType.ILLEGAL, 0);
+    }
+
+    private static int accept(int action, TkType type) {
+        return pack(LexerState.START, action, type, 0);
+    }
+
+    private static int error(String message) {
+        int index = Arrays.asList(MESSAGES).indexOf(message);
+        return pack(LexerState.START, ERROR, TkType.ILLEGAL, index);
+    }
+
+    /* step()
+        @state      current state
+        @c          char at the scanner's current position
+        @return     packed table entry
+
+        The scanner's state machine, one transition at a time. Mirrors the
+        direct-coded scanner in Lexer.scan() exactly, including which states
+        look at a char without consuming it.
+    */
+    private static int step(LexerState state, char c) {
+        switch (state) {
+        case START:
+            if (Character.isLetterOrDigit(c) || c == '_')
+                return shift(LexerState.EBNF_CHAR);
+            return switch (c) {
+                case '<' -> shift(LexerState.LCHEVRON);
+                case '\'' -> shift(LexerState.BEGIN_CHAR);
+                case '"' -> shift(LexerState.IN_STRING);
+                case '=' -> accept(ACCEPT, TkType.EQUAL);
+                case ':' -> shift(LexerState.DERIVES1);
+                case '(' -> shift(LexerState.MAYBE_LPAREN);
+                case ')' -> accept(ACCEPT, TkType.RPAREN);
+                case '{' -> accept(ACCEPT, TkType.LCURLY);
+                case '}' -> accept(ACCEPT, TkType.RCURLY);
+                case '[' -> accept(ACCEPT, TkType.LBRACKET);
+                case ']' -> accept(ACCEPT, TkType.RBRACKET);
+                case '|' -> accept(ACCEPT, TkType.PIPE);
+                case '*' -> accept(ACCEPT, TkType.STAR);
+                case '+' -> accept(ACCEPT, TkType.PLUS);
+                case '?' -> accept(ACCEPT, TkType.QUESTION);
+                case '\n' -> accept(ACCEPT, TkType.NEWLINE);
+                case '.' -> shift(LexerState.DIRECTIVE);
+                case ';' -> shift(LexerState.INLINE_COMMENT);
+                case '\0' -> accept(END, TkType.EOF);
+                default -> error("illegal character");
+            };
+        case LCHEVRON:
+            if (Character.isLetterOrDigit(c) || c == '-')
+                return shift(LexerState.BNF_CHAR);
+            return error("illegal nonterminal character");
+        case BNF_CHAR:
+            if (Character.isLetterOrDigit(c) || c == '-')
+                return shift(LexerState.BNF_CHAR);
+            if (c == '>')
+                return accept(ACCEPT, TkType.BNF_IDENT);
+            return error("unclosed nonterminal");
+        case EBNF_CHAR:
+            if (Character.isLetterOrDigit(c) || c == '_')
+                return shift(LexerState.EBNF_CHAR);
+            return accept(ACCEPT_PEEK, TkType.EBNF_IDENT);
+        case BEGIN_CHAR:
+            if (c == '\\')
+                return shift(LexerState.CHAR_ESCAPE);
+            if (c == '\'')
+                return error("empty char literal");
+            if (c >= 32 && c <= 126)
+                return shift(LexerState.END_CHAR);
+            return error("illegal char literal");
+        case CHAR_ESCAPE:
+            return switch (c) {
+                case '\\', '\'', 'n', 'r', 't', 'b', 'f', 'v' ->
+                    shift(LexerState.END_CHAR);
+                default -> error("illegal char escape sequence");
+            };
+        case END_CHAR:
+            if (c == '\'')
+                return accept(ACCEPT, TkType.CHAR);
+            return error("char literal size exceeds 1 char");
+        case IN_STRING:
+            if (c == '"')
+                return accept(ACCEPT, TkType.STRING);
+            if (c == '\\')
+                return shift(LexerState.STRING_ESCAPE);
+            if (c >= 32 && c <= 126)
+                return shift(LexerState.IN_STRING);
+            return error("illegal string literal");
+        case STRING_ESCAPE:
+            return switch (c) {
+                case '\\', '"', 'n', 'r', 't', 'b', 'f', 'v' ->
+                    shift(LexerState.IN_STRING);
+                default -> error("illegal string escape sequence");
+            };
+        case DERIVES1:
+        case DERIVES2:
+            if (state == LexerState.DERIVES1 && c == ':')
+                return shift(LexerState.DERIVES2);
+            if (state == LexerState.DERIVES2 && c == '=')
+                return accept(ACCEPT, TkType.DERIVES);
+            if (c == '\n')
+                return error("unexpected \\n");
+            if (c == '\t')
+                return error("unexpected \\t");
+            return error(state == LexerState.DERIVES1 ? "expected :"
+                                                      : "expected =");
+        case MAYBE_LPAREN:
+            if (c == '*')
+                return pack(LexerState.BEGIN_COMMENT, GOTO, TkType.ILLEGAL, 0);
+            return accept(ACCEPT_PEEK, TkType.LPAREN);
+        case BEGIN_COMMENT:
+            if (c == '*')
+                return shift(LexerState.END_COMMENT);
+            if (c == '\0')
+                return error("unterminated comment");
+            return shift(LexerState.BEGIN_COMMENT);
+        case END_COMMENT:
+            if (c == ')')
+                return pack(LexerState.START, RESTART, TkType.ILLEGAL, 0);
+            if (c == '\0')
+                return error("unterminated comment");
+            if (c != '*')
+                return shift(LexerState.BEGIN_COMMENT);
+            return shift(LexerState.END_COMMENT);
+        case DIRECTIVE:
+            if ((c | 0x20) == 'e')
+                return shift(LexerState.READ_E);
+            if ((c | 0x20) == 'b')
+                return shift(LexerState.READ_B);
+            return error("illegal directive");
+        case READ_E:
+            if ((c | 0x20) == 'b')
+                return shift(LexerState.READ_B);
+            return error("illegal directive");
+        case READ_B:
+            if ((c | 0x20) == 'n')
+                return shift(LexerState.READ_N);
+            return error("illegal directive");
+        case READ_N:
+            if ((c | 0x20) == 'f')
+                return accept(DIRECTIVE, TkType.ILLEGAL);
+            return error("illegal directive");
+        default: // state == LexerState.INLINE_COMMENT
+            if (c == '\n')
+                return accept(END_INLINE, TkType.NEWLINE);
+            if (c == '\0')
+                return accept(END, TkType.EOF);
+            return shift(LexerState.INLINE_COMMENT);
+        }
+    }
+}
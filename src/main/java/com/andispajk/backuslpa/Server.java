@@ -0,0 +1,312 @@
+/** Server.java
+
+Check and analyze grammars on request, for editors and build tools that
+would otherwise start a new JVM for every file. Requests and responses are
+JSON objects, one per line:
+
+    {"id": 1, "method": "check", "file": "grammar.txt"}
+    {"id": 2, "method": "analyze", "text": ".BNF\n<s> ::= 'a'\n",
+     "automaton": "lalr"}
+    {"id": 3, "method": "shutdown"}
+
+check only parses the grammar, analyze goes on to the LL(1) and LR(1)
+analyses. The grammar is either read from "file" or given as "text", and
+"automaton" is one of "lr1", "lalr" and "pager", defaulting to the one the
+server was started with. Every response carries the request's id:
+
+    {"id": 1, "valid": false, "diagnostics": [{"severity": "error",
+     "line": 3, "column": 7, "message": "expected \"::=\""}]}
+    {"id": 2, "valid": true, "diagnostics": [], "ll1": true, "lr1": true}
+
+Conflicts are diagnostics with severity "warning"; "lr1", or "lalr1" for
+the LALR(1) automaton, says whether the LR table has none. A grammar
+without productions has nothing to analyze, which is a warning, and gets
+no verdicts. A request that can't be served, or fails, gets
+{"id": ..., "error": "..."}, and the server goes on with the next one; that
+includes JSON or grammars nested too deeply to parse.
+
+Requests come either on stdin, answered on stdout, or over a Unix domain
+socket, where every connection gets a thread of its own and a shutdown
+request on any of them stops the server. Each connection has one Lexer,
+which is reused from request to request, so the machinery stays warm.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+final class Server {
+    private final Main.Automaton automaton;
+    private final ForkJoinPool pool;
+    private final Lexer lexer;
+    private boolean shutdown;
+
+    /* Server()
+        @automaton  the LR automaton to build when a request doesn't say
+        @pool       pool to run the analyses on
+    */
+    Server(Main.Automaton automaton, ForkJoinPool pool) {
+        this.automaton = automaton;
+        this.pool = pool;
+        lexer = new Lexer();
+        // errors are only reported as diagnostics
+        lexer.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        shutdown = false;
+    }
+
+    /* serve()
+        @in         where requests are read from, one per line
+        @out        where responses are written to, one per line
+
+        Answer requests until the input ends or a shutdown request comes.
+    */
+    void serve(BufferedReader in, Writer out) throws IOException {
+        String line;
+        while (!shutdown && (line = in.readLine()) != null) {
+            if (line.isBlank())
+                continue;
+            out.write(handle(line));
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    /* listen()
+        @socket     path of the Unix domain socket to create
+        @automaton  the LR automaton to build when a request doesn't say
+        @pool       pool to run the analyses on
+
+        Serve connections to the socket until one asks for a shutdown, then
+        remove the socket. If the socket can't be created, e.g. because
+        another server has it, the path is left alone.
+    */
+    static void listen(Path socket, Main.Automaton automaton,
+                       ForkJoinPool pool) throws IOException {
+        // closed here, or by the connection that asks for a shutdown
+        ServerSocketChannel server = ServerSocketChannel.open(
+            StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        try {
+            while (true) {
+                SocketChannel connection;
+                try {
+                    connection = server.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                Thread thread = new Thread(() -> {
+                    Server handler = new Server(automaton, pool);
+                    try (connection) {
+                        handler.serve(new BufferedReader(new InputStreamReader(
+                            Channels.newInputStream(connection),
+                            StandardCharsets.UTF_8)),
+                            new OutputStreamWriter(
+                                Channels.newOutputStream(connection),
+                                StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        // the client went away
+                    }
+                    if (handler.isShutdown()) {
+                        try {
+                            server.close();
+                        } catch (IOException e) {
+                            // accept() fails either way
+                        }
+                    }
+                });
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } finally {
+            server.close();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /* isShutdown()
+        @return     whether a shutdown request has been answered
+    */
+    boolean isShutdown() {
+        return shutdown;
+    }
+
+    /* handle()
+        @request    a request as a line of JSON
+        @return     the response to it, without a line break
+    */
+    String handle(String request) {
+        Object id = null;
+        try {
+            if (!(Json.parse(request) instanceof Map<?, ?> members))
+                throw new IllegalArgumentException(
+                    "request isn't an object");
+            id = members.get("id");
+            StringBuilder response = new StringBuilder("{\"id\":");
+            appendValue(response, id);
+            Object method = members.get("method");
+            if ("shutdown".equals(method)) {
+                shutdown = true;
+                return response.append(",\"ok\":true}").toString();
+            }
+            if (!"check".equals(method) && !"analyze".equals(method))
+                throw new IllegalArgumentException("unknown method " +
+                                                   method);
+            Main.Automaton chosen = automaton(members.get("automaton"));
+            if (!read(members))
+                return response.append(",\"error\":")
+                               .append(Json.quote("could not open input " +
+                                                  "file " +
+                                                  members.get("file")))
+                               .append('}').toString();
+            Parser parser = new Parser(lexer);
+            boolean valid = parser.parseGrammar();
+            response.append(",\"valid\":").append(valid)
+                    .append(",\"diagnostics\":[");
+            boolean first = true;
+            for (Diagnostic diagnostic : lexer.diagnostics()) {
+                appendDiagnostic(response, first, "error", diagnostic);
+                first = false;
+            }
+            if (valid && method.equals("analyze"))
+                analyze(parser.grammar(), chosen, response, first);
+            else
+                response.append(']');
+            return response.append('}').toString();
+        } catch (RuntimeException e) {
+            // a bad request, or a failure that mustn't end the connection
+            return error(id, e.getMessage() != null ? e.getMessage()
+                                                    : e.toString());
+        } catch (StackOverflowError e) {
+            // the parser follows a grammar's nesting on the Java stack
+            return error(id, "grammar nested too deeply");
+        }
+    }
+
+    /* error()
+        @id         the request's id, or null if it has none
+        @message    what went wrong
+        @return     the error response
+    */
+    private static String error(Object id, String message) {
+        StringBuilder response = new StringBuilder("{\"id\":");
+        appendValue(response, id);
+        return response.append(",\"error\":").append(Json.quote(message))
+                       .append('}').toString();
+    }
+
+    /* read()
+        @members    the request
+        @return     false if its file couldn't be opened
+    */
+    private boolean read(Map<?, ?> members) {
+        if (members.get("text") instanceof String text) {
+            lexer.readString(text);
+            return true;
+        }
+        if (members.get("file") instanceof String file)
+            return lexer.openFile(file);
+        throw new IllegalArgumentException("request has neither file nor " +
+                                           "text");
+    }
+
+    private Main.Automaton automaton(Object name) {
+        if (name == null)
+            return automaton;
+        if ("lr1".equals(name))
+            return Main.Automaton.CANONICAL;
+        if ("lalr".equals(name))
+            return Main.Automaton.LALR;
+        if ("pager".equals(name))
+            return Main.Automaton.PAGER;
+        throw new IllegalArgumentException("unknown automaton " + name);
+    }
+
+    /* analyze()
+
+        Finish the diagnostics with the conflicts of both analyses and add
+        their verdicts, like Main.analyze() prints them.
+    */
+    private void analyze(Grammar grammar, Main.Automaton chosen,
+                         StringBuilder response, boolean first) {
+        if (grammar.startSymbol() < 0) {
+            appendDiagnostic(response, first, "warning", new Diagnostic(
+                1, 0, "no productions to analyze"));
+            response.append(']');
+            return;
+        }
+        if (!grammar.isBnf())
+            grammar = new Desugarer(grammar).grammar();
+        LL1 ll1 = new LL1(new FirstFollow(grammar, pool));
+        for (LL1.Conflict conflict : ll1.conflicts()) {
+            appendDiagnostic(response, first, "warning", new Diagnostic(
+                grammar.line(conflict.other())+1,
+                grammar.column(conflict.other()),
+                "conflict: " + ll1.describe(conflict)));
+            first = false;
+        }
+        LRTable table = chosen.build(ll1.sets(), pool);
+        for (LRTable.Conflict conflict : table.conflicts()) {
+            appendDiagnostic(response, first, "warning", new Diagnostic(
+                table.line(conflict)+1, table.column(conflict),
+                "conflict: " + table.describe(conflict)));
+            first = false;
+        }
+        response.append("],\"ll1\":").append(ll1.isLL1())
+                .append(chosen == Main.Automaton.LALR ? ",\"lalr1\":"
+                                                      : ",\"lr1\":")
+                .append(!table.hasConflicts());
+    }
+
+    private static void appendDiagnostic(StringBuilder response,
+                                         boolean first, String severity,
+                                         Diagnostic diagnostic) {
+        if (!first)
+            response.append(',');
+        response.append("{\"severity\":").append(Json.quote(severity))
+                .append(",\"line\":").append(diagnostic.line())
+                .append(",\"column\":").append(diagnostic.column())
+                .append(",\"message\":")
+                .append(Json.quote(diagnostic.message())).append('}');
+    }
+
+    /* appendValue()
+
+        Echo a request's id. Ids that are arrays or objects come back as
+        null.
+    */
+    private static void appendValue(StringBuilder response, Object value) {
+        if (value instanceof String s) {
+            response.append(Json.quote(s));
+        } else if (value instanceof Double d && d == Math.rint(d) &&
+                   !Double.isInfinite(d)) {
+            response.append(d.longValue());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            response.append(value);
+        } else {
+            response.append("null");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/** SourceText.java
+
+Grammar source text stored as raw bytes, one byte per char. Grammars are ASCII,
+so the Lexer can scan the bytes directly instead of decoding them first. Files
+are memory mapped rather than copied onto the heap.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class SourceText implements CharSequence {
+    // what chars beyond 0xFF become, DEL
+    static final byte UNENCODABLE = 0x7F;
+
+    private final ByteBuffer bytes;
+    private final int length;
+    private final Charset displayCharset;
+
+    /* SourceText()
+        @bytes              the source bytes, from index 0 up to the limit
+        @displayCharset     how the bytes were encoded originally
+
+        Wrap a buffer of source bytes. The buffer must not change afterwards.
+    */
+    SourceText(ByteBuffer bytes, Charset displayCharset) {
+        this.bytes = bytes;
+        this.length = bytes.limit();
+        this.displayCharset = displayCharset;
+    }
+
+    /* of()
+        @text       a string
+        @return     the string as source text
+
+        Store a string as source text, one byte per char (see encode()).
+    */
+    static SourceText of(String text) {
+        return new SourceText(ByteBuffer.wrap(encode(text)),
+                              StandardCharsets.ISO_8859_1);
+    }
+
+    /* encode()
+        @c          a char of a grammar given as text
+        @return     the char as a source byte
+
+        Chars up to 0xFF keep their value. The ones beyond can't appear in a
+        valid grammar, so they become DEL, which the scanner rejects in the
+        same places, instead of a byte that could be part of a token.
+    */
+    static byte encode(char c) {
+        return c <= 0xFF ? (byte) c : UNENCODABLE;
+    }
+
+    static byte[] encode(String text) {
+        byte[] b = new byte[text.length()];
+        for (int i = 0; i < b.length; i++)
+            b[i] = encode(text.charAt(i));
+        return b;
+    }
+
+    /* map()
+        @file       path of the file to read
+        @return     the file's contents as source text
+
+        Memory map an entire file read-only.
+    */
+    static SourceText map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("file is larger than 2 GiB");
+            return new SourceText(channel.map(FileChannel.MapMode.READ_ONLY,
+                                              0, size),
+                                  StandardCharsets.UTF_8);
+        }
+    }
+
+    /* buffer()
+        @return     the underlying bytes
+
+        Access the source bytes for bulk scanning. Callers must use absolute
+        gets so the buffer's position stays untouched.
+    */
+    ByteBuffer buffer() {
+        return bytes;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        return decode(start, end, StandardCharsets.ISO_8859_1);
+    }
+
+    /* display()
+        @start      index of the first char
+        @end        index right after the last char
+        @return     the chars in between, in their original encoding
+
+        Decode part of the source for printing it back to the user, so
+        non-ASCII chars in comments show up the way they were written.
+    */
+    String display(int start, int end) {
+        return decode(start, end, displayCharset);
+    }
+
+    private String decode(int start, int end, Charset charset) {
+        if (bytes.hasArray())
+            return new String(bytes.array(), bytes.arrayOffset()+start,
+                              end-start, charset);
+        byte[] b = new byte[end-start];
+        bytes.get(start, b);
+        return new String(b, charset);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+}
@@ -0,0 +1,163 @@
+/** SymbolTable.java
+
+Intern the terminals and nonterminals of a grammar to dense int IDs, so
+analyses compare and index ints instead of lexeme strings.
+
+Terminals and nonterminals are numbered separately, both from 0. Terminal 0 is
+always the end of input marker $. Where a symbol of either kind is stored in
+one int, e.g. in a production's right-hand side, nonterminals keep their ID
+and terminals are stored as ~ID, so every terminal is negative.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class SymbolTable {
+    public static final int END = 0;
+
+    private final List<String> terminals;
+    private final Map<String, Integer> terminalIds;
+    private final List<String> nonterminals;
+    private final Map<String, Integer> nonterminalIds;
+
+    public SymbolTable() {
+        terminals = new ArrayList<>();
+        terminalIds = new HashMap<>();
+        nonterminals = new ArrayList<>();
+        nonterminalIds = new HashMap<>();
+        // not interned, so a "$" in the grammar is a terminal of its own
+        terminals.add("$");
+    }
+
+    /* terminal()
+        @text       the terminal's text, without quotes and escapes
+        @return     the terminal's ID
+
+        Intern a terminal. 'a' and "a" are the same terminal.
+    */
+    public int terminal(String text) {
+        Integer id = terminalIds.get(text);
+        if (id == null) {
+            id = terminals.size();
+            terminals.add(text);
+            terminalIds.put(text, id);
+        }
+        return id;
+    }
+
+    /* nonterminal()
+        @name       the nonterminal's name as written in the grammar
+        @return     the nonterminal's ID
+
+        Intern a named nonterminal.
+    */
+    public int nonterminal(String name) {
+        Integer id = nonterminalIds.get(name);
+        if (id == null) {
+            id = nonterminals.size();
+            nonterminals.add(name);
+            nonterminalIds.put(name, id);
+        }
+        return id;
+    }
+
+    /* anonymous()
+        @name       a name to show for the nonterminal
+        @return     the new nonterminal's ID
+
+        Add a nonterminal that can't be looked up by name, such as one made for
+        an EBNF construct. Every call makes a new nonterminal, even if another
+        one already has the same name.
+    */
+    public int anonymous(String name) {
+        nonterminals.add(name);
+        return nonterminals.size()-1;
+    }
+
+    /* findTerminal()
+        @text       the terminal's text, without quotes and escapes
+        @return     the terminal's ID, or -1 if there is no such terminal
+    */
+    public int findTerminal(String text) {
+        return terminalIds.getOrDefault(text, -1);
+    }
+
+    /* findNonterminal()
+        @name       the nonterminal's name as written in the grammar
+        @return     the nonterminal's ID, or -1 if there is no such named
+                    nonterminal
+    */
+    public int findNonterminal(String name) {
+        return nonterminalIds.getOrDefault(name, -1);
+    }
+
+    public int terminalCount() {
+        return terminals.size();
+    }
+
+    public int nonterminalCount() {
+        return nonterminals.size();
+    }
+
+    public String terminalText(int t) {
+        return terminals.get(t);
+    }
+
+    public String nonterminalName(int nt) {
+        return nonterminals.get(nt);
+    }
+
+    public static boolean isTerminal(int symbol) {
+        return symbol < 0;
+    }
+
+    /* encodeTerminal()
+        @t          a terminal ID
+        @return     the terminal as a symbol that can't be confused with a
+                    nonterminal
+    */
+    public static int encodeTerminal(int t) {
+        return ~t;
+    }
+
+    /* terminalOf()
+        @symbol     a symbol for which isTerminal() is true
+        @return     the terminal's ID
+    */
+    public static int terminalOf(int symbol) {
+        return ~symbol;
+    }
+
+    /* name()
+        @symbol     a terminal or nonterminal symbol
+        @return     the symbol the way it would be written in a grammar
+
+        Terminals come out double quoted, with the escapes the Lexer accepts.
+    */
+    public String name(int symbol) {
+        if (!isTerminal(symbol))
+            return nonterminals.get(symbol);
+        int t = terminalOf(symbol);
+        if (t == END)
+            return "$";
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : terminals.get(t).toCharArray()) {
+            switch (c) {
+            case '"', '\\' -> quoted.append('\\').append(c);
+            case '\n' -> quoted.append("\\n");
+            case '\r' -> quoted.append("\\r");
+            case '\t' -> quoted.append("\\t");
+            case '\b' -> quoted.append("\\b");
+            case '\f' -> quoted.append("\\f");
+            case '\u000B' -> quoted.append("\\v");
+            default -> quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
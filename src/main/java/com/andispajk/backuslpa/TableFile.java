@@ -0,0 +1,390 @@
+/** TableFile.java
+
+Save a grammar with its LL(1) and LR tables to a binary file, so tools that
+only want to run a parser can load them instead of analyzing the grammar at
+every start. Loading maps the file and reads everything in place; nothing is
+parsed or copied until it is asked for.
+
+The file is big-endian and made of 4-byte words:
+
+    magic       "BLPA"
+    version     VERSION; files of any other version are rejected
+    flags       LL1_CLEAN, LR_CLEAN, LALR
+    counts      terminals T, nonterminals N, productions P, right-hand side
+                symbols R, LR states S
+    start       start symbol, then the augmented production, which is P
+    packing     distinct ACTION rows A, length of the packed ACTION rows
+                AL, distinct GOTO rows G, length of the packed GOTO rows GL
+    names       T+N+1 byte offsets into the text at the end, terminals
+                first, then nonterminals
+    grammar     lhs[P], rhsStart[P+1], rhs[R], line[P], symbols encoded as
+                by the SymbolTable
+    ll1         the LL(1) table, N rows of T, as LL1 fills it
+    action      the LR ACTION table compressed as by CompressedTable:
+                default[S], row[S], base[A], value[AL], check[AL], with
+                actions encoded as by LRTable
+    goto        the LR GOTO table, a row for each nonterminal, likewise:
+                default[N], row[N], base[G], value[GL], check[GL]
+    text        the names as UTF-8
+
+The grammar is the one the tables were built from, so EBNF constructs are
+desugared into helper nonterminals. Where a table has conflicts, it holds
+what the analysis resolved them to.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public final class TableFile {
+    public static final int VERSION = 2;
+    // "BLPA"
+    private static final int MAGIC = 0x424c5041;
+    // words before the names
+    private static final int HEADER = 14;
+
+    // flags
+    public static final int LL1_CLEAN = 1;
+    public static final int LR_CLEAN = 2;
+    public static final int LALR = 4;
+
+    private final ByteBuffer buffer;
+    private final int flags;
+    private final int terminals;
+    private final int nonterminals;
+    private final int productions;
+    private final int states;
+    private final int start;
+    private final IntBuffer names;
+    private final IntBuffer lhs;
+    private final IntBuffer rhsStart;
+    private final IntBuffer rhs;
+    private final IntBuffer lines;
+    private final IntBuffer ll1;
+    private final IntBuffer actionDefault;
+    private final IntBuffer actionRow;
+    private final IntBuffer actionBase;
+    private final IntBuffer actionValue;
+    private final IntBuffer actionCheck;
+    private final IntBuffer gotoDefault;
+    private final IntBuffer gotoRow;
+    private final IntBuffer gotoBase;
+    private final IntBuffer gotoValue;
+    private final IntBuffer gotoCheck;
+    private final int text;
+
+    private TableFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER*4 || buffer.getInt(0) != MAGIC)
+            throw new IOException("not a table file");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("unsupported table file version " +
+                                  buffer.getInt(4));
+        flags = buffer.getInt(8);
+        terminals = buffer.getInt(12);
+        nonterminals = buffer.getInt(16);
+        productions = buffer.getInt(20);
+        int symbols = buffer.getInt(24);
+        states = buffer.getInt(28);
+        start = buffer.getInt(32);
+        int actionRows = buffer.getInt(40);
+        int actionLength = buffer.getInt(44);
+        int gotoRows = buffer.getInt(48);
+        int gotoLength = buffer.getInt(52);
+        if (terminals < 1 || nonterminals < 0 || productions < 0 ||
+            symbols < 0 || states < 0 || buffer.getInt(36) != productions ||
+            actionRows < 0 || actionLength < 0 || gotoRows < 0 ||
+            gotoLength < 0)
+            throw new IOException("corrupt table file");
+        long[] at = {HEADER*4L};
+        names = ints(at, (long) terminals+nonterminals+1);
+        lhs = ints(at, productions);
+        rhsStart = ints(at, (long) productions+1);
+        rhs = ints(at, symbols);
+        lines = ints(at, productions);
+        ll1 = ints(at, (long) nonterminals*terminals);
+        actionDefault = ints(at, states);
+        actionRow = ints(at, states);
+        actionBase = ints(at, actionRows);
+        actionValue = ints(at, actionLength);
+        actionCheck = ints(at, actionLength);
+        gotoDefault = ints(at, nonterminals);
+        gotoRow = ints(at, nonterminals);
+        gotoBase = ints(at, gotoRows);
+        gotoValue = ints(at, gotoLength);
+        gotoCheck = ints(at, gotoLength);
+        text = (int) at[0];
+        if (names.get(names.limit()-1) != buffer.limit()-text)
+            throw new IOException("corrupt table file");
+    }
+
+    /* ints()
+        @at         where the array starts, moved past it
+        @count      how many ints it has
+        @return     a view of the array
+    */
+    private IntBuffer ints(long[] at, long count) throws IOException {
+        if (at[0]+count*4 > buffer.limit())
+            throw new IOException("truncated table file");
+        IntBuffer view = buffer.slice((int) at[0], (int) count*4)
+                               .asIntBuffer();
+        at[0] += count*4;
+        return view;
+    }
+
+    /* load()
+        @file       a file written by save()
+        @return     the tables, read from the mapped file as they are used
+        @throws     IOException if the file can't be read, or isn't a table
+                    file of this version
+    */
+    public static TableFile load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("table file too large");
+            return new TableFile(channel.map(FileChannel.MapMode.READ_ONLY,
+                                             0, channel.size()));
+        }
+    }
+
+    /* save()
+        @file       where to write the tables
+        @ll1        the LL(1) analysis of a BNF grammar
+        @table      its LR tables
+        @lalr       whether table is of the LALR(1) automaton
+        @return     how well the LR tables compressed
+    */
+    public static CompressedTable.Stats save(Path file, LL1 ll1,
+                                             LRTable table, boolean lalr)
+        throws IOException {
+        Grammar grammar = ll1.grammar();
+        SymbolTable symbols = grammar.symbols();
+        int terminals = symbols.terminalCount();
+        int nonterminals = symbols.nonterminalCount();
+        int productions = grammar.productionCount();
+        byte[][] text = new byte[terminals+nonterminals][];
+        int textSize = 0;
+        for (int t = 0; t < terminals; t++) {
+            text[t] = symbols.terminalText(t).getBytes(StandardCharsets.UTF_8);
+            textSize += text[t].length;
+        }
+        for (int nt = 0; nt < nonterminals; nt++) {
+            text[terminals+nt] = symbols.nonterminalName(nt)
+                                        .getBytes(StandardCharsets.UTF_8);
+            textSize += text[terminals+nt].length;
+        }
+        int symbolCount = 0;
+        for (int p = 0; p < productions; p++)
+            symbolCount += grammar.rhsLength(p);
+        int[] ll1Table = ll1.table();
+        CompressedTable compressed = new CompressedTable(table);
+        int[][] lr = {
+            compressed.actionDefaults(), compressed.actionRows().row(),
+            compressed.actionRows().base(), compressed.actionRows().value(),
+            compressed.actionRows().check(), compressed.gotoDefaults(),
+            compressed.gotoRows().row(), compressed.gotoRows().base(),
+            compressed.gotoRows().value(), compressed.gotoRows().check()
+        };
+        long lrSize = 0;
+        for (int[] array : lr)
+            lrSize += array.length;
+        long size = 4L*(HEADER+text.length+1+3*productions+1+symbolCount+
+                        ll1Table.length+lrSize)+textSize;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("tables too large to save");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(VERSION)
+           .putInt((ll1.isLL1() ? LL1_CLEAN : 0) |
+                   (table.hasConflicts() ? 0 : LR_CLEAN) | (lalr ? LALR : 0))
+           .putInt(terminals).putInt(nonterminals).putInt(productions)
+           .putInt(symbolCount).putInt(table.stateCount())
+           .putInt(grammar.startSymbol()).putInt(productions)
+           .putInt(compressed.actionRows().base().length)
+           .putInt(compressed.actionRows().value().length)
+           .putInt(compressed.gotoRows().base().length)
+           .putInt(compressed.gotoRows().value().length);
+        int offset = 0;
+        for (byte[] name : text) {
+            out.putInt(offset);
+            offset += name.length;
+        }
+        out.putInt(offset);
+        for (int p = 0; p < productions; p++)
+            out.putInt(grammar.lhs(p));
+        int from = 0;
+        for (int p = 0; p < productions; p++) {
+            out.putInt(from);
+            from += grammar.rhsLength(p);
+        }
+        out.putInt(from);
+        for (int p = 0; p < productions; p++)
+            for (int i = 0; i < grammar.rhsLength(p); i++)
+                out.putInt(grammar.rhs(p, i));
+        for (int p = 0; p < productions; p++)
+            out.putInt(grammar.line(p));
+        out.asIntBuffer().put(ll1Table);
+        out.position(out.position()+ll1Table.length*4);
+        for (int[] array : lr) {
+            out.asIntBuffer().put(array);
+            out.position(out.position()+array.length*4);
+        }
+        for (byte[] name : text)
+            out.put(name);
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file,
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining())
+                channel.write(out);
+        }
+        return compressed.stats();
+    }
+
+    public int flags() {
+        return flags;
+    }
+
+    public boolean isLL1() {
+        return (flags & LL1_CLEAN) != 0;
+    }
+
+    /* isLR1()
+        @return     whether the LR tables have no conflicts, so the grammar
+                    is LR(1), or LALR(1) if the LALR flag is set
+    */
+    public boolean isLR1() {
+        return (flags & LR_CLEAN) != 0;
+    }
+
+    public int terminalCount() {
+        return terminals;
+    }
+
+    public int nonterminalCount() {
+        return nonterminals;
+    }
+
+    /* terminalText()
+        @t          a terminal ID
+        @return     its text, decoded anew at every call
+    */
+    public String terminalText(int t) {
+        return name(t);
+    }
+
+    /* nonterminalName()
+        @nt         a nonterminal ID
+        @return     its name, decoded anew at every call
+    */
+    public String nonterminalName(int nt) {
+        return name(terminals+nt);
+    }
+
+    private String name(int i) {
+        byte[] bytes = new byte[names.get(i+1)-names.get(i)];
+        buffer.get(text+names.get(i), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /* symbols()
+        @return     a symbol table with the same IDs, for looking symbols up
+                    by name
+    */
+    public SymbolTable symbols() {
+        SymbolTable symbols = new SymbolTable();
+        for (int t = 1; t < terminals; t++)
+            symbols.terminal(terminalText(t));
+        for (int nt = 0; nt < nonterminals; nt++) {
+            String name = nonterminalName(nt);
+            // helper nonterminals may share a name with another
+            if (symbols.findNonterminal(name) < 0)
+                symbols.nonterminal(name);
+            else
+                symbols.anonymous(name);
+        }
+        return symbols;
+    }
+
+    public int productionCount() {
+        return productions;
+    }
+
+    public int startSymbol() {
+        return start;
+    }
+
+    public int lhs(int p) {
+        return lhs.get(p);
+    }
+
+    public int rhsLength(int p) {
+        return rhsStart.get(p+1)-rhsStart.get(p);
+    }
+
+    public int rhs(int p, int i) {
+        return rhs.get(rhsStart.get(p)+i);
+    }
+
+    public int line(int p) {
+        return lines.get(p);
+    }
+
+    /* production()
+        @nt         nonterminal on top of the parse stack
+        @t          next input terminal
+        @return     the LL(1) production to expand, or -1 for a syntax error
+    */
+    public int production(int nt, int t) {
+        return ll1.get(nt*terminals+t);
+    }
+
+    public int stateCount() {
+        return states;
+    }
+
+    /* action()
+        @state      an LR state
+        @t          next input terminal
+        @return     the action, encoded and decoded as by LRTable; where
+                    the full table has an error, the state's default
+                    reduction if it has one, as by CompressedTable
+    */
+    public int action(int state, int t) {
+        return get(actionRow, actionBase, actionValue, actionCheck, state, t,
+                   actionDefault.get(state));
+    }
+
+    /* gotoState()
+        @state      a state uncovered by a reduction to nt
+        @nt         a nonterminal of the grammar
+        @return     the state to go to; undefined for entries the full
+                    table has none for
+    */
+    public int gotoState(int state, int nt) {
+        return get(gotoRow, gotoBase, gotoValue, gotoCheck, nt, state,
+                   gotoDefault.get(nt));
+    }
+
+    // the lookup of CompressedTable.Packed
+    private static int get(IntBuffer row, IntBuffer base, IntBuffer value,
+                           IntBuffer check, int i, int column,
+                           int otherwise) {
+        int r = row.get(i);
+        int at = base.get(r)+column;
+        return at >= 0 && at < check.limit() && check.get(at) == r
+            ? value.get(at) : otherwise;
+    }
+
+    public boolean isAccept(int action) {
+        return LRTable.isReduce(action) &&
+               LRTable.production(action) == productions;
+    }
+}
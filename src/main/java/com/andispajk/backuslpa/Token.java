@@ -2,22 +2,160 @@
 
 Represent the tokens found in BNF/EBNF grammar specifications.
 
+Tokens made by the Lexer only remember where they sit in the source. The
+lexeme string is built the first time someone asks for it, and token types
+that are always spelled the same way share one constant lexeme.
+
 */
 
 package com.andispajk.backuslpa;
 
-/* Token()
-    @lexeme      string representation of the token
-    @type        token type represented as the static class vars
-    @startPos    index of the token's first char in the file line
+import java.util.Objects;
+
+public final class Token {
+    private final CharSequence source;
+    private final TkType type;
+    private final int startPos;
+    private final int endPos;
+    private final int line;
+    private final int column;
+    private String lexeme;
+
+    /* Token()
+        @lexeme      string representation of the token
+        @type        token type represented as the static class vars
+        @startPos    index of the token's first char in the file line
+
+        Construct a Token containing all its relevant info.
+    */
+    public Token(String lexeme, TkType type, int startPos) {
+        this(lexeme, type, startPos, 0, startPos);
+    }
+
+    /* Token()
+        @lexeme      string representation of the token
+        @type        token type
+        @startPos    index of the token's first char in the source
+        @line        line the token starts on, counting from 0
+        @column      index of the token's first char in that line
+
+        Construct a Token that already has its lexeme.
+    */
+    Token(String lexeme, TkType type, int startPos, int line, int column) {
+        this.source = lexeme;
+        this.type = type;
+        this.startPos = startPos;
+        this.endPos = startPos+lexeme.length();
+        this.line = line;
+        this.column = column;
+        this.lexeme = lexeme;
+    }
+
+    /* Token()
+        @source      the text the token was scanned from
+        @type        token type
+        @startPos    index of the token's first char in the source
+        @endPos      index right after the token's last char in the source
+        @line        line the token starts on, counting from 0
+        @column      index of the token's first char in that line
+
+        Construct a Token whose lexeme is only built from the source on demand.
+        The source must not change while the token is still in use.
+    */
+    Token(CharSequence source, TkType type, int startPos, int endPos,
+          int line, int column) {
+        this.source = source;
+        this.type = type;
+        this.startPos = startPos;
+        this.endPos = endPos;
+        this.line = line;
+        this.column = column;
+        this.lexeme = fixedLexeme(type);
+    }
+
+    /* fixedLexeme()
+        @type       token type
+        @return     the only possible lexeme of type, or null if it varies
+
+        Look up the shared lexeme of token types that are always spelled the
+        same way.
+    */
+    static String fixedLexeme(TkType type) {
+        return switch (type) {
+            case EQUAL -> "=";
+            case DERIVES -> "::=";
+            case LPAREN -> "(";
+            case RPAREN -> ")";
+            case LCURLY -> "{";
+            case RCURLY -> "}";
+            case LBRACKET -> "[";
+            case RBRACKET -> "]";
+            case PIPE -> "|";
+            case STAR -> "*";
+            case PLUS -> "+";
+            case QUESTION -> "?";
+            case NEWLINE -> "\n";
+            case EOF -> "";
+            default -> null;
+        };
+    }
+
+    /* lexeme()
+        @return     string representation of the token
+
+        Build the lexeme from the source the first time it is needed.
+    */
+    public String lexeme() {
+        if (lexeme == null)
+            lexeme = source.subSequence(startPos, endPos).toString();
+        return lexeme;
+    }
+
+    public TkType type() {
+        return type;
+    }
+
+    public int startPos() {
+        return startPos;
+    }
+
+    public int endPos() {
+        return endPos;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public int column() {
+        return column;
+    }
 
-    Construct a Token containing all its relevant info.
-*/
-public record Token(String lexeme, TkType type, int startPos) {
     public void print() {
         if (type == TkType.NEWLINE)
             System.out.print("    NEWLINE:\n");
         else
-            System.out.printf("%11s: |%s|\n", type.toString(), lexeme);
+            System.out.printf("%11s: |%s|\n", type.toString(), lexeme());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Token other))
+            return false;
+        return type == other.type && startPos == other.startPos &&
+               lexeme().equals(other.lexeme());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lexeme(), type, startPos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Token[lexeme=%s, type=%s, startPos=%d]",
+                             lexeme(), type, startPos);
     }
-}
\ No newline at end of file
+}
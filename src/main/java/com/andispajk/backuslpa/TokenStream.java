@@ -0,0 +1,200 @@
+/** TokenStream.java
+
+Every token of a grammar, stored as parallel primitive arrays instead of one
+Token object per token. Made by Lexer.tokenizeAll().
+
+Tokens are read either by index, or in order through a Cursor that works like
+the Lexer's own peek()/consume(). The stream always ends with an EOF token.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.util.Arrays;
+
+public final class TokenStream {
+    private static final TkType[] TYPES = TkType.values();
+
+    // what the tokens point into, or null if their lexemes were copied out
+    private final CharSequence source;
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int[] columns;
+    // only used when there is no source to point into
+    private String[] lexemes;
+    private int size;
+
+    /* TokenStream()
+        @source     text the tokens point into, or null if the lexemes are
+                    handed to add() instead
+
+        Construct an empty token stream.
+    */
+    TokenStream(CharSequence source) {
+        this.source = source;
+        types = new byte[64];
+        starts = new int[64];
+        ends = new int[64];
+        lines = new int[64];
+        columns = new int[64];
+        lexemes = source == null ? new String[64] : null;
+        size = 0;
+    }
+
+    /* add()
+        @type       token type
+        @start      index of the token's first char in the source
+        @end        index right after the token's last char in the source
+        @line       line the token starts on, counting from 0
+        @column     index of the token's first char in that line
+        @lexeme     the token's lexeme, only used if there is no source
+
+        Append a token to the end of the stream.
+    */
+    void add(TkType type, int start, int end, int line, int column,
+             String lexeme) {
+        if (size == types.length) {
+            int capacity = size*2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            if (lexemes != null)
+                lexemes = Arrays.copyOf(lexemes, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        columns[size] = column;
+        if (lexemes != null)
+            lexemes[size] = lexeme;
+        size++;
+    }
+
+    /* size()
+        @return     number of tokens, including the final EOF
+    */
+    public int size() {
+        return size;
+    }
+
+    public TkType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    /* lexeme()
+        @i          index of a token
+        @return     string representation of the token
+
+        Build a token's lexeme. Nothing is cached, so callers that need the
+        same lexeme often should keep it.
+    */
+    public String lexeme(int i) {
+        if (lexemes != null)
+            return lexemes[i];
+        String fixed = Token.fixedLexeme(type(i));
+        if (fixed != null)
+            return fixed;
+        return source.subSequence(starts[i], ends[i]).toString();
+    }
+
+    /* token()
+        @i          index of a token
+        @return     the token as a standalone object
+
+        Unpack one token, for code that works with Token objects.
+    */
+    public Token token(int i) {
+        if (lexemes != null)
+            return new Token(lexemes[i], type(i), starts[i], lines[i],
+                             columns[i]);
+        return new Token(source, type(i), starts[i], ends[i], lines[i],
+                         columns[i]);
+    }
+
+    /* cursor()
+        @return     a cursor at the first token
+
+        Start walking the tokens in order.
+    */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /* Cursor
+
+        Position in a token stream. Like the Lexer, it never moves past the
+        final EOF token, so reading past the end keeps returning EOF.
+    */
+    public final class Cursor {
+        private int index;
+
+        private Cursor() {
+            index = 0;
+        }
+
+        /* index()
+            @return     index of the next token
+        */
+        public int index() {
+            return index;
+        }
+
+        /* seek()
+            @i      index of the token that becomes the next one
+
+            Jump to any token, e.g. to backtrack.
+        */
+        public void seek(int i) {
+            index = Math.min(Math.max(i, 0), size-1);
+        }
+
+        /* peek()
+            @k          how far to look ahead, 1 being the next token
+            @return     type of the k-th upcoming token
+        */
+        public TkType peek(int k) {
+            return type(Math.min(index+k-1, size-1));
+        }
+
+        /* peek()
+            @return     type of the next token
+        */
+        public TkType peek() {
+            return type(index);
+        }
+
+        /* next()
+            @return     index of the next token
+
+            Consume the next token. Its details can be read through the
+            stream's accessors with the returned index.
+        */
+        public int next() {
+            int i = index;
+            if (index < size-1)
+                index++;
+            return i;
+        }
+    }
+}
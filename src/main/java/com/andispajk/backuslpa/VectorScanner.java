@@ -0,0 +1,165 @@
+/** VectorScanner.java
+
+Skip long runs of similar chars in the source many bytes at a time, using the
+incubating JDK Vector API. Grammars spend most of their bytes in such runs:
+indentation, comments, identifiers and string literal bodies.
+
+Every method only looks at whole vectors and returns the index of the first
+byte that ends the run, or the index where fewer than a vector's worth of
+bytes are left. The Lexer's scalar code takes over from there, so the run
+boundaries themselves are always handled one char at a time.
+
+Only load this class when the jdk.incubator.vector module is present.
+
+*/
+
+package com.andispajk.backuslpa;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorScanner {
+    // kinds of runs, named after the scanner state that loops over them
+    static final int BLANKS = 0;            // spaces, tabs and \r
+    static final int EBNF_CHAR = 1;         // A-Z a-z 0-9 _
+    static final int BNF_CHAR = 2;          // A-Z a-z 0-9 -
+    static final int IN_STRING = 3;         // printable except " and \
+    static final int BEGIN_COMMENT = 4;     // anything except * and \0
+    static final int INLINE_COMMENT = 5;    // anything except \n and \0
+
+    // masks are handled as a long, so use at most 64 lanes
+    private static final VectorSpecies<Byte> SPECIES =
+        ByteVector.SPECIES_PREFERRED.length() <= 64
+            ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+    private static final int LANES = SPECIES.length();
+
+    // bytes of memory mapped sources are copied here, one vector at a time
+    private final byte[] scratch;
+    // newlines crossed by the last skip(), and the index right after the last
+    // of them
+    private int newlines;
+    private int afterLastNewline;
+
+    VectorScanner() {
+        scratch = new byte[LANES];
+        newlines = 0;
+        afterLastNewline = 0;
+    }
+
+    /* newlines()
+        @return     number of \n chars skipped by the last call to skip()
+    */
+    int newlines() {
+        return newlines;
+    }
+
+    /* afterLastNewline()
+        @return     index right after the last \n skipped by skip(), only
+                    valid if newlines() isn't 0
+    */
+    int afterLastNewline() {
+        return afterLastNewline;
+    }
+
+    /* skip()
+        @run        kind of run to skip
+        @bytes      the source bytes
+        @from       index of the first byte to look at
+        @to         index right after the last byte that may be looked at
+        @return     index of the first byte that doesn't belong to the run,
+                    or where the scalar code has to finish the job
+
+        Skip a run of bytes a whole vector at a time.
+    */
+    int skip(int run, ByteBuffer bytes, int from, int to) {
+        int pos = from;
+        newlines = 0;
+        while (pos+LANES <= to) {
+            ByteVector v = load(bytes, pos);
+            VectorMask<Byte> stop = stops(run, v);
+            long stopBits = stop.toLong();
+            int end = stopBits == 0 ? LANES : Long.numberOfTrailingZeros(
+                                                  stopBits);
+            if (run == BEGIN_COMMENT)
+                countNewlines(v, pos, end);
+            if (end < LANES)
+                return pos+end;
+            pos += LANES;
+        }
+        return pos;
+    }
+
+    /* load()
+        @bytes      the source bytes
+        @pos        index of the vector's first byte
+        @return     the vector of bytes starting at pos
+    */
+    private ByteVector load(ByteBuffer bytes, int pos) {
+        if (bytes.hasArray())
+            return ByteVector.fromArray(SPECIES, bytes.array(),
+                                        bytes.arrayOffset()+pos);
+        bytes.get(pos, scratch);
+        return ByteVector.fromArray(SPECIES, scratch, 0);
+    }
+
+    /* stops()
+        @run        kind of run
+        @v          a vector of source bytes
+        @return     mask of the bytes that end the run
+
+        Classify a whole vector of bytes at once. Bytes are signed, so
+        anything beyond ASCII compares below every printable char and ends
+        identifier and string runs; the scalar code decides what those are.
+    */
+    private static VectorMask<Byte> stops(int run, ByteVector v) {
+        switch (run) {
+        case BLANKS:
+            return v.eq((byte) ' ').or(v.eq((byte) '\t'))
+                    .or(v.eq((byte) '\r')).not();
+        case EBNF_CHAR:
+            return alnum(v).or(v.eq((byte) '_')).not();
+        case BNF_CHAR:
+            return alnum(v).or(v.eq((byte) '-')).not();
+        case IN_STRING:
+            return v.compare(VectorOperators.LT, (byte) 32)
+                    .or(v.compare(VectorOperators.GT, (byte) 126))
+                    .or(v.eq((byte) '"')).or(v.eq((byte) '\\'));
+        case BEGIN_COMMENT:
+            return v.eq((byte) '*').or(v.eq((byte) 0));
+        default: // INLINE_COMMENT
+            return v.eq((byte) '\n').or(v.eq((byte) 0));
+        }
+    }
+
+    private static VectorMask<Byte> alnum(ByteVector v) {
+        // setting bit 5 folds A-Z onto a-z without pulling anything else into
+        // that range
+        ByteVector folded = v.or((byte) 0x20);
+        return folded.compare(VectorOperators.GE, (byte) 'a')
+                .and(folded.compare(VectorOperators.LE, (byte) 'z'))
+                .or(v.compare(VectorOperators.GE, (byte) '0')
+                     .and(v.compare(VectorOperators.LE, (byte) '9')));
+    }
+
+    /* countNewlines()
+        @v          a vector of source bytes
+        @pos        index of the vector's first byte
+        @end        number of leading bytes that belong to the run
+
+        Keep track of the newlines a comment run crosses, so the Lexer can keep
+        its line number and beginning of line up to date.
+    */
+    private void countNewlines(ByteVector v, int pos, int end) {
+        long bits = v.eq((byte) '\n').toLong();
+        if (end < 64)
+            bits &= (1L << end)-1;
+        if (bits == 0)
+            return;
+        newlines += Long.bitCount(bits);
+        afterLastNewline = pos+64-Long.numberOfLeadingZeros(bits);
+    }
+}
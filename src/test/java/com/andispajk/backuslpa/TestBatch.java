@@ -0,0 +1,78 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestBatch {
+    @TempDir
+    Path dir;
+
+    private String file(String name) throws IOException {
+        Path path = dir.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, ".BNF\n<a> ::= 'x'\n");
+        return path.toString();
+    }
+
+    @Test
+    public void testExpand() throws IOException {
+        String b = file("b.txt");
+        String a = file("a.txt");
+        String c = file("c.bnf");
+        String nested = file("sub/d.txt");
+        assertEquals(List.of(a, b, c), Batch.expand(dir.toString()));
+        assertEquals(List.of(a, b), Batch.expand(dir + "/*.txt"));
+        assertEquals(List.of(a, b, nested), Batch.expand(dir + "/**.txt"));
+        assertEquals(List.of(nested), Batch.expand(dir + "/*/d.txt"));
+        assertEquals(List.of(), Batch.expand(dir + "/*.none"));
+        assertEquals(List.of(), Batch.expand(dir + "/missing/*.txt"));
+        // files are taken as they are, even if they don't exist
+        assertEquals(List.of("missing.txt"), Batch.expand("missing.txt"));
+    }
+
+    @Test
+    public void testOrderedOutput() throws IOException {
+        for (int i = 0; i < 20; i++)
+            file("g" + (char) ('a'+i) + ".txt");
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        int exit;
+        try {
+            System.setOut(new PrintStream(buffer, true));
+            // later files finish first, and gk.txt fails
+            exit = Batch.run(List.of(dir.toString()), (name, out) -> {
+                int n = name.charAt(name.length()-5)-'a';
+                try {
+                    Thread.sleep(20-n);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.println("checked " + n);
+                return n != 10;
+            }, pool);
+        } finally {
+            System.setOut(stdout);
+            pool.shutdown();
+        }
+        assertEquals(1, exit);
+        String[] lines = buffer.toString().split("\n");
+        assertEquals(41, lines.length);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(lines[2*i].endsWith("g" + (char) ('a'+i) + ".txt =="));
+            assertEquals("checked " + i, lines[2*i+1]);
+        }
+        assertEquals("checked 20 files: 19 passed, 1 failed", lines[40]);
+    }
+}
@@ -0,0 +1,196 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestCache {
+    @TempDir
+    Path dir;
+
+    private String file(String name, String contents) throws IOException {
+        Path path = dir.resolve(name);
+        Files.writeString(path, contents);
+        return path.toString();
+    }
+
+    /* checker()
+
+        A checker that prints a file's first line and counts how often it
+        runs; files with an x fail.
+    */
+    private static Batch.Checker checker(AtomicInteger runs) {
+        return (file, out) -> {
+            runs.incrementAndGet();
+            String text;
+            try {
+                text = Files.readString(Path.of(file));
+            } catch (IOException e) {
+                out.println("unreadable");
+                return false;
+            }
+            out.println(text.lines().findFirst().orElse(""));
+            return !text.contains("x");
+        };
+    }
+
+    private static String run(Batch.Checker checker, String file,
+                              boolean passed) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true);
+        assertEquals(passed, checker.check(file, out));
+        return buffer.toString();
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        Cache cache = new Cache(dir.resolve("cache"), 1 << 20);
+        AtomicInteger runs = new AtomicInteger();
+        Batch.Checker cached = cache.wrap(checker(runs), "LALR");
+        String good = file("good.txt", ".BNF\n<a> ::= 'a'\n");
+        String bad = file("bad.txt", ".BNF x\n");
+        assertEquals(".BNF\n", run(cached, good, true));
+        assertEquals(".BNF x\n", run(cached, bad, false));
+        assertEquals(2, runs.get());
+        // both are replayed, verdict and all
+        assertEquals(".BNF\n", run(cached, good, true));
+        assertEquals(".BNF x\n", run(cached, bad, false));
+        assertEquals(2, runs.get());
+        // and survive into the next run
+        cached = new Cache(dir.resolve("cache"), 1 << 20)
+                     .wrap(checker(runs), "LALR");
+        assertEquals(".BNF x\n", run(cached, bad, false));
+        assertEquals(2, runs.get());
+        // a change to the file is a miss
+        Files.writeString(Path.of(good), ".EBNF\na = 'a'\n");
+        assertEquals(".EBNF\n", run(cached, good, true));
+        assertEquals(3, runs.get());
+        // files that can't be read are never cached
+        String missing = dir.resolve("missing.txt").toString();
+        assertEquals("unreadable\n", run(cached, missing, false));
+        assertEquals("unreadable\n", run(cached, missing, false));
+        assertEquals(5, runs.get());
+    }
+
+    @Test
+    public void testKey() throws IOException {
+        String a = file("a.txt", ".BNF\n<a> ::= 'a'\n");
+        String b = file("b.txt", ".BNF\n<a> ::= 'a'\n");
+        String key = Cache.key(a, "CANONICAL");
+        assertEquals(64, key.length());
+        assertEquals(key, Cache.key(a, "CANONICAL"));
+        assertNotEquals(key, Cache.key(a, "LALR"));
+        // messages name the file
+        assertNotEquals(key, Cache.key(b, "CANONICAL"));
+        Files.writeString(Path.of(a), ".EBNF\n<a> ::= 'a'\n");
+        assertNotEquals(key, Cache.key(a, "CANONICAL"));
+        assertNotNull(Cache.key(file("empty.txt", ""), ""));
+        assertNull(Cache.key(dir.resolve("missing.txt").toString(), ""));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        Path where = dir.resolve("cache");
+        Cache cache = new Cache(where, 300);
+        String[] keys = new String[4];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = Cache.key(file(i + ".txt", "" + i), "");
+        cache.put(keys[0], new byte[100]);
+        cache.put(keys[1], new byte[100]);
+        cache.put(keys[2], new byte[100]);
+        assertEquals(300, cache.size());
+        // 0 is used, so 1 goes first
+        assertNotNull(cache.get(keys[0]));
+        cache.put(keys[3], new byte[100]);
+        assertEquals(300, cache.size());
+        assertNull(cache.get(keys[1]));
+        assertFalse(Files.exists(where.resolve(keys[1])));
+        assertNotNull(cache.get(keys[0]));
+        // too big to keep at all
+        cache.put(keys[1], new byte[301]);
+        assertNull(cache.get(keys[1]));
+        // a smaller limit next run drops the oldest
+        Cache smaller = new Cache(where, 100);
+        assertEquals(100, smaller.size());
+        try (Stream<Path> listed = Files.list(where)) {
+            assertEquals(1, listed.count());
+        }
+    }
+
+    @Test
+    public void testEvictedElsewhere() throws IOException {
+        Path where = dir.resolve("cache");
+        Cache cache = new Cache(where, 1000);
+        String key = Cache.key(file("a.txt", "a"), "");
+        byte[] result = {1, 'o', 'k'};
+        cache.put(key, result);
+        assertArrayEquals(result, cache.get(key));
+        // another run sharing the directory removes it
+        Files.delete(where.resolve(key));
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+    }
+
+    /* checkAll()
+
+        Check every file 20 times over on parallel workers, and return how
+        often the checker actually ran.
+    */
+    private static int checkAll(Cache cache, List<String> files)
+        throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        Batch.Checker cached = cache.wrap(checker(runs), "");
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int round = 0; round < 20; round++)
+                for (String file : files)
+                    results.add(pool.submit(() -> run(cached, file, true)));
+            for (int i = 0; i < results.size(); i++)
+                assertEquals("grammar " + i%files.size() + "\n",
+                             results.get(i).get());
+        } finally {
+            pool.shutdown();
+        }
+        return runs.get();
+    }
+
+    @Test
+    public void testConcurrentWorkers() throws Exception {
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            files.add(file(i + ".txt", "grammar " + i + "\n"));
+        // room for all of them: only the first round, and files checked
+        // by two workers at once, miss
+        Cache cache = new Cache(dir.resolve("big"), 50*12);
+        assertTrue(checkAll(cache, files) < 100);
+        // room for about half, so results are evicted all the time
+        cache = new Cache(dir.resolve("small"), 25*12);
+        checkAll(cache, files);
+        assertTrue(cache.size() <= 25*12);
+        try (Stream<Path> listed = Files.list(dir.resolve("small"))) {
+            // no temporary files are left behind
+            assertTrue(listed.allMatch(
+                path -> path.getFileName().toString().length() == 64));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+public class TestCompressedTable {
+    // a statement language, with more states and fewer conflicts than the
+    // expression grammars
+    static final String STATEMENTS =
+        ".BNF\n" +
+        "<prog> ::= <stmts>\n" +
+        "<stmts> ::= <stmts> <stmt> | <stmt>\n" +
+        "<stmt> ::= \"id\" '=' <e> ';' | \"if\" '(' <e> ')' <stmt> " +
+            "| '{' <stmts> '}' | \"while\" '(' <e> ')' <stmt> | ';'\n" +
+        "<e> ::= <e> '+' <t> | <e> '-' <t> | <t>\n" +
+        "<t> ::= <t> '*' <f> | <f>\n" +
+        "<f> ::= '(' <e> ')' | \"id\" | \"num\" | '-' <f>\n";
+
+    static LRTable build(String input, boolean lalr) {
+        FirstFollow sets = new FirstFollow(TestFirstFollow.parse(input));
+        return lalr ? new LALR(sets).table() : new LR1(sets).table();
+    }
+
+    /* parse()
+        @return     -1 if the tables accept the terminals, else the index of
+                    the one they stop at
+    */
+    static int parse(IntBinaryOperator action, IntBinaryOperator gotos,
+                     LRTable table, Grammar grammar, int[] input) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        int at = 0;
+        while (true) {
+            int t = at < input.length ? input[at] : SymbolTable.END;
+            int a = action.applyAsInt(stack.peek(), t);
+            if (table.isAccept(a))
+                return -1;
+            if (LRTable.isShift(a)) {
+                stack.push(LRTable.target(a));
+                at++;
+            } else if (LRTable.isReduce(a)) {
+                int p = LRTable.production(a);
+                for (int i = 0; i < grammar.rhsLength(p); i++)
+                    stack.pop();
+                stack.push(gotos.applyAsInt(stack.peek(), grammar.lhs(p)));
+            } else {
+                return at;
+            }
+        }
+    }
+
+    /* assertEquivalent()
+
+        Every entry the full tables have is kept, and every error is either
+        kept or the state's default reduction, never acceptance.
+    */
+    static void assertEquivalent(LRTable table, CompressedTable compressed) {
+        assertEquals(table.stateCount(), compressed.stateCount());
+        for (int s = 0; s < table.stateCount(); s++) {
+            int fallback = compressed.actionDefaults()[s];
+            assertTrue(fallback == 0 || LRTable.isReduce(fallback) &&
+                                        !table.isAccept(fallback));
+            for (int t = 0; t < table.terminalCount(); t++) {
+                int full = table.action(s, t);
+                int action = compressed.action(s, t);
+                if (full != 0)
+                    assertEquals(full, action);
+                else
+                    assertTrue(action == 0 || action == fallback);
+            }
+            for (int nt = 0; nt < table.nonterminalCount(); nt++)
+                if (table.gotoState(s, nt) >= 0)
+                    assertEquals(table.gotoState(s, nt),
+                                 compressed.gotoState(s, nt));
+        }
+    }
+
+    @Test
+    public void testEntries() {
+        for (String input : new String[] {TestFirstFollow.EXPRESSIONS,
+                                          TestLR1.LEFT_RECURSIVE,
+                                          STATEMENTS})
+            for (boolean lalr : new boolean[] {false, true}) {
+                LRTable table = build(input, lalr);
+                assertEquivalent(table, new CompressedTable(table));
+            }
+    }
+
+    @Test
+    public void testSameParses() {
+        for (boolean lalr : new boolean[] {false, true}) {
+            LRTable table = build(STATEMENTS, lalr);
+            CompressedTable compressed = new CompressedTable(table);
+            Grammar grammar = TestFirstFollow.parse(STATEMENTS);
+            int terminals = grammar.symbols().terminalCount();
+            Random random = new Random(24);
+            for (int round = 0; round < 5000; round++) {
+                int[] input = new int[random.nextInt(10)];
+                for (int i = 0; i < input.length; i++)
+                    input[i] = 1+random.nextInt(terminals-1);
+                assertEquals(parse(table::action, table::gotoState, table,
+                                   grammar, input),
+                             parse(compressed::action, compressed::gotoState,
+                                   table, grammar, input));
+            }
+            SymbolTable symbols = grammar.symbols();
+            int[] input = new int[10];
+            String[] words = {"while", "(", "id", ")", "{", "id", "=", "num",
+                              ";", "}"};
+            for (int i = 0; i < words.length; i++)
+                input[i] = symbols.findTerminal(words[i]);
+            assertEquals(-1, parse(compressed::action, compressed::gotoState,
+                                   table, grammar, input));
+        }
+    }
+
+    @Test
+    public void testPack() {
+        int[][] columns = {{0, 2}, {1}, {0, 2}, {}, {0, 1, 2, 3}};
+        int[][] values = {{5, 6}, {7}, {5, 6}, {}, {1, 2, 3, 4}};
+        CompressedTable.Packed packed = CompressedTable.pack(columns, values);
+        // equal rows are shared
+        assertEquals(packed.row()[0], packed.row()[2]);
+        assertEquals(4, packed.base().length);
+        for (int i = 0; i < columns.length; i++) {
+            int k = 0;
+            for (int c = -2; c < 7; c++) {
+                boolean stored = k < columns[i].length && columns[i][k] == c;
+                assertEquals(stored ? values[i][k++] : -9,
+                             packed.get(i, c, -9));
+            }
+        }
+        // the sparse rows fill the full one's gaps, or go past its end
+        assertTrue(packed.value().length <= 4+2+1);
+    }
+
+    @Test
+    public void testStats() {
+        LRTable table = build(STATEMENTS, false);
+        CompressedTable compressed = new CompressedTable(table);
+        CompressedTable.Stats stats = compressed.stats();
+        assertEquals(table.actionTable().length+table.gotoTable().length,
+                     stats.fullSize());
+        assertEquals(table.stateCount(), stats.states());
+        assertEquals(compressed.actionRows().base().length,
+                     stats.actionRows());
+        assertEquals(compressed.actionDefaults().length+
+                     compressed.actionRows().size()+
+                     compressed.gotoDefaults().length+
+                     compressed.gotoRows().size(), stats.size());
+        int defaults = 0;
+        for (int fallback : compressed.actionDefaults())
+            if (fallback != 0)
+                defaults++;
+        assertEquals(defaults, stats.defaultReductions());
+        assertTrue(stats.actionRows() < stats.states());
+        assertTrue(stats.ratio() < 0.5);
+    }
+}
@@ -0,0 +1,108 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TestDesugarer {
+    static Desugarer desugar(String input) {
+        return new Desugarer(TestFirstFollow.parse(input));
+    }
+
+    @Test
+    public void testConstructs() {
+        Desugarer desugarer = desugar(".EBNF\n" +
+                                      "s = {a | b} [c] (d e) (f | g) x+\n");
+        Grammar grammar = desugarer.grammar();
+        assertTrue(grammar.isBnf());
+        assertEquals("s = {a | b} [c] d e (f | g) x x*\n" +
+                     "{a | b} = \"\"\n" +
+                     "{a | b} = a {a | b}\n" +
+                     "{a | b} = b {a | b}\n" +
+                     "[c] = c\n" +
+                     "[c] = \"\"\n" +
+                     "(f | g) = f\n" +
+                     "(f | g) = g\n" +
+                     "x* = \"\"\n" +
+                     "x* = x x*\n",
+                     grammar.toString());
+        assertEquals(4, desugarer.helperCount());
+    }
+
+    @Test
+    public void testSharedHelpers() {
+        StringBuilder input = new StringBuilder(".EBNF\n");
+        for (int i = 0; i < 50; i++)
+            input.append("r").append(i).append(" = alpha {alpha | digit}\n");
+        Desugarer desugarer = desugar(input.toString());
+        assertEquals(1, desugarer.helperCount());
+        assertEquals(49, desugarer.sharedCount());
+        // 50 rules plus the helper's three productions
+        assertEquals(53, desugarer.grammar().productionCount());
+    }
+
+    @Test
+    public void testPlusSharesRepetition() {
+        Desugarer desugarer = desugar(".EBNF\ns = x+ {x} (y | z)+ (y | z)*\n");
+        assertEquals("s = x x* x* (y | z) (y | z)* (y | z)*\n",
+                     desugarer.grammar().toString().lines().findFirst()
+                              .get() + "\n");
+        assertEquals(3, desugarer.helperCount());
+    }
+
+    @Test
+    public void testNested() {
+        // the inner helpers are desugared first, so equal outer constructs
+        // are recognized even though their inner nodes differ in the source
+        Desugarer desugarer = desugar(".EBNF\n" +
+                                      "s = {[a] b} c {[a] b}\n");
+        Grammar grammar = desugarer.grammar();
+        assertEquals(2, desugarer.helperCount());
+        // both [a] and {[a] b}
+        assertEquals(2, desugarer.sharedCount());
+        assertEquals("s = {[a] b} c {[a] b}", grammar.production(0));
+        assertEquals("{[a] b} = [a] b {[a] b}", grammar.production(4));
+    }
+
+    @Test
+    public void testKeepsSymbols() {
+        Grammar source = TestFirstFollow.parse(".EBNF\n" +
+                                               "s = [\"k\"] t\n" +
+                                               "t = 'u' {s}\n");
+        Grammar grammar = new Desugarer(source).grammar();
+        SymbolTable symbols = grammar.symbols();
+        assertEquals(source.symbols().findTerminal("u"),
+                     symbols.findTerminal("u"));
+        assertEquals(source.symbols().terminalCount(),
+                     symbols.terminalCount());
+        assertEquals(symbols.findNonterminal("s"), grammar.startSymbol());
+        assertEquals(source.definedLine(source.symbols().findNonterminal("t")),
+                     grammar.definedLine(symbols.findNonterminal("t")));
+    }
+
+    @Test
+    public void testAnalyzable() {
+        // right recursive repetitions keep lists LL(1)
+        Grammar grammar = desugar(".EBNF\n" +
+                                  "list = '(' [item {',' item}] ')'\n" +
+                                  "item = \"id\" | list\n").grammar();
+        FirstFollow sets = new FirstFollow(grammar);
+        assertTrue(new LL1(sets).isLL1());
+        LR1 lr1 = new LR1(sets);
+        assertTrue(lr1.isLR1());
+        for (String valid : new String[] {"( )", "( id )",
+                                          "( id , ( id , id ) , ( ) )"})
+            assertTrue(TestLR1.accepts(lr1.table(), grammar, valid));
+        assertFalse(TestLR1.accepts(lr1.table(), grammar, "( id , )"));
+    }
+
+    @Test
+    public void testBnfUnchanged() {
+        Grammar source = TestFirstFollow.parse(TestFirstFollow.EXPRESSIONS);
+        Desugarer desugarer = new Desugarer(source);
+        assertEquals(source.toString(), desugarer.grammar().toString());
+        assertEquals(0, desugarer.helperCount());
+    }
+}
@@ -0,0 +1,53 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class TestDigraph {
+    @Test
+    public void testComponents() {
+        // 0 -> 1 -> 2 -> 1, 2 -> 3, 4 on its own
+        Digraph graph = new Digraph(5);
+        graph.add(0, 1);
+        graph.add(1, 2);
+        graph.add(2, 1);
+        graph.add(2, 3);
+        int[] component = graph.components();
+        assertEquals(component[1], component[2]);
+        assertNotEquals(component[0], component[1]);
+        assertNotEquals(component[4], component[0]);
+        // edges go from higher components to lower ones
+        assertEquals(true, component[0] > component[1]);
+        assertEquals(true, component[2] > component[3]);
+    }
+
+    @Test
+    public void testSolve() {
+        Digraph graph = new Digraph(4);
+        graph.add(0, 1);
+        graph.add(1, 2);
+        graph.add(2, 1);
+        graph.add(2, 3);
+        long[] sets = {1, 2, 4, 8};
+        graph.solve(sets, 1);
+        assertArrayEquals(new long[] {15, 14, 14, 8}, sets);
+    }
+
+    @Test
+    public void testLongChain() {
+        // deep enough to overflow the stack if the search were recursive
+        int nodes = 200000;
+        Digraph graph = new Digraph(nodes);
+        for (int x = 0; x+1 < nodes; x++)
+            graph.add(x, x+1);
+        graph.add(nodes-1, 0);
+        long[] sets = new long[nodes];
+        sets[nodes/2] = 1;
+        graph.solve(sets, 1);
+        for (long set : sets)
+            assertEquals(1, set);
+    }
+}
@@ -0,0 +1,324 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class TestFirstFollow {
+    static final String EXPRESSIONS =
+        ".BNF\n" +
+        "<e> ::= <t> <e2>\n" +
+        "<e2> ::= '+' <t> <e2> | \"\"\n" +
+        "<t> ::= <f> <t2>\n" +
+        "<t2> ::= '*' <f> <t2> | \"\"\n" +
+        "<f> ::= '(' <e> ')' | \"id\"\n";
+
+    static Grammar parse(String input) {
+        Lexer lexer = new Lexer();
+        Parser parser = new Parser(lexer);
+        lexer.readString(input);
+        assertTrue(parser.parseGrammar());
+        return parser.grammar();
+    }
+
+    /* names()
+
+        Turn a set into a sorted, comma separated list of terminal names.
+    */
+    static String names(SymbolTable symbols, long[] set) {
+        Set<String> names = new TreeSet<>();
+        for (int t = Bits.next(set, 0, set.length, 0); t >= 0;
+             t = Bits.next(set, 0, set.length, t+1))
+            names.add(symbols.name(SymbolTable.encodeTerminal(t)));
+        return String.join(",", names);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+        "<e>;  false; \"(\",\"id\";  \")\",$",
+        "<e2>; true;  \"+\";         \")\",$",
+        "<t>;  false; \"(\",\"id\";  \")\",\"+\",$",
+        "<t2>; true;  \"*\";         \")\",\"+\",$",
+        "<f>;  false; \"(\",\"id\";  \")\",\"*\",\"+\",$"
+    })
+    public void testExpressions(String name, boolean nullable, String first,
+                                String follow) {
+        Grammar grammar = parse(EXPRESSIONS);
+        FirstFollow sets = new FirstFollow(grammar);
+        SymbolTable symbols = grammar.symbols();
+        int nt = symbols.findNonterminal(name);
+        assertEquals(nullable, sets.nullable(nt));
+        assertEquals(first, names(symbols, sets.first(nt)));
+        assertEquals(follow, names(symbols, sets.follow(nt)));
+    }
+
+    @Test
+    public void testNullableChains() {
+        Grammar grammar = parse(".BNF\n" +
+                                "<s> ::= <a> <b> <c> 'x'\n" +
+                                "<a> ::= <b> <b>\n" +
+                                "<b> ::= <c> | 'b'\n" +
+                                "<c> ::= \"\"\n" +
+                                "<d> ::= <d> 'd' | <a> <e>\n");
+        FirstFollow sets = new FirstFollow(grammar);
+        SymbolTable symbols = grammar.symbols();
+        assertFalse(sets.nullable(symbols.findNonterminal("<s>")));
+        assertTrue(sets.nullable(symbols.findNonterminal("<a>")));
+        assertTrue(sets.nullable(symbols.findNonterminal("<b>")));
+        // undefined nonterminals derive nothing at all
+        assertFalse(sets.nullable(symbols.findNonterminal("<e>")));
+        assertFalse(sets.nullable(symbols.findNonterminal("<d>")));
+        int s = symbols.findNonterminal("<s>");
+        assertEquals("\"b\",\"x\"", names(symbols, sets.first(s)));
+        int c = symbols.findNonterminal("<c>");
+        assertEquals("\"b\",\"x\"", names(symbols, sets.follow(c)));
+        int d = symbols.findNonterminal("<d>");
+        assertEquals("\"b\"", names(symbols, sets.first(d)));
+        assertEquals("\"d\"", names(symbols, sets.follow(d)));
+    }
+
+    @Test
+    public void testFirstOfSuffix() {
+        Grammar grammar = parse(EXPRESSIONS);
+        FirstFollow sets = new FirstFollow(grammar);
+        long[] set = new long[sets.words()];
+        // <e2> ::= '+' <t> <e2>, from <t> on
+        int p = grammar.productionsOf(grammar.symbols().findNonterminal(
+                                          "<e2>"))[0];
+        assertFalse(sets.firstOf(p, 1, set, 0));
+        assertEquals("\"(\",\"id\"", names(grammar.symbols(), set));
+        assertTrue(sets.firstOf(p, 3, new long[sets.words()], 0));
+    }
+
+    @Test
+    public void testManyTerminals() {
+        // more terminals than fit in one word
+        StringBuilder input = new StringBuilder(".BNF\n");
+        input.append("<s> ::= <a> <s> | \"\"\n");
+        for (int i = 0; i < 150; i++)
+            input.append("<a> ::= \"t").append(i).append("\"\n");
+        Grammar grammar = parse(input.toString());
+        FirstFollow sets = new FirstFollow(grammar);
+        assertEquals(3, sets.words());
+        int s = grammar.symbols().findNonterminal("<s>");
+        int a = grammar.symbols().findNonterminal("<a>");
+        for (int t = 1; t <= 150; t++) {
+            assertTrue(sets.inFirst(s, t));
+            assertTrue(sets.inFollow(a, t));
+        }
+        assertTrue(sets.inFollow(a, SymbolTable.END));
+    }
+
+    @Test
+    public void testRejectsEbnf() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> new FirstFollow(parse(".EBNF\na = {b}\n")));
+    }
+
+    @Test
+    public void testParallelComponents() {
+        // many small sub-languages with cycles, which don't depend on each
+        // other but on one shared <x>
+        StringBuilder input = new StringBuilder(".BNF\n<s> ::= \"\"");
+        for (int i = 0; i < 300; i++)
+            input.append(" | <a").append(i).append(">");
+        input.append('\n');
+        for (int i = 0; i < 300; i++) {
+            input.append("<a").append(i).append("> ::= <b").append(i)
+                 .append("> 'a' | <x>\n");
+            input.append("<b").append(i).append("> ::= <a").append(i)
+                 .append("> \"t").append(i).append("\" | \"\"\n");
+        }
+        input.append("<x> ::= 'x' <x> | 'y'\n");
+        Grammar grammar = parse(input.toString());
+        FirstFollow sequential = new FirstFollow(grammar, null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            FirstFollow parallel = new FirstFollow(grammar, pool);
+            int nonterminals = grammar.symbols().nonterminalCount();
+            for (int nt = 0; nt < nonterminals; nt++) {
+                assertArrayEquals(sequential.first(nt), parallel.first(nt));
+                assertArrayEquals(sequential.follow(nt),
+                                  parallel.follow(nt));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        SymbolTable symbols = grammar.symbols();
+        int a = symbols.findNonterminal("<a7>");
+        assertEquals("\"a\",\"x\",\"y\"",
+                     names(symbols, sequential.first(a)));
+        assertEquals("\"t7\",$", names(symbols, sequential.follow(a)));
+        int b = symbols.findNonterminal("<b7>");
+        assertEquals("\"a\",\"x\",\"y\"",
+                     names(symbols, sequential.first(b)));
+    }
+
+    /* assertSameSets()
+
+        Check an updated analysis against one made from scratch, comparing
+        symbols by name since the two may number terminals differently.
+    */
+    static void assertSameSets(FirstFollow expected, FirstFollow actual) {
+        Grammar grammar = actual.grammar();
+        SymbolTable symbols = grammar.symbols();
+        SymbolTable other = expected.grammar().symbols();
+        String text = grammar.toString();
+        for (int nt = 0; nt < symbols.nonterminalCount(); nt++) {
+            int same = other.findNonterminal(symbols.nonterminalName(nt));
+            assertEquals(expected.nullable(same), actual.nullable(nt), text);
+            assertEquals(names(other, expected.first(same)),
+                         names(symbols, actual.first(nt)), text);
+            assertEquals(names(other, expected.follow(same)),
+                         names(symbols, actual.follow(nt)), text);
+        }
+    }
+
+    @Test
+    public void testUpdateShrinks() {
+        FirstFollow before = new FirstFollow(parse(EXPRESSIONS));
+        // without the empty <t2>, nothing can follow <f> but '*'
+        Grammar grammar = parse(EXPRESSIONS.replace(
+            "<t2> ::= '*' <f> <t2> | \"\"", "<t2> ::= '*' <f> <t2>"));
+        FirstFollow after = new FirstFollow(before, grammar, null);
+        assertSameSets(new FirstFollow(grammar), after);
+        SymbolTable symbols = grammar.symbols();
+        int t2 = symbols.findNonterminal("<t2>");
+        assertFalse(after.nullable(t2));
+        assertEquals("\"*\"", names(symbols, after.follow(
+            symbols.findNonterminal("<f>"))));
+        // and '(' goes away for good
+        grammar = parse(EXPRESSIONS.replace("'(' <e> ')' | ", ""));
+        after = new FirstFollow(before, grammar, null);
+        assertSameSets(new FirstFollow(grammar), after);
+        assertEquals("\"id\"", names(grammar.symbols(), after.first(
+            grammar.symbols().findNonterminal("<e>"))));
+    }
+
+    @Test
+    public void testUpdateIsLocal() {
+        StringBuilder input = new StringBuilder(".BNF\n");
+        for (int i = 0; i < 1000; i++)
+            input.append("<r").append(i).append("> ::= 'x' <r")
+                 .append(i+1).append("> | \"").append(i).append("\"\n");
+        String text = input.toString();
+        FirstFollow before = new FirstFollow(parse(text));
+        assertEquals(1001, before.affectedCount());
+        Grammar grammar = parse(text.replace("<r500> ::= 'x'",
+                                             "<r500> ::= 'y'"));
+        FirstFollow after = new FirstFollow(before, grammar, null);
+        assertSameSets(new FirstFollow(grammar), after);
+        // only FIRST(<r500>) changes; FOLLOW(<r501>) has to be looked at,
+        // but is still FOLLOW(<r500>)
+        assertEquals(1, after.affectedCount());
+        // nothing changes at all
+        assertEquals(0, new FirstFollow(after, grammar, null)
+                            .affectedCount());
+    }
+
+    @Test
+    public void testUpdateFromEdit() {
+        StringBuilder input = new StringBuilder(".BNF\n");
+        for (int i = 0; i < 1000; i++)
+            input.append("<r").append(i).append("> ::= 'x' <r")
+                 .append(i+1).append("> | \"").append(i).append("\"\n");
+        IncrementalParser parser = new IncrementalParser(input.toString());
+        FirstFollow before = new FirstFollow(parser.grammar());
+        int at = parser.text().indexOf("<r500> ::= 'x'")+11;
+        parser.edit(at, at+3, "'y'");
+        Grammar grammar = parser.grammar();
+        FirstFollow after = new FirstFollow(
+            before, grammar, parser.removedProductions(),
+            parser.addedProductions(), null);
+        assertSameSets(new FirstFollow(grammar), after);
+        assertEquals(1, after.affectedCount());
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(21);
+        String[] symbols = {"<a>", "<b>", "<c>", "<d>", "<e>", "'x'", "'y'",
+                            "'z'", "\"w\""};
+        String[] rules = new String[6];
+        for (int i = 0; i < rules.length; i++)
+            rules[i] = "<a> ::= 'x'\n";
+        IncrementalParser parser =
+            new IncrementalParser(".BNF\n" + String.join("", rules));
+        FirstFollow sets = new FirstFollow(parser.grammar());
+        for (int round = 0; round < 1000; round++) {
+            // rewrite one rule, or add an alternative to it
+            int k = random.nextInt(rules.length);
+            int at = ".BNF\n".length();
+            for (int i = 0; i < k; i++)
+                at += rules[i].length();
+            String rule = random.nextBoolean()
+                ? symbols[random.nextInt(5)] + " ::= "
+                : rules[k].substring(0, rules[k].length()-1) + "\n| ";
+            int length = random.nextInt(4);
+            if (length == 0)
+                rule += "\"\"";
+            for (int i = 0; i < length; i++)
+                rule += (i > 0 ? " " : "") +
+                        symbols[random.nextInt(symbols.length)];
+            rule += "\n";
+            parser.edit(at, at+rules[k].length(), rule);
+            rules[k] = rule;
+            Grammar grammar = parser.grammar();
+            FirstFollow updated = new FirstFollow(
+                sets, grammar, parser.removedProductions(),
+                parser.addedProductions(), null);
+            assertSameSets(new FirstFollow(grammar), updated);
+            sets = updated;
+        }
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        Random random = new Random(20);
+        String[] symbols = {"<a>", "<b>", "<c>", "<d>", "<e>", "'x'", "'y'",
+                            "'z'", "\"w\""};
+        String[] rules = new String[6];
+        for (int i = 0; i < rules.length; i++)
+            rules[i] = "<a> ::= 'x'\n";
+        FirstFollow sets = null;
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (int round = 0; round < 1000; round++) {
+                // rewrite one rule
+                StringBuilder rule = new StringBuilder();
+                rule.append(symbols[random.nextInt(5)]).append(" ::=");
+                int alternatives = 1+random.nextInt(3);
+                for (int a = 0; a < alternatives; a++) {
+                    if (a > 0)
+                        rule.append(" |");
+                    int length = random.nextInt(4);
+                    if (length == 0)
+                        rule.append(" \"\"");
+                    for (int i = 0; i < length; i++)
+                        rule.append(' ').append(
+                            symbols[random.nextInt(symbols.length)]);
+                }
+                rules[random.nextInt(rules.length)] = rule + "\n";
+                Grammar grammar = parse(".BNF\n" + String.join("", rules));
+                FirstFollow updated = sets == null
+                    ? new FirstFollow(grammar)
+                    : new FirstFollow(sets, grammar, pool);
+                assertSameSets(new FirstFollow(grammar), updated);
+                sets = updated;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
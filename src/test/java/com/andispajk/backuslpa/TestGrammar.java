@@ -0,0 +1,170 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TestGrammar {
+    private Lexer lexer;
+    private Parser parser;
+
+    @BeforeEach
+    public void setUp() {
+        lexer = new Lexer();
+        parser = new Parser(lexer);
+    }
+
+    private Grammar parse(String input) {
+        lexer.readString(input);
+        assertTrue(parser.parseGrammar());
+        return parser.grammar();
+    }
+
+    private static int t(Grammar grammar, String text) {
+        return SymbolTable.encodeTerminal(grammar.symbols().findTerminal(text));
+    }
+
+    private static int nt(Grammar grammar, String name) {
+        return grammar.symbols().findNonterminal(name);
+    }
+
+    @Test
+    public void testBnfProductions() {
+        Grammar grammar = parse(".BNF\n" +
+                                "<list> ::= <item> ',' <list>\n" +
+                                "         | <item> | \"\"\n" +
+                                "<item> ::= \"x\" | 'y'\n");
+        assertEquals(TkType.BNF_MODE, grammar.mode());
+        assertTrue(grammar.isBnf());
+        assertEquals(5, grammar.productionCount());
+        int list = nt(grammar, "<list>");
+        int item = nt(grammar, "<item>");
+        assertEquals(0, list);
+        assertEquals(list, grammar.startSymbol());
+        assertArrayEquals(new int[] {item, t(grammar, ","), list},
+                          grammar.rhs(0));
+        assertArrayEquals(new int[] {item}, grammar.rhs(1));
+        // "" is an empty right-hand side, not a terminal
+        assertEquals(0, grammar.rhsLength(2));
+        assertEquals(-1, grammar.symbols().findTerminal(""));
+        assertArrayEquals(new int[] {0, 1, 2}, grammar.productionsOf(list));
+        assertArrayEquals(new int[] {3, 4}, grammar.productionsOf(item));
+        assertEquals("<item> ::= \"x\"", grammar.production(3));
+        assertEquals("<list> ::= \"\"", grammar.production(2));
+    }
+
+    @Test
+    public void testPositions() {
+        //                        0123 456789012345678901 2 3
+        Grammar grammar = parse(".BNF\n<a> ::= <b> \"c\"\n\n" +
+        //                      45678901234 5678901234
+                                "    | 'd'\n<b> ::= \"\"\n");
+        // productions start at their first right-hand side token
+        assertEquals(13, grammar.startPos(0));
+        assertEquals(1, grammar.line(0));
+        assertEquals(28, grammar.startPos(1));
+        assertEquals(3, grammar.line(1));
+        assertEquals(40, grammar.startPos(2));
+        int b = nt(grammar, "<b>");
+        assertTrue(grammar.isDefined(b));
+        assertEquals(32, grammar.definedAt(b));
+        assertEquals(4, grammar.definedLine(b));
+    }
+
+    @Test
+    public void testInterning() {
+        Grammar grammar = parse(".BNF\n" +
+                                "<a> ::= 'x' \"x\" '\\n' \"\\n\" <a> \"$\"\n");
+        SymbolTable symbols = grammar.symbols();
+        // $, x, \n and the grammar's own "$"
+        assertEquals(4, symbols.terminalCount());
+        int[] rhs = grammar.rhs(0);
+        assertEquals(rhs[0], rhs[1]);
+        assertEquals(rhs[2], rhs[3]);
+        assertEquals("\n", symbols.terminalText(
+                               SymbolTable.terminalOf(rhs[2])));
+        assertEquals("\"\\n\"", symbols.name(rhs[2]));
+        assertNotEquals(SymbolTable.END, SymbolTable.terminalOf(rhs[5]));
+        assertEquals("$", symbols.name(
+                              SymbolTable.encodeTerminal(SymbolTable.END)));
+        assertEquals(1, symbols.nonterminalCount());
+        assertFalse(SymbolTable.isTerminal(rhs[4]));
+    }
+
+    @Test
+    public void testUndefined() {
+        Grammar grammar = parse(".BNF\n<a> ::= <b>\n");
+        assertTrue(grammar.isDefined(nt(grammar, "<a>")));
+        assertFalse(grammar.isDefined(nt(grammar, "<b>")));
+        assertEquals(0, grammar.productionsOf(nt(grammar, "<b>")).length);
+    }
+
+    @Test
+    public void testEbnfNodes() {
+        Grammar grammar = parse(".EBNF\n" +
+                                "a = b {c | 'd'} [e] (f g)* h+ \"\"?\n");
+        assertFalse(grammar.isBnf());
+        int[] rhs = grammar.rhs(grammar.productionsOf(nt(grammar, "a"))[0]);
+        assertEquals(6, rhs.length);
+        assertEquals(nt(grammar, "b"), rhs[0]);
+        NodeKind[] kinds = {NodeKind.REPEAT, NodeKind.OPTION, NodeKind.REPEAT,
+                            NodeKind.PLUS, NodeKind.OPTION};
+        String[] names = {"{c | \"d\"}", "[e]", "(f g)*", "h+", "\"\"?"};
+        for (int i = 0; i < kinds.length; i++) {
+            assertEquals(kinds[i], grammar.kind(rhs[i+1]));
+            assertEquals(names[i], grammar.symbols().name(rhs[i+1]));
+            assertTrue(grammar.isDefined(rhs[i+1]));
+        }
+        int[] repeat = grammar.productionsOf(rhs[1]);
+        assertEquals(2, repeat.length);
+        assertArrayEquals(new int[] {nt(grammar, "c")}, grammar.rhs(repeat[0]));
+        assertArrayEquals(new int[] {t(grammar, "d")}, grammar.rhs(repeat[1]));
+        int[] group = grammar.productionsOf(rhs[3]);
+        assertArrayEquals(new int[] {nt(grammar, "f"), nt(grammar, "g")},
+                          grammar.rhs(group[0]));
+        int[] empty = grammar.productionsOf(rhs[5]);
+        assertEquals(1, empty.length);
+        assertEquals(0, grammar.rhsLength(empty[0]));
+    }
+
+    @Test
+    public void testNestedNodes() {
+        Grammar grammar = parse(".EBNF\n" +
+                                "a = (b [c | (d)+]\n" +
+                                "     | e)\n");
+        int[] rhs = grammar.rhs(grammar.productionsOf(nt(grammar, "a"))[0]);
+        assertEquals(1, rhs.length);
+        assertEquals(NodeKind.GROUP, grammar.kind(rhs[0]));
+        assertEquals("(b [c | (d)+] | e)", grammar.symbols().name(rhs[0]));
+        int[] group = grammar.productionsOf(rhs[0]);
+        assertEquals(2, group.length);
+        int option = grammar.rhs(group[0], 1);
+        assertEquals(NodeKind.OPTION, grammar.kind(option));
+        int plus = grammar.rhs(grammar.productionsOf(option)[1], 0);
+        assertEquals(NodeKind.PLUS, grammar.kind(plus));
+        // the alternative after the line break knows where it starts
+        assertEquals(2, grammar.line(group[1]));
+    }
+
+    @Test
+    public void testStopsAtError() {
+        lexer.readString(".BNF\n<a> ::= 'x'\n<b> ::= 'y'\n<c> ::=\n");
+        assertFalse(parser.parseGrammar());
+        Grammar grammar = parser.grammar();
+        assertEquals(2, grammar.productionCount());
+        assertFalse(grammar.isDefined(nt(grammar, "<c>")));
+    }
+
+    @Test
+    public void testStartSymbolSkipsNodes() {
+        // the node's productions are added before the rule's
+        Grammar grammar = parse(".EBNF\ns = {a} b\nb = 'x'\n");
+        assertNotEquals(nt(grammar, "s"), grammar.lhs(0));
+        assertEquals(nt(grammar, "s"), grammar.startSymbol());
+    }
+}
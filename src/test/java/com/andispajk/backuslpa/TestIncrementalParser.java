@@ -0,0 +1,269 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TestIncrementalParser {
+    static final String EBNF =
+        ".EBNF\n" +
+        "list = '(' [item {',' item}] ')'\n" +
+        "(* items can be\n" +
+        "   nested lists *)\n" +
+        "item = \"id\" ; a name\n" +
+        "     | list\n" +
+        "\n" +
+        "     | \"num\"+\n" +
+        "pair = (item | list) ':' item\n";
+
+    /* describe()
+
+        Everything about a grammar that a full parse decides, so two grammars
+        can be compared.
+    */
+    static String describe(Grammar grammar) {
+        StringBuilder s = new StringBuilder(grammar.toString());
+        SymbolTable symbols = grammar.symbols();
+        for (int t = 0; t < symbols.terminalCount(); t++)
+            s.append(symbols.terminalText(t)).append(' ');
+        for (int nt = 0; nt < symbols.nonterminalCount(); nt++) {
+            s.append('\n').append(symbols.nonterminalName(nt)).append(' ')
+             .append(grammar.kind(nt));
+            if (grammar.isDefined(nt))
+                s.append(' ').append(grammar.definedAt(nt)).append(':')
+                 .append(grammar.definedLine(nt)).append(':')
+                 .append(grammar.definedColumn(nt));
+        }
+        for (int p = 0; p < grammar.productionCount(); p++)
+            s.append('\n').append(grammar.startPos(p)).append(':')
+             .append(grammar.line(p)).append(':').append(grammar.column(p));
+        return s.toString();
+    }
+
+    static String describe(TokenStream tokens) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++)
+            s.append(tokens.type(i)).append(' ').append(tokens.start(i))
+             .append('-').append(tokens.end(i)).append(':')
+             .append(tokens.line(i)).append(':').append(tokens.column(i))
+             .append('\n');
+        return s.toString();
+    }
+
+    /* assertMatchesFullParse()
+
+        Check an incremental parse against parsing its text from scratch.
+    */
+    static void assertMatchesFullParse(IncrementalParser incremental) {
+        String text = incremental.text();
+        Lexer lexer = new Lexer();
+        lexer.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        lexer.readString(text);
+        assertEquals(describe(lexer.tokenizeAll()),
+                     describe(incremental.tokens()), text);
+        lexer.readString(text);
+        Parser parser = new Parser(lexer);
+        boolean valid = parser.parseGrammar();
+        assertEquals(valid, incremental.isValid(), text);
+        if (valid)
+            assertEquals(describe(parser.grammar()),
+                         describe(incremental.grammar()), text);
+        else
+            assertFalse(incremental.diagnostics().isEmpty(), text);
+    }
+
+    @Test
+    public void testInitialParse() {
+        IncrementalParser parser = new IncrementalParser(EBNF);
+        // the directive, list with the comment, item, pair
+        assertEquals(4, parser.blockCount());
+        assertEquals(4, parser.reparsedCount());
+        assertTrue(parser.isValid());
+        assertMatchesFullParse(parser);
+    }
+
+    @Test
+    public void testEditOneProduction() {
+        StringBuilder input = new StringBuilder(".BNF\n");
+        for (int i = 0; i < 1000; i++)
+            input.append("<r").append(i).append("> ::= 'x' <r")
+                 .append(i+1).append("> | \"\"\n");
+        IncrementalParser parser = new IncrementalParser(input.toString());
+        assertEquals(1001, parser.blockCount());
+        int at = parser.text().indexOf("<r500> ::= 'x'")+11;
+        parser.edit(at, at+3, "'y' 'z'");
+        assertEquals(1, parser.reparsedCount());
+        assertMatchesFullParse(parser);
+        // a new production in the middle
+        parser.edit(at, at, "'w'\n<new> ::= ");
+        assertEquals(2, parser.reparsedCount());
+        assertEquals(1002, parser.blockCount());
+        assertMatchesFullParse(parser);
+    }
+
+    @Test
+    public void testProductionChanges() {
+        IncrementalParser parser = new IncrementalParser(
+            ".BNF\n<a> ::= 'x' | 'y'\n<b> ::= 'z'\n<c> ::= <a>\n");
+        assertArrayEquals(new int[0], parser.removedProductions());
+        parser.grammar();
+        assertArrayEquals(new int[] {0, 1, 2, 3}, parser.addedProductions());
+        int at = parser.text().indexOf("'z'");
+        // two edits of <b>, with no grammar put together in between
+        parser.edit(at, at+3, "<c>");
+        parser.edit(at+3, at+3, "\n<d> ::= 'w' | \"\"");
+        assertEquals("<a> ::= \"x\"\n<a> ::= \"y\"\n<b> ::= <c>\n" +
+                     "<d> ::= \"w\"\n<d> ::= \"\"\n<c> ::= <a>\n",
+                     parser.grammar().toString());
+        assertArrayEquals(new int[] {2}, parser.removedProductions());
+        assertArrayEquals(new int[] {2, 3, 4}, parser.addedProductions());
+        // nothing changed since
+        parser.grammar();
+        assertArrayEquals(new int[] {2}, parser.removedProductions());
+        // another directive parses everything again, even if it is put
+        // back
+        parser.edit(0, 4, ".EBNF");
+        parser.edit(0, 5, ".BNF");
+        parser.grammar();
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5},
+                          parser.removedProductions());
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5},
+                          parser.addedProductions());
+    }
+
+    @Test
+    public void testContinuation() {
+        IncrementalParser parser =
+            new IncrementalParser(".BNF\n<a> ::= 'x'\n<b> ::= 'y'\n");
+        assertEquals(3, parser.blockCount());
+        // <b>'s line becomes an alternative of <a>
+        int at = parser.text().indexOf("<b> ::=");
+        parser.edit(at, at+7, "|");
+        assertEquals(2, parser.blockCount());
+        assertEquals("<a> ::= \"x\"\n<a> ::= \"y\"\n",
+                     parser.grammar().toString());
+        assertMatchesFullParse(parser);
+        parser.edit(at, at+1, "<c> ::=");
+        assertEquals(3, parser.blockCount());
+        assertMatchesFullParse(parser);
+    }
+
+    @Test
+    public void testMultiLineComment() {
+        IncrementalParser parser = new IncrementalParser(
+            ".BNF\n<a> ::= 'x'\n<b> ::= 'y'\n<c> ::= 'z'\n");
+        assertEquals(4, parser.blockCount());
+        // an unterminated comment swallows every production after it
+        int at = parser.text().indexOf("<b>");
+        parser.edit(at, at, "(* ");
+        assertEquals(3, parser.blockCount());
+        assertFalse(parser.isValid());
+        assertEquals("unterminated comment",
+                     parser.diagnostics().get(0).message());
+        assertMatchesFullParse(parser);
+        // closing it brings <c> back
+        int end = parser.text().indexOf("<c>");
+        parser.edit(end, end, "*) ");
+        assertEquals(3, parser.blockCount());
+        assertTrue(parser.isValid());
+        assertEquals("<a> ::= \"x\"\n<c> ::= \"z\"\n",
+                     parser.grammar().toString());
+        assertMatchesFullParse(parser);
+    }
+
+    @Test
+    public void testDirective() {
+        IncrementalParser parser =
+            new IncrementalParser(".BNF\n<a> ::= 'x'\na = 'y'\n");
+        assertFalse(parser.isValid());
+        parser.edit(0, 4, ".EBNF");
+        // every block parses differently now
+        assertEquals(3, parser.reparsedCount());
+        assertFalse(parser.isValid());
+        // the first token of a block could become a |, so the block before
+        // is parsed again too
+        parser.edit(6, 13, "b = 'x'");
+        assertEquals(2, parser.reparsedCount());
+        assertTrue(parser.isValid());
+        assertMatchesFullParse(parser);
+        parser.edit(0, 5, "");
+        assertNull(parser.grammar());
+        assertEquals(List.of(new Diagnostic(2, 0, "no directive found")),
+                     parser.diagnostics());
+    }
+
+    @Test
+    public void testDiagnosticsPerBlock() {
+        IncrementalParser parser = new IncrementalParser(
+            ".BNF\n<a> = 'x'\n<b> ::= 'y'\n<c> ::= 'z' )\n");
+        List<Diagnostic> errors = List.of(
+            new Diagnostic(2, 4, "expected \"::=\""),
+            new Diagnostic(4, 12, "expected nonterminal symbol"));
+        assertEquals(errors, parser.diagnostics());
+        // the same as a full parse, which skips to <b> after the first
+        Lexer lexer = new Lexer();
+        lexer.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        lexer.readString(parser.text());
+        assertFalse(new Parser(lexer).parseGrammar());
+        assertEquals(errors, lexer.diagnostics());
+        // the errors move down with their lines, without a parse
+        parser.edit(4, 4, "\n\n");
+        assertEquals(1, parser.reparsedCount());
+        assertEquals(4, parser.diagnostics().get(0).line());
+        assertEquals(6, parser.diagnostics().get(1).line());
+    }
+
+    @Test
+    public void testCharsBeyondLatin1() {
+        IncrementalParser parser = new IncrementalParser(".EBNF\na = b\n");
+        assertTrue(parser.isValid());
+        // typing a snowman mustn't give a valid b? in its place
+        parser.edit(11, 11, "\u2603");
+        assertFalse(parser.isValid());
+        assertEquals(List.of(new Diagnostic(2, 5, "illegal character")),
+                     parser.diagnostics());
+        parser.edit(11, 12, "");
+        assertTrue(parser.isValid());
+        assertFalse(new IncrementalParser(".EBNF\na = b\u2603\n").isValid());
+    }
+
+    @Test
+    public void testRandomEdits() {
+        String[] snippets = {"\n", "| ", "<x> ", " ::= ", "'a' ", "(*", "*)",
+                             "; c\n", "{", "}", "item", " = ", "\"\"", "( ",
+                             ") ", "\n| ", "\n\n", ".EBNF\n"};
+        Random random = new Random(19);
+        IncrementalParser parser = new IncrementalParser(EBNF);
+        for (int i = 0; i < 2000; i++) {
+            String text = parser.text();
+            int from = random.nextInt(text.length()+1);
+            int to = Math.min(text.length(), from+random.nextInt(4));
+            String replacement = random.nextInt(3) == 0 ? ""
+                : snippets[random.nextInt(snippets.length)];
+            parser.edit(from, to, replacement);
+            assertMatchesFullParse(parser);
+            // keep the text from growing or shrinking without bound
+            if (parser.text().length() > 400 || parser.text().length() < 40)
+                parser.edit(0, parser.text().length(), EBNF);
+        }
+    }
+
+    @Test
+    public void testBadEdit() {
+        IncrementalParser parser = new IncrementalParser(EBNF);
+        assertThrows(IndexOutOfBoundsException.class,
+                     () -> parser.edit(5, 4, ""));
+        assertThrows(IndexOutOfBoundsException.class,
+                     () -> parser.edit(0, EBNF.length()+1, ""));
+    }
+}
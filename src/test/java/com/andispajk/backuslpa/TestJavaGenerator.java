@@ -0,0 +1,220 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestJavaGenerator {
+    @TempDir
+    Path dir;
+
+    /* compile()
+
+        Generate a recognizer, compile it and load it, returning its parse
+        method.
+    */
+    private Method compile(LL1 ll1, JavaGenerator.Style style, String pkg,
+                           String name) throws Exception {
+        Path source = dir.resolve(name + ".java");
+        Files.writeString(source,
+                          new JavaGenerator(ll1).generate(style, pkg, name));
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        Path classes = dir.resolve("classes");
+        assertEquals(0, javac.run(null, null, null, "-d", classes.toString(),
+                                  source.toString()));
+        URLClassLoader loader = new URLClassLoader(
+            new URL[] {classes.toUri().toURL()});
+        String qualified = pkg.isEmpty() ? name : pkg + "." + name;
+        return loader.loadClass(qualified).getMethod("parse", int[].class);
+    }
+
+    private static int parse(Method recognizer, int[] tokens)
+        throws Exception {
+        return (Integer) recognizer.invoke(null, (Object) tokens);
+    }
+
+    /* parseLL()
+
+        What a recognizer should answer, from the LL(1) table itself.
+    */
+    private static int parseLL(LL1 ll1, int[] tokens) {
+        Grammar grammar = ll1.grammar();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(grammar.startSymbol());
+        int at = 0;
+        while (!stack.isEmpty()) {
+            int top = stack.pop();
+            int t = at < tokens.length ? tokens[at] : SymbolTable.END;
+            if (SymbolTable.isTerminal(top)) {
+                if (SymbolTable.terminalOf(top) != t)
+                    return at;
+                at++;
+                continue;
+            }
+            int p = ll1.production(top, t);
+            if (p < 0)
+                return at;
+            for (int i = grammar.rhsLength(p)-1; i >= 0; i--)
+                stack.push(grammar.rhs(p, i));
+        }
+        return at < tokens.length ? at : -1;
+    }
+
+    private static int[] terminals(LL1 ll1, String... texts) {
+        SymbolTable symbols = ll1.grammar().symbols();
+        int[] ids = new int[texts.length];
+        for (int i = 0; i < texts.length; i++)
+            ids[i] = symbols.findTerminal(texts[i]);
+        return ids;
+    }
+
+    @Test
+    public void testExpressions() throws Exception {
+        LL1 ll1 = TestTableFile.analyze(TestFirstFollow.EXPRESSIONS);
+        int[] good = terminals(ll1, "id", "+", "(", "id", "*", "id", ")");
+        int[] bad = terminals(ll1, "id", "+", "*", "id");
+        int[] early = terminals(ll1, "(", "id", "+");
+        int[] more = terminals(ll1, "id", ")", "id");
+        for (JavaGenerator.Style style : JavaGenerator.Style.values()) {
+            Method recognizer = compile(ll1, style, "", "Expr" + style);
+            assertEquals(-1, parse(recognizer, good));
+            assertEquals(2, parse(recognizer, bad));
+            assertEquals(3, parse(recognizer, early));
+            assertEquals(1, parse(recognizer, more));
+            assertEquals(0, parse(recognizer, new int[0]));
+            assertEquals(1, parse(recognizer, new int[] {good[0], -1}));
+        }
+    }
+
+    @Test
+    public void testRandomInput() throws Exception {
+        LL1 ll1 = TestTableFile.analyze(
+            ".EBNF\n" +
+            "s = {stmt} \"end\"\n" +
+            "stmt = 'x' ['=' e] ';' | \"if\" '(' e ')' stmt\n" +
+            "     | '{' {stmt} '}'\n" +
+            "e = 'x' {('+' | '-') 'x'} | '(' e ')'\n");
+        Method table = compile(ll1, JavaGenerator.Style.TABLE, "gen",
+                               "Table");
+        Method descent = compile(ll1, JavaGenerator.Style.DESCENT, "gen",
+                                 "Descent");
+        int terminals = ll1.grammar().symbols().terminalCount();
+        Random random = new Random(23);
+        for (int round = 0; round < 5000; round++) {
+            int[] tokens = new int[random.nextInt(12)];
+            for (int i = 0; i < tokens.length; i++)
+                tokens[i] = 1+random.nextInt(terminals-1);
+            int expected = parseLL(ll1, tokens);
+            assertEquals(expected, parse(table, tokens));
+            assertEquals(expected, parse(descent, tokens));
+        }
+        int[] good = terminals(ll1, "if", "(", "(", "x", ")", ")", "{", "x",
+                               "=", "x", "-", "x", ";", "}", "end");
+        assertEquals(-1, parse(table, good));
+        assertEquals(-1, parse(descent, good));
+    }
+
+    @Test
+    public void testLargeGrammar() throws Exception {
+        // more parse table than a class initializer could hold as code
+        int n = 1000;
+        StringBuilder input = new StringBuilder(".BNF\n");
+        for (int i = 0; i < n; i++)
+            input.append("<n").append(i).append("> ::= \"t").append(i)
+                 .append("\" <n").append(i+1).append("> | 'x' <n")
+                 .append(i+1).append(">\n");
+        input.append("<n").append(n).append("> ::= \"end\"\n");
+        LL1 ll1 = TestTableFile.analyze(input.toString());
+        SymbolTable symbols = ll1.grammar().symbols();
+        int[] tokens = new int[n+1];
+        for (int i = 0; i < n; i++)
+            tokens[i] = symbols.findTerminal(i%3 == 0 ? "t" + i : "x");
+        tokens[n] = symbols.findTerminal("end");
+        for (JavaGenerator.Style style : JavaGenerator.Style.values()) {
+            Method recognizer = compile(ll1, style, "", "Chain" + style);
+            assertEquals(-1, parse(recognizer, tokens));
+            int[] wrong = tokens.clone();
+            wrong[700] = symbols.findTerminal("t701");
+            assertEquals(700, parse(recognizer, wrong));
+            assertEquals(n, parse(recognizer, Arrays.copyOf(tokens, n)));
+        }
+    }
+
+    @Test
+    public void testTooManySymbols() throws Exception {
+        // the right-hand sides' offsets would wrap around in a char
+        StringBuilder input = new StringBuilder(".BNF\n<s> ::=");
+        for (int i = 0; i < 70000; i++)
+            input.append(" 'x'");
+        LL1 ll1 = TestTableFile.analyze(input.append('\n').toString());
+        assertThrows(IllegalArgumentException.class,
+                     () -> new JavaGenerator(ll1));
+        // just below the limit still works
+        input.setLength(0);
+        input.append(".BNF\n<s> ::=");
+        for (int i = 0; i < Character.MAX_VALUE-1; i++)
+            input.append(" 'x'");
+        LL1 largest = TestTableFile.analyze(input.append('\n').toString());
+        int[] tokens = new int[Character.MAX_VALUE-1];
+        Arrays.fill(tokens, largest.grammar().symbols().findTerminal("x"));
+        Method recognizer = compile(largest, JavaGenerator.Style.TABLE, "",
+                                    "Longest");
+        assertEquals(-1, parse(recognizer, tokens));
+        assertEquals(tokens.length-1,
+                     parse(recognizer, Arrays.copyOf(tokens,
+                                                     tokens.length-1)));
+    }
+
+    @Test
+    public void testNames() throws Exception {
+        LL1 ll1 = TestTableFile.analyze(
+            ".BNF\n<s> ::= '\"' <s> | \"a\\\\b\" | \"\\t\\v\"\n");
+        Method recognizer = compile(ll1, JavaGenerator.Style.TABLE, "",
+                                    "Names");
+        Class<?> names = recognizer.getDeclaringClass();
+        SymbolTable symbols = ll1.grammar().symbols();
+        String[] texts = new String[symbols.terminalCount()];
+        for (int t = 0; t < texts.length; t++)
+            texts[t] = symbols.terminalText(t);
+        assertArrayEquals(texts, (String[]) names.getField("TERMINALS")
+                                                 .get(null));
+        Method terminal = names.getMethod("terminal", String.class);
+        for (int t = 1; t < texts.length; t++)
+            assertEquals(t, terminal.invoke(null, texts[t]));
+        assertEquals(-1, terminal.invoke(null, "b"));
+    }
+
+    @Test
+    public void testRejects() throws IOException {
+        LL1 conflicts = TestTableFile.analyze(
+            ".BNF\n<a> ::= 'x' | 'x' 'y'\n");
+        assertThrows(IllegalArgumentException.class,
+                     () -> new JavaGenerator(conflicts));
+        JavaGenerator generator = new JavaGenerator(
+            TestTableFile.analyze(TestFirstFollow.EXPRESSIONS));
+        for (String name : new String[] {"", "class", "a-b", "1a", "a.b"})
+            assertThrows(IllegalArgumentException.class,
+                         () -> generator.generate(JavaGenerator.Style.TABLE,
+                                                  "", name));
+        assertThrows(IllegalArgumentException.class,
+                     () -> generator.generate(JavaGenerator.Style.TABLE,
+                                              "a..b", "Parser"));
+    }
+}
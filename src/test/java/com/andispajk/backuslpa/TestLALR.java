@@ -0,0 +1,110 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class TestLALR {
+    static LALR build(String input) {
+        return new LALR(new FirstFollow(TestFirstFollow.parse(input)));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "id,                true",
+        "id + id * id,      true",
+        "( id + id ) * id,  true",
+        "id + * id,         false",
+        "( id,              false",
+        "'',                false"
+    })
+    public void testLeftRecursive(String input, boolean valid) {
+        LALR lalr = build(TestLR1.LEFT_RECURSIVE);
+        assertTrue(lalr.isLALR1());
+        Grammar grammar = TestFirstFollow.parse(TestLR1.LEFT_RECURSIVE);
+        assertEquals(valid, TestLR1.accepts(lalr.table(), grammar, input));
+    }
+
+    @Test
+    public void testStateCount() {
+        // the canonical LR(1) automaton of this one has 10 states
+        LALR lalr = build(".BNF\n<s> ::= <c> <c>\n<c> ::= 'c' <c> | 'd'\n");
+        assertEquals(7, lalr.stateCount());
+        assertTrue(lalr.isLALR1());
+    }
+
+    @Test
+    public void testNotSlr() {
+        // needs lookaheads that FOLLOW sets can't give
+        String input = ".BNF\n" +
+                       "<s> ::= <l> '=' <r> | <r>\n" +
+                       "<l> ::= '*' <r> | \"id\"\n" +
+                       "<r> ::= <l>\n";
+        LALR lalr = build(input);
+        assertTrue(lalr.isLALR1());
+        Grammar grammar = TestFirstFollow.parse(input);
+        for (String valid : new String[] {"id", "id = * id", "* * id = id"})
+            assertTrue(TestLR1.accepts(lalr.table(), grammar, valid));
+        assertFalse(TestLR1.accepts(lalr.table(), grammar, "id = id = id"));
+    }
+
+    @Test
+    public void testNullable() {
+        // reads and includes through nonterminals that derive ""
+        String input = ".BNF\n" +
+                       "<s> ::= <a> <b> 'x' | 'y' <b>\n" +
+                       "<a> ::= 'a' <a> | \"\"\n" +
+                       "<b> ::= 'b' | \"\"\n";
+        LALR lalr = build(input);
+        assertTrue(lalr.isLALR1());
+        Grammar grammar = TestFirstFollow.parse(input);
+        for (String valid : new String[] {"x", "a a b x", "b x", "y", "y b"})
+            assertTrue(TestLR1.accepts(lalr.table(), grammar, valid));
+        assertFalse(TestLR1.accepts(lalr.table(), grammar, "a y"));
+        assertFalse(TestLR1.accepts(lalr.table(), grammar, "y x"));
+    }
+
+    @Test
+    public void testNotLalr() {
+        LALR lalr = build(TestLR1.NOT_LALR);
+        assertFalse(lalr.isLALR1());
+        List<LRTable.Conflict> conflicts = lalr.table().conflicts();
+        assertEquals(1, conflicts.size());
+        LRTable.Conflict conflict = conflicts.get(0);
+        assertEquals(LRTable.ConflictKind.REDUCE_REDUCE, conflict.kind());
+        // <e> ::= 'e' and <f> ::= 'e' clash on both 'c' and 'd'
+        assertArrayEquals(new int[] {4, 5}, conflict.productions());
+        assertEquals(2, conflict.terminals().length);
+    }
+
+    @Test
+    public void testShiftReduce() {
+        LALR lalr = build(".BNF\n" +
+                          "<s> ::= \"if\" <s> <else> | 'x'\n" +
+                          "<else> ::= \"else\" <s>\n" +
+                          "         | \"\"\n");
+        assertFalse(lalr.isLALR1());
+        LRTable.Conflict conflict = lalr.table().conflicts().get(0);
+        assertEquals(LRTable.ConflictKind.SHIFT_REDUCE, conflict.kind());
+        assertArrayEquals(new int[] {3}, conflict.productions());
+    }
+
+    @Test
+    public void testSameLanguageAsLR1() {
+        String input = ".BNF\n<s> ::= <c> <c>\n<c> ::= 'c' <c> | 'd'\n";
+        LRTable lalr = build(input).table();
+        LRTable lr1 = TestLR1.build(input).table();
+        Grammar grammar = TestFirstFollow.parse(input);
+        for (String sentence : new String[] {"d d", "c d c c d", "d",
+                                             "c c", "d d d", "c d d"})
+            assertEquals(TestLR1.accepts(lr1, grammar, sentence),
+                         TestLR1.accepts(lalr, grammar, sentence));
+    }
+}
@@ -0,0 +1,107 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TestLL1 {
+    private static LL1 analyze(String input) {
+        return new LL1(new FirstFollow(TestFirstFollow.parse(input)));
+    }
+
+    private static int nt(LL1 ll1, String name) {
+        return ll1.grammar().symbols().findNonterminal(name);
+    }
+
+    private static int t(LL1 ll1, String text) {
+        return ll1.grammar().symbols().findTerminal(text);
+    }
+
+    @Test
+    public void testExpressions() {
+        LL1 ll1 = analyze(TestFirstFollow.EXPRESSIONS);
+        assertTrue(ll1.isLL1());
+        Grammar grammar = ll1.grammar();
+        int e2 = nt(ll1, "<e2>");
+        int[] e2s = grammar.productionsOf(e2);
+        assertEquals(e2s[0], ll1.production(e2, t(ll1, "+")));
+        // <e2> ::= "" is chosen on whatever may follow <e2>
+        assertEquals(e2s[1], ll1.production(e2, t(ll1, ")")));
+        assertEquals(e2s[1], ll1.production(e2, SymbolTable.END));
+        assertEquals(-1, ll1.production(e2, t(ll1, "id")));
+        int f = nt(ll1, "<f>");
+        assertEquals(grammar.productionsOf(f)[1],
+                     ll1.production(f, t(ll1, "id")));
+        assertEquals(-1, ll1.production(f, SymbolTable.END));
+    }
+
+    @Test
+    public void testFirstFirst() {
+        LL1 ll1 = analyze(".BNF\n" +
+                          "<s> ::= 'a' 'b' | <x>\n" +
+                          "<x> ::= 'a' 'c' | 'd'\n");
+        assertFalse(ll1.isLL1());
+        List<LL1.Conflict> conflicts = ll1.conflicts();
+        assertEquals(1, conflicts.size());
+        LL1.Conflict conflict = conflicts.get(0);
+        assertEquals(LL1.ConflictKind.FIRST_FIRST, conflict.kind());
+        assertEquals(nt(ll1, "<s>"), conflict.nonterminal());
+        assertEquals(0, conflict.production());
+        assertEquals(1, conflict.other());
+        assertArrayEquals(new int[] {t(ll1, "a")}, conflict.terminals());
+        // the production added first keeps the cell
+        assertEquals(0, ll1.production(nt(ll1, "<s>"), t(ll1, "a")));
+        assertEquals(1, ll1.production(nt(ll1, "<s>"), t(ll1, "d")));
+        assertEquals("FIRST/FIRST conflict for <s> on \"a\"\n" +
+                     "    2  | <s> ::= \"a\" \"b\"\n" +
+                     "    2  | <s> ::= <x>", ll1.describe(conflict));
+    }
+
+    @Test
+    public void testFirstFollow() {
+        // the dangling else
+        LL1 ll1 = analyze(".BNF\n" +
+                          "<s> ::= \"if\" <s> <else> | 'x'\n" +
+                          "<else> ::= \"else\" <s>\n" +
+                          "         | \"\"\n");
+        assertEquals(1, ll1.conflicts().size());
+        LL1.Conflict conflict = ll1.conflicts().get(0);
+        assertEquals(LL1.ConflictKind.FIRST_FOLLOW, conflict.kind());
+        assertEquals(nt(ll1, "<else>"), conflict.nonterminal());
+        assertArrayEquals(new int[] {t(ll1, "else")}, conflict.terminals());
+        assertEquals(3, ll1.grammar().line(conflict.other()));
+    }
+
+    @Test
+    public void testGroupedTerminals() {
+        LL1 ll1 = analyze(".BNF\n" +
+                          "<s> ::= <a> | <b> | 'z'\n" +
+                          "<a> ::= 'x' | 'y' | \"\"\n" +
+                          "<b> ::= 'x' | 'y' | 'z'\n");
+        List<LL1.Conflict> conflicts = ll1.conflicts();
+        // <a> and <b> clash on x and y, <a> is nullable but has no FOLLOW
+        // conflict, <b> and 'z' clash on z
+        assertEquals(2, conflicts.size());
+        assertArrayEquals(new int[] {t(ll1, "x"), t(ll1, "y")},
+                          conflicts.get(0).terminals());
+        assertEquals(LL1.ConflictKind.FIRST_FIRST, conflicts.get(1).kind());
+        assertArrayEquals(new int[] {t(ll1, "z")},
+                          conflicts.get(1).terminals());
+    }
+
+    @Test
+    public void testTwoNullable() {
+        LL1 ll1 = analyze(".BNF\n" +
+                          "<s> ::= <a> 'x'\n" +
+                          "<a> ::= \"\" | <b>\n" +
+                          "<b> ::= \"\"\n");
+        assertEquals(1, ll1.conflicts().size());
+        assertEquals(LL1.ConflictKind.FIRST_FOLLOW,
+                     ll1.conflicts().get(0).kind());
+    }
+}
@@ -0,0 +1,214 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class TestLR1 {
+    static final String LEFT_RECURSIVE =
+        ".BNF\n" +
+        "<e> ::= <e> '+' <t> | <t>\n" +
+        "<t> ::= <t> '*' <f> | <f>\n" +
+        "<f> ::= '(' <e> ')' | \"id\"\n";
+
+    // LR(1), but merging states with equal cores gives reduce/reduce
+    // conflicts
+    static final String NOT_LALR =
+        ".BNF\n" +
+        "<s> ::= 'a' <e> 'c' | 'a' <f> 'd' | 'b' <f> 'c' | 'b' <e> 'd'\n" +
+        "<e> ::= 'e'\n" +
+        "<f> ::= 'e'\n";
+
+    static LR1 build(String input) {
+        return new LR1(new FirstFollow(TestFirstFollow.parse(input)));
+    }
+
+    /* accepts()
+
+        Run an LR parser driven by the tables over space separated terminals.
+    */
+    static boolean accepts(LRTable table, Grammar grammar, String input) {
+        SymbolTable symbols = grammar.symbols();
+        String[] words = input.isEmpty() ? new String[0] : input.split(" ");
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        int i = 0;
+        while (true) {
+            int t = i < words.length ? symbols.findTerminal(words[i])
+                                     : SymbolTable.END;
+            if (t < 0)
+                return false;
+            int action = table.action(stack.peek(), t);
+            if (table.isAccept(action))
+                return true;
+            if (LRTable.isShift(action)) {
+                stack.push(LRTable.target(action));
+                i++;
+            } else if (LRTable.isReduce(action)) {
+                int p = LRTable.production(action);
+                for (int k = 0; k < grammar.rhsLength(p); k++)
+                    stack.pop();
+                stack.push(table.gotoState(stack.peek(), grammar.lhs(p)));
+            } else {
+                return false;
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "id,                true",
+        "id + id * id,      true",
+        "( id + id ) * id,  true",
+        "id + * id,         false",
+        "( id,              false",
+        "'',                false"
+    })
+    public void testLeftRecursive(String input, boolean valid) {
+        LR1 lr1 = build(LEFT_RECURSIVE);
+        assertTrue(lr1.isLR1());
+        Grammar grammar = TestFirstFollow.parse(LEFT_RECURSIVE);
+        assertEquals(valid, accepts(lr1.table(), grammar, input));
+    }
+
+    @Test
+    public void testCanonicalStateCount() {
+        // the textbook example with 10 canonical LR(1) states
+        LR1 lr1 = build(".BNF\n<s> ::= <c> <c>\n<c> ::= 'c' <c> | 'd'\n");
+        assertEquals(10, lr1.stateCount());
+        assertTrue(lr1.isLR1());
+    }
+
+    @Test
+    public void testNotLalr() {
+        LR1 lr1 = build(NOT_LALR);
+        assertTrue(lr1.isLR1());
+        Grammar grammar = TestFirstFollow.parse(NOT_LALR);
+        assertTrue(accepts(lr1.table(), grammar, "a e c"));
+        assertTrue(accepts(lr1.table(), grammar, "b e c"));
+        assertFalse(accepts(lr1.table(), grammar, "a e e"));
+    }
+
+    @Test
+    public void testNullable() {
+        String input = ".BNF\n" +
+                       "<s> ::= <a> <b> 'x' | 'y' <b>\n" +
+                       "<a> ::= 'a' <a> | \"\"\n" +
+                       "<b> ::= 'b' | \"\"\n";
+        LR1 lr1 = build(input);
+        assertTrue(lr1.isLR1());
+        Grammar grammar = TestFirstFollow.parse(input);
+        for (String valid : new String[] {"x", "a a b x", "b x", "y", "y b"})
+            assertTrue(accepts(lr1.table(), grammar, valid));
+        assertFalse(accepts(lr1.table(), grammar, "a y"));
+    }
+
+    @Test
+    public void testShiftReduce() {
+        LR1 lr1 = build(".BNF\n" +
+                        "<s> ::= \"if\" <s> <else> | 'x'\n" +
+                        "<else> ::= \"else\" <s>\n" +
+                        "         | \"\"\n");
+        assertFalse(lr1.isLR1());
+        List<LRTable.Conflict> conflicts = lr1.table().conflicts();
+        assertFalse(conflicts.isEmpty());
+        LRTable.Conflict conflict = conflicts.get(0);
+        assertEquals(LRTable.ConflictKind.SHIFT_REDUCE, conflict.kind());
+        assertArrayEquals(new int[] {3}, conflict.productions());
+        assertEquals(3, lr1.table().line(conflict));
+        assertEquals("shift/reduce conflict in state " + conflict.state() +
+                     " on \"else\"\n" +
+                     "    3  | <else> ::= . \"else\" <s>\n" +
+                     "    4  | <else> ::= .",
+                     lr1.table().describe(conflict));
+        // the shift wins
+        int action = lr1.table().action(conflict.state(),
+                                        conflict.terminals()[0]);
+        assertTrue(LRTable.isShift(action));
+    }
+
+    @Test
+    public void testShiftsMerged() {
+        // x and y are shifted by different items, but it's one conflict
+        LR1 lr1 = build(".BNF\n" +
+                        "<s> ::= <a> 'x' | <a> 'y' | 'c' 'x' | 'c' 'y'\n" +
+                        "<a> ::= 'c'\n");
+        List<LRTable.Conflict> conflicts = lr1.table().conflicts();
+        assertEquals(1, conflicts.size());
+        LRTable.Conflict conflict = conflicts.get(0);
+        assertEquals(LRTable.ConflictKind.SHIFT_REDUCE, conflict.kind());
+        assertEquals(2, conflict.terminals().length);
+        assertEquals("shift/reduce conflict in state " + conflict.state() +
+                     " on \"x\", \"y\"\n" +
+                     "    2  | <s> ::= \"c\" . \"x\"\n" +
+                     "    2  | <s> ::= \"c\" . \"y\"\n" +
+                     "    3  | <a> ::= \"c\" .",
+                     lr1.table().describe(conflict));
+    }
+
+    @Test
+    public void testReduceReduce() {
+        LR1 lr1 = build(".BNF\n" +
+                        "<s> ::= <a> 'x' | <b> 'x'\n" +
+                        "<a> ::= 'a'\n" +
+                        "<b> ::= 'a'\n");
+        List<LRTable.Conflict> conflicts = lr1.table().conflicts();
+        assertEquals(1, conflicts.size());
+        LRTable.Conflict conflict = conflicts.get(0);
+        assertEquals(LRTable.ConflictKind.REDUCE_REDUCE, conflict.kind());
+        assertArrayEquals(new int[] {2, 3}, conflict.productions());
+        assertEquals(0, conflict.shiftItems().length);
+        // the production reduced by first wins
+        int x = TestFirstFollow.parse(".BNF\n<s> ::= <a> 'x'\n")
+                               .symbols().findTerminal("x");
+        assertEquals(-3, lr1.table().action(conflict.state(), x));
+    }
+
+    @Test
+    public void testDeterministic() {
+        LR1 first = build(LEFT_RECURSIVE);
+        LR1 second = build(LEFT_RECURSIVE);
+        assertEquals(first.stateCount(), second.stateCount());
+        assertArrayEquals(first.table().actionTable(),
+                          second.table().actionTable());
+        assertArrayEquals(first.table().gotoTable(),
+                          second.table().gotoTable());
+    }
+
+    @Test
+    public void testParallelNumbering() {
+        // wide enough that frontiers are split between threads
+        StringBuilder input = new StringBuilder(".BNF\n<s> ::= <e>");
+        for (int i = 0; i < 40; i++)
+            input.append(" | \"k").append(i).append("\" <e> <s>");
+        input.append("\n<e> ::= <e> '+' <t> | <t>\n");
+        input.append("<t> ::= '(' <e> ')' | 'x'\n");
+        FirstFollow sets = new FirstFollow(
+            TestFirstFollow.parse(input.toString()));
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(8);
+        try {
+            LR1 sequential = new LR1(sets, one);
+            LR1 parallel = new LR1(sets, many);
+            assertTrue(sequential.stateCount() > 100);
+            assertEquals(sequential.stateCount(), parallel.stateCount());
+            assertArrayEquals(sequential.table().actionTable(),
+                              parallel.table().actionTable());
+            assertArrayEquals(sequential.table().gotoTable(),
+                              parallel.table().gotoTable());
+        } finally {
+            one.shutdown();
+            many.shutdown();
+        }
+    }
+}
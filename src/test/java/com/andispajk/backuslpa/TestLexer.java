@@ -1,19 +1,30 @@
 package com.andispajk.backuslpa;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 @TestMethodOrder(OrderAnnotation.class)
 public class TestLexer {
-    private Lexer lexer;
+    protected Lexer lexer;
     private Token tk;
 
     @BeforeEach
@@ -479,6 +490,13 @@ public class TestLexer {
         assertEquals(1, tk.startPos());
         tk = lexer.lex();
         assertEquals(TkType.EOF, tk.type());
+
+        // comment that runs into EOF
+        lexer.readString("<a> ; no newline");
+        tk = lexer.lex();
+        assertEquals(TkType.BNF_IDENT, tk.type());
+        tk = lexer.lex();
+        assertEquals(TkType.EOF, tk.type());
     }
 
     @Test
@@ -526,4 +544,161 @@ public class TestLexer {
         tk = lexer.peek();
         assertEquals(TkType.ILLEGAL, tk.type());
     }
-}
\ No newline at end of file
+
+    @Test
+    @Order(24)
+    public void testPeekAhead() {
+        //                0123456789012345678901
+        lexer.readString("a = b | c\n| { d }\n");
+        TkType[] types = {TkType.EBNF_IDENT, TkType.EQUAL, TkType.EBNF_IDENT,
+                          TkType.PIPE, TkType.EBNF_IDENT, TkType.NEWLINE,
+                          TkType.PIPE, TkType.LCURLY, TkType.EBNF_IDENT,
+                          TkType.RCURLY, TkType.NEWLINE, TkType.EOF};
+        // look further ahead than the ring's initial capacity
+        for (int i = 0; i < types.length; i++)
+            assertEquals(types[i], lexer.peek(i+1).type());
+        assertEquals(4, lexer.peek(3).startPos());
+        assertEquals(lexer.peek(1), lexer.peek());
+
+        // consuming shifts the window without rescanning
+        lexer.consume();
+        lexer.consume();
+        tk = lexer.peek(2);
+        assertEquals(TkType.PIPE, tk.type());
+        assertEquals(6, tk.startPos());
+        for (int i = 2; i < types.length; i++) {
+            tk = lexer.lex();
+            assertEquals(types[i], tk.type());
+        }
+        tk = lexer.lex();
+        assertEquals(TkType.EOF, tk.type());
+        assertEquals(TkType.EOF, lexer.peek(3).type());
+
+        // readString() drops tokens buffered from the old source
+        lexer.readString("<x>");
+        lexer.peek(2);
+        lexer.readString("::=");
+        assertEquals(TkType.DERIVES, lexer.lex().type());
+        assertEquals(TkType.EOF, lexer.lex().type());
+    }
+
+    @Test
+    @Order(25)
+    public void testWindowsLineEndings() {
+        //                01234 5 678901234 5 6
+        lexer.readString(".BNF\r\n<a> ::= 'b'\r\n");
+        TkType[] types = {TkType.BNF_MODE, TkType.NEWLINE, TkType.BNF_IDENT,
+                          TkType.DERIVES, TkType.CHAR, TkType.NEWLINE,
+                          TkType.EOF};
+        int[] startPositions = {0, 5, 6, 10, 14, 18, 19};
+        for (int i = 0; i < types.length; i++) {
+            tk = lexer.lex();
+            assertEquals(types[i], tk.type());
+            assertEquals(startPositions[i], tk.startPos());
+        }
+    }
+
+    @Test
+    @Order(26)
+    public void testReadFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("grammar.txt");
+        Files.writeString(file, ".EBNF\r\nrule = \"x\" (* \u00e9 *) | y\r\n");
+        lexer.readFile(file.toString());
+        TkType[] types = {TkType.EBNF_MODE, TkType.NEWLINE, TkType.EBNF_IDENT,
+                          TkType.EQUAL, TkType.STRING, TkType.PIPE,
+                          TkType.EBNF_IDENT, TkType.NEWLINE, TkType.EOF};
+        for (TkType type : types) {
+            tk = lexer.lex();
+            assertEquals(type, tk.type());
+        }
+
+        // reading a string afterwards must not disturb tokens from the file
+        lexer.readFile(file.toString());
+        lexer.consume();
+        lexer.consume();
+        Token rule = lexer.lex();
+        lexer.readString("other");
+        assertEquals("rule", rule.lexeme());
+        assertEquals("other", lexer.lex().lexeme());
+    }
+
+    @Test
+    @Order(27)
+    public void testReadStream() {
+        StringBuilder input = new StringBuilder(".EBNF\r\n");
+        // long enough that the stream window has to slide many times
+        for (int i = 0; i < 2000; i++) {
+            input.append("rule").append(i).append(" = \"x\" { y | 'z' }\n");
+            input.append("\t| (* a comment\n over lines *) w ; tail\n");
+        }
+        input.append("last = \"").append("s".repeat(20000)).append("\"\n");
+        String text = input.toString();
+
+        Lexer expected = new Lexer();
+        expected.readString(text);
+        // hand out the input a few bytes at a time, like a slow pipe
+        ReadableByteChannel trickle = Channels.newChannel(
+            new ByteArrayInputStream(text.getBytes()) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    return super.read(b, off, Math.min(len, 7));
+                }
+            });
+        lexer.readStream("<pipe>", trickle);
+        Token want;
+        do {
+            want = expected.lex();
+            tk = lexer.lex();
+            assertEquals(want.type(), tk.type());
+            assertEquals(want.startPos(), tk.startPos());
+            assertEquals(want.lexeme(), tk.lexeme());
+        } while (want.type() != TkType.EOF);
+
+        lexer.readStream("<reader>", new StringReader("<a> ::= <b>\n"));
+        assertEquals(TkType.BNF_IDENT, lexer.lex().type());
+        assertEquals(TkType.DERIVES, lexer.lex().type());
+        assertEquals("<b>", lexer.lex().lexeme());
+        assertEquals(TkType.NEWLINE, lexer.lex().type());
+        assertEquals(TkType.EOF, lexer.lex().type());
+    }
+
+    @Test
+    @Order(28)
+    public void testCharsBeyondLatin1() {
+        // a snowman mustn't pass for a '?' modifier
+        lexer.readString(".EBNF\na = b\u2603\n");
+        TkType[] types = {TkType.EBNF_MODE, TkType.NEWLINE, TkType.EBNF_IDENT,
+                          TkType.EQUAL, TkType.EBNF_IDENT, TkType.ILLEGAL};
+        for (TkType type : types)
+            assertEquals(type, lexer.lex().type());
+        assertEquals(new Diagnostic(2, 5, "illegal character"),
+                     lexer.diagnostics().get(0));
+
+        lexer.readStream("<reader>",
+                         new StringReader(".EBNF\na = b\u2603\n"));
+        for (TkType type : types)
+            assertEquals(type, lexer.lex().type());
+    }
+
+    @Test
+    @Order(29)
+    public void testTokenizeAllStreamed() {
+        StringBuilder input = new StringBuilder(".EBNF\n");
+        // far more than the window holds
+        for (int i = 0; i < 20000; i++)
+            input.append("rule").append(i).append(" = \"x\" { y | 'z' }\n");
+        String text = input.toString();
+        lexer.readString(text);
+        TokenStream expected = lexer.tokenizeAll();
+        lexer.readStream("<reader>", new StringReader(text));
+        TokenStream tokens = lexer.tokenizeAll();
+        assertEquals(expected.size(), tokens.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.type(i), tokens.type(i));
+            assertEquals(expected.lexeme(i), tokens.lexeme(i));
+        }
+        // the tokens already consumed don't have to stay in the window
+        assertTrue(lexer.windowCapacity() < text.length()/10,
+                   "window of " + lexer.windowCapacity());
+    }
+}
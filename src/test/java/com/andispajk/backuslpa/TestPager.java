@@ -0,0 +1,99 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class TestPager {
+    static Pager build(String input) {
+        return new Pager(new FirstFollow(TestFirstFollow.parse(input)));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "id,                true",
+        "id + id * id,      true",
+        "( id + id ) * id,  true",
+        "id + * id,         false",
+        "( id,              false",
+        "'',                false"
+    })
+    public void testLeftRecursive(String input, boolean valid) {
+        Pager pager = build(TestLR1.LEFT_RECURSIVE);
+        assertTrue(pager.isLR1());
+        Grammar grammar = TestFirstFollow.parse(TestLR1.LEFT_RECURSIVE);
+        assertEquals(valid, TestLR1.accepts(pager.table(), grammar, input));
+    }
+
+    @Test
+    public void testStateCount() {
+        // 10 canonical LR(1) states, 7 LALR(1) ones
+        Pager pager = build(".BNF\n<s> ::= <c> <c>\n<c> ::= 'c' <c> | 'd'\n");
+        assertEquals(7, pager.stateCount());
+        assertTrue(pager.isLR1());
+    }
+
+    @Test
+    public void testFewerStatesThanCanonical() {
+        Pager pager = build(TestLR1.LEFT_RECURSIVE);
+        LR1 lr1 = TestLR1.build(TestLR1.LEFT_RECURSIVE);
+        LALR lalr = TestLALR.build(TestLR1.LEFT_RECURSIVE);
+        assertEquals(lalr.stateCount(), pager.stateCount());
+        assertTrue(pager.stateCount() < lr1.stateCount());
+    }
+
+    @Test
+    public void testNotLalr() {
+        // merging the states after 'a' 'e' and 'b' 'e' would give
+        // reduce/reduce conflicts, so they are kept apart
+        Pager pager = build(TestLR1.NOT_LALR);
+        assertTrue(pager.isLR1());
+        assertEquals(TestLALR.build(TestLR1.NOT_LALR).stateCount()+1,
+                     pager.stateCount());
+        Grammar grammar = TestFirstFollow.parse(TestLR1.NOT_LALR);
+        for (String valid : new String[] {"a e c", "a e d", "b e c", "b e d"})
+            assertTrue(TestLR1.accepts(pager.table(), grammar, valid));
+        assertFalse(TestLR1.accepts(pager.table(), grammar, "a e e"));
+    }
+
+    @Test
+    public void testNullable() {
+        String input = ".BNF\n" +
+                       "<s> ::= <a> <b> 'x' | 'y' <b>\n" +
+                       "<a> ::= 'a' <a> | \"\"\n" +
+                       "<b> ::= 'b' | \"\"\n";
+        Pager pager = build(input);
+        assertTrue(pager.isLR1());
+        Grammar grammar = TestFirstFollow.parse(input);
+        for (String valid : new String[] {"x", "a a b x", "b x", "y", "y b"})
+            assertTrue(TestLR1.accepts(pager.table(), grammar, valid));
+        assertFalse(TestLR1.accepts(pager.table(), grammar, "a y"));
+    }
+
+    @Test
+    public void testReduceReduce() {
+        Pager pager = build(".BNF\n" +
+                            "<s> ::= <a> 'x' | <b> 'x'\n" +
+                            "<a> ::= 'a'\n" +
+                            "<b> ::= 'a'\n");
+        assertFalse(pager.isLR1());
+        LRTable.Conflict conflict = pager.table().conflicts().get(0);
+        assertEquals(LRTable.ConflictKind.REDUCE_REDUCE, conflict.kind());
+        assertArrayEquals(new int[] {2, 3}, conflict.productions());
+    }
+
+    @Test
+    public void testDeterministic() {
+        Pager first = build(TestLR1.LEFT_RECURSIVE);
+        Pager second = build(TestLR1.LEFT_RECURSIVE);
+        assertArrayEquals(first.table().actionTable(),
+                          second.table().actionTable());
+        assertArrayEquals(first.table().gotoTable(),
+                          second.table().gotoTable());
+    }
+}
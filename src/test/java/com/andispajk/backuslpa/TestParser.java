@@ -4,6 +4,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
+import java.util.List;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 import org.junit.jupiter.api.Order;
@@ -381,4 +383,78 @@ public class TestParser {
         assertTrue(parser.parseProduction());
         assertFalse(parser.parseProduction());
     }
+
+    @Test
+    @Order(22)
+    public void testAllErrorsReported() {
+        lexer.readString(".EBNF\n" +
+                         "a = (b\n" +
+                         "c = d\n" +
+                         "e = f )\n" +
+                         "  | g\n" +
+                         "h = i\n" +
+                         "j k\n");
+        assertFalse(parser.parseGrammar());
+        List<Diagnostic> errors = lexer.diagnostics();
+        assertEquals(new Diagnostic(3, 0, "expected \")\""), errors.get(0));
+        assertEquals(new Diagnostic(4, 6, "expected nonterminal symbol"),
+                     errors.get(errors.size()-2));
+        assertEquals(new Diagnostic(7, 2, "expected \"=\""),
+                     errors.get(errors.size()-1));
+        // e = f ends before the ), which starts a production, and the
+        // line after that is skipped
+        SymbolTable symbols = parser.grammar().symbols();
+        for (String nt : new String[] {"c", "e", "h"})
+            assertTrue(parser.grammar().isDefined(
+                symbols.findNonterminal(nt)));
+        assertFalse(parser.grammar().isDefined(symbols.findNonterminal("a")));
+        assertEquals(3, parser.grammar().productionCount());
+    }
+
+    @Test
+    @Order(23)
+    public void testErrorLimit() {
+        StringBuilder input = new StringBuilder(".BNF\n");
+        for (int i = 0; i < 10; i++)
+            input.append("<a").append(i).append("> = 'x'\n");
+        lexer.readString(input.toString());
+        parser.setErrorLimit(3);
+        assertFalse(parser.parseGrammar());
+        List<Diagnostic> errors = lexer.diagnostics();
+        assertEquals(4, errors.size());
+        for (int i = 0; i < 3; i++)
+            assertEquals(new Diagnostic(i+2, 5, "expected \"::=\""),
+                         errors.get(i));
+        // parsing stops at the production after the third
+        assertEquals(new Diagnostic(5, 0, "too many errors, stopping here"),
+                     errors.get(3));
+    }
+
+    @Test
+    @Order(24)
+    public void testRecoverFromLexerError() {
+        // the unterminated string doesn't swallow the line after it
+        lexer.readString(".EBNF\n" +
+                         "a = \"x\n" +
+                         "b = 'y'\n" +
+                         "c = @ b\n" +
+                         "d = b\n");
+        assertFalse(parser.parseGrammar());
+        SymbolTable symbols = parser.grammar().symbols();
+        for (String nt : new String[] {"b", "d"})
+            assertTrue(parser.grammar().isDefined(
+                symbols.findNonterminal(nt)));
+        assertEquals(2, parser.grammar().productionCount());
+        assertTrue(lexer.diagnostics().contains(
+            new Diagnostic(4, 4, "illegal character")));
+    }
+
+    @Test
+    @Order(25)
+    public void testValidAfterRecovery() {
+        lexer.readString(".BNF\n<a> ::= 'x'\n\n<b> ::= <a>\n   | 'y'\n");
+        assertTrue(parser.parseGrammar());
+        assertTrue(lexer.diagnostics().isEmpty());
+        assertEquals(3, parser.grammar().productionCount());
+    }
 }
@@ -0,0 +1,92 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// runs the whole TestLexer suite again with the table-driven scanner
+public class TestScanTable extends TestLexer {
+    @BeforeEach
+    @Override
+    public void setUp() {
+        lexer = new Lexer();
+        lexer.useTableScanner(true);
+    }
+
+    /* lexAll()
+        @input          source to lex
+        @tableScanner   which scanner engine to use
+        @return         every token and every error message, one per line
+
+        Lex an entire input and record everything the Lexer produced.
+    */
+    private static String lexAll(String input, boolean tableScanner) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        StringBuilder tokens = new StringBuilder();
+        Lexer l = new Lexer();
+        l.useTableScanner(tableScanner);
+        l.readString(input);
+        System.setOut(new PrintStream(out));
+        try {
+            Token tk;
+            do {
+                tk = l.lex();
+                tokens.append(String.format("%s %d %d %s\n", tk.type(),
+                                            tk.startPos(), tk.endPos(),
+                                            tk.lexeme()));
+            } while (tk.type() != TkType.EOF);
+        } finally {
+            System.setOut(stdout);
+        }
+        return tokens.append(out).toString();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "example/asm6502.txt",
+        "example/bnf_grammar.txt",
+        "example/brackets.txt",
+        "example/ebnf_grammar.txt",
+        "example/edge_cases.txt",
+        "example/errors.txt",
+        "example/single_chars.txt",
+        "example/weird.txt"
+    })
+    @Order(100)
+    public void testSameTokensAsDirectCoded(String example)
+        throws IOException {
+        String input = Files.readString(Path.of(example));
+        assertEquals(lexAll(input, false), lexAll(input, true));
+    }
+
+    @Test
+    @Order(101)
+    public void testRandomInputs() {
+        // chars that drive the state machine into every state and error
+        String alphabet = "<>-_aZ9eEbBnNfFrtv'\"\\=:()*{}[]|+?.;\n\t \r%\0\u00e9";
+        Random random = new Random(1234);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder input = new StringBuilder();
+            int len = random.nextInt(24);
+            for (int j = 0; j < len; j++)
+                input.append(alphabet.charAt(random.nextInt(
+                    alphabet.length())));
+            String s = input.toString();
+            assertEquals(lexAll(s, false), lexAll(s, true), s);
+        }
+    }
+}
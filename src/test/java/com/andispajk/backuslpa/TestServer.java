@@ -0,0 +1,169 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestServer {
+    private final Server server =
+        new Server(Main.Automaton.CANONICAL, ForkJoinPool.commonPool());
+
+    @TempDir
+    Path dir;
+
+    private static String text(String method, String grammar) {
+        return "{\"id\": 7, \"method\": \"" + method + "\", \"text\": " +
+               Json.quote(grammar) + "}";
+    }
+
+    @Test
+    public void testJson() {
+        Object value = Json.parse(" {\"a\": [1, -2.5e1, true, null], " +
+                                  "\"b\\n\\u0041\": {}, \"c\": []} ");
+        assertEquals(Map.of("a", Arrays.asList(1.0, -25.0, true, null),
+                            "b\nA", Map.of(), "c", List.of()), value);
+        assertEquals("\"a\\\"\\\\\\n\\u0001\"", Json.quote("a\"\\\n\u0001"));
+        for (String bad : new String[] {"", "{", "[1,]", "{\"a\" 1}",
+                                        "\"abc", "tru", "1 2"})
+            assertThrows(IllegalArgumentException.class,
+                         () -> Json.parse(bad));
+    }
+
+    @Test
+    public void testCheck() {
+        assertEquals("{\"id\":7,\"valid\":true,\"diagnostics\":[]}",
+                     server.handle(text("check", ".BNF\n<s> ::= 'a'\n")));
+        assertEquals("{\"id\":7,\"valid\":false,\"diagnostics\":[" +
+                     "{\"severity\":\"error\",\"line\":2,\"column\":4," +
+                     "\"message\":\"expected \\\"::=\\\"\"}]}",
+                     server.handle(text("check", ".BNF\n<s> = 'a'\n")));
+        // the Lexer is reused, but errors don't carry over
+        assertEquals("{\"id\":7,\"valid\":true,\"diagnostics\":[]}",
+                     server.handle(text("check", ".EBNF\ns = {a}\n")));
+    }
+
+    @Test
+    public void testAnalyze() {
+        String input = ".BNF\n<s> ::= <a> | <b>\n<a> ::= 'x'\n<b> ::= 'x'\n";
+        String response = server.handle(text("analyze", input));
+        assertTrue(response.startsWith("{\"id\":7,\"valid\":true," +
+                                       "\"diagnostics\":[{\"severity\":" +
+                                       "\"warning\",\"line\":2," +
+                                       "\"column\":14,"));
+        assertTrue(response.contains("reduce/reduce conflict"));
+        assertTrue(response.endsWith("\"ll1\":false,\"lr1\":false}"));
+        assertEquals("{\"id\":\"x\",\"valid\":true,\"diagnostics\":[]," +
+                     "\"ll1\":true,\"lalr1\":true}",
+                     server.handle("{\"id\": \"x\", \"method\": " +
+                                   "\"analyze\", \"automaton\": \"lalr\"," +
+                                   " \"text\": \".EBNF\\ns = a {',' a}\"}"));
+        // nothing to build an automaton from
+        assertEquals("{\"id\":7,\"valid\":true,\"diagnostics\":[" +
+                     "{\"severity\":\"warning\",\"line\":1,\"column\":0," +
+                     "\"message\":\"no productions to analyze\"}]}",
+                     server.handle(text("analyze", ".BNF\n")));
+    }
+
+    @Test
+    public void testBadRequests() {
+        assertEquals("{\"id\":null,\"error\":\"request isn't an object\"}",
+                     server.handle("[1]"));
+        assertEquals("{\"id\":1,\"error\":\"unknown method parse\"}",
+                     server.handle("{\"id\": 1, \"method\": \"parse\"}"));
+        assertEquals("{\"id\":2,\"error\":\"request has neither file nor " +
+                     "text\"}",
+                     server.handle("{\"id\": 2, \"method\": \"check\"}"));
+        assertEquals("{\"id\":3,\"error\":\"could not open input file " +
+                     "missing.txt\"}",
+                     server.handle("{\"id\": 3, \"method\": \"check\", " +
+                                   "\"file\": \"missing.txt\"}"));
+        assertTrue(server.handle("{\"id\": 4").startsWith(
+            "{\"id\":null,\"error\":"));
+    }
+
+    @Test
+    public void testDeepNesting() throws IOException {
+        String deep = "[".repeat(200000) + "]".repeat(200000);
+        assertThrows(IllegalArgumentException.class, () -> Json.parse(deep));
+        String nested = "[".repeat(Json.MAX_DEPTH) + "1" +
+                        "]".repeat(Json.MAX_DEPTH);
+        assertEquals(List.of(1.0), flatten(Json.parse(nested)));
+        assertThrows(IllegalArgumentException.class,
+                     () -> Json.parse("[" + nested + "]"));
+        // the request after it is still answered
+        String requests = deep + "\n" + text("check", ".BNF\n<s> ::= 'a'\n") +
+                          "\n";
+        StringWriter out = new StringWriter();
+        server.serve(new BufferedReader(new StringReader(requests)), out);
+        assertTrue(out.toString().startsWith(
+            "{\"id\":null,\"error\":\"values nested too deeply"));
+        assertTrue(out.toString().endsWith(
+            "\n{\"id\":7,\"valid\":true,\"diagnostics\":[]}\n"));
+    }
+
+    @Test
+    public void testDeepGrammar() {
+        String grammar = ".EBNF\na = " + "(".repeat(200000) + "b" +
+                         ")".repeat(200000) + "\n";
+        assertEquals("{\"id\":7,\"error\":\"grammar nested too deeply\"}",
+                     server.handle(text("check", grammar)));
+        assertEquals("{\"id\":7,\"valid\":true,\"diagnostics\":[]}",
+                     server.handle(text("check", ".BNF\n<s> ::= 'a'\n")));
+    }
+
+    private static Object flatten(Object value) {
+        while (value instanceof List<?> list && list.size() == 1 &&
+               list.get(0) instanceof List<?>)
+            value = list.get(0);
+        return value;
+    }
+
+    @Test
+    public void testServe() throws IOException {
+        String requests = text("check", ".BNF\n<s> ::= 'a'\n") + "\n\n" +
+                          "{\"id\": 8, \"method\": \"shutdown\"}\n" +
+                          text("check", ".BNF\n<s> ::= 'a'\n") + "\n";
+        StringWriter out = new StringWriter();
+        server.serve(new BufferedReader(new StringReader(requests)), out);
+        assertTrue(server.isShutdown());
+        // nothing after the shutdown is answered
+        assertEquals("{\"id\":7,\"valid\":true,\"diagnostics\":[]}\n" +
+                     "{\"id\":8,\"ok\":true}\n", out.toString());
+    }
+
+    @Test
+    public void testSocketInUse() throws IOException {
+        Path socket = dir.resolve("server.sock");
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        try (ServerSocketChannel running = ServerSocketChannel.open(
+                 StandardProtocolFamily.UNIX)) {
+            running.bind(address);
+            assertThrows(IOException.class,
+                         () -> Server.listen(socket, Main.Automaton.CANONICAL,
+                                             ForkJoinPool.commonPool()));
+            // the running server's socket is still there to connect to
+            assertTrue(Files.exists(socket));
+            try (SocketChannel client = SocketChannel.open(address)) {
+                assertTrue(client.isConnected());
+            }
+        }
+    }
+}
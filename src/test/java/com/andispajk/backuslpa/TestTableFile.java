@@ -0,0 +1,199 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestTableFile {
+    @TempDir
+    Path dir;
+
+    static LL1 analyze(String input) {
+        Grammar grammar = TestFirstFollow.parse(input);
+        if (!grammar.isBnf())
+            grammar = new Desugarer(grammar).grammar();
+        return new LL1(new FirstFollow(grammar));
+    }
+
+    private TableFile saveAndLoad(LL1 ll1, LRTable table, boolean lalr)
+        throws IOException {
+        Path file = dir.resolve("tables.bin");
+        TableFile.save(file, ll1, table, lalr);
+        return TableFile.load(file);
+    }
+
+    /* terminals()
+
+        Look up the IDs of terminals the way a tool that only has the file
+        would.
+    */
+    private static int[] terminals(TableFile tables, String... texts) {
+        SymbolTable symbols = tables.symbols();
+        int[] ids = new int[texts.length+1];
+        for (int i = 0; i < texts.length; i++)
+            ids[i] = symbols.findTerminal(texts[i]);
+        ids[texts.length] = SymbolTable.END;
+        return ids;
+    }
+
+    /* parseLR()
+
+        Run an LR parser on nothing but the loaded tables.
+    */
+    private static boolean parseLR(TableFile tables, int[] input) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        int at = 0;
+        while (true) {
+            int action = tables.action(stack.peek(), input[at]);
+            if (tables.isAccept(action))
+                return true;
+            if (LRTable.isShift(action)) {
+                stack.push(LRTable.target(action));
+                at++;
+            } else if (LRTable.isReduce(action)) {
+                int p = LRTable.production(action);
+                for (int i = 0; i < tables.rhsLength(p); i++)
+                    stack.pop();
+                stack.push(tables.gotoState(stack.peek(), tables.lhs(p)));
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /* parseLL()
+
+        Run an LL(1) parser on nothing but the loaded tables.
+    */
+    private static boolean parseLL(TableFile tables, int[] input) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(tables.startSymbol());
+        int at = 0;
+        while (!stack.isEmpty()) {
+            int top = stack.pop();
+            if (SymbolTable.isTerminal(top)) {
+                if (SymbolTable.terminalOf(top) != input[at])
+                    return false;
+                at++;
+                continue;
+            }
+            int p = tables.production(top, input[at]);
+            if (p < 0)
+                return false;
+            for (int i = tables.rhsLength(p)-1; i >= 0; i--)
+                stack.push(tables.rhs(p, i));
+        }
+        return input[at] == SymbolTable.END;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        LL1 ll1 = analyze(TestFirstFollow.EXPRESSIONS);
+        LRTable table = new LR1(ll1.sets()).table();
+        TableFile tables = saveAndLoad(ll1, table, false);
+        Grammar grammar = ll1.grammar();
+        SymbolTable symbols = grammar.symbols();
+        assertTrue(tables.isLL1());
+        assertTrue(tables.isLR1());
+        assertEquals(0, tables.flags() & TableFile.LALR);
+        assertEquals(symbols.terminalCount(), tables.terminalCount());
+        assertEquals(symbols.nonterminalCount(), tables.nonterminalCount());
+        for (int t = 0; t < symbols.terminalCount(); t++)
+            assertEquals(symbols.terminalText(t), tables.terminalText(t));
+        for (int nt = 0; nt < symbols.nonterminalCount(); nt++)
+            assertEquals(symbols.nonterminalName(nt),
+                         tables.nonterminalName(nt));
+        assertEquals(grammar.productionCount(), tables.productionCount());
+        assertEquals(grammar.startSymbol(), tables.startSymbol());
+        for (int p = 0; p < grammar.productionCount(); p++) {
+            assertEquals(grammar.lhs(p), tables.lhs(p));
+            assertEquals(grammar.line(p), tables.line(p));
+            int[] rhs = new int[tables.rhsLength(p)];
+            for (int i = 0; i < rhs.length; i++)
+                rhs[i] = tables.rhs(p, i);
+            assertEquals(Arrays.toString(grammar.rhs(p)),
+                         Arrays.toString(rhs));
+        }
+        assertEquals(table.stateCount(), tables.stateCount());
+        CompressedTable compressed = new CompressedTable(table);
+        TestCompressedTable.assertEquivalent(table, compressed);
+        for (int s = 0; s < table.stateCount(); s++) {
+            for (int t = 0; t < symbols.terminalCount(); t++)
+                assertEquals(compressed.action(s, t), tables.action(s, t));
+            for (int nt = 0; nt < symbols.nonterminalCount(); nt++)
+                assertEquals(compressed.gotoState(s, nt),
+                             tables.gotoState(s, nt));
+        }
+        for (int nt = 0; nt < symbols.nonterminalCount(); nt++)
+            for (int t = 0; t < symbols.terminalCount(); t++)
+                assertEquals(ll1.production(nt, t), tables.production(nt, t));
+    }
+
+    @Test
+    public void testParseWithLoadedTables() throws IOException {
+        LL1 ll1 = analyze(TestFirstFollow.EXPRESSIONS);
+        TableFile tables = saveAndLoad(ll1, new LALR(ll1.sets()).table(),
+                                       true);
+        assertTrue((tables.flags() & TableFile.LALR) != 0);
+        int[] good = terminals(tables, "id", "+", "(", "id", "*", "id", ")");
+        int[] bad = terminals(tables, "id", "+", "*", "id");
+        assertTrue(parseLR(tables, good));
+        assertTrue(parseLL(tables, good));
+        assertFalse(parseLR(tables, bad));
+        assertFalse(parseLL(tables, bad));
+    }
+
+    @Test
+    public void testDesugaredWithConflicts() throws IOException {
+        LL1 ll1 = analyze(".EBNF\ns = {a} a\na = 'x' | 'x' 'y'\n");
+        LRTable table = new LR1(ll1.sets()).table();
+        TableFile tables = saveAndLoad(ll1, table, false);
+        assertFalse(tables.isLL1());
+        assertEquals(table.hasConflicts(), !tables.isLR1());
+        // the helper for {a} is there by the name it is described by
+        SymbolTable symbols = tables.symbols();
+        assertEquals(ll1.grammar().symbols().nonterminalCount(),
+                     symbols.nonterminalCount());
+        assertTrue(symbols.findNonterminal("s") >= 0);
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        LL1 ll1 = analyze(TestFirstFollow.EXPRESSIONS);
+        Path file = dir.resolve("tables.bin");
+        TableFile.save(file, ll1, new LALR(ll1.sets()).table(), true);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Path other = dir.resolve("other.bin");
+        Files.writeString(other, ".BNF\n<a> ::= 'a'\n");
+        assertThrows(IOException.class, () -> TableFile.load(other));
+
+        byte[] newer = bytes.clone();
+        ByteBuffer.wrap(newer).putInt(4, TableFile.VERSION+1);
+        Files.write(other, newer);
+        IOException e = assertThrows(IOException.class,
+                                     () -> TableFile.load(other));
+        assertEquals("unsupported table file version " + (TableFile.VERSION+1),
+                     e.getMessage());
+
+        Files.write(other, Arrays.copyOf(bytes, bytes.length/2));
+        assertThrows(IOException.class, () -> TableFile.load(other));
+        Files.write(other, Arrays.copyOf(bytes, bytes.length-1));
+        assertThrows(IOException.class, () -> TableFile.load(other));
+        Files.write(other, new byte[0]);
+        assertThrows(IOException.class, () -> TableFile.load(other));
+    }
+}
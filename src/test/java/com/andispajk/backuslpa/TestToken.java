@@ -1,6 +1,7 @@
 package com.andispajk.backuslpa;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import org.junit.jupiter.api.Test;
 
@@ -16,4 +17,28 @@ public class TestToken {
         assertEquals(TkType.RCURLY, tk2.type());
         assertEquals(17, tk2.startPos());
     }
+
+    @Test
+    public void testLazyLexeme() {
+        String source = "<rule> ::= \"text\"";
+        Token tk = new Token(source, TkType.STRING, 11, 17, 0, 11);
+        assertEquals(11, tk.startPos());
+        assertEquals(17, tk.endPos());
+        assertEquals("\"text\"", tk.lexeme());
+        // the lexeme is only built once
+        assertSame(tk.lexeme(), tk.lexeme());
+        assertEquals(new Token("\"text\"", TkType.STRING, 11), tk);
+    }
+
+    @Test
+    public void testFixedLexemes() {
+        String source = "a ::= b | c";
+        Token derives = new Token(source, TkType.DERIVES, 2, 5, 0, 2);
+        Token pipe = new Token(source, TkType.PIPE, 8, 9, 0, 8);
+        assertEquals("::=", derives.lexeme());
+        assertEquals("|", pipe.lexeme());
+        // punctuation shares one lexeme no matter where it was scanned from
+        Token other = new Token("x|", TkType.PIPE, 1, 2, 0, 1);
+        assertSame(pipe.lexeme(), other.lexeme());
+    }
 }
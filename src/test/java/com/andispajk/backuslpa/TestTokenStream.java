@@ -0,0 +1,113 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class TestTokenStream {
+    private static final String GRAMMAR =
+        ".EBNF\n" +
+        "rule = \"x\" { y | 'z' } ; comment\n" +
+        "\t| (* a\n comment *) w+ [v]?\n" +
+        "<bad\n";
+
+    private Lexer lexer;
+
+    @BeforeEach
+    public void setUp() {
+        lexer = new Lexer();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testMatchesLex(boolean table) {
+        Lexer expected = new Lexer();
+        expected.readString(GRAMMAR);
+        lexer.useTableScanner(table);
+        lexer.readString(GRAMMAR);
+        TokenStream tokens = lexer.tokenizeAll();
+        for (int i = 0; i < tokens.size(); i++) {
+            Token want = expected.lex();
+            assertEquals(want, tokens.token(i));
+            assertEquals(want.type(), tokens.type(i));
+            assertEquals(want.startPos(), tokens.start(i));
+            assertEquals(want.endPos(), tokens.end(i));
+            assertEquals(want.column(), tokens.column(i));
+            assertEquals(want.lexeme(), tokens.lexeme(i));
+        }
+        assertEquals(TkType.EOF, expected.peek().type());
+        assertEquals(TkType.EOF, tokens.type(tokens.size()-1));
+    }
+
+    @Test
+    public void testLines() {
+        lexer.readString(GRAMMAR);
+        TokenStream tokens = lexer.tokenizeAll();
+        // rule, the comment's NEWLINE, w, <bad, the NEWLINE it leaves, EOF
+        int[] indices = {2, 10, 12, 19, 20, 21};
+        int[] lines = {1, 1, 3, 4, 4, 5};
+        int[] columns = {0, 32, 12, 0, 4, 0};
+        assertEquals(TkType.NEWLINE, tokens.type(10));
+        assertEquals(TkType.ILLEGAL, tokens.type(19));
+        assertEquals(TkType.NEWLINE, tokens.type(20));
+        for (int i = 0; i < indices.length; i++) {
+            assertEquals(lines[i], tokens.line(indices[i]));
+            assertEquals(columns[i], tokens.column(indices[i]));
+        }
+        assertEquals(22, tokens.size());
+    }
+
+    @Test
+    public void testPeekedTokensComeFirst() {
+        lexer.readString("a = b | c\n");
+        lexer.consume();
+        assertEquals(TkType.EBNF_IDENT, lexer.peek(2).type());
+        TokenStream tokens = lexer.tokenizeAll();
+        TkType[] types = {TkType.EQUAL, TkType.EBNF_IDENT, TkType.PIPE,
+                          TkType.EBNF_IDENT, TkType.NEWLINE, TkType.EOF};
+        assertEquals(types.length, tokens.size());
+        for (int i = 0; i < types.length; i++)
+            assertEquals(types[i], tokens.type(i));
+        // the lexer itself is left at the end
+        assertEquals(TkType.EOF, lexer.lex().type());
+    }
+
+    @Test
+    public void testStreamed() {
+        lexer.readStream("<reader>", new StringReader(GRAMMAR));
+        TokenStream tokens = lexer.tokenizeAll();
+        Lexer expected = new Lexer();
+        expected.readString(GRAMMAR);
+        for (int i = 0; i < tokens.size(); i++)
+            assertEquals(expected.lex(), tokens.token(i));
+        assertEquals("rule", tokens.lexeme(2));
+        assertEquals("\"x\"", tokens.lexeme(4));
+    }
+
+    @Test
+    public void testCursor() {
+        lexer.readString("a = b\n");
+        TokenStream tokens = lexer.tokenizeAll();
+        TokenStream.Cursor cursor = tokens.cursor();
+        assertEquals(TkType.EBNF_IDENT, cursor.peek());
+        assertEquals(TkType.EQUAL, cursor.peek(2));
+        assertEquals(TkType.EOF, cursor.peek(10));
+        assertEquals(0, cursor.next());
+        assertEquals(1, cursor.next());
+        assertEquals("b", tokens.lexeme(cursor.next()));
+        assertEquals(TkType.NEWLINE, cursor.peek());
+        cursor.next();
+        // the cursor stops at EOF
+        assertEquals(4, cursor.next());
+        assertEquals(4, cursor.next());
+        assertEquals(TkType.EOF, cursor.peek());
+        cursor.seek(1);
+        assertEquals(TkType.EQUAL, cursor.peek());
+        assertEquals(1, cursor.index());
+    }
+}
@@ -0,0 +1,126 @@
+package com.andispajk.backuslpa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class TestVectorScanner {
+    /* lexAll()
+        @lexer      a Lexer that has already read its input
+        @return     every token and every error message, one per line
+
+        Lex an entire input and record everything the Lexer produced.
+    */
+    private static String lexAll(Lexer lexer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        StringBuilder tokens = new StringBuilder();
+        System.setOut(new PrintStream(out));
+        try {
+            Token tk;
+            do {
+                tk = lexer.lex();
+                tokens.append(String.format("%s %d %d %s\n", tk.type(),
+                                            tk.startPos(), tk.endPos(),
+                                            tk.lexeme()));
+            } while (tk.type() != TkType.EOF);
+            // the line state must survive skipped comments too
+            lexer.error(tk.startPos(), "end");
+        } finally {
+            System.setOut(stdout);
+        }
+        return tokens.append(out).toString();
+    }
+
+    private static String lexString(String input, boolean vectors,
+                                    boolean tableScanner) {
+        Lexer lexer = new Lexer();
+        lexer.useVectorScanning(vectors);
+        lexer.useTableScanner(tableScanner);
+        lexer.readString(input);
+        return lexAll(lexer);
+    }
+
+    @Test
+    public void testVectorApiAvailable() {
+        // surefire runs with --add-modules jdk.incubator.vector, so the tests
+        // below really exercise the fast paths
+        assertTrue(ModuleLayer.boot().findModule("jdk.incubator.vector")
+                              .isPresent());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "                                                                   a",
+        "\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t| b",
+        "averyveryveryverylongidentifier_with_0123456789_DIGITS_and_more_x =",
+        "<a-very-very-very-long-bnf-nonterminal-with-dashes-0123456789-XYZ>",
+        "\"a long string literal with spaces, punctuation !#$% and \\\" \\n ok\"",
+        "(* a comment that spans\n several\n\n lines, long enough for a few"
+            + " vectors\n of bytes ***) x",
+        "; an inline comment that is long enough to need several vectors ..\nx",
+        "\"a string that runs into a tab here>\t<and is illegal...........\"",
+        "ident_that_runs_into_latin1_letters_éè_and_keeps_going____",
+        "(* comment that never ends, long enough to be vectorized.........",
+        "\"string that never ends, long enough to be vectorized................"
+    })
+    public void testLongRuns(String input) {
+        String scalar = lexString(input, false, false);
+        assertEquals(scalar, lexString(input, true, false));
+        assertEquals(scalar, lexString(input, true, true));
+    }
+
+    @Test
+    public void testRandomRuns() {
+        // long runs of few distinct chars, so runs end at every offset within
+        // a vector
+        String[] pieces = {" ", "\t", "\r", "\n", "a", "Z", "_", "-", "9", "<",
+                           ">", "\"", "\\", "(*", "*)", "*", ";", "|", "'x'",
+                           "é", "\0", "  \n   ", "abcdefgh", "(* \n *)"};
+        Random random = new Random(4321);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder input = new StringBuilder();
+            int len = random.nextInt(60);
+            for (int j = 0; j < len; j++) {
+                String piece = pieces[random.nextInt(pieces.length)];
+                input.append(piece.repeat(1+random.nextInt(20)));
+            }
+            String s = input.toString();
+            assertEquals(lexString(s, false, false), lexString(s, true, false),
+                         s);
+        }
+    }
+
+    @Test
+    public void testMappedFile(@TempDir Path dir) throws IOException {
+        // mapped files aren't backed by an array, so they take another path
+        StringBuilder input = new StringBuilder(".EBNF\n");
+        for (int i = 0; i < 300; i++) {
+            input.append("rule_number_").append(i).append("    =    ");
+            input.append("\"some terminal text\" (* and a comment *) ");
+            input.append("other_rule_name ; trailing comment\n");
+        }
+        Path file = dir.resolve("grammar.txt");
+        Files.writeString(file, input);
+
+        Lexer scalar = new Lexer();
+        scalar.useVectorScanning(false);
+        scalar.readFile(file.toString());
+        Lexer vectors = new Lexer();
+        vectors.readFile(file.toString());
+        assertEquals(lexAll(scalar), lexAll(vectors));
+    }
+}